@@ -0,0 +1,132 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.ChangeEvent;
+import com.homework.realestate.ChangeFeed;
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link PropertyService#addProperty(Property)} and {@link PropertyService#addAll(Collection)} on top
+ * of a pre-filled catalog.
+ * Each invocation adds a batch of new listings to a freshly loaded service, so the catalog never grows beyond
+ * the configured dataset size plus one batch and the results of different dataset sizes stay comparable.
+ * Scores are reported per added property. The {@code changeFeed} parameter measures the cost of publishing every
+ * change: {@code off} without a change feed, {@code feed} with a feed nobody reads and {@code subscriber} with a
+ * feed delivering every event to a subscriber on the common pool.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class AddPropertyBenchmark {
+
+    /** Number of properties added per benchmark invocation. */
+    static final int BATCH_SIZE = 10_000;
+
+    /** Change feed attached to the service while properties are added. */
+    @Param({"off", "feed", "subscriber"})
+    public String changeFeed;
+
+    private List<Property> incoming;
+    private List<Property> catalog;
+    private PropertyService propertyService;
+
+    /**
+     * Generates the batch of listings to add, using the same distributions as the catalog.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup(Level.Trial)
+    public void generateIncoming(CatalogState catalogState) {
+        catalog = catalogState.catalog;
+        incoming = PropertyDataset.generate(BATCH_SIZE, "N", catalogState.typeDistribution,
+                catalogState.priceDistribution, catalogState.bedroomDistribution, catalogState.seed + 1);
+    }
+
+    /**
+     * Reloads the catalog before every batch. This is not part of the measurement.
+     */
+    @Setup(Level.Invocation)
+    public void resetService() {
+        propertyService = new PropertyService(catalog);
+        if (!"off".equals(changeFeed)) {
+            ChangeFeed feed = propertyService.enableChangeFeed(ChangeFeed.DEFAULT_CAPACITY);
+            if ("subscriber".equals(changeFeed)) {
+                feed.publisher(0, 256).subscribe(new CountingSubscriber());
+            }
+        }
+    }
+
+    /**
+     * Measures adding a batch of properties one at a time.
+     *
+     * @return the service the properties were added to
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public PropertyService addProperty() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            propertyService.addProperty(incoming.get(i));
+        }
+        return propertyService;
+    }
+
+    /**
+     * Measures adding the same batch of properties in one call.
+     *
+     * @return the service the properties were added to
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public PropertyService addAll() {
+        propertyService.addAll(incoming);
+        return propertyService;
+    }
+
+    /**
+     * Subscriber that requests every event and only counts them.
+     */
+    private static final class CountingSubscriber implements Flow.Subscriber<List<ChangeEvent>> {
+
+        private long received;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ChangeEvent> batch) {
+            received += batch.size();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.AsyncPropertyService;
+import com.homework.realestate.ConcurrentPropertyService;
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyMetric;
+import com.homework.realestate.PropertyQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link AsyncPropertyService} under {@value #CONCURRENT_QUERIES} concurrent queries, one percent of
+ * which are long scans ranking the whole catalog by price per area, while the rest are lookups by id. Every
+ * invocation submits all queries at once and measures how long it takes until the last lookup completes, which is
+ * the tail latency a request handler sees; the scans still running then are cancelled.
+ *
+ * <p>The {@code executor} parameter picks a fixed pool of {@value #POOL_SIZE} platform threads or one virtual
+ * thread per query, which needs Java 21. The {@code scanTimeoutMillis} parameter gives the scans a timeout, or
+ * none for {@code 0}; a timed out scan stops midway and frees its thread for the lookups queued behind it.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class AsyncQueryBenchmark {
+
+    private static final int CONCURRENT_QUERIES = 10_000;
+    private static final int SCAN_EVERY = 100;
+    private static final int POOL_SIZE = 16;
+    private static final PropertyQuery ALL = new PropertyQuery();
+
+    /** Executor the queries run on: {@code fixedPool} or {@code virtual}. */
+    @Param({"fixedPool", "virtual"})
+    public String executor;
+
+    /** Timeout of the scans in milliseconds, or {@code 0} for none. */
+    @Param({"0", "20"})
+    public long scanTimeoutMillis;
+
+    private AsyncPropertyService asyncService;
+    private String[] ids;
+
+    /**
+     * Loads the generated catalog and creates the facade on the chosen executor.
+     *
+     * @param catalogState the generated catalog
+     * @throws IllegalStateException if virtual threads are chosen before Java 21
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        ConcurrentPropertyService service = new ConcurrentPropertyService(catalogState.catalog);
+        if ("virtual".equals(executor)) {
+            asyncService = AsyncPropertyService.withVirtualThreads(service,
+                    AsyncPropertyService.DEFAULT_TIMEOUT_MILLIS);
+        } else {
+            asyncService = new AsyncPropertyService(service, Executors.newFixedThreadPool(POOL_SIZE),
+                    AsyncPropertyService.DEFAULT_TIMEOUT_MILLIS);
+        }
+        ids = catalogState.catalog.stream().map(Property::getId).toArray(String[]::new);
+    }
+
+    /**
+     * Stops the executor of the facade.
+     */
+    @TearDown
+    public void tearDown() {
+        asyncService.close();
+    }
+
+    /**
+     * Measures the time until all lookups of a burst of concurrent queries have completed.
+     *
+     * @return the number of lookups that found their property
+     */
+    @Benchmark
+    public int lookupsBehindScans() {
+        List<CompletableFuture<List<Property>>> scans = new ArrayList<>();
+        List<CompletableFuture<Property>> lookups = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_QUERIES; i++) {
+            if (i % SCAN_EVERY == 0) {
+                scans.add(scanTimeoutMillis > 0
+                        ? asyncService.submit(AsyncQueryBenchmark::cheapestPerArea, scanTimeoutMillis)
+                        : asyncService.submit(AsyncQueryBenchmark::cheapestPerArea));
+            } else {
+                lookups.add(asyncService.findById(ids[i % ids.length]));
+            }
+        }
+        int found = 0;
+        for (CompletableFuture<Property> lookup : lookups) {
+            if (lookup.join() != null) {
+                found++;
+            }
+        }
+        for (CompletableFuture<List<Property>> scan : scans) {
+            scan.cancel(true);
+        }
+        return found;
+    }
+
+    private static List<Property> cheapestPerArea(ConcurrentPropertyService service) {
+        return service.findBottomProperties(ALL, PropertyMetric.PRICE_PER_AREA, 10);
+    }
+}
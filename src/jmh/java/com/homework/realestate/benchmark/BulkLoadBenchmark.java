@@ -0,0 +1,55 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.BulkLoadReport;
+import com.homework.realestate.PropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark for {@link PropertyService#bulkLoad(Stream)} replacing a catalog of the configured dataset size with
+ * the generated catalog. Divide the dataset size by the score to get the load rate in rows per millisecond.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class BulkLoadBenchmark {
+
+    private CatalogState catalogState;
+    private PropertyService propertyService;
+
+    /**
+     * Loads the generated catalog once, so every measured load replaces a catalog of the same size.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        this.catalogState = catalogState;
+        propertyService = new PropertyService(catalogState.catalog);
+    }
+
+    /**
+     * Measures replacing the catalog from a sized stream.
+     *
+     * @return the load report
+     */
+    @Benchmark
+    public BulkLoadReport bulkLoad() {
+        return propertyService.bulkLoad(catalogState.catalog.stream());
+    }
+}
@@ -0,0 +1,58 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Property;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark state holding a generated property catalog.
+ * The dataset size and the type, price and bedroom distributions are JMH parameters, so they can be overridden
+ * from the command line with {@code -p datasetSize=10000 -p typeDistribution=50:30:15:5}.
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    /** Keeps a strong reference so the level set in {@link #generateCatalog()} is not garbage collected. */
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("com.homework");
+
+    /** Number of properties in the catalog. */
+    @Param({"10000", "1000000", "10000000"})
+    public int datasetSize;
+
+    /** Distribution of property types: {@code uniform}, {@code skewed} or colon-separated weights. */
+    @Param({"uniform"})
+    public String typeDistribution;
+
+    /** Distribution of prices: {@code uniform} or {@code lognormal}. */
+    @Param({"lognormal"})
+    public String priceDistribution;
+
+    /** Distribution of bedroom counts 0-6: {@code uniform}, {@code skewed} or colon-separated weights. */
+    @Param({"5:15:30:30:15:4:1"})
+    public String bedroomDistribution;
+
+    /** Seed for the generator, so every fork sees the same catalog. */
+    @Param({"42"})
+    public long seed;
+
+    /** The generated catalog. */
+    public List<Property> catalog;
+
+    /**
+     * Generates the catalog once per trial.
+     * Application logging is limited to warnings so the benchmarks measure the queries rather than the log handlers.
+     */
+    @Setup
+    public void generateCatalog() {
+        APPLICATION_LOGGER.setLevel(Level.WARNING);
+        catalog = PropertyDataset.generate(datasetSize, typeDistribution, priceDistribution, bedroomDistribution,
+                seed);
+    }
+}
@@ -0,0 +1,131 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.ConcurrentPropertyService;
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks mixed read and write traffic on {@link ConcurrentPropertyService} against a baseline that guards a
+ * plain {@link PropertyService} with {@code synchronized}.
+ * Each group runs three reader threads, doing point lookups and narrow price-range queries, next to one writer
+ * thread that keeps replacing listings. JMH reports the throughput of every thread role separately, so the
+ * reader rows show how much the writer slows the readers down in each variant.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Group)
+public class ConcurrentServiceBenchmark {
+
+    private static final BigDecimal MIN_PRICE = new BigDecimal("300000");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("301000");
+
+    private ConcurrentPropertyService concurrentService;
+    private PropertyService synchronizedService;
+    private List<Property> catalog;
+
+    /**
+     * Loads the generated catalog into both variants.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        catalog = catalogState.catalog;
+        concurrentService = new ConcurrentPropertyService(catalog);
+        synchronizedService = new PropertyService(catalog);
+    }
+
+    /**
+     * Per-thread position in the catalog, so threads do not all hit the same listing.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        Property next(List<Property> catalog) {
+            position = position + 7919 < catalog.size() ? position + 7919 : (position + 7919) % catalog.size();
+            return catalog.get(position);
+        }
+    }
+
+    /**
+     * Reads from the left-right service.
+     *
+     * @param cursor the thread's position in the catalog
+     * @return the number of properties found
+     */
+    @Benchmark
+    @Group("leftRight")
+    @GroupThreads(3)
+    public int leftRightRead(Cursor cursor) {
+        Property found = concurrentService.findById(cursor.next(catalog).getId());
+        return concurrentService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE).size() + (found != null ? 1 : 0);
+    }
+
+    /**
+     * Writes to the left-right service.
+     *
+     * @param cursor the thread's position in the catalog
+     * @return the replaced property
+     */
+    @Benchmark
+    @Group("leftRight")
+    @GroupThreads(1)
+    public Property leftRightWrite(Cursor cursor) {
+        return concurrentService.upsertProperty(cursor.next(catalog));
+    }
+
+    /**
+     * Reads from the synchronized baseline.
+     *
+     * @param cursor the thread's position in the catalog
+     * @return the number of properties found
+     */
+    @Benchmark
+    @Group("synchronizedBaseline")
+    @GroupThreads(3)
+    public int synchronizedRead(Cursor cursor) {
+        String id = cursor.next(catalog).getId();
+        synchronized (synchronizedService) {
+            Property found = synchronizedService.findById(id);
+            return synchronizedService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE).size() + (found != null ? 1 : 0);
+        }
+    }
+
+    /**
+     * Writes to the synchronized baseline.
+     *
+     * @param cursor the thread's position in the catalog
+     * @return the replaced property
+     */
+    @Benchmark
+    @Group("synchronizedBaseline")
+    @GroupThreads(1)
+    public Property synchronizedWrite(Cursor cursor) {
+        Property property = cursor.next(catalog);
+        synchronized (synchronizedService) {
+            return synchronizedService.upsertProperty(property);
+        }
+    }
+}
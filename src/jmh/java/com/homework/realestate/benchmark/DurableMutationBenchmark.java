@@ -0,0 +1,104 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Durability;
+import com.homework.realestate.DurablePropertyService;
+import com.homework.realestate.Property;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark for replacing listings in a {@link DurablePropertyService} with each {@link Durability} level.
+ * The gap between {@code WRITE} and {@code SYNC} is the cost of forcing the log on every change; running with
+ * several threads ({@code -t 4}) shows how group commit shares one force between concurrent writers. Checkpoints
+ * taken when the log grows past its limit are part of the measured cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class DurableMutationBenchmark {
+
+    /** Durability level of the service. */
+    @Param({"WRITE", "BATCH", "SYNC"})
+    public Durability durability;
+
+    private DurablePropertyService propertyService;
+    private Path directory;
+    private List<Property> catalog;
+
+    /**
+     * Opens a service in a new directory and loads the generated catalog into it.
+     *
+     * @param catalogState the generated catalog
+     * @throws IOException if the service cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalogState) throws IOException {
+        catalog = catalogState.catalog;
+        directory = Files.createTempDirectory("durable");
+        propertyService = new DurablePropertyService(directory, durability);
+        propertyService.bulkLoad(catalog.stream());
+    }
+
+    /**
+     * Closes the service and deletes its directory.
+     *
+     * @throws IOException if the service cannot be closed or a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        propertyService.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Per-thread position in the catalog, so threads do not all replace the same listing.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        Property next(List<Property> catalog) {
+            position = position + 7919 < catalog.size() ? position + 7919 : (position + 7919) % catalog.size();
+            return catalog.get(position);
+        }
+    }
+
+    /**
+     * Measures replacing one listing, including making the change as durable as the level requires.
+     *
+     * @param cursor the thread's position in the catalog
+     * @return the replaced listing
+     */
+    @Benchmark
+    public Property upsertProperty(Cursor cursor) {
+        return propertyService.upsertProperty(cursor.next(catalog));
+    }
+}
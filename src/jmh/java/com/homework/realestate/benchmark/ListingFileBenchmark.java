@@ -0,0 +1,94 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.BulkLoadReport;
+import com.homework.realestate.ListingFormat;
+import com.homework.realestate.PropertyListings;
+import com.homework.realestate.PropertyQuery;
+import com.homework.realestate.PropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link PropertyListings#load(PropertyService, Path, ListingFormat)} and
+ * {@link PropertyListings#export(PropertyService, PropertyQuery, Path, ListingFormat)} with the generated catalog
+ * in each listing format. Divide the dataset size by the score to get the rate in rows per millisecond.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class ListingFileBenchmark {
+
+    @Param({"CSV", "JSON_LINES"})
+    public ListingFormat format;
+
+    private PropertyService propertyService;
+    private Path listings;
+    private Path exported;
+
+    /**
+     * Writes the generated catalog to a temporary listings file in the benchmarked format.
+     *
+     * @param catalogState the generated catalog
+     * @throws IOException if the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalogState) throws IOException {
+        propertyService = new PropertyService(catalogState.catalog);
+        listings = Files.createTempFile("listings", "." + format.name().toLowerCase());
+        exported = Files.createTempFile("exported", "." + format.name().toLowerCase());
+        PropertyListings.export(propertyService, new PropertyQuery(), listings, format);
+    }
+
+    /**
+     * Deletes the temporary files.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(listings);
+        Files.deleteIfExists(exported);
+    }
+
+    /**
+     * Measures replacing the catalog from the listings file.
+     *
+     * @return the load report
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public BulkLoadReport load() throws IOException {
+        return PropertyListings.load(propertyService, listings, format);
+    }
+
+    /**
+     * Measures writing the whole catalog to a listings file.
+     *
+     * @return the number of properties written
+     * @throws IOException if the file cannot be written
+     */
+    @Benchmark
+    public long export() throws IOException {
+        return PropertyListings.export(propertyService, new PropertyQuery(), exported, format);
+    }
+}
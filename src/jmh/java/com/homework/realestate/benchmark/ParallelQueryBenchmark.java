@@ -0,0 +1,102 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyService;
+import com.homework.realestate.PropertyType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the parallel execution mode of {@link PropertyService}.
+ * The {@code parallelism} parameter is the number of workers in the pool; 0 runs the queries sequentially, so
+ * comparing the rows shows how the queries scale from one to N cores. Work is split regardless of size here
+ * (threshold 0), so use {@code -p datasetSize} to see where the split starts to pay off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class ParallelQueryBenchmark {
+
+    private static final BigDecimal MIN_PRICE = new BigDecimal("200000");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("400000");
+
+    /** Number of pool workers, or 0 for sequential execution. */
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    private PropertyService propertyService;
+    private ForkJoinPool pool;
+
+    /**
+     * Loads the generated catalog and switches on parallel execution with the requested number of workers.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        propertyService = new PropertyService(catalogState.catalog);
+        if (parallelism > 0) {
+            pool = new ForkJoinPool(parallelism);
+            propertyService.enableParallelExecution(pool, 0);
+        }
+    }
+
+    /**
+     * Shuts the pool down.
+     */
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByPriceRange(BigDecimal, BigDecimal)} with a wide price band.
+     *
+     * @return the properties in the price band
+     */
+    @Benchmark
+    public List<Property> getPropertiesByPriceRange() {
+        return propertyService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE);
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByType(PropertyType)}.
+     *
+     * @return the houses in the catalog
+     */
+    @Benchmark
+    public List<Property> getPropertiesByType() {
+        return propertyService.getPropertiesByType(PropertyType.HOUSE);
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByBedrooms(int)}.
+     *
+     * @return the properties with three bedrooms
+     */
+    @Benchmark
+    public List<Property> getPropertiesByBedrooms() {
+        return propertyService.getPropertiesByBedrooms(3);
+    }
+}
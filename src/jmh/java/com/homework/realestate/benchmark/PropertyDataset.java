@@ -0,0 +1,173 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic property catalogs for the benchmarks.
+ * Type, price and bedroom distributions are configurable so that the same benchmark can be run against
+ * uniform data as well as against the skewed data seen in a real catalog. Every property gets a location spread
+ * uniformly over a metropolitan area, drawn from its own random sequence so that the other values of a seed stay
+ * the same.
+ */
+public final class PropertyDataset {
+
+    private static final String[] STREETS = {
+            "Main St", "Oak Ave", "Pine Rd", "Maple Dr", "Cedar Ln", "Elm St", "Park Blvd", "Lake View Rd",
+            "Hillcrest Ave", "River Rd", "Sunset Blvd", "Washington St", "Lincoln Ave", "Church St", "Mill Rd"
+    };
+
+    private static final double MIN_UNIFORM_PRICE = 50_000;
+    private static final double MAX_UNIFORM_PRICE = 2_000_000;
+    private static final double LOG_NORMAL_MEDIAN_PRICE = 350_000;
+    private static final double LOG_NORMAL_SIGMA = 0.6;
+
+    /** Southern edge of the area the locations are spread over, in degrees. */
+    public static final double MIN_LATITUDE = 40.5;
+    /** Northern edge of the area the locations are spread over, in degrees. */
+    public static final double MAX_LATITUDE = 40.9;
+    /** Western edge of the area the locations are spread over, in degrees. */
+    public static final double MIN_LONGITUDE = -74.25;
+    /** Eastern edge of the area the locations are spread over, in degrees. */
+    public static final double MAX_LONGITUDE = -73.7;
+
+    private PropertyDataset() {
+    }
+
+    /**
+     * Generates a list of properties with unique ids.
+     *
+     * @param size the number of properties to generate
+     * @param typeDistribution the type distribution, see {@link #parseWeights(String, int)}
+     * @param priceDistribution the price distribution: {@code uniform} or {@code lognormal}
+     * @param bedroomDistribution the bedroom distribution, see {@link #parseWeights(String, int)}
+     * @param seed the random seed, so that every fork sees the same catalog
+     * @return the generated properties
+     */
+    public static List<Property> generate(int size, String typeDistribution, String priceDistribution,
+                                          String bedroomDistribution, long seed) {
+        return generate(size, "P", typeDistribution, priceDistribution, bedroomDistribution, seed);
+    }
+
+    /**
+     * Generates a list of properties whose ids start with the given prefix.
+     *
+     * @param size the number of properties to generate
+     * @param idPrefix the prefix for the generated ids
+     * @param typeDistribution the type distribution, see {@link #parseWeights(String, int)}
+     * @param priceDistribution the price distribution: {@code uniform} or {@code lognormal}
+     * @param bedroomDistribution the bedroom distribution, see {@link #parseWeights(String, int)}
+     * @param seed the random seed, so that every fork sees the same catalog
+     * @return the generated properties
+     */
+    public static List<Property> generate(int size, String idPrefix, String typeDistribution,
+                                          String priceDistribution, String bedroomDistribution, long seed) {
+        PropertyType[] types = PropertyType.values();
+        double[] typeWeights = cumulative(parseWeights(typeDistribution, types.length));
+        double[] bedroomWeights = cumulative(parseWeights(bedroomDistribution, 7));
+        boolean logNormal = isLogNormal(priceDistribution);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom places = new SplittableRandom(~seed);
+        List<Property> properties = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PropertyType type = types[pick(typeWeights, random.nextDouble())];
+            int bedrooms = pick(bedroomWeights, random.nextDouble());
+            double rawPrice = logNormal
+                    ? LOG_NORMAL_MEDIAN_PRICE * Math.exp(LOG_NORMAL_SIGMA * gaussian(random))
+                    : MIN_UNIFORM_PRICE + random.nextDouble() * (MAX_UNIFORM_PRICE - MIN_UNIFORM_PRICE);
+            BigDecimal price = BigDecimal.valueOf(Math.round(rawPrice / 100.0) * 100L);
+            double area = 350 + bedrooms * 400 + random.nextInt(600);
+            int bathrooms = 1 + random.nextInt(Math.max(1, bedrooms));
+            String address = (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)];
+            double latitude = MIN_LATITUDE + places.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+            double longitude = MIN_LONGITUDE + places.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+            properties.add(new Property(idPrefix + i, address, type, price, area, bedrooms, bathrooms,
+                    random.nextInt(10) < 7, latitude, longitude));
+        }
+        return properties;
+    }
+
+    /**
+     * Parses a discrete distribution. Accepts {@code uniform}, {@code skewed} (a long-tailed distribution where
+     * the first bucket is the most common) or an explicit list of colon-separated weights such as
+     * {@code 50:30:15:5}. Missing trailing weights are treated as zero.
+     *
+     * @param distribution the distribution description
+     * @param buckets the number of buckets
+     * @return the weights for each bucket
+     * @throws IllegalArgumentException if the description cannot be parsed
+     */
+    static double[] parseWeights(String distribution, int buckets) {
+        double[] weights = new double[buckets];
+        String normalized = distribution.trim().toLowerCase(Locale.ROOT);
+        if ("uniform".equals(normalized)) {
+            Arrays.fill(weights, 1.0);
+        } else if ("skewed".equals(normalized)) {
+            for (int i = 0; i < buckets; i++) {
+                weights[i] = 1.0 / ((i + 1) * (i + 1));
+            }
+        } else {
+            String[] parts = normalized.split(":");
+            if (parts.length > buckets) {
+                throw new IllegalArgumentException("Distribution '" + distribution + "' has more than "
+                        + buckets + " weights");
+            }
+            for (int i = 0; i < parts.length; i++) {
+                weights[i] = Double.parseDouble(parts[i]);
+            }
+        }
+        return weights;
+    }
+
+    private static boolean isLogNormal(String priceDistribution) {
+        String normalized = priceDistribution.trim().toLowerCase(Locale.ROOT);
+        if ("lognormal".equals(normalized)) {
+            return true;
+        }
+        if ("uniform".equals(normalized)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unknown price distribution: " + priceDistribution);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Distribution weights must add up to a positive number");
+        }
+        double[] cumulative = new double[weights.length];
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            cumulative[i] = running / total;
+        }
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulative, double value) {
+        for (int i = 0; i < cumulative.length - 1; i++) {
+            if (value < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian on Java 11
+        double u1 = 1.0 - random.nextDouble();
+        double u2 = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+    }
+}
@@ -0,0 +1,302 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.PriceStatistics;
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyCursor;
+import com.homework.realestate.PropertyQuery;
+import com.homework.realestate.PropertyRecord;
+import com.homework.realestate.PropertyMetric;
+import com.homework.realestate.PropertyService;
+import com.homework.realestate.PropertyType;
+import com.homework.realestate.PropertyVisitor;
+import com.homework.realestate.ValueDistribution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the read-only queries of {@link PropertyService}.
+ * Every benchmark reports both throughput and average time; run with {@code -prof gc} (the default of the
+ * benchmark profile) to get the allocation rate as well.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class PropertyServiceBenchmark {
+
+    private static final BigDecimal MIN_PRICE = new BigDecimal("300000");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("325000");
+    private static final PropertyQuery AVAILABLE_HOUSES = new PropertyQuery().type(PropertyType.HOUSE).availableOnly();
+
+    private PropertyService propertyService;
+    private List<Property> catalog;
+    private int cursor;
+
+    /**
+     * Loads the generated catalog into a new property service.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        catalog = catalogState.catalog;
+        propertyService = new PropertyService(catalog);
+    }
+
+    /**
+     * Measures {@link PropertyService#getAvailableProperties()}.
+     *
+     * @return the available properties
+     */
+    @Benchmark
+    public List<Property> getAvailableProperties() {
+        return propertyService.getAvailableProperties();
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByType(PropertyType)}.
+     *
+     * @return the houses in the catalog
+     */
+    @Benchmark
+    public List<Property> getPropertiesByType() {
+        return propertyService.getPropertiesByType(PropertyType.HOUSE);
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByPriceRange(BigDecimal, BigDecimal)} with a narrow price band.
+     *
+     * @return the properties in the price band
+     */
+    @Benchmark
+    public List<Property> getPropertiesByPriceRange() {
+        return propertyService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE);
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByBedrooms(int)}.
+     *
+     * @return the properties with three bedrooms
+     */
+    @Benchmark
+    public List<Property> getPropertiesByBedrooms() {
+        return propertyService.getPropertiesByBedrooms(3);
+    }
+
+    /**
+     * Measures {@link PropertyService#findProperties(PropertyQuery)} fetching the first page of 20 available
+     * three-bedroom houses in a price band.
+     *
+     * @return the first page of matches
+     */
+    @Benchmark
+    public List<Property> findPropertiesPage() {
+        return propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .price(MIN_PRICE, MAX_PRICE).bedrooms(3).availableOnly().limit(20));
+    }
+
+    /**
+     * Measures {@link PropertyService#getPropertiesByAddress(String)} for a house number and street, which
+     * intersects the posting lists of the three words.
+     *
+     * @return the properties at that address
+     */
+    @Benchmark
+    public List<Property> getPropertiesByAddress() {
+        return propertyService.getPropertiesByAddress("1234 Oak Ave");
+    }
+
+    /**
+     * Measures {@link PropertyService#findProperties(PropertyQuery)} completing a partly typed street name to the
+     * first 10 available houses, as an autocomplete box would.
+     *
+     * @return the first page of matches
+     */
+    @Benchmark
+    public List<Property> findPropertiesByAddressPage() {
+        return propertyService.findProperties(new PropertyQuery().address("lake vi").type(PropertyType.HOUSE)
+                .availableOnly().limit(10));
+    }
+
+    /**
+     * Measures {@link PropertyService#forEachProperty(PropertyQuery, PropertyVisitor)} summing the prices of all
+     * available properties without building any objects.
+     *
+     * @return the sum of the prices in cents
+     */
+    @Benchmark
+    public long forEachAvailablePrice() {
+        long[] sum = new long[1];
+        propertyService.forEachProperty(new PropertyQuery().availableOnly(), property -> {
+            sum[0] += property.getPriceInCents();
+            return true;
+        });
+        return sum[0];
+    }
+
+    /**
+     * Measures {@link PropertyService#openCursor(PropertyQuery)} summing the prices of all available properties
+     * through the cursor's reusable view, to compare with {@link #forEachAvailablePrice()}.
+     *
+     * @return the sum of the prices in cents
+     */
+    @Benchmark
+    public long cursorAvailablePrice() {
+        long sum = 0;
+        PropertyCursor cursor = propertyService.openCursor(new PropertyQuery().availableOnly());
+        while (cursor.next()) {
+            sum += cursor.current().getPriceInCents();
+        }
+        return sum;
+    }
+
+    /**
+     * Measures {@link PropertyService#findProperties(PropertyQuery)} returning every house in a price band, the
+     * baseline for {@link #findRecordsInPriceBand()}.
+     *
+     * @return the matching properties
+     */
+    @Benchmark
+    public List<Property> findPropertiesInPriceBand() {
+        return propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .price(MIN_PRICE, MAX_PRICE));
+    }
+
+    /**
+     * Measures {@link PropertyService#findRecords(PropertyQuery)} returning every house in a price band as
+     * immutable records, which keep the price in cents instead of building a {@link BigDecimal}.
+     *
+     * @return the matching records
+     */
+    @Benchmark
+    public List<PropertyRecord> findRecordsInPriceBand() {
+        return propertyService.findRecords(new PropertyQuery().type(PropertyType.HOUSE)
+                .price(MIN_PRICE, MAX_PRICE));
+    }
+
+    /**
+     * Measures {@link PropertyService#streamProperties(PropertyQuery)} stopping at the first house with five
+     * bedrooms or more, which only builds the properties it inspects.
+     *
+     * @return the first such house
+     */
+    @Benchmark
+    public Property streamFirstLargeHouse() {
+        return propertyService.streamProperties(new PropertyQuery().type(PropertyType.HOUSE))
+                .filter(property -> property.getBedrooms() >= 5)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Measures {@link PropertyService#getAveragePrice()}.
+     *
+     * @return the average price
+     */
+    @Benchmark
+    public BigDecimal getAveragePrice() {
+        return propertyService.getAveragePrice();
+    }
+
+    /**
+     * Measures {@link PropertyService#getPriceStatistics(PropertyType)}.
+     *
+     * @return the price statistics of all houses
+     */
+    @Benchmark
+    public PriceStatistics getPriceStatistics() {
+        return propertyService.getPriceStatistics(PropertyType.HOUSE);
+    }
+
+    /**
+     * Measures the median and 90th percentile price of houses from
+     * {@link PropertyService#getDistribution(PropertyMetric, PropertyType)}.
+     *
+     * @return the sum of both estimates
+     */
+    @Benchmark
+    public double getPricePercentiles() {
+        ValueDistribution distribution = propertyService.getDistribution(PropertyMetric.PRICE, PropertyType.HOUSE);
+        return distribution.getMedian() + distribution.getQuantile(0.9);
+    }
+
+    /**
+     * Measures {@link PropertyService#findTopProperties(PropertyQuery, PropertyMetric, int)} for the ten most
+     * expensive available houses, which walks the price index down from the top.
+     *
+     * @return the ten most expensive available houses
+     */
+    @Benchmark
+    public List<Property> findTopPricedHouses() {
+        return propertyService.findTopProperties(AVAILABLE_HOUSES, PropertyMetric.PRICE, 10);
+    }
+
+    /**
+     * Measures {@link PropertyService#findBottomProperties(PropertyQuery, PropertyMetric, int)} for the twenty
+     * available houses with the lowest price per area, which scans the candidates into a bounded heap.
+     *
+     * @return the twenty cheapest available houses per unit of area
+     */
+    @Benchmark
+    public List<Property> findCheapestHousesPerArea() {
+        return propertyService.findBottomProperties(AVAILABLE_HOUSES, PropertyMetric.PRICE_PER_AREA, 20);
+    }
+
+    /**
+     * Measures {@link PropertyService#findMostExpensiveProperty()}.
+     *
+     * @return the most expensive property
+     */
+    @Benchmark
+    public Property findMostExpensiveProperty() {
+        return propertyService.findMostExpensiveProperty();
+    }
+
+    /**
+     * Measures {@link PropertyService#findById(String)}, cycling through the catalog.
+     *
+     * @return the property found
+     */
+    @Benchmark
+    public Property findById() {
+        cursor = cursor + 1 < catalog.size() ? cursor + 1 : 0;
+        return propertyService.findById(catalog.get(cursor).getId());
+    }
+
+    /**
+     * Measures {@link PropertyService#upsertProperty(Property)} replacing a listing with itself, which goes
+     * through the full remove and re-index path without changing the catalog.
+     *
+     * @return the replaced property
+     */
+    @Benchmark
+    public Property upsertProperty() {
+        cursor = cursor + 1 < catalog.size() ? cursor + 1 : 0;
+        return propertyService.upsertProperty(catalog.get(cursor));
+    }
+
+    /**
+     * Measures {@link PropertyService#countPropertiesByType(PropertyType)}.
+     *
+     * @return the number of condos
+     */
+    @Benchmark
+    public long countPropertiesByType() {
+        return propertyService.countPropertiesByType(PropertyType.CONDO);
+    }
+}
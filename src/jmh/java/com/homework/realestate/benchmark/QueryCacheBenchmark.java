@@ -0,0 +1,79 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyQuery;
+import com.homework.realestate.PropertyService;
+import com.homework.realestate.PropertyType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for repetitive search traffic with and without the query cache of {@link PropertyService}.
+ * Each call runs the next of a fixed set of type, price-band and bedroom combinations, so with the cache enabled
+ * every call after the first round is a hit. {@code cacheBytes=0} runs without the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class QueryCacheBenchmark {
+
+    private static final int BANDS = 8;
+    private static final BigDecimal BAND_WIDTH = new BigDecimal("10000");
+    private static final BigDecimal LOWEST_PRICE = new BigDecimal("250000");
+
+    /** Size limit of the query cache in bytes, or 0 to run without the cache. */
+    @Param({"0", "67108864"})
+    public long cacheBytes;
+
+    private PropertyService propertyService;
+    private PropertyQuery[] queries;
+    private int next;
+
+    /**
+     * Loads the generated catalog and prepares the repeated queries.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        propertyService = new PropertyService(catalogState.catalog);
+        if (cacheBytes > 0) {
+            propertyService.enableQueryCache(cacheBytes);
+        }
+        PropertyType[] types = PropertyType.values();
+        queries = new PropertyQuery[types.length * BANDS];
+        for (int i = 0; i < queries.length; i++) {
+            BigDecimal minPrice = LOWEST_PRICE.add(BAND_WIDTH.multiply(BigDecimal.valueOf(i % BANDS)));
+            queries[i] = new PropertyQuery().type(types[i / BANDS]).price(minPrice, minPrice.add(BAND_WIDTH))
+                    .bedrooms(2 + i % 3);
+        }
+    }
+
+    /**
+     * Measures one query of the repeated set.
+     *
+     * @return the matching properties
+     */
+    @Benchmark
+    public List<Property> findRepeatedProperties() {
+        next = next + 1 < queries.length ? next + 1 : 0;
+        return propertyService.findProperties(queries[next]);
+    }
+}
@@ -0,0 +1,162 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.PriceStatistics;
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyMetric;
+import com.homework.realestate.PropertyQuery;
+import com.homework.realestate.PropertyService;
+import com.homework.realestate.PropertyType;
+import com.homework.realestate.ShardPartitioning;
+import com.homework.realestate.ShardedPropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the scatter-gather queries of {@link ShardedPropertyService} against the same queries on a single
+ * {@link PropertyService}. The {@code partitioning} parameter picks the shards: {@code type} and {@code priceBands}
+ * let the type and price queries skip shards, while {@code idHash4} and {@code idHash8} spread the catalog evenly
+ * and scatter every query to all shards. The {@code single} benchmarks ignore the parameter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class ShardedServiceBenchmark {
+
+    private static final BigDecimal MIN_PRICE = new BigDecimal("300000");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("400000");
+    private static final int K = 10;
+
+    /** Partitioning of the sharded service. */
+    @Param({"type", "priceBands", "idHash4", "idHash8"})
+    public String partitioning;
+
+    private PropertyService singleService;
+    private ShardedPropertyService shardedService;
+
+    /**
+     * Loads the generated catalog into a single service and into a sharded one.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        singleService = new PropertyService(catalogState.catalog);
+        shardedService = new ShardedPropertyService(partitioningOf(partitioning));
+        shardedService.addAll(catalogState.catalog);
+    }
+
+    /**
+     * Measures a price range query on the single service.
+     *
+     * @return the properties in the price band
+     */
+    @Benchmark
+    public List<Property> singlePriceRange() {
+        return singleService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE);
+    }
+
+    /**
+     * Measures the same price range query as {@link #singlePriceRange()} on the sharded service.
+     *
+     * @return the properties in the price band
+     */
+    @Benchmark
+    public List<Property> shardedPriceRange() {
+        return shardedService.getPropertiesByPriceRange(MIN_PRICE, MAX_PRICE);
+    }
+
+    /**
+     * Measures a count of available houses on the single service.
+     *
+     * @return the number of available houses
+     */
+    @Benchmark
+    public long singleCountAvailableHouses() {
+        return singleService.countProperties(new PropertyQuery().type(PropertyType.HOUSE).availableOnly());
+    }
+
+    /**
+     * Measures the same count as {@link #singleCountAvailableHouses()} on the sharded service.
+     *
+     * @return the number of available houses
+     */
+    @Benchmark
+    public long shardedCountAvailableHouses() {
+        return shardedService.countProperties(new PropertyQuery().type(PropertyType.HOUSE).availableOnly());
+    }
+
+    /**
+     * Measures a top-K query by price on the single service.
+     *
+     * @return the most expensive available properties
+     */
+    @Benchmark
+    public List<Property> singleTopByPrice() {
+        return singleService.findTopProperties(new PropertyQuery().availableOnly(), PropertyMetric.PRICE, K);
+    }
+
+    /**
+     * Measures the same top-K query as {@link #singleTopByPrice()} on the sharded service, merging the top K of
+     * every shard.
+     *
+     * @return the most expensive available properties
+     */
+    @Benchmark
+    public List<Property> shardedTopByPrice() {
+        return shardedService.findTopProperties(new PropertyQuery().availableOnly(), PropertyMetric.PRICE, K);
+    }
+
+    /**
+     * Measures the price statistics of the whole catalog on the single service.
+     *
+     * @return the price statistics
+     */
+    @Benchmark
+    public PriceStatistics singlePriceStatistics() {
+        return singleService.getPriceStatistics();
+    }
+
+    /**
+     * Measures the same statistics as {@link #singlePriceStatistics()} on the sharded service, combining the
+     * statistics of every shard.
+     *
+     * @return the price statistics
+     */
+    @Benchmark
+    public PriceStatistics shardedPriceStatistics() {
+        return shardedService.getPriceStatistics();
+    }
+
+    private static ShardPartitioning partitioningOf(String name) {
+        switch (name) {
+            case "type":
+                return ShardPartitioning.byType();
+            case "priceBands":
+                return ShardPartitioning.byPriceBands(new BigDecimal("150000"), new BigDecimal("250000"),
+                        new BigDecimal("400000"), new BigDecimal("700000"));
+            case "idHash4":
+                return ShardPartitioning.byIdHash(4);
+            case "idHash8":
+                return ShardPartitioning.byIdHash(8);
+            default:
+                throw new IllegalArgumentException("Unknown partitioning: " + name);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.BulkLoadReport;
+import com.homework.realestate.PropertyService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link PropertyService#saveSnapshot(Path)} and {@link PropertyService#loadSnapshot(Path)} with
+ * the generated catalog, to compare a warm restart from a snapshot with rebuilding the catalog through
+ * {@link BulkLoadBenchmark}. The snapshot file stays in the page cache between iterations, so the load score is
+ * that of a restart on a machine that has read the file recently.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    private PropertyService propertyService;
+    private Path snapshot;
+    private Path saved;
+
+    /**
+     * Builds the catalog and writes the snapshot that is loaded by every measured load.
+     *
+     * @param catalogState the generated catalog
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalogState) throws IOException {
+        propertyService = new PropertyService(catalogState.catalog);
+        snapshot = Files.createTempFile("catalog", ".snapshot");
+        saved = Files.createTempFile("saved", ".snapshot");
+        propertyService.saveSnapshot(snapshot);
+    }
+
+    /**
+     * Deletes the snapshot files.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(saved);
+    }
+
+    /**
+     * Measures replacing the catalog from the snapshot.
+     *
+     * @return the load report
+     * @throws IOException if the snapshot cannot be read
+     */
+    @Benchmark
+    public BulkLoadReport loadSnapshot() throws IOException {
+        return propertyService.loadSnapshot(snapshot);
+    }
+
+    /**
+     * Measures writing a snapshot of the catalog, including forcing it to disk.
+     *
+     * @return the size of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Benchmark
+    public long saveSnapshot() throws IOException {
+        return propertyService.saveSnapshot(saved);
+    }
+}
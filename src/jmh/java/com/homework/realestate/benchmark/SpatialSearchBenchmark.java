@@ -0,0 +1,186 @@
+package com.homework.realestate.benchmark;
+
+import com.homework.realestate.Property;
+import com.homework.realestate.PropertyQuery;
+import com.homework.realestate.PropertyService;
+import com.homework.realestate.PropertyType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the location queries of {@link PropertyService} against a brute-force scan of the catalog.
+ * The generated locations are spread uniformly over the area described in {@link PropertyDataset}; the queries
+ * look around its centre, where a radius of {@value #RADIUS_KM} km holds about 0.8% of the catalog. The
+ * {@code bruteForce} benchmarks compute the distance of every property, as a caller without the spatial index
+ * would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+@State(Scope.Benchmark)
+public class SpatialSearchBenchmark {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double CENTER_LATITUDE = (PropertyDataset.MIN_LATITUDE + PropertyDataset.MAX_LATITUDE) / 2;
+    private static final double CENTER_LONGITUDE =
+            (PropertyDataset.MIN_LONGITUDE + PropertyDataset.MAX_LONGITUDE) / 2;
+    private static final double RADIUS_KM = 2;
+    private static final double BOX_HALF_HEIGHT = 0.01;
+    private static final double BOX_HALF_WIDTH = 0.015;
+    private static final int K = 10;
+
+    private PropertyService propertyService;
+    private List<Property> catalog;
+
+    /**
+     * Loads the generated catalog into a new property service.
+     *
+     * @param catalogState the generated catalog
+     */
+    @Setup
+    public void setUp(CatalogState catalogState) {
+        catalog = catalogState.catalog;
+        propertyService = new PropertyService(catalog);
+    }
+
+    /**
+     * Measures a radius query driven by the spatial index.
+     *
+     * @return the properties within the radius
+     */
+    @Benchmark
+    public List<Property> findWithinRadius() {
+        return propertyService.findProperties(new PropertyQuery().within(CENTER_LATITUDE, CENTER_LONGITUDE,
+                RADIUS_KM));
+    }
+
+    /**
+     * Measures the same radius query as {@link #findWithinRadius()} as a scan of every property.
+     *
+     * @return the properties within the radius
+     */
+    @Benchmark
+    public List<Property> findWithinRadiusBruteForce() {
+        List<Property> found = new ArrayList<>();
+        for (Property property : catalog) {
+            if (distanceKm(property) <= RADIUS_KM) {
+                found.add(property);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Measures a radius query combined with type and availability filters.
+     *
+     * @return the available houses within the radius
+     */
+    @Benchmark
+    public List<Property> findAvailableHousesWithinRadius() {
+        return propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE).availableOnly()
+                .within(CENTER_LATITUDE, CENTER_LONGITUDE, RADIUS_KM));
+    }
+
+    /**
+     * Measures a bounding box query driven by the spatial index.
+     *
+     * @return the properties in the box
+     */
+    @Benchmark
+    public List<Property> findInBox() {
+        return propertyService.findProperties(new PropertyQuery().inBox(CENTER_LATITUDE - BOX_HALF_HEIGHT,
+                CENTER_LONGITUDE - BOX_HALF_WIDTH, CENTER_LATITUDE + BOX_HALF_HEIGHT,
+                CENTER_LONGITUDE + BOX_HALF_WIDTH));
+    }
+
+    /**
+     * Measures the same bounding box query as {@link #findInBox()} as a scan of every property.
+     *
+     * @return the properties in the box
+     */
+    @Benchmark
+    public List<Property> findInBoxBruteForce() {
+        List<Property> found = new ArrayList<>();
+        for (Property property : catalog) {
+            if (Math.abs(property.getLatitude() - CENTER_LATITUDE) <= BOX_HALF_HEIGHT
+                    && Math.abs(property.getLongitude() - CENTER_LONGITUDE) <= BOX_HALF_WIDTH) {
+                found.add(property);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Measures {@link PropertyService#findNearest(PropertyQuery, double, double, int)}.
+     *
+     * @return the nearest properties
+     */
+    @Benchmark
+    public List<Property> findNearest() {
+        return propertyService.findNearest(new PropertyQuery(), CENTER_LATITUDE, CENTER_LONGITUDE, K);
+    }
+
+    /**
+     * Measures {@link PropertyService#findNearest(PropertyQuery, double, double, int)} restricted to available
+     * houses.
+     *
+     * @return the nearest available houses
+     */
+    @Benchmark
+    public List<Property> findNearestAvailableHouses() {
+        return propertyService.findNearest(new PropertyQuery().type(PropertyType.HOUSE).availableOnly(),
+                CENTER_LATITUDE, CENTER_LONGITUDE, K);
+    }
+
+    /**
+     * Measures the same nearest neighbour query as {@link #findNearest()} as a scan of every property, keeping the
+     * closest ones in a sorted array so that each distance is computed once.
+     *
+     * @return the nearest properties, closest first
+     */
+    @Benchmark
+    public List<Property> findNearestBruteForce() {
+        double[] distances = new double[K];
+        Property[] nearest = new Property[K];
+        int count = 0;
+        for (Property property : catalog) {
+            double distance = distanceKm(property);
+            if (count == K && distance >= distances[K - 1]) {
+                continue;
+            }
+            int position = count < K ? count++ : K - 1;
+            while (position > 0 && distances[position - 1] > distance) {
+                distances[position] = distances[position - 1];
+                nearest[position] = nearest[position - 1];
+                position--;
+            }
+            distances[position] = distance;
+            nearest[position] = property;
+        }
+        return Arrays.asList(nearest).subList(0, count);
+    }
+
+    private static double distanceKm(Property property) {
+        double sinLatitude = Math.sin(Math.toRadians(property.getLatitude() - CENTER_LATITUDE) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(property.getLongitude() - CENTER_LONGITUDE) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(CENTER_LATITUDE))
+                * Math.cos(Math.toRadians(property.getLatitude())) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -1,10 +1,15 @@
 package com.homework;
 
+import com.homework.realestate.BulkLoadReport;
+import com.homework.realestate.ListingFormat;
 import com.homework.realestate.Property;
+import com.homework.realestate.PropertyListings;
 import com.homework.realestate.PropertyService;
 import com.homework.realestate.PropertyType;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -23,7 +28,8 @@ public class App {
      * Main method that starts the Real Estate Management System.
      * Initializes the logging system and demonstrates basic functionality.
      *
-     * @param args command line arguments (not used)
+     * @param args command line arguments: optionally the path of a listings file to load instead of the sample
+     *             properties, in CSV or, with a {@code .jsonl} extension, JSON Lines format
      */
     public static void main(String[] args) {
         try {
@@ -35,8 +41,12 @@ public class App {
             // Create property service
             PropertyService propertyService = new PropertyService();
             
-            // Add some sample properties
-            addSampleProperties(propertyService);
+            // Load the given listings file, or add some sample properties
+            if (args.length > 0) {
+                loadListings(propertyService, Paths.get(args[0]));
+            } else {
+                addSampleProperties(propertyService);
+            }
             
             // Demonstrate functionality
             demonstrateFunctionality(propertyService);
@@ -87,6 +97,21 @@ public class App {
         logger.info("Sample properties added successfully");
     }
     
+    /**
+     * Loads a listings file into the property service, choosing the format from the file extension.
+     *
+     * @param propertyService the property service to load
+     * @param file the listings file
+     * @throws IOException if the file cannot be read
+     */
+    private static void loadListings(PropertyService propertyService, Path file) throws IOException {
+        ListingFormat format = file.getFileName().toString().endsWith(".jsonl")
+                ? ListingFormat.JSON_LINES : ListingFormat.CSV;
+        logger.info("Loading " + format + " listings from " + file);
+        BulkLoadReport report = PropertyListings.load(propertyService, file, format);
+        logger.info("Listings loaded: " + report);
+    }
+    
     /**
      * Demonstrates the functionality of the property service.
      *
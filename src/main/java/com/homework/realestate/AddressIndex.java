@@ -0,0 +1,488 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Inverted token index over the addresses of a property table.
+ * Addresses are split into lower-case tokens of letters and digits, see {@link #tokenize(String)}. Each distinct
+ * token is kept once in a {@link StringDictionary} and owns a posting list: the rows whose address contains the
+ * token, in ascending order. The token codes are also kept sorted by token, so the tokens starting with a given
+ * prefix form one range that is found by binary search. A search text matches an address when every token of the
+ * text is a prefix of some token of the address, which serves both whole-word search and type-ahead
+ * autocompletion: {@code "oak av"} matches {@code "456 Oak Ave"}.
+ *
+ * <p>Appended rows go to the end of their posting lists. Removed rows are left in the lists and skipped through
+ * the live rows of the table until a compaction renumbers the rows, see {@link #renumber(int[])}; only a
+ * row whose address is replaced is taken out of its old lists straight away. Tokens left without rows are
+ * dropped during the compaction, so the dictionary only holds tokens of addresses in use.
+ */
+final class AddressIndex {
+
+    /** Number of posting lists of one search token up to which membership is tested by binary search. */
+    private static final int MAX_SEARCHED_LISTS = 8;
+
+    private static final int[] NO_CODES = new int[0];
+    private static final String[] NO_TOKENS = new String[0];
+
+    private StringDictionary tokens;
+    private int[] sortedCodes;
+    private int[][] postings;
+    private int[] postingSizes;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param expectedTokens the number of distinct tokens expected
+     */
+    AddressIndex(int expectedTokens) {
+        int capacity = Math.max(16, expectedTokens);
+        tokens = new StringDictionary(capacity);
+        sortedCodes = new int[capacity];
+        postings = new int[capacity][];
+        postingSizes = new int[capacity];
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     * @throws IllegalArgumentException if the snapshot is inconsistent
+     */
+    AddressIndex(SnapshotInput input) throws IOException {
+        tokens = new StringDictionary(input);
+        int size = tokens.size();
+        int capacity = Math.max(16, size);
+        sortedCodes = Arrays.copyOf(input.readInts(size, "sorted tokens"), capacity);
+        postingSizes = Arrays.copyOf(input.readInts(size, "posting list sizes"), capacity);
+        int[] rows = input.readInts();
+        postings = new int[capacity][];
+        int from = 0;
+        for (int code = 0; code < size; code++) {
+            input.expect(postingSizes[code] >= 0 && from + postingSizes[code] <= rows.length,
+                    "posting lists do not match their sizes");
+            postings[code] = Arrays.copyOfRange(rows, from, from + postingSizes[code]);
+            from += postingSizes[code];
+        }
+        input.expect(from == rows.length, "posting lists do not match their sizes");
+    }
+
+    /**
+     * Splits a text into search tokens: maximal runs of letters and digits, in lower case.
+     *
+     * @param text the text
+     * @return the distinct tokens in order of first appearance, empty if the text holds no letter or digit
+     */
+    static String[] tokenize(String text) {
+        List<String> found = new ArrayList<>();
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean inToken = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!found.contains(token)) {
+                    found.add(token);
+                }
+                start = -1;
+            }
+        }
+        return found.isEmpty() ? NO_TOKENS : found.toArray(NO_TOKENS);
+    }
+
+    /**
+     * Checks an address against search tokens without the index, for rows that reach a query through another
+     * index.
+     *
+     * @param address the address, or null
+     * @param searchTokens the tokens of the search text
+     * @return true if every search token is a prefix of a token of the address
+     */
+    static boolean matches(String address, String[] searchTokens) {
+        if (address == null) {
+            return false;
+        }
+        String[] addressTokens = tokenize(address);
+        for (String searchToken : searchTokens) {
+            boolean found = false;
+            for (String addressToken : addressTokens) {
+                if (addressToken.startsWith(searchToken)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a row under every token of its address. Rows must be added in ascending order unless they were
+     * removed from the index with {@link #remove(int, String)} before.
+     *
+     * @param row the row
+     * @param address the address stored in the row, or null
+     */
+    void add(int row, String address) {
+        if (address == null) {
+            return;
+        }
+        for (String token : tokenize(address)) {
+            int code = tokens.find(token);
+            if (code < 0) {
+                code = tokens.intern(token);
+                insertSorted(code, token.getBytes(StandardCharsets.UTF_8));
+            }
+            insertRow(code, row);
+        }
+    }
+
+    /**
+     * Takes a row out of the posting lists of the tokens of its address.
+     *
+     * @param row the row
+     * @param address the address the row was added with, or null
+     */
+    void remove(int row, String address) {
+        if (address == null) {
+            return;
+        }
+        for (String token : tokenize(address)) {
+            int code = tokens.find(token);
+            int position = Arrays.binarySearch(postings[code], 0, postingSizes[code], row);
+            if (position >= 0) {
+                System.arraycopy(postings[code], position + 1, postings[code], position,
+                        postingSizes[code] - position - 1);
+                postingSizes[code]--;
+            }
+        }
+    }
+
+    /**
+     * Rewrites every posting list after a compaction, dropping removed rows, and then drops the tokens left
+     * without rows, see {@link #dropEmptyTokens()}. Compaction keeps the order of the rows, so the lists stay
+     * sorted.
+     *
+     * @param newRows the new number of every old row, or -1 for removed rows
+     */
+    void renumber(int[] newRows) {
+        for (int code = 0; code < tokens.size(); code++) {
+            int[] rows = postings[code];
+            int size = 0;
+            for (int i = 0; i < postingSizes[code]; i++) {
+                int row = newRows[rows[i]];
+                if (row >= 0) {
+                    rows[size++] = row;
+                }
+            }
+            postingSizes[code] = size;
+        }
+        dropEmptyTokens();
+    }
+
+    /**
+     * Drops the tokens whose posting lists are empty, because every row holding them was removed or got a new
+     * address. The remaining tokens are copied to a new dictionary in sorted order, so their new codes are
+     * already sorted and no token is compared again.
+     */
+    void dropEmptyTokens() {
+        int size = tokens.size();
+        int kept = 0;
+        for (int code = 0; code < size; code++) {
+            if (postingSizes[code] > 0) {
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return;
+        }
+        int capacity = Math.max(16, kept);
+        StringDictionary keptTokens = new StringDictionary(capacity);
+        int[] keptSortedCodes = new int[capacity];
+        int[][] keptPostings = new int[capacity][];
+        int[] keptSizes = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            int code = sortedCodes[i];
+            if (postingSizes[code] > 0) {
+                int newCode = keptTokens.intern(tokens, code);
+                keptSortedCodes[newCode] = newCode;
+                keptPostings[newCode] = postings[code];
+                keptSizes[newCode] = postingSizes[code];
+            }
+        }
+        tokens = keptTokens;
+        sortedCodes = keptSortedCodes;
+        postings = keptPostings;
+        postingSizes = keptSizes;
+    }
+
+    /**
+     * Estimates the number of rows matching a search text, from the sizes of the posting lists alone.
+     *
+     * @param searchTokens the tokens of the search text
+     * @return an upper bound of the number of matching rows, including removed rows not yet compacted away
+     */
+    int estimate(String[] searchTokens) {
+        long estimate = Integer.MAX_VALUE;
+        for (String searchToken : searchTokens) {
+            estimate = Math.min(estimate, rowsWithPrefix(prefixRange(searchToken)));
+        }
+        return (int) estimate;
+    }
+
+    /**
+     * Starts a lazy search for the live rows whose address matches a search text. The token with the fewest
+     * rows drives the search and the other tokens are tested on its rows, by binary search in their posting lists
+     * or, for prefixes shared by many tokens, in a bitmap built from the lists.
+     *
+     * @param searchTokens the tokens of the search text, at least one
+     * @param liveRows the live rows of the table
+     * @return the matching rows in ascending order
+     */
+    Matches search(String[] searchTokens, BitSet liveRows) {
+        int[][] ranges = new int[searchTokens.length][];
+        int driver = 0;
+        long fewestRows = Long.MAX_VALUE;
+        for (int i = 0; i < searchTokens.length; i++) {
+            ranges[i] = prefixRange(searchTokens[i]);
+            long rows = rowsWithPrefix(ranges[i]);
+            if (rows < fewestRows) {
+                fewestRows = rows;
+                driver = i;
+            }
+        }
+        TokenRows[] filters = new TokenRows[searchTokens.length - 1];
+        int count = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            if (i != driver) {
+                filters[count++] = new TokenRows(ranges[i]);
+            }
+        }
+        return new Matches(new TokenRows(ranges[driver]), filters, liveRows);
+    }
+
+    /**
+     * Writes the token dictionary, the sorted token order and the posting lists to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        int size = tokens.size();
+        tokens.writeTo(output);
+        output.writeInts(sortedCodes, size);
+        output.writeInts(postingSizes, size);
+        int total = 0;
+        for (int code = 0; code < size; code++) {
+            total += postingSizes[code];
+        }
+        int[] rows = new int[total];
+        int from = 0;
+        for (int code = 0; code < size; code++) {
+            System.arraycopy(postings[code], 0, rows, from, postingSizes[code]);
+            from += postingSizes[code];
+        }
+        output.writeInts(rows, total);
+    }
+
+    /**
+     * Finds the positions in the sorted token order of the tokens starting with a prefix.
+     *
+     * @return the codes of those tokens
+     */
+    private int[] prefixRange(String prefix) {
+        byte[] encoded = prefix.getBytes(StandardCharsets.UTF_8);
+        int size = tokens.size();
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.comparePrefix(sortedCodes[middle], encoded) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int from = low;
+        high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.comparePrefix(sortedCodes[middle], encoded) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return from == low ? NO_CODES : Arrays.copyOfRange(sortedCodes, from, low);
+    }
+
+    private long rowsWithPrefix(int[] codes) {
+        long rows = 0;
+        for (int code : codes) {
+            rows += postingSizes[code];
+        }
+        return rows;
+    }
+
+    private void insertSorted(int code, byte[] encoded) {
+        if (code >= postings.length) {
+            int capacity = postings.length + (postings.length >> 1);
+            sortedCodes = Arrays.copyOf(sortedCodes, capacity);
+            postings = Arrays.copyOf(postings, capacity);
+            postingSizes = Arrays.copyOf(postingSizes, capacity);
+        }
+        int low = 0;
+        int high = code;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.compare(sortedCodes[middle], encoded) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        System.arraycopy(sortedCodes, low, sortedCodes, low + 1, code - low);
+        sortedCodes[low] = code;
+        postings[code] = new int[4];
+    }
+
+    private void insertRow(int code, int row) {
+        int[] rows = postings[code];
+        int size = postingSizes[code];
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size + (size >> 1) + 1);
+            postings[code] = rows;
+        }
+        if (size == 0 || rows[size - 1] < row) {
+            rows[size] = row;
+        } else {
+            int position = Arrays.binarySearch(rows, 0, size, row);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            System.arraycopy(rows, position, rows, position + 1, size - position);
+            rows[position] = row;
+        }
+        postingSizes[code] = size + 1;
+    }
+
+    /**
+     * The rows of the tokens starting with one search token: a single posting list, a few lists searched one
+     * by one, or a bitmap of the union of many lists.
+     */
+    private final class TokenRows {
+
+        private final int[] codes;
+        private final BitSet union;
+
+        private TokenRows(int[] codes) {
+            this.codes = codes;
+            if (codes.length > MAX_SEARCHED_LISTS) {
+                union = new BitSet();
+                for (int code : codes) {
+                    for (int i = 0; i < postingSizes[code]; i++) {
+                        union.set(postings[code][i]);
+                    }
+                }
+            } else {
+                union = null;
+            }
+        }
+
+        private boolean contains(int row) {
+            if (union != null) {
+                return union.get(row);
+            }
+            for (int code : codes) {
+                if (Arrays.binarySearch(postings[code], 0, postingSizes[code], row) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lazy pass over the rows matching a search, so that a paged search stops after its page. Rows come from
+     * the driving token in ascending order; a driving prefix with a few lists merges them as it goes.
+     */
+    final class Matches {
+
+        private final TokenRows driver;
+        private final TokenRows[] filters;
+        private final BitSet liveRows;
+        private final int[] positions;
+        private int nextUnionRow;
+
+        private Matches(TokenRows driver, TokenRows[] filters, BitSet liveRows) {
+            this.driver = driver;
+            this.filters = filters;
+            this.liveRows = liveRows;
+            this.positions = new int[driver.codes.length];
+        }
+
+        /**
+         * Gets the next matching live row.
+         *
+         * @return the row, or -1 if there are no more matches
+         */
+        int next() {
+            for (int row = nextCandidate(); row >= 0; row = nextCandidate()) {
+                if (liveRows.get(row) && passesFilters(row)) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        private boolean passesFilters(int row) {
+            for (TokenRows filter : filters) {
+                if (!filter.contains(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int nextCandidate() {
+            if (driver.union != null) {
+                int row = nextUnionRow < 0 ? -1 : driver.union.nextSetBit(nextUnionRow);
+                nextUnionRow = row < 0 ? -1 : row + 1;
+                return row;
+            }
+            int lowest = -1;
+            int lowestList = -1;
+            for (int i = 0; i < positions.length; i++) {
+                int code = driver.codes[i];
+                if (positions[i] < postingSizes[code]) {
+                    int row = postings[code][positions[i]];
+                    if (lowest < 0 || row < lowest) {
+                        lowest = row;
+                        lowestList = i;
+                    }
+                }
+            }
+            if (lowestList < 0) {
+                return -1;
+            }
+            for (int i = 0; i < positions.length; i++) {
+                int code = driver.codes[i];
+                if (positions[i] < postingSizes[code] && postings[code][positions[i]] == lowest) {
+                    positions[i]++;
+                }
+            }
+            return lowest;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.homework.realestate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking front end of a {@link ConcurrentPropertyService}, for request handlers that must not tie up their
+ * own threads with long scans. Every query runs on an executor and its result is returned as a
+ * {@link CompletableFuture}, or, for the matches of a {@link PropertyQuery}, as a {@link Flow.Publisher} of pages.
+ *
+ * <p>The executor is chosen when the facade is created. {@link #withVirtualThreads(ConcurrentPropertyService, long)}
+ * runs every query on a virtual thread of its own, so that tens of thousands of queries can be in flight without
+ * holding a platform thread each. Virtual threads are looked up at run time, so this class is built for Java 11
+ * and still uses them on a Java 21 runtime; {@link #isVirtualThreadSupported()} tells whether the runtime has
+ * them. Any other executor, such as a fixed pool, can be passed to the constructor.
+ *
+ * <p>Every query has a timeout: the default of the facade, or the one given to {@link #submit(Function, long)}. A
+ * query that times out completes exceptionally with a {@link TimeoutException}, and a query can be cancelled with
+ * {@link CompletableFuture#cancel(boolean)}. Either way the thread running the query is interrupted and its scan
+ * stops within a few thousand rows, see {@link PropertyService}, which frees the thread for the next query and
+ * lets writers of the concurrent service go on without waiting for the abandoned read. A query that times out or
+ * is cancelled before it starts is not run at all. Virtual threads do not make a CPU-bound scan any faster, they
+ * only save threads: it is the timeouts that keep long scans from delaying the queries queued behind them.
+ */
+public class AsyncPropertyService implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(AsyncPropertyService.class.getName());
+
+    /** Timeout of queries submitted without one, in milliseconds, unless configured otherwise. */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final ConcurrentPropertyService service;
+    private final Executor executor;
+    private final long defaultTimeoutMillis;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates a facade running queries on the given executor.
+     *
+     * @param service the service to query
+     * @param executor the executor running the queries
+     * @param defaultTimeoutMillis the timeout of queries submitted without one, in milliseconds
+     * @throws IllegalArgumentException if the service or the executor is null, or the timeout is not positive
+     */
+    public AsyncPropertyService(ConcurrentPropertyService service, Executor executor, long defaultTimeoutMillis) {
+        this(service, executor, defaultTimeoutMillis, false);
+    }
+
+    private AsyncPropertyService(ConcurrentPropertyService service, Executor executor, long defaultTimeoutMillis,
+                                 boolean ownsExecutor) {
+        if (service == null || executor == null) {
+            logger.log(Level.SEVERE, "Attempted to create an asynchronous facade without a service or an executor");
+            throw new IllegalArgumentException("Service and executor cannot be null");
+        }
+        requireTimeout(defaultTimeoutMillis);
+        this.service = service;
+        this.executor = executor;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.ownsExecutor = ownsExecutor;
+        logger.info("Creating new AsyncPropertyService instance with default timeout " + defaultTimeoutMillis
+                + " ms" + (ownsExecutor ? " on virtual threads" : ""));
+    }
+
+    /**
+     * Creates a facade running every query on a new virtual thread. {@link #close()} shuts the executor down.
+     *
+     * @param service the service to query
+     * @param defaultTimeoutMillis the timeout of queries submitted without one, in milliseconds
+     * @return the facade
+     * @throws IllegalArgumentException if the service is null or the timeout is not positive
+     * @throws IllegalStateException if the runtime has no virtual threads, see {@link #isVirtualThreadSupported()}
+     */
+    public static AsyncPropertyService withVirtualThreads(ConcurrentPropertyService service,
+                                                          long defaultTimeoutMillis) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+            logger.log(Level.SEVERE, "Attempted to use virtual threads on Java " + System.getProperty("java.version"));
+            throw new IllegalStateException("Virtual threads require Java 21 or later");
+        }
+        return new AsyncPropertyService(service, newVirtualThreadExecutor(), defaultTimeoutMillis, true);
+    }
+
+    /**
+     * Checks whether the runtime supports virtual threads, which takes Java 21 or later.
+     *
+     * @return true if {@link #withVirtualThreads(ConcurrentPropertyService, long)} can be used
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Runs a query on the executor with the default timeout.
+     *
+     * @param query the query, called with the service
+     * @param <T> the type of the result
+     * @return a future of the result
+     * @throws IllegalArgumentException if the query is null
+     */
+    public <T> CompletableFuture<T> submit(Function<? super ConcurrentPropertyService, ? extends T> query) {
+        return submit(query, defaultTimeoutMillis);
+    }
+
+    /**
+     * Runs a query on the executor. The future completes with the result of the query, or exceptionally with the
+     * exception it threw, with a {@link TimeoutException} if it did not complete in time, or with the
+     * {@link RejectedExecutionException} of an executor that refused it. Cancelling the future, or its timing
+     * out, interrupts the query if it is running and keeps it from running if it is not.
+     *
+     * @param query the query, called with the service
+     * @param timeoutMillis the time the query may take from now, in milliseconds
+     * @param <T> the type of the result
+     * @return a future of the result
+     * @throws IllegalArgumentException if the query is null or the timeout is not positive
+     */
+    public <T> CompletableFuture<T> submit(Function<? super ConcurrentPropertyService, ? extends T> query,
+                                           long timeoutMillis) {
+        if (query == null) {
+            logger.log(Level.SEVERE, "Attempted to submit a null query");
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        requireTimeout(timeoutMillis);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (!future.isDone()) {
+                try {
+                    future.complete(query.apply(service));
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }, null);
+        future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+            if (error instanceof TimeoutException) {
+                logger.warning("Query timed out after " + timeoutMillis + " ms");
+                task.cancel(true);
+            } else if (error instanceof CancellationException) {
+                task.cancel(true);
+            }
+        });
+        try {
+            executor.execute(() -> {
+                task.run();
+                if (task.isCancelled()) {
+                    Thread.interrupted();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.SEVERE, "Query rejected by the executor", e);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Finds the property with the given id, see {@link PropertyService#findById(String)}.
+     *
+     * @param id the id of the property
+     * @return a future of the property, or of null if there is no property with that id
+     */
+    public CompletableFuture<Property> findById(String id) {
+        return submit(service -> service.findById(id));
+    }
+
+    /**
+     * Finds the properties matching a query, see {@link PropertyService#findProperties(PropertyQuery)}.
+     *
+     * @param query the query
+     * @return a future of the requested page of matches, which fails with an {@link IllegalArgumentException} if
+     *         the query is null
+     */
+    public CompletableFuture<List<Property>> findProperties(PropertyQuery query) {
+        return submit(service -> service.findProperties(query));
+    }
+
+    /**
+     * Counts the properties matching a query, see {@link PropertyService#countProperties(PropertyQuery)}.
+     *
+     * @param query the query
+     * @return a future of the number of matches, which fails with an {@link IllegalArgumentException} if the query
+     *         is null
+     */
+    public CompletableFuture<Long> countProperties(PropertyQuery query) {
+        return submit(service -> service.countProperties(query));
+    }
+
+    /**
+     * Finds the matches of a query with the highest values of a metric, see
+     * {@link PropertyService#findTopProperties(PropertyQuery, PropertyMetric, int)}.
+     *
+     * @param query the query
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return a future of the best matches, best first, which fails with an {@link IllegalArgumentException} if
+     *         an argument is invalid
+     */
+    public CompletableFuture<List<Property>> findTopProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        return submit(service -> service.findTopProperties(query, metric, k));
+    }
+
+    /**
+     * Finds the matches of a query closest to a point, see
+     * {@link PropertyService#findNearest(PropertyQuery, double, double, int)}.
+     *
+     * @param query the query
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param k the maximum number of properties to return
+     * @return a future of the closest matches, closest first, which fails with an
+     *         {@link IllegalArgumentException} if an argument is invalid
+     */
+    public CompletableFuture<List<Property>> findNearest(PropertyQuery query, double latitude, double longitude,
+                                                         int k) {
+        return submit(service -> service.findNearest(query, latitude, longitude, k));
+    }
+
+    /**
+     * Publishes the matches of a query in pages. The query runs with the default timeout on the executor once the
+     * subscriber first requests a page, and the pages are then delivered on the executor as far as the subscriber
+     * requests them, each page being one item of up to the given number of properties, followed by
+     * {@code onComplete}. A query that fails or times out is signalled with {@code onError}; cancelling the
+     * subscription cancels the query if it is still running. The matches are held until they are delivered, so
+     * a very large result should rather be fetched in pages with {@link PropertyQuery#offset(int)} and
+     * {@link PropertyQuery#limit(int)}.
+     *
+     * @param query the query
+     * @param pageSize the largest number of properties in one item
+     * @return the publisher
+     * @throws IllegalArgumentException if the query is null or the page size is not positive
+     */
+    public Flow.Publisher<List<Property>> publish(PropertyQuery query, int pageSize) {
+        if (query == null) {
+            logger.log(Level.SEVERE, "Attempted to publish the matches of a null query");
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        if (pageSize <= 0) {
+            logger.log(Level.SEVERE, "Attempted to publish matches in pages of " + pageSize);
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("Subscriber cannot be null");
+            }
+            subscriber.onSubscribe(new ResultSubscription(subscriber, query, pageSize));
+        };
+    }
+
+    /**
+     * Shuts down the executor if the facade created it, see
+     * {@link #withVirtualThreads(ConcurrentPropertyService, long)}. Queries already submitted still run; new ones
+     * are rejected. An executor passed to the constructor is left to its owner.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+            logger.info("AsyncPropertyService closed");
+        }
+    }
+
+    private static void requireTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            logger.log(Level.SEVERE, "Attempted to use a query timeout of " + timeoutMillis + " ms");
+            throw new IllegalArgumentException("Query timeout must be positive");
+        }
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()}, which exists from Java 21 on, or as a preview
+     * feature on Java 19 and 20, where calling it fails unless preview features are enabled.
+     *
+     * @return the factory method, or null if it is missing or cannot be called
+     */
+    private static Method findVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.SEVERE, "Could not create a virtual thread executor", e);
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Subscription to the matches of one query, running the query on the first request and then handing out
+     * pages as far as they were requested. Deliveries run as a task on the executor; a counter of pending
+     * wake-ups makes sure that only one task runs at a time and that no wake-up is lost while it runs.
+     */
+    private final class ResultSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super List<Property>> subscriber;
+        private final PropertyQuery query;
+        private final int pageSize;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile CompletableFuture<List<Property>> result;
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        private int position;
+
+        ResultSubscription(Flow.Subscriber<? super List<Property>> subscriber, PropertyQuery query, int pageSize) {
+            this.subscriber = subscriber;
+            this.query = query;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+                if (result == null) {
+                    CompletableFuture<List<Property>> started = findProperties(query);
+                    result = started;
+                    started.whenComplete((matches, error) -> schedule());
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            CompletableFuture<List<Property>> started = result;
+            if (started != null) {
+                started.cancel(true);
+            }
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    logger.log(Level.SEVERE, "Delivery of query results rejected by the executor", e);
+                    cancel();
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                deliver();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Sends pages as far as they were requested once the query has completed, and then completes the
+         * subscription, or fails it if the query failed.
+         */
+        private void deliver() {
+            while (!cancelled) {
+                if (invalidRequest != null) {
+                    cancel();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                CompletableFuture<List<Property>> started = result;
+                if (started == null || !started.isDone()) {
+                    return;
+                }
+                List<Property> matches;
+                try {
+                    matches = started.join();
+                } catch (CompletionException | CancellationException e) {
+                    cancelled = true;
+                    subscriber.onError(e instanceof CompletionException ? e.getCause() : e);
+                    return;
+                }
+                if (position == matches.size()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                int end = Math.min(matches.size(), position + pageSize);
+                List<Property> page = new ArrayList<>(matches.subList(position, end));
+                position = end;
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(page);
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Query result subscriber failed, cancelling its subscription", e);
+                    cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.homework.realestate;
+
+/**
+ * Keeps the best K rows offered to it, ranked by a metric value, in O(K) memory.
+ * The rows are held in a binary heap of primitive arrays whose root is the worst row kept, so an offered row is
+ * rejected with a single comparison once the heap is full and costs O(log K) otherwise. For equal values the
+ * lower row, that is the property added first, ranks better, which makes the result independent of the order in
+ * which rows are offered and lets heaps filled from separate partitions be merged.
+ */
+final class BoundedHeap {
+
+    private final boolean highest;
+    private final double[] values;
+    private final int[] rows;
+    private int size;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param capacity the number of rows to keep
+     * @param highest true to keep the rows with the highest values, false to keep the lowest
+     */
+    BoundedHeap(int capacity, boolean highest) {
+        this.highest = highest;
+        this.values = new double[capacity];
+        this.rows = new int[capacity];
+    }
+
+    /**
+     * Offers a row to the heap.
+     *
+     * @param value the metric value of the row, must not be NaN
+     * @param row the row
+     */
+    void offer(double value, int row) {
+        if (size < values.length) {
+            values[size] = value;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (size > 0 && better(value, row, values[0], rows[0])) {
+            values[0] = value;
+            rows[0] = row;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Checks if the heap is full and the given value ranks worse than every row kept, so that no row with that
+     * value or a worse one can enter the heap anymore.
+     *
+     * @param value the metric value
+     * @return true if rows with the value would be rejected whatever their row number
+     */
+    boolean excludes(double value) {
+        return size == values.length && (size == 0 || (highest ? value < values[0] : value > values[0]));
+    }
+
+    /**
+     * Offers every row of another heap to this one.
+     *
+     * @param other the heap to merge, filled with the same ranking
+     */
+    void mergeFrom(BoundedHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.values[i], other.rows[i]);
+        }
+    }
+
+    /**
+     * Empties the heap into an array, best row first. The heap cannot be used afterwards.
+     *
+     * @return the rows kept, ranked from best to worst
+     */
+    int[] drainRanked() {
+        int[] ranked = new int[size];
+        for (int last = size - 1; last >= 0; last--) {
+            ranked[last] = rows[0];
+            values[0] = values[last];
+            rows[0] = rows[last];
+            siftDown(0, last);
+        }
+        size = 0;
+        return ranked;
+    }
+
+    private boolean better(double value1, int row1, double value2, int row2) {
+        if (value1 != value2) {
+            return highest ? value1 > value2 : value1 < value2;
+        }
+        return row1 < row2;
+    }
+
+    private void siftUp(int position) {
+        double value = values[position];
+        int row = rows[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!better(values[parent], rows[parent], value, row)) {
+                break;
+            }
+            values[position] = values[parent];
+            rows[position] = rows[parent];
+            position = parent;
+        }
+        values[position] = value;
+        rows[position] = row;
+    }
+
+    private void siftDown(int position, int end) {
+        double value = values[position];
+        int row = rows[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && better(values[child], rows[child], values[child + 1], rows[child + 1])) {
+                child++;
+            }
+            if (!better(value, row, values[child], rows[child])) {
+                break;
+            }
+            values[position] = values[child];
+            rows[position] = rows[child];
+            position = child;
+        }
+        values[position] = value;
+        rows[position] = row;
+    }
+}
@@ -0,0 +1,144 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dense counters for a contiguous range of integer bucket indexes, which may be negative.
+ * The range grows on demand in either direction, so only the span between the lowest and highest bucket ever
+ * used is allocated.
+ */
+final class BucketCounts {
+
+    private static final int[] NO_COUNTS = new int[0];
+
+    private int[] counts = NO_COUNTS;
+    private int offset;
+    private long total;
+
+    /**
+     * Creates empty counters.
+     */
+    BucketCounts() {
+    }
+
+    /**
+     * Reads counters written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    BucketCounts(SnapshotInput input) throws IOException {
+        offset = input.readInt();
+        total = input.readLong();
+        int[] read = input.readInts();
+        counts = read.length == 0 ? NO_COUNTS : read;
+    }
+
+    /**
+     * Adds to the counter of a bucket.
+     *
+     * @param index the bucket index
+     * @param delta the amount to add, negative to remove
+     */
+    void add(int index, int delta) {
+        ensureRange(index);
+        counts[index - offset] += delta;
+        total += delta;
+    }
+
+    /**
+     * Adds the counters of another instance to this one.
+     *
+     * @param other the counters to add
+     */
+    void addAll(BucketCounts other) {
+        for (int index = other.firstIndex(); index <= other.lastIndex(); index++) {
+            int count = other.get(index);
+            if (count != 0) {
+                add(index, count);
+            }
+        }
+    }
+
+    /**
+     * Gets the counter of a bucket.
+     *
+     * @param index the bucket index
+     * @return the count, 0 for buckets outside the allocated range
+     */
+    int get(int index) {
+        int position = index - offset;
+        return position >= 0 && position < counts.length ? counts[position] : 0;
+    }
+
+    /**
+     * Gets the lowest allocated bucket index.
+     *
+     * @return the index of the first allocated bucket
+     */
+    int firstIndex() {
+        return offset;
+    }
+
+    /**
+     * Gets the highest allocated bucket index.
+     *
+     * @return the index of the last allocated bucket, less than {@link #firstIndex()} if nothing is allocated
+     */
+    int lastIndex() {
+        return offset + counts.length - 1;
+    }
+
+    /**
+     * Gets the sum of all counters.
+     *
+     * @return the total count
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Copies the counters.
+     *
+     * @return an independent copy
+     */
+    BucketCounts copy() {
+        BucketCounts copy = new BucketCounts();
+        copy.counts = counts.clone();
+        copy.offset = offset;
+        copy.total = total;
+        return copy;
+    }
+
+    /**
+     * Writes the counters to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeInt(offset);
+        output.writeLong(total);
+        output.writeInts(counts, counts.length);
+    }
+
+    private void ensureRange(int index) {
+        if (counts.length == 0) {
+            counts = new int[16];
+            offset = index - 8;
+            return;
+        }
+        if (index < offset) {
+            int extra = Math.max(offset - index, counts.length >> 1);
+            int[] grown = new int[counts.length + extra];
+            System.arraycopy(counts, 0, grown, extra, counts.length);
+            counts = grown;
+            offset -= extra;
+        } else if (index - offset >= counts.length) {
+            int extra = Math.max(index - offset - counts.length + 1, counts.length >> 1);
+            counts = Arrays.copyOf(counts, counts.length + extra);
+        }
+    }
+}
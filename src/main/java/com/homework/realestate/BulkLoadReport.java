@@ -0,0 +1,62 @@
+package com.homework.realestate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable outcome of a bulk load: the number of properties loaded and how long loading them took, from the
+ * first validation to the moment the properties became visible to queries.
+ */
+public final class BulkLoadReport {
+
+    private final int rowCount;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a bulk load report.
+     *
+     * @param rowCount the number of properties loaded
+     * @param elapsedNanos the time the load took, in nanoseconds
+     */
+    BulkLoadReport(int rowCount, long elapsedNanos) {
+        this.rowCount = rowCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of properties loaded.
+     *
+     * @return the row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the time the load took.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the load throughput.
+     *
+     * @return the number of properties loaded per second, or 0 if nothing was loaded
+     */
+    public double getRowsPerSecond() {
+        return rowCount == 0 ? 0 : rowCount * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos);
+    }
+
+    /**
+     * Returns a string representation of the report.
+     *
+     * @return the row count, elapsed time and throughput
+     */
+    @Override
+    public String toString() {
+        return "BulkLoadReport{rows=" + rowCount + ", elapsedMillis=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                + ", rowsPerSecond=" + Math.round(getRowsPerSecond()) + '}';
+    }
+}
@@ -0,0 +1,74 @@
+package com.homework.realestate;
+
+/**
+ * Immutable description of one change to a catalog, published to its {@link ChangeFeed}.
+ * Events carry the full state of the changed property rather than the changed fields, so applying an event a
+ * second time has no further effect.
+ */
+public final class ChangeEvent {
+
+    private final long sequence;
+    private final ChangeType type;
+    private final PropertyRecord property;
+
+    /**
+     * Constructor for ChangeEvent.
+     *
+     * @param sequence the position of the event in its feed, starting at 1
+     * @param type the kind of change
+     * @param property the changed property, see {@link #getProperty()}, or null for a replaced catalog
+     */
+    ChangeEvent(long sequence, ChangeType type, PropertyRecord property) {
+        this.sequence = sequence;
+        this.type = type;
+        this.property = property;
+    }
+
+    /**
+     * Gets the position of the event in its feed. Sequence numbers start at 1 and grow by one with every event,
+     * so a consumer can resume after the last event it processed.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return the change type
+     */
+    public ChangeType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the id of the changed property.
+     *
+     * @return the property id, or null for {@link ChangeType#CATALOG_REPLACED}
+     */
+    public String getId() {
+        return property != null ? property.getId() : null;
+    }
+
+    /**
+     * Gets the changed property: as it was before the change for {@link ChangeType#REMOVED}, and as it is after
+     * the change otherwise.
+     *
+     * @return the property, or null for {@link ChangeType#CATALOG_REPLACED}
+     */
+    public PropertyRecord getProperty() {
+        return property;
+    }
+
+    /**
+     * Returns a string representation of the event.
+     *
+     * @return a string with the sequence number, the change type and the property id
+     */
+    @Override
+    public String toString() {
+        return "ChangeEvent{sequence=" + sequence + ", type=" + type + ", id='" + getId() + "'}";
+    }
+}
@@ -0,0 +1,413 @@
+package com.homework.realestate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stream of the changes made to a catalog, in the order they were made, for consumers that keep a copy of the
+ * catalog or derive data from it without reading and comparing the whole catalog. It is enabled with
+ * {@link PropertyService#enableChangeFeed(int)}, after which every add, update, availability change and removal
+ * is published as a {@link ChangeEvent} with the next sequence number.
+ *
+ * <p>Events are kept in a ring buffer of fixed capacity. Publishing an event stores it in the ring and advances
+ * the sequence number: it never blocks, never waits for a consumer and never runs consumer code, so consumers do
+ * not slow the write path down. The price is that a consumer falling further behind than the capacity loses
+ * events. It is told so, rather than silently skipping them, and has to read the catalog again.
+ *
+ * <p>Consumers either pull batches of events with {@link #read(long, int)}, or subscribe to a
+ * {@link Flow.Publisher} from {@link #publisher(long, int, Executor)}, which pushes batches on an executor as far as
+ * the subscriber requested them, one batch of up to a given number of events per requested item. Both start
+ * after a given sequence number, so a consumer that remembers the last sequence it processed can stop and resume
+ * later, as long as the ring still holds the events after it.
+ *
+ * <p>To start from a copy of the catalog, read {@link #getLastSequence()} first, then the catalog, and then
+ * consume the events after that sequence. Events published between the two reads may describe changes the copy
+ * already holds; applying them again is harmless, since events carry the full state of the property. A
+ * {@link ChangeType#CATALOG_REPLACED} event asks consumers to read the catalog again the same way.
+ *
+ * <p>Events are published by one thread at a time, which the services guarantee. Reading and subscribing are
+ * thread-safe.
+ */
+public final class ChangeFeed {
+
+    private static final Logger logger = Logger.getLogger(ChangeFeed.class.getName());
+
+    /** Number of events a feed keeps unless configured otherwise. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Largest number of events a feed can keep. */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Number of times a delivery task yields, once it has caught up, before it ends. Events published meanwhile
+     * are delivered by the same task, so a writer publishing in bursts does not hand a new task to the executor
+     * for every event.
+     */
+    private static final int IDLE_YIELDS = 16;
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+    private final List<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile long lastSequence;
+    private volatile boolean closed;
+
+    /**
+     * Creates an empty feed.
+     *
+     * @param capacity the number of events to keep, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is not positive or above {@link #MAX_CAPACITY}
+     */
+    ChangeFeed(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            logger.log(Level.SEVERE, "Attempted to create a change feed with a capacity of " + capacity);
+            throw new IllegalArgumentException("Change feed capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new ChangeEvent[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the number of events the feed keeps.
+     *
+     * @return the capacity of the ring buffer
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Gets the sequence number of the last published event.
+     *
+     * @return the last sequence number, or 0 if no event has been published yet
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the sequence number of the oldest event the feed still holds. Consumers can resume after any sequence
+     * from one before this one up to {@link #getLastSequence()}.
+     *
+     * @return the oldest sequence number still held, or 1 if no event has been published yet
+     */
+    public long getOldestSequence() {
+        return Math.max(1, lastSequence - ring.length + 1);
+    }
+
+    /**
+     * Checks whether the feed was closed, which happens when it is disabled or replaced on its service. A closed
+     * feed publishes no more events, but its events can still be read.
+     *
+     * @return true if the feed is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Reads a batch of the events published after a sequence number.
+     *
+     * @param afterSequence the sequence number of the last event already processed, or 0 to start from the first
+     * @param maxEvents the largest number of events to return
+     * @return the events in sequence order, or an empty list if no event was published after the given one
+     * @throws IllegalArgumentException if the batch size is not positive, or if the sequence number is negative
+     *         or has not been published yet
+     * @throws IllegalStateException if some of the events after the sequence number are no longer held
+     */
+    public List<ChangeEvent> read(long afterSequence, int maxEvents) {
+        if (maxEvents <= 0) {
+            logger.log(Level.SEVERE, "Attempted to read a batch of " + maxEvents + " change events");
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        long last = lastSequence;
+        requirePublished(afterSequence, last);
+        List<ChangeEvent> events = collect(afterSequence, maxEvents, last);
+        if (events == null) {
+            logger.log(Level.SEVERE, "Attempted to read change events after " + afterSequence
+                    + " that are no longer held");
+            throw new IllegalStateException("Change events after " + afterSequence
+                    + " are no longer held, the oldest is " + getOldestSequence());
+        }
+        return events;
+    }
+
+    /**
+     * Creates a publisher of the events after a sequence number, delivered on the common fork/join pool, see
+     * {@link #publisher(long, int, Executor)}.
+     *
+     * @param afterSequence the sequence number of the last event already processed, or 0 to start from the first
+     * @param maxBatchSize the largest number of events in one item
+     * @return the publisher
+     * @throws IllegalArgumentException if the batch size is not positive, or if the sequence number is negative
+     *         or has not been published yet
+     */
+    public Flow.Publisher<List<ChangeEvent>> publisher(long afterSequence, int maxBatchSize) {
+        return publisher(afterSequence, maxBatchSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher of the events after a sequence number. Every subscriber starts after that sequence and
+     * receives the events in order, in batches of up to the given size, each batch being one item. Batches are
+     * only delivered as far as the subscriber requested them and are taken from the ring at that time, so a
+     * subscriber that requests slowly receives larger batches and never holds the writer up. A subscriber that
+     * falls so far behind that the ring no longer holds its next event receives {@code onError} with an
+     * {@link IllegalStateException}. Once the feed is closed, subscribers receive {@code onComplete} after its
+     * last event. Subscriber methods are called on the executor, one at a time for each subscriber.
+     *
+     * @param afterSequence the sequence number of the last event already processed, or 0 to start from the first
+     * @param maxBatchSize the largest number of events in one item
+     * @param executor the executor delivering the events
+     * @return the publisher
+     * @throws IllegalArgumentException if the executor is null, the batch size is not positive, or the sequence
+     *         number is negative or has not been published yet
+     */
+    public Flow.Publisher<List<ChangeEvent>> publisher(long afterSequence, int maxBatchSize, Executor executor) {
+        if (executor == null) {
+            logger.log(Level.SEVERE, "Attempted to create a change event publisher without an executor");
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        if (maxBatchSize <= 0) {
+            logger.log(Level.SEVERE, "Attempted to create a change event publisher with a batch size of "
+                    + maxBatchSize);
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        requirePublished(afterSequence, lastSequence);
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("Subscriber cannot be null");
+            }
+            FeedSubscription subscription = new FeedSubscription(subscriber, afterSequence, maxBatchSize, executor);
+            subscriptions.add(subscription);
+            subscriber.onSubscribe(subscription);
+            subscription.schedule();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Subscribed to change events after " + afterSequence);
+            }
+        };
+    }
+
+    /**
+     * Stores an event with the next sequence number in the ring, overwriting the oldest one once the ring is full.
+     * Subscribers are not told until {@link #signal()}, so a batch of changes can wake them once.
+     *
+     * @param type the kind of change
+     * @param property the changed property, or null for a replaced catalog
+     */
+    void append(ChangeType type, PropertyRecord property) {
+        long sequence = lastSequence + 1;
+        ring[(int) sequence & mask] = new ChangeEvent(sequence, type, property);
+        lastSequence = sequence;
+    }
+
+    /**
+     * Schedules delivery to the subscribers that requested more events. Costs one atomic increment per waiting
+     * subscriber; the events are delivered on the subscribers' executors.
+     */
+    void signal() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.wake();
+        }
+    }
+
+    /**
+     * Closes the feed after its last event, so that subscribers complete once they have received every event.
+     */
+    void close() {
+        closed = true;
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Checks that consumers can start after a sequence number.
+     *
+     * @param afterSequence the sequence number
+     * @param last the last published sequence number
+     * @throws IllegalArgumentException if the sequence number is negative or beyond the last one
+     */
+    private static void requirePublished(long afterSequence, long last) {
+        if (afterSequence < 0 || afterSequence > last) {
+            logger.log(Level.SEVERE, "Attempted to read change events after " + afterSequence + " with the last at "
+                    + last);
+            throw new IllegalArgumentException("Sequence " + afterSequence + " has not been published, the last is "
+                    + last);
+        }
+    }
+
+    /**
+     * Copies the events after a sequence number out of the ring. An event is only taken if its slot still holds
+     * the expected sequence number, so events overwritten by the writer in the meantime are detected.
+     *
+     * @param afterSequence the sequence number of the last event already processed
+     * @param maxEvents the largest number of events to copy
+     * @param last the last published sequence number
+     * @return the events in sequence order, or null if the ring no longer holds all of them
+     */
+    private List<ChangeEvent> collect(long afterSequence, int maxEvents, long last) {
+        int count = (int) Math.min(maxEvents, last - afterSequence);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        ChangeEvent[] events = new ChangeEvent[count];
+        for (int i = 0; i < count; i++) {
+            long sequence = afterSequence + 1 + i;
+            ChangeEvent event = ring[(int) sequence & mask];
+            if (event.getSequence() != sequence) {
+                return null;
+            }
+            events[i] = event;
+        }
+        return Collections.unmodifiableList(Arrays.asList(events));
+    }
+
+    /**
+     * Subscription of one subscriber, remembering the last event it was sent.
+     * Deliveries run as a task on the executor; a counter of pending wake-ups makes sure that only one task runs
+     * at a time and that a wake-up arriving while it runs makes it look for events again instead of being lost.
+     */
+    private final class FeedSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super List<ChangeEvent>> subscriber;
+        private final int maxBatchSize;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        private long position;
+
+        FeedSubscription(Flow.Subscriber<? super List<ChangeEvent>> subscriber, long afterSequence, int maxBatchSize,
+                         Executor executor) {
+            this.subscriber = subscriber;
+            this.position = afterSequence;
+            this.maxBatchSize = maxBatchSize;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Schedules a delivery if the subscriber requested more events.
+         */
+        void wake() {
+            if (demand.get() > 0) {
+                schedule();
+            }
+        }
+
+        /**
+         * Schedules a delivery, unless one is already scheduled or running, in which case that one looks for
+         * events again before it ends.
+         */
+        void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    logger.log(Level.SEVERE, "Change event delivery was rejected by its executor", e);
+                    cancel();
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                deliver();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Sends batches of events as far as they were requested, and completes or fails the subscription once
+         * the feed is closed or the subscriber fell behind.
+         */
+        private void deliver() {
+            while (!cancelled) {
+                if (invalidRequest != null) {
+                    cancel();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                boolean finished = closed;
+                long last = lastSequence;
+                if (position == last) {
+                    if (finished) {
+                        cancel();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (!awaitEvent(last)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                List<ChangeEvent> batch = collect(position, maxBatchSize, last);
+                if (batch == null) {
+                    logger.log(Level.SEVERE, "Change feed subscriber fell behind after sequence " + position);
+                    cancel();
+                    subscriber.onError(new IllegalStateException("Change events after " + position
+                            + " are no longer held, the oldest is " + getOldestSequence()));
+                    return;
+                }
+                position += batch.size();
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(batch);
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Change feed subscriber failed, cancelling its subscription", e);
+                    cancel();
+                }
+            }
+        }
+
+        /**
+         * Yields a few times to let the writer publish more events before the delivery task ends.
+         *
+         * @param last the last sequence number delivered
+         * @return true if an event was published or the feed closed in the meantime
+         */
+        private boolean awaitEvent(long last) {
+            for (int i = 0; i < IDLE_YIELDS; i++) {
+                Thread.yield();
+                if (lastSequence != last || closed) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
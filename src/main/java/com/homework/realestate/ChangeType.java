@@ -0,0 +1,39 @@
+package com.homework.realestate;
+
+/**
+ * Kinds of changes published to a {@link ChangeFeed}.
+ */
+public enum ChangeType {
+
+    /**
+     * A property was added, by {@link PropertyService#addProperty(Property)}, by
+     * {@link PropertyService#addAll(java.util.Collection)} or by an upsert of a new id. The event holds the added
+     * property.
+     */
+    ADDED,
+
+    /**
+     * A property was replaced by {@link PropertyService#upsertProperty(Property)}. The event holds the property
+     * as it is after the change.
+     */
+    UPDATED,
+
+    /**
+     * A property was marked available or unavailable by {@link PropertyService#setAvailability(String, boolean)},
+     * its other values being left as they were. The event holds the property as it is after the change. Setting
+     * the availability a property already has publishes no event.
+     */
+    AVAILABILITY_CHANGED,
+
+    /**
+     * A property was removed by {@link PropertyService#removeProperty(String)}. The event holds the property as
+     * it was before it was removed.
+     */
+    REMOVED,
+
+    /**
+     * The whole catalog was replaced by a bulk load or a snapshot load. The event holds no property: consumers
+     * have to read the catalog again, see {@link ChangeFeed}.
+     */
+    CATALOG_REPLACED
+}
@@ -0,0 +1,157 @@
+package com.homework.realestate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets, in the manner of HdrHistogram.
+ * Values below {@value #SUB_BUCKETS} get a bucket each; above that, every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a value is known to within about 3% of itself across the whole range
+ * of a long with under two thousand buckets. Recording a value is one atomic increment of its bucket, one add to
+ * a {@link LongAdder} and a read of the maximum, so it can be done by many threads at once on every call.
+ */
+final class ConcurrentHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(recorded));
+        sum.add(recorded);
+        long current = max.get();
+        while (recorded > current && !max.compareAndSet(current, recorded)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Copies the counts. Values recorded while the copy is taken may or may not be included.
+     *
+     * @return the copy
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value the non-negative value
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the largest value that falls in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket, inclusive
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Point-in-time copy of a histogram, from which quantiles are read.
+     */
+    static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the count
+         */
+        long count() {
+            return count;
+        }
+
+        /**
+         * Gets the sum of the recorded values.
+         *
+         * @return the sum
+         */
+        long sum() {
+            return sum;
+        }
+
+        /**
+         * Gets the largest recorded value.
+         *
+         * @return the maximum, or 0 if nothing was recorded
+         */
+        long max() {
+            return max;
+        }
+
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return the mean, or 0 if nothing was recorded
+         */
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets a quantile, as the upper bound of the bucket holding it, capped at the maximum.
+         *
+         * @param quantile the quantile, between 0 and 1
+         * @return the value at the quantile, or 0 if nothing was recorded
+         */
+        long valueAt(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,763 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+
+/**
+ * Thread-safe variant of {@link PropertyService} for applications that add, update and search properties from
+ * several threads at the same time. It offers the same operations with the same validation and results.
+ *
+ * <p>Reads never block and never wait for a writer. The service keeps two copies of the catalog and uses the
+ * left-right technique: readers announce themselves in a striped read indicator and query whichever copy is
+ * currently published, while a writer applies its change to the other copy, publishes it, waits until the
+ * readers of the old copy have left and then applies the same change to the old copy. Writers from any number
+ * of threads are accepted and applied one at a time. Every operation is linearizable: a read observes all writes
+ * that completed before it started and none that started after it completed. The query cache of each copy is
+ * shared by its readers and looked up without a lock as well.
+ *
+ * <p>The price of non-blocking reads is memory, since the catalog is stored twice, and writes, which are applied
+ * twice and wait for in-flight reads of the copy they replace.
+ *
+ * <p>With {@link #enableChangeFeed(int)} every change is published once to a {@link ChangeFeed}, after it has been
+ * applied to the published copy, so a consumer reading the catalog after receiving an event sees the change.
+ */
+public class ConcurrentPropertyService {
+
+    private static final Logger logger = Logger.getLogger(ConcurrentPropertyService.class.getName());
+
+    private final PropertyService[] copies = new PropertyService[2];
+    private ObjectName mbeanName;
+    private final ReadIndicator[] readIndicators = {new ReadIndicator(), new ReadIndicator()};
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ChangeFeed changeFeed;
+    private volatile int published;
+    private volatile int versionIndex;
+
+    /**
+     * Creates an empty service.
+     */
+    public ConcurrentPropertyService() {
+        logger.info("Creating new ConcurrentPropertyService instance with default constructor");
+        copies[0] = new PropertyService();
+        copies[1] = new PropertyService();
+        copies[1].shareMetrics(copies[0]);
+    }
+
+    /**
+     * Creates a service holding the given properties.
+     *
+     * @param properties the initial list of properties
+     * @throws IllegalArgumentException if a property is null, has no id, has a duplicate id or has invalid values
+     */
+    public ConcurrentPropertyService(List<Property> properties) {
+        logger.info("Creating new ConcurrentPropertyService instance with "
+                + (properties != null ? properties.size() : 0) + " properties");
+        copies[0] = new PropertyService(properties);
+        copies[1] = new PropertyService(properties);
+        copies[1].shareMetrics(copies[0]);
+    }
+
+    /**
+     * Switches on parallel execution for large queries, see
+     * {@link PropertyService#enableParallelExecution(ForkJoinPool, int)}.
+     *
+     * @param pool the pool running the query tasks
+     * @param threshold the number of rows a query has to involve before its work is split
+     * @throws IllegalArgumentException if the pool is null or the threshold is negative
+     */
+    public void enableParallelExecution(ForkJoinPool pool, int threshold) {
+        write(service -> {
+            service.enableParallelExecution(pool, threshold);
+            return null;
+        });
+    }
+
+    /**
+     * Runs all queries on the calling thread again.
+     */
+    public void disableParallelExecution() {
+        write(service -> {
+            service.disableParallelExecution();
+            return null;
+        });
+    }
+
+    /**
+     * Caches the results of repeated lookups in both copies of the catalog, see
+     * {@link PropertyService#enableQueryCache(long)}. Each copy keeps its own cache, so the results may take up
+     * to twice the limit. Readers of the same copy share its cache.
+     *
+     * @param maxBytes the limit of the estimated heap size of the cached results of each copy
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void enableQueryCache(long maxBytes) {
+        write(service -> {
+            service.enableQueryCache(maxBytes);
+            return null;
+        });
+    }
+
+    /**
+     * Stops caching query results in both copies of the catalog.
+     */
+    public void disableQueryCache() {
+        write(service -> {
+            service.disableQueryCache();
+            return null;
+        });
+    }
+
+    /**
+     * Publishes every change from now on to a new {@link ChangeFeed}, see
+     * {@link PropertyService#enableChangeFeed(int)}. Each change is published once, by the second copy it is
+     * applied to, so its event is only delivered once readers see the change.
+     *
+     * @param capacity the number of events the feed keeps, rounded up to a power of two
+     * @return the new feed
+     * @throws IllegalArgumentException if the capacity is not positive or above {@link ChangeFeed#MAX_CAPACITY}
+     */
+    public ChangeFeed enableChangeFeed(int capacity) {
+        ChangeFeed feed = new ChangeFeed(capacity);
+        replaceChangeFeed(feed);
+        logger.info("Change feed enabled with a capacity of " + feed.getCapacity() + " events");
+        return feed;
+    }
+
+    /**
+     * Stops publishing changes and closes the current feed, see {@link PropertyService#disableChangeFeed()}.
+     */
+    public void disableChangeFeed() {
+        replaceChangeFeed(null);
+    }
+
+    /**
+     * Gets the feed that changes are published to.
+     *
+     * @return the feed, or null if the change feed is disabled
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Gets the statistics of the query caches of both copies of the catalog, added together.
+     *
+     * @return the combined statistics, all zero if the cache is disabled
+     */
+    public QueryCacheStatistics getQueryCacheStatistics() {
+        return copies[0].getQueryCacheStatistics().plus(copies[1].getQueryCacheStatistics());
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the service, see {@link PropertyService#getMetrics()}. Both copies of the
+     * catalog record into the same metrics: reads are recorded by the copy they ran on, and writes once, with
+     * the time taken to apply them to one copy.
+     *
+     * @return the metrics, with the query cache counters of both copies added together
+     */
+    public MetricsSnapshot getMetrics() {
+        return read(PropertyService::getMetrics).withQueryCacheStatistics(getQueryCacheStatistics());
+    }
+
+    /**
+     * Starts counting calls, latencies and query plans again from zero.
+     */
+    public void resetMetrics() {
+        copies[0].resetMetrics();
+    }
+
+    /**
+     * Exposes the metrics of this service over JMX, see {@link PropertyService#registerMBean(String)}.
+     *
+     * @param name the name identifying this service among others in the same JVM
+     * @return the object name the bean was registered under
+     * @throws IllegalArgumentException if the name is null or already in use
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        unregisterMBean();
+        mbeanName = ServiceMetricsBean.register(name, new ServiceMetricsBean(this::getMetrics, this::resetMetrics));
+        return mbeanName;
+    }
+
+    /**
+     * Removes the bean registered with {@link #registerMBean(String)}, if any.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName != null) {
+            ServiceMetricsBean.unregister(mbeanName);
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Adds a property, see {@link PropertyService#addProperty(Property)}.
+     *
+     * @param property the property to add
+     * @throws IllegalArgumentException if the property is invalid or its id is already in use
+     */
+    public void addProperty(Property property) {
+        Property copy = copyOf(property);
+        write(service -> {
+            service.addProperty(copy);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a batch of properties in one write, see {@link PropertyService#addAll(Collection)}.
+     * Readers see either none or all of the batch.
+     *
+     * @param properties the properties to add
+     * @return the number of properties added and the time it took to add them to the first copy
+     * @throws IllegalArgumentException if the batch is null, or if a property is invalid or has an id that is in
+     *         use or repeated within the batch
+     */
+    public BulkLoadReport addAll(Collection<Property> properties) {
+        List<Property> copies = copiesOf(properties);
+        return write(service -> service.addAll(copies));
+    }
+
+    /**
+     * Replaces the whole catalog with the properties of a stream, see {@link PropertyService#bulkLoad(Stream)}.
+     * The stream is read once, then each copy of the catalog is rebuilt in turn. Readers keep querying the
+     * published copy while the other one is rebuilt and switch to the new catalog all at once, so they never see
+     * a partly loaded catalog; other writers wait until both copies are rebuilt.
+     *
+     * @param properties the properties of the new catalog
+     * @return the number of properties loaded and the time it took to build the first copy
+     * @throws IllegalArgumentException if the stream is null, or if a property is invalid or has an id repeated
+     *         within the stream
+     */
+    public BulkLoadReport bulkLoad(Stream<Property> properties) {
+        List<Property> copies = properties == null ? null
+                : properties.map(ConcurrentPropertyService::copyOf).collect(Collectors.toList());
+        return write(service -> service.bulkLoad(copies == null ? null : copies.stream()));
+    }
+
+    /**
+     * Saves the published catalog to a snapshot file, see {@link PropertyService#saveSnapshot(Path)}.
+     * Other readers are not held up, but writers wait until the snapshot is written.
+     *
+     * @param file the snapshot file to write
+     * @return the size of the snapshot in bytes
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalArgumentException if the file is null
+     */
+    public long saveSnapshot(Path file) throws IOException {
+        try {
+            return read(service -> {
+                try {
+                    return service.saveSnapshot(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Replaces the whole catalog with one saved by {@link #saveSnapshot(Path)}, see
+     * {@link PropertyService#loadSnapshot(Path)}. The snapshot is read twice, once for each copy of the catalog,
+     * before the write lock is taken, so a snapshot that cannot be read leaves both copies untouched and other
+     * writers only wait for the two reference swaps.
+     *
+     * @param file the snapshot file to read
+     * @return the number of properties loaded and the time it took to read the first copy
+     * @throws IOException if the snapshot cannot be read
+     * @throws IllegalArgumentException if the file is null or is not a valid snapshot
+     */
+    public BulkLoadReport loadSnapshot(Path file) throws IOException {
+        PropertyService[] loaded = {new PropertyService(), new PropertyService()};
+        BulkLoadReport report = loaded[0].loadSnapshot(file);
+        loaded[1].loadSnapshot(file);
+        return write(service -> {
+            service.replaceCatalog(loaded[service == copies[0] ? 0 : 1]);
+            return report;
+        });
+    }
+
+    /**
+     * Adds a property, or replaces the property with the same id, see
+     * {@link PropertyService#upsertProperty(Property)}.
+     *
+     * @param property the property to add or replace
+     * @return the property that was replaced, or null if the property was added
+     * @throws IllegalArgumentException if the property is invalid
+     */
+    public Property upsertProperty(Property property) {
+        Property copy = copyOf(property);
+        return write(service -> service.upsertProperty(copy));
+    }
+
+    /**
+     * Marks the property with the given id as available or unavailable, see
+     * {@link PropertyService#setAvailability(String, boolean)}.
+     *
+     * @param id the id of the property
+     * @param available the new availability
+     * @return true if the property exists, false if there is no property with that id
+     */
+    public boolean setAvailability(String id, boolean available) {
+        return write(service -> service.setAvailability(id, available));
+    }
+
+    /**
+     * Removes the property with the given id, see {@link PropertyService#removeProperty(String)}.
+     *
+     * @param id the id of the property to remove
+     * @return the removed property, or null if there is no property with that id
+     */
+    public Property removeProperty(String id) {
+        return write(service -> service.removeProperty(id));
+    }
+
+    /**
+     * Finds the property with the given id, see {@link PropertyService#findById(String)}.
+     *
+     * @param id the id of the property
+     * @return the property, or null if there is no property with that id
+     */
+    public Property findById(String id) {
+        return read(service -> service.findById(id));
+    }
+
+    /**
+     * Gets a copy of all properties, see {@link PropertyService#getProperties()}.
+     *
+     * @return a new list containing all properties
+     */
+    public List<Property> getProperties() {
+        return read(PropertyService::getProperties);
+    }
+
+    /**
+     * Gets all available properties, see {@link PropertyService#getAvailableProperties()}.
+     *
+     * @return a list of available properties
+     */
+    public List<Property> getAvailableProperties() {
+        return read(PropertyService::getAvailableProperties);
+    }
+
+    /**
+     * Gets all properties of a specific type, see {@link PropertyService#getPropertiesByType(PropertyType)}.
+     *
+     * @param type the property type to filter by
+     * @return a list of properties of the specified type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public List<Property> getPropertiesByType(PropertyType type) {
+        return read(service -> service.getPropertiesByType(type));
+    }
+
+    /**
+     * Gets all properties within a price range, see
+     * {@link PropertyService#getPropertiesByPriceRange(BigDecimal, BigDecimal)}.
+     *
+     * @param minPrice the minimum price (inclusive)
+     * @param maxPrice the maximum price (inclusive)
+     * @return a list of properties within the specified price range
+     * @throws IllegalArgumentException if minPrice or maxPrice is null, or if minPrice > maxPrice
+     */
+    public List<Property> getPropertiesByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        return read(service -> service.getPropertiesByPriceRange(minPrice, maxPrice));
+    }
+
+    /**
+     * Gets all properties with a specific number of bedrooms, see
+     * {@link PropertyService#getPropertiesByBedrooms(int)}.
+     *
+     * @param bedrooms the number of bedrooms to filter by
+     * @return a list of properties with the specified number of bedrooms
+     */
+    public List<Property> getPropertiesByBedrooms(int bedrooms) {
+        return read(service -> service.getPropertiesByBedrooms(bedrooms));
+    }
+
+    /**
+     * Gets all properties whose address matches a search text, see
+     * {@link PropertyService#getPropertiesByAddress(String)}.
+     *
+     * @param text the search text
+     * @return the matching properties, in the order in which they were added
+     * @throws IllegalArgumentException if the text is null or holds no letter or digit
+     */
+    public List<Property> getPropertiesByAddress(String text) {
+        return read(service -> service.getPropertiesByAddress(text));
+    }
+
+    /**
+     * Finds the properties matching a query, see {@link PropertyService#findProperties(PropertyQuery)}.
+     * The query must not be changed while it runs.
+     *
+     * @param query the query
+     * @return the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     */
+    public List<Property> findProperties(PropertyQuery query) {
+        return read(service -> service.findProperties(query));
+    }
+
+    /**
+     * Counts the properties matching a query, see {@link PropertyService#countProperties(PropertyQuery)}.
+     *
+     * @param query the query
+     * @return the number of matching properties
+     * @throws IllegalArgumentException if the query is null
+     */
+    public long countProperties(PropertyQuery query) {
+        return read(service -> service.countProperties(query));
+    }
+
+    /**
+     * Finds the properties matching a query with the highest values of a metric, see
+     * {@link PropertyService#findTopProperties(PropertyQuery, PropertyMetric, int)}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, highest value first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findTopProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        return read(service -> service.findTopProperties(query, metric, k));
+    }
+
+    /**
+     * Finds the properties matching a query with the lowest values of a metric, see
+     * {@link PropertyService#findBottomProperties(PropertyQuery, PropertyMetric, int)}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, lowest value first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findBottomProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        return read(service -> service.findBottomProperties(query, metric, k));
+    }
+
+    /**
+     * Finds the properties matching a query that lie closest to a point, see
+     * {@link PropertyService#findNearest(PropertyQuery, double, double, int)}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     * @param k the maximum number of properties to return
+     * @return at most k properties, closest first
+     * @throws IllegalArgumentException if the query is null, if a coordinate is out of range, or if k is negative
+     */
+    public List<Property> findNearest(PropertyQuery query, double latitude, double longitude, int k) {
+        return read(service -> service.findNearest(query, latitude, longitude, k));
+    }
+
+    /**
+     * Finds the properties matching a query as immutable records, see
+     * {@link PropertyService#findRecords(PropertyQuery)}. The query must not be changed while it runs.
+     *
+     * @param query the query
+     * @return records of the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     */
+    public List<PropertyRecord> findRecords(PropertyQuery query) {
+        return read(service -> service.findRecords(query));
+    }
+
+    /**
+     * Calls a visitor for each property matching a query, see
+     * {@link PropertyService#forEachProperty(PropertyQuery, PropertyVisitor)}.
+     * The whole visit is one read, so it sees a consistent catalog; a long visit delays writers, which wait for
+     * it to finish before changing the copy it reads. Lazy streams and cursors are not offered here, since they
+     * would read the catalog after the read has ended.
+     *
+     * @param query the query
+     * @param visitor the visitor
+     * @return the number of properties visited
+     * @throws IllegalArgumentException if the query or the visitor is null
+     */
+    public long forEachProperty(PropertyQuery query, PropertyVisitor visitor) {
+        return read(service -> service.forEachProperty(query, visitor));
+    }
+
+    /**
+     * Calculates the average price of all properties, see {@link PropertyService#getAveragePrice()}.
+     *
+     * @return the average price of all properties, or BigDecimal.ZERO if there are no properties
+     */
+    public BigDecimal getAveragePrice() {
+        return read(PropertyService::getAveragePrice);
+    }
+
+    /**
+     * Gets the price statistics of all properties, see {@link PropertyService#getPriceStatistics()}.
+     *
+     * @return the count, exact sum, minimum, maximum and mean of all prices
+     */
+    public PriceStatistics getPriceStatistics() {
+        return read(PropertyService::getPriceStatistics);
+    }
+
+    /**
+     * Gets the price statistics of the properties of one type, see
+     * {@link PropertyService#getPriceStatistics(PropertyType)}.
+     *
+     * @param type the property type
+     * @return the count, exact sum, minimum, maximum and mean of the prices of that type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public PriceStatistics getPriceStatistics(PropertyType type) {
+        return read(service -> service.getPriceStatistics(type));
+    }
+
+    /**
+     * Sets the accuracy and bucket widths of the distributions, see
+     * {@link PropertyService#configureDistributions(double, double, double)}.
+     *
+     * @param relativeAccuracy the maximum relative error of quantile estimates
+     * @param priceBucketWidth the width of the price histogram buckets
+     * @param areaBucketWidth the width of the area histogram buckets
+     * @throws IllegalArgumentException if the accuracy is not between 0 and 1 exclusive, or a width is not positive
+     */
+    public void configureDistributions(double relativeAccuracy, double priceBucketWidth, double areaBucketWidth) {
+        write(service -> {
+            service.configureDistributions(relativeAccuracy, priceBucketWidth, areaBucketWidth);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the distribution of a metric over all properties, see
+     * {@link PropertyService#getDistribution(PropertyMetric)}.
+     *
+     * @param metric the metric
+     * @return a snapshot of the quantile sketch and histogram of the metric
+     * @throws IllegalArgumentException if the metric is null or {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric) {
+        return read(service -> service.getDistribution(metric));
+    }
+
+    /**
+     * Gets the distribution of a metric over the properties of one type, see
+     * {@link PropertyService#getDistribution(PropertyMetric, PropertyType)}.
+     *
+     * @param metric the metric
+     * @param type the property type
+     * @return a snapshot of the quantile sketch and histogram of the metric for that type
+     * @throws IllegalArgumentException if the metric or the type is null, or if the metric is
+     *         {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric, PropertyType type) {
+        return read(service -> service.getDistribution(metric, type));
+    }
+
+    /**
+     * Gets the distribution of a metric over the properties with a number of bedrooms, see
+     * {@link PropertyService#getDistributionByBedrooms(PropertyMetric, int)}.
+     *
+     * @param metric the metric
+     * @param bedrooms the number of bedrooms
+     * @return a snapshot of the quantile sketch and histogram of the metric for that bedroom count
+     * @throws IllegalArgumentException if the metric is null or {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistributionByBedrooms(PropertyMetric metric, int bedrooms) {
+        return read(service -> service.getDistributionByBedrooms(metric, bedrooms));
+    }
+
+    /**
+     * Finds the most expensive property, see {@link PropertyService#findMostExpensiveProperty()}.
+     *
+     * @return the most expensive property, or null if there are no properties
+     */
+    public Property findMostExpensiveProperty() {
+        return read(PropertyService::findMostExpensiveProperty);
+    }
+
+    /**
+     * Counts the properties of a specific type, see {@link PropertyService#countPropertiesByType(PropertyType)}.
+     *
+     * @param type the property type to count
+     * @return the count of properties of the specified type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public long countPropertiesByType(PropertyType type) {
+        return read(service -> service.countPropertiesByType(type));
+    }
+
+    /**
+     * Runs a query against the published copy without blocking.
+     *
+     * @param query the query
+     * @param <T> the type of the result
+     * @return the result of the query
+     */
+    private <T> T read(Function<PropertyService, T> query) {
+        ReadIndicator indicator = readIndicators[versionIndex];
+        int stripe = indicator.arrive();
+        try {
+            return query.apply(copies[published]);
+        } finally {
+            indicator.depart(stripe);
+        }
+    }
+
+    /**
+     * Switches to another change feed between two writes, closing the current one.
+     *
+     * @param feed the new feed, or null to publish nothing
+     */
+    private void replaceChangeFeed(ChangeFeed feed) {
+        ChangeFeed previous;
+        writeLock.lock();
+        try {
+            previous = changeFeed;
+            changeFeed = feed;
+        } finally {
+            writeLock.unlock();
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Applies a change to both copies, publishing the changed copy in between.
+     * If the change fails on the first copy nothing is published and the second copy is left untouched, so a
+     * rejected write leaves both copies as they were. Only the second copy publishes the change to the change
+     * feed, once the first one is visible to readers.
+     *
+     * @param mutation the change, which must have the same effect and result on both copies
+     * @param <T> the type of the result
+     * @return the result of the change
+     */
+    private <T> T write(Function<PropertyService, T> mutation) {
+        return write(mutation, null);
+    }
+
+    /**
+     * Applies a change to both copies like {@link #write(Function)}, but lets the caller commit the change, for
+     * example by logging it, after it succeeded on the first copy and before readers can see it.
+     * If the commit throws, nothing is published and the exception is rethrown. The first copy then holds a change
+     * that the published copy does not, so the caller must reject every later write, as
+     * {@link DurablePropertyService} does once its log has failed.
+     *
+     * @param mutation the change, which must have the same effect and result on both copies
+     * @param commit called with the result of the change before it is published, or null for none
+     * @param <T> the type of the result
+     * @return the result of the change
+     */
+    <T> T write(Function<PropertyService, T> mutation, Consumer<? super T> commit) {
+        writeLock.lock();
+        try {
+            int current = published;
+            copies[1 - current].publishChangesTo(null);
+            T result = mutation.apply(copies[1 - current]);
+            if (commit != null) {
+                commit.accept(result);
+            }
+            published = 1 - current;
+            int previousVersion = versionIndex;
+            readIndicators[1 - previousVersion].awaitEmpty();
+            versionIndex = 1 - previousVersion;
+            readIndicators[previousVersion].awaitEmpty();
+            copies[current].publishChangesTo(changeFeed);
+            mutation.apply(copies[current]);
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Copies a property so that both catalog copies see the same values even if the caller changes it meanwhile.
+     *
+     * @param property the property, or null
+     * @return a copy of the property, or null
+     */
+    static Property copyOf(Property property) {
+        if (property == null) {
+            return null;
+        }
+        return new Property(property.getId(), property.getAddress(), property.getType(), property.getPrice(),
+                property.getArea(), property.getBedrooms(), property.getBathrooms(), property.isAvailable(),
+                property.getLatitude(), property.getLongitude());
+    }
+
+    /**
+     * Copies a batch of properties, see {@link #copyOf(Property)}.
+     *
+     * @param properties the properties, or null
+     * @return copies of the properties in the same order, or null
+     */
+    static List<Property> copiesOf(Collection<Property> properties) {
+        if (properties == null) {
+            return null;
+        }
+        List<Property> copies = new ArrayList<>(properties.size());
+        for (Property property : properties) {
+            copies.add(copyOf(property));
+        }
+        return copies;
+    }
+
+    /**
+     * Counts the readers inside one side of the left-right protocol.
+     * Readers are spread over padded counters by thread, so readers on different cores rarely touch the same
+     * cache line; a reader always arrives and departs on the same counter.
+     */
+    private static final class ReadIndicator {
+
+        /** Longs between two counters, so that every counter sits on its own 64-byte cache line. */
+        private static final int PADDING = 8;
+        private static final int SPINS = 100;
+        private static final long PARK_NANOS = 10_000;
+        private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+
+        private final AtomicLongArray counters = new AtomicLongArray(STRIPES * PADDING);
+
+        int arrive() {
+            int stripe = (int) (mix(Thread.currentThread().getId()) & (STRIPES - 1)) * PADDING;
+            counters.incrementAndGet(stripe);
+            return stripe;
+        }
+
+        void depart(int stripe) {
+            counters.decrementAndGet(stripe);
+        }
+
+        void awaitEmpty() {
+            for (int stripe = 0; stripe < counters.length(); stripe += PADDING) {
+                for (int spins = 0; counters.get(stripe) != 0; spins++) {
+                    if (spins < SPINS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                }
+            }
+        }
+
+        private static long mix(long threadId) {
+            long hash = threadId * 0x9E3779B97F4A7C15L;
+            return hash ^ (hash >>> 32);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+
+/**
+ * Quantile sketches and fixed-width histograms of one metric, kept for all rows, per property type and per
+ * bedroom count, and updated as rows are added and removed.
+ */
+final class DistributionIndex {
+
+    private static final PropertyType[] TYPES = PropertyType.values();
+
+    private final double relativeAccuracy;
+    private final double bucketWidth;
+    private final QuantileSketch[] sketches;
+    private final LinearHistogram[] histograms;
+
+    /**
+     * Creates empty distributions.
+     *
+     * @param relativeAccuracy the relative accuracy of the quantile sketches
+     * @param bucketWidth the width of the histogram buckets
+     */
+    DistributionIndex(double relativeAccuracy, double bucketWidth) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.bucketWidth = bucketWidth;
+        int groups = 1 + TYPES.length + PropertyTable.MAX_ROOMS + 1;
+        this.sketches = new QuantileSketch[groups];
+        this.histograms = new LinearHistogram[groups];
+    }
+
+    /**
+     * Reads distributions written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    DistributionIndex(SnapshotInput input) throws IOException {
+        this(input.readDouble(), input.readDouble());
+        int groups = input.readInt();
+        input.expect(groups == sketches.length, "distributions have " + groups + " groups instead of "
+                + sketches.length);
+        for (int group = 0; group < groups; group++) {
+            if (input.readInt() != 0) {
+                sketches[group] = new QuantileSketch(relativeAccuracy, input);
+                histograms[group] = new LinearHistogram(bucketWidth, input);
+            }
+        }
+    }
+
+    /**
+     * Gets the relative accuracy of the quantile sketches.
+     *
+     * @return the relative accuracy
+     */
+    double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Gets the width of the histogram buckets.
+     *
+     * @return the bucket width
+     */
+    double bucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * Adds the value of a row.
+     *
+     * @param type the property type of the row, or null
+     * @param bedrooms the number of bedrooms of the row
+     * @param value the value of the metric
+     */
+    void add(PropertyType type, int bedrooms, double value) {
+        update(0, value, true);
+        if (type != null) {
+            update(typeGroup(type), value, true);
+        }
+        update(bedroomGroup(bedrooms), value, true);
+    }
+
+    /**
+     * Removes the value of a row.
+     *
+     * @param type the property type the row was added with, or null
+     * @param bedrooms the number of bedrooms the row was added with
+     * @param value the value the row was added with
+     */
+    void remove(PropertyType type, int bedrooms, double value) {
+        update(0, value, false);
+        if (type != null) {
+            update(typeGroup(type), value, false);
+        }
+        update(bedroomGroup(bedrooms), value, false);
+    }
+
+    /**
+     * Takes a snapshot of the distribution of all rows.
+     *
+     * @return the distribution
+     */
+    ValueDistribution all() {
+        return snapshot(0);
+    }
+
+    /**
+     * Takes a snapshot of the distribution of the rows of one type.
+     *
+     * @param type the property type
+     * @return the distribution
+     */
+    ValueDistribution ofType(PropertyType type) {
+        return snapshot(typeGroup(type));
+    }
+
+    /**
+     * Takes a snapshot of the distribution of the rows with a number of bedrooms.
+     *
+     * @param bedrooms the number of bedrooms
+     * @return the distribution, empty if the count is out of range
+     */
+    ValueDistribution withBedrooms(int bedrooms) {
+        if (bedrooms < 0 || bedrooms > PropertyTable.MAX_ROOMS) {
+            return new ValueDistribution(new QuantileSketch(relativeAccuracy), new LinearHistogram(bucketWidth));
+        }
+        return snapshot(bedroomGroup(bedrooms));
+    }
+
+    /**
+     * Writes the settings and the counters of every group to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeDouble(relativeAccuracy);
+        output.writeDouble(bucketWidth);
+        output.writeInt(sketches.length);
+        for (int group = 0; group < sketches.length; group++) {
+            output.writeInt(sketches[group] != null ? 1 : 0);
+            if (sketches[group] != null) {
+                sketches[group].writeTo(output);
+                histograms[group].writeTo(output);
+            }
+        }
+    }
+
+    private void update(int group, double value, boolean add) {
+        if (sketches[group] == null) {
+            sketches[group] = new QuantileSketch(relativeAccuracy);
+            histograms[group] = new LinearHistogram(bucketWidth);
+        }
+        if (add) {
+            sketches[group].add(value);
+            histograms[group].add(value);
+        } else {
+            sketches[group].remove(value);
+            histograms[group].remove(value);
+        }
+    }
+
+    private ValueDistribution snapshot(int group) {
+        if (sketches[group] == null) {
+            return new ValueDistribution(new QuantileSketch(relativeAccuracy), new LinearHistogram(bucketWidth));
+        }
+        return new ValueDistribution(sketches[group].copy(), histograms[group].copy());
+    }
+
+    private static int typeGroup(PropertyType type) {
+        return 1 + type.ordinal();
+    }
+
+    private static int bedroomGroup(int bedrooms) {
+        return 1 + TYPES.length + bedrooms;
+    }
+}
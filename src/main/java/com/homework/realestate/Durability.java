@@ -0,0 +1,31 @@
+package com.homework.realestate;
+
+/**
+ * Durability levels of a {@link DurablePropertyService}: when a change is written to its write-ahead log and
+ * when the log is forced to the storage device. Every level writes the change to the log before the mutating
+ * method returns, so none loses changes when the process crashes; they differ in what a power loss or an
+ * operating system crash can take away.
+ */
+public enum Durability {
+
+    /**
+     * Changes are handed to the operating system before the mutating method returns and the log is only forced
+     * to the storage device at checkpoints and on close. Fastest, but a power loss can lose any change made
+     * since the last checkpoint.
+     */
+    WRITE,
+
+    /**
+     * Changes are handed to the operating system before the mutating method returns and a background thread
+     * forces the log to the storage device at a fixed interval, so a power loss loses at most the changes of
+     * the last interval. One fsync covers every change made during the interval.
+     */
+    BATCH,
+
+    /**
+     * The mutating method only returns once its change has been forced to the storage device. Changes made
+     * concurrently from several threads share one fsync (group commit), so throughput grows with the number
+     * of writers.
+     */
+    SYNC
+}
@@ -0,0 +1,412 @@
+package com.homework.realestate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Variant of {@link ConcurrentPropertyService} whose catalog survives crashes and restarts.
+ * The service keeps a directory holding a checkpoint, a {@linkplain PropertyService#saveSnapshot(Path) snapshot}
+ * of the catalog, and a write-ahead log of the changes made since. Every successful change is appended to the log
+ * before readers can see it and before the mutating method returns; when the log is forced to the storage device
+ * is set by the {@link Durability}. A change that fails validation is not logged.
+ *
+ * <p>Opening a service on a directory recovers the catalog: the newest checkpoint is loaded and the records of the
+ * log that came after it are replayed. A record that a crash left incomplete is dropped, so the catalog is
+ * recovered as it was after the last change whose record was completely written. Once the log grows beyond a
+ * size limit, the next change writes a new checkpoint and starts an empty log, which bounds both the log and the
+ * replay time. Bulk loads and snapshot loads replace the whole catalog, so they always write a checkpoint instead
+ * of a log record.
+ *
+ * <p>Changes are applied and logged one at a time, in the same order. Readers see a change as soon as it is
+ * logged, which for {@link Durability#SYNC} can be shortly before the change is forced to the storage device. Once
+ * the service is closed, or once writing or forcing the log failed, every change throws an
+ * {@link UncheckedIOException} and leaves the catalog unchanged; a change whose record could not be written is
+ * not published either. Reopening the directory recovers the logged state.
+ */
+public class DurablePropertyService extends ConcurrentPropertyService implements Closeable {
+
+    /** Interval between two forces of the log for {@link Durability#BATCH} unless configured otherwise. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+    /** Log size beyond which a checkpoint is written unless configured otherwise. */
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final Logger logger = Logger.getLogger(DurablePropertyService.class.getName());
+    private static final String LOG_FILE = "changes.wal";
+    private static final Pattern CHECKPOINT_FILE = Pattern.compile("checkpoint-(\\d+)\\.snapshot");
+
+    private final Path directory;
+    private final long checkpointBytes;
+    private final ReentrantLock mutationLock = new ReentrantLock();
+    private final WriteAheadLog log;
+
+    /**
+     * Opens the catalog kept in a directory with the default sync interval and checkpoint size, creating the
+     * directory if needed.
+     *
+     * @param directory the directory holding the checkpoint and the log
+     * @param durability when changes are forced to the storage device
+     * @throws IOException if the directory cannot be read or written
+     * @throws IllegalArgumentException if an argument is null, or if the directory holds an invalid checkpoint or log
+     */
+    public DurablePropertyService(Path directory, Durability durability) throws IOException {
+        this(directory, durability, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Opens the catalog kept in a directory, creating the directory if needed, and recovers it from the newest
+     * checkpoint and the log.
+     *
+     * @param directory the directory holding the checkpoint and the log
+     * @param durability when changes are forced to the storage device
+     * @param syncIntervalMillis the interval between two forces of the log for {@link Durability#BATCH}
+     * @param checkpointBytes the log size beyond which a checkpoint is written
+     * @throws IOException if the directory cannot be read or written
+     * @throws IllegalArgumentException if an argument is null or not positive, or if the directory holds an invalid
+     *         checkpoint or log
+     */
+    public DurablePropertyService(Path directory, Durability durability, long syncIntervalMillis,
+                                  long checkpointBytes) throws IOException {
+        try {
+            if (directory == null || durability == null) {
+                logger.log(Level.SEVERE, "Attempted to open a durable catalog with a null directory or durability");
+                throw new IllegalArgumentException("Directory and durability cannot be null");
+            }
+            if (syncIntervalMillis <= 0 || checkpointBytes <= 0) {
+                logger.log(Level.SEVERE, "Attempted to open a durable catalog with sync interval "
+                        + syncIntervalMillis + " and checkpoint size " + checkpointBytes);
+                throw new IllegalArgumentException("Sync interval and checkpoint size must be positive");
+            }
+            long start = System.nanoTime();
+            this.directory = directory;
+            this.checkpointBytes = checkpointBytes;
+            Files.createDirectories(directory);
+            long checkpointSequence = -1;
+            for (Path checkpoint : checkpoints()) {
+                checkpointSequence = Math.max(checkpointSequence, sequenceOf(checkpoint));
+            }
+            if (checkpointSequence >= 0) {
+                super.loadSnapshot(checkpointFile(checkpointSequence));
+            }
+            long lastSequence = WriteAheadLog.replay(directory.resolve(LOG_FILE), Math.max(0, checkpointSequence),
+                    this::replay);
+            this.log = new WriteAheadLog(directory.resolve(LOG_FILE), durability, syncIntervalMillis, lastSequence);
+            deleteCheckpointsBefore(checkpointSequence);
+            logger.info("Recovered durable catalog " + directory + " up to change " + lastSequence + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms, durability " + durability);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error opening durable catalog " + directory, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a property and logs the change, see {@link PropertyService#addProperty(Property)}.
+     *
+     * @param property the property to add
+     * @throws IllegalArgumentException if the property is invalid or its id is already in use
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public void addProperty(Property property) {
+        Property copy = copyOf(property);
+        mutate(service -> {
+            service.addProperty(copy);
+            return null;
+        }, result -> LogRecord.add(copy));
+    }
+
+    /**
+     * Adds a batch of properties and logs it as one change, see {@link PropertyService#addAll(Collection)}.
+     *
+     * @param properties the properties to add
+     * @return the number of properties added and the time it took to add them to the first copy
+     * @throws IllegalArgumentException if the batch is null, or if a property is invalid or has an id that is in
+     *         use or repeated within the batch
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public BulkLoadReport addAll(Collection<Property> properties) {
+        List<Property> copies = copiesOf(properties);
+        return mutate(service -> service.addAll(copies), result -> LogRecord.addAll(copies));
+    }
+
+    /**
+     * Replaces the whole catalog with the properties of a stream and writes a checkpoint of the new catalog, see
+     * {@link PropertyService#bulkLoad(Stream)}.
+     *
+     * @param properties the properties of the new catalog
+     * @return the number of properties loaded and the time it took to build the first copy
+     * @throws IllegalArgumentException if the stream is null, or if a property is invalid or has an id repeated
+     *         within the stream
+     * @throws UncheckedIOException if the checkpoint cannot be written
+     */
+    @Override
+    public BulkLoadReport bulkLoad(Stream<Property> properties) {
+        mutationLock.lock();
+        try {
+            log.checkHealthy();
+            BulkLoadReport report = super.bulkLoad(properties);
+            checkpointLocked();
+            return report;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole catalog with a snapshot and writes a checkpoint of the new catalog, see
+     * {@link PropertyService#loadSnapshot(Path)}.
+     *
+     * @param file the snapshot file to read
+     * @return the number of properties loaded and the time it took to read the first copy
+     * @throws IOException if the snapshot cannot be read or the checkpoint cannot be written
+     * @throws IllegalArgumentException if the file is null or is not a valid snapshot
+     */
+    @Override
+    public BulkLoadReport loadSnapshot(Path file) throws IOException {
+        mutationLock.lock();
+        try {
+            log.checkHealthy();
+            BulkLoadReport report = super.loadSnapshot(file);
+            checkpointLocked();
+            return report;
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a property and logs the change, see {@link PropertyService#upsertProperty(Property)}.
+     *
+     * @param property the property to add or replace
+     * @return the property that was replaced, or null if the property was added
+     * @throws IllegalArgumentException if the property is invalid
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public Property upsertProperty(Property property) {
+        Property copy = copyOf(property);
+        return mutate(service -> service.upsertProperty(copy), result -> LogRecord.upsert(copy));
+    }
+
+    /**
+     * Changes the availability of a property and logs the change, see
+     * {@link PropertyService#setAvailability(String, boolean)}. Nothing is logged if there is no such property.
+     *
+     * @param id the id of the property
+     * @param available the new availability
+     * @return true if the property exists, false if there is no property with that id
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public boolean setAvailability(String id, boolean available) {
+        return mutate(service -> service.setAvailability(id, available),
+                found -> found ? LogRecord.availability(id, available) : null);
+    }
+
+    /**
+     * Removes a property and logs the change, see {@link PropertyService#removeProperty(String)}. Nothing is
+     * logged if there is no such property.
+     *
+     * @param id the id of the property to remove
+     * @return the removed property, or null if there is no property with that id
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public Property removeProperty(String id) {
+        return mutate(service -> service.removeProperty(id), removed -> removed != null ? LogRecord.remove(id) : null);
+    }
+
+    /**
+     * Rebuilds the distributions with new settings and logs the settings, see
+     * {@link PropertyService#configureDistributions(double, double, double)}.
+     *
+     * @param relativeAccuracy the relative accuracy of the quantile sketches
+     * @param priceBucketWidth the width of the price histogram buckets
+     * @param areaBucketWidth the width of the area histogram buckets
+     * @throws IllegalArgumentException if a setting is out of range
+     * @throws UncheckedIOException if the change cannot be logged
+     */
+    @Override
+    public void configureDistributions(double relativeAccuracy, double priceBucketWidth, double areaBucketWidth) {
+        mutate(service -> {
+            service.configureDistributions(relativeAccuracy, priceBucketWidth, areaBucketWidth);
+            return null;
+        }, result -> LogRecord.configureDistributions(relativeAccuracy, priceBucketWidth, areaBucketWidth));
+    }
+
+    /**
+     * Writes a checkpoint of the catalog and starts an empty log. Changes wait until the checkpoint is written;
+     * readers are not held up.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException {
+        mutationLock.lock();
+        try {
+            checkpointLocked();
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the log to the storage device and closes it. The catalog can still be queried, but changes are
+     * rejected with an {@link UncheckedIOException}.
+     *
+     * @throws IOException if the log cannot be forced or closed
+     */
+    @Override
+    public void close() throws IOException {
+        mutationLock.lock();
+        try {
+            log.close();
+            logger.info("Closed durable catalog " + directory + " at change " + log.lastSequence());
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times the log was forced to the storage device since the service was opened.
+     *
+     * @return the number of forces
+     */
+    long syncCount() {
+        return log.syncCount();
+    }
+
+    /**
+     * Applies a change and logs it while holding the mutation lock, then waits until the record is durable, outside
+     * the lock so that other changes can be logged meanwhile and share the next force.
+     * The record is appended after the change succeeded on the unpublished copy of the catalog and before that copy
+     * is published, so readers never see a change that is not in the log, and a change the log rejects is never
+     * published.
+     *
+     * @param change the change, applied to each copy of the catalog, which throws if it is rejected
+     * @param record builds the record of the change from its result, or returns null if nothing changed
+     * @param <T> the type of the result
+     * @return the result of the change
+     */
+    private <T> T mutate(Function<PropertyService, T> change, Function<T, LogRecord> record) {
+        long[] sequence = {-1};
+        T result;
+        mutationLock.lock();
+        try {
+            log.checkHealthy();
+            result = write(change, changed -> {
+                LogRecord logged = record.apply(changed);
+                if (logged != null) {
+                    try {
+                        sequence[0] = log.append(logged);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            if (sequence[0] >= 0 && log.size() >= checkpointBytes) {
+                checkpointLocked();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mutationLock.unlock();
+        }
+        long logged = sequence[0];
+        if (logged >= 0) {
+            try {
+                log.awaitDurable(logged);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves the catalog as the checkpoint of the last logged change, then replaces the log with an empty one and
+     * deletes older checkpoints. A crash in between leaves a checkpoint and a log that still holds the changes it
+     * contains, which recovery skips by their sequence numbers.
+     */
+    private void checkpointLocked() throws IOException {
+        long start = System.nanoTime();
+        long sequence = log.lastSequence();
+        saveSnapshot(checkpointFile(sequence));
+        log.reset();
+        deleteCheckpointsBefore(sequence);
+        logger.info("Wrote checkpoint at change " + sequence + " in " + (System.nanoTime() - start) / 1_000_000
+                + " ms");
+    }
+
+    /**
+     * Applies a replayed record to the catalog without logging it again.
+     */
+    private void replay(LogRecord record) {
+        switch (record.kind()) {
+            case ADD:
+                super.addProperty(record.property());
+                break;
+            case ADD_ALL:
+                super.addAll(record.properties());
+                break;
+            case UPSERT:
+                super.upsertProperty(record.property());
+                break;
+            case REMOVE:
+                super.removeProperty(record.id());
+                break;
+            case AVAILABILITY:
+                super.setAvailability(record.id(), record.available());
+                break;
+            default:
+                double[] settings = record.settings();
+                super.configureDistributions(settings[0], settings[1], settings[2]);
+        }
+    }
+
+    private Path checkpointFile(long sequence) {
+        return directory.resolve("checkpoint-" + sequence + ".snapshot");
+    }
+
+    private List<Path> checkpoints() throws IOException {
+        List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (CHECKPOINT_FILE.matcher(file.getFileName().toString()).matches()) {
+                    checkpoints.add(file);
+                }
+            }
+        }
+        return checkpoints;
+    }
+
+    private void deleteCheckpointsBefore(long sequence) throws IOException {
+        for (Path checkpoint : checkpoints()) {
+            if (sequenceOf(checkpoint) < sequence) {
+                Files.delete(checkpoint);
+            }
+        }
+    }
+
+    private static long sequenceOf(Path checkpoint) {
+        Matcher matcher = CHECKPOINT_FILE.matcher(checkpoint.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
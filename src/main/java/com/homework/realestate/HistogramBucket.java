@@ -0,0 +1,61 @@
+package com.homework.realestate;
+
+/**
+ * One bucket of a fixed-width histogram: the number of values in {@code [lowerBound, upperBound)}.
+ */
+public final class HistogramBucket {
+
+    private final double lowerBound;
+    private final double upperBound;
+    private final long count;
+
+    /**
+     * Creates a histogram bucket.
+     *
+     * @param lowerBound the lowest value in the bucket (inclusive)
+     * @param upperBound the end of the bucket (exclusive)
+     * @param count the number of values in the bucket
+     */
+    HistogramBucket(double lowerBound, double upperBound, long count) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.count = count;
+    }
+
+    /**
+     * Gets the lower bound of the bucket.
+     *
+     * @return the lowest value in the bucket (inclusive)
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Gets the upper bound of the bucket.
+     *
+     * @return the end of the bucket (exclusive)
+     */
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Gets the number of values in the bucket.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns a string representation of the bucket.
+     *
+     * @return the range and count of the bucket
+     */
+    @Override
+    public String toString() {
+        return "[" + lowerBound + ", " + upperBound + "): " + count;
+    }
+}
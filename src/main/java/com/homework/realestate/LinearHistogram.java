@@ -0,0 +1,119 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Histogram with a fixed number of fixed-width buckets {@code [k * width, (k + 1) * width)} starting at 0, that
+ * supports removals. Values below 0 are counted in an underflow bucket and values beyond the last bucket in an
+ * overflow bucket, so outliers cannot make the histogram grow.
+ */
+final class LinearHistogram {
+
+    /** Number of regular buckets. */
+    static final int BUCKET_COUNT = 1000;
+
+    private static final int UNDERFLOW = -1;
+    private static final int OVERFLOW = BUCKET_COUNT;
+
+    private final double width;
+    private BucketCounts buckets = new BucketCounts();
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param width the width of every bucket, greater than 0
+     */
+    LinearHistogram(double width) {
+        this.width = width;
+    }
+
+    /**
+     * Reads a histogram written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param width the bucket width the histogram was created with
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    LinearHistogram(double width, SnapshotInput input) throws IOException {
+        this.width = width;
+        this.buckets = new BucketCounts(input);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     */
+    void add(double value) {
+        buckets.add(indexOf(value), 1);
+    }
+
+    /**
+     * Removes a value that was added before.
+     *
+     * @param value the value
+     */
+    void remove(double value) {
+        buckets.add(indexOf(value), -1);
+    }
+
+    /**
+     * Lists the buckets from the lowest to the highest non-empty one, including the empty buckets in between.
+     *
+     * @return the buckets, empty if the histogram holds no values
+     */
+    List<HistogramBucket> buckets() {
+        int first = buckets.firstIndex();
+        int last = buckets.lastIndex();
+        while (first <= last && buckets.get(first) == 0) {
+            first++;
+        }
+        while (last >= first && buckets.get(last) == 0) {
+            last--;
+        }
+        List<HistogramBucket> result = new ArrayList<>(Math.max(0, last - first + 1));
+        for (int index = first; index <= last; index++) {
+            double lowerBound = index == UNDERFLOW ? Double.NEGATIVE_INFINITY : index * width;
+            double upperBound = index == OVERFLOW ? Double.POSITIVE_INFINITY : (index + 1) * width;
+            result.add(new HistogramBucket(lowerBound, upperBound, buckets.get(index)));
+        }
+        return result;
+    }
+
+    /**
+     * Adds every value of another histogram with the same bucket width to this one.
+     *
+     * @param other the histogram to merge
+     */
+    void mergeFrom(LinearHistogram other) {
+        buckets.addAll(other.buckets);
+    }
+
+    /**
+     * Copies the histogram.
+     *
+     * @return an independent copy
+     */
+    LinearHistogram copy() {
+        LinearHistogram copy = new LinearHistogram(width);
+        copy.buckets = buckets.copy();
+        return copy;
+    }
+
+    /**
+     * Writes the counters of the histogram to a snapshot. The bucket width is left to the owner.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        buckets.writeTo(output);
+    }
+
+    private int indexOf(double value) {
+        double index = Math.floor(value / width);
+        return (int) Math.max(UNDERFLOW, Math.min(OVERFLOW, index));
+    }
+}
@@ -0,0 +1,28 @@
+package com.homework.realestate;
+
+/**
+ * File formats understood by {@link PropertyListings}. Files are UTF-8 encoded with one listing per line; lines
+ * may end with {@code \n} or {@code \r\n}, and blank lines are ignored.
+ */
+public enum ListingFormat {
+
+    /**
+     * Comma-separated values with the columns
+     * {@code id,address,type,price,area,bedrooms,bathrooms,available,latitude,longitude}, in that order, and an
+     * optional header line naming them. Fields containing a comma, a quote or a line break are enclosed in double
+     * quotes, with quotes doubled. An empty unquoted field is a null address or type, or an unknown coordinate,
+     * while {@code ""} is an empty address. Prices are plain decimals such as {@code 500000.00}; availability is
+     * {@code true} or {@code false}. Lines with only the first eight columns are read as properties without a
+     * location.
+     */
+    CSV,
+
+    /**
+     * JSON Lines: one flat JSON object per line, for example
+     * {@code {"id":"1","address":"123 Main St","type":"HOUSE","price":500000.00,"area":2000.0,"bedrooms":4,
+     * "bathrooms":3,"available":true,"latitude":40.7128,"longitude":-74.006}}. Keys may come in any order,
+     * {@code address}, {@code type} and the coordinates may be null or missing, and unknown keys with scalar
+     * values are skipped.
+     */
+    JSON_LINES
+}
@@ -0,0 +1,728 @@
+package com.homework.realestate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streaming parser of listing files in one of the {@link ListingFormat}s.
+ * Bytes are read from a channel into a reusable buffer and parsed in place: records are located by scanning for
+ * line breaks, numbers are accumulated digit by digit into primitives, property types and JSON keys are matched
+ * byte by byte, and the only strings created are the id and address of each property. Memory stays bounded by
+ * the buffer, which only grows when a single record does not fit in it.
+ */
+final class ListingReader implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ListingReader.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int CSV_FIELDS = 10;
+    /** Number of CSV fields of files written before properties had a location. */
+    private static final int CSV_FIELDS_WITHOUT_LOCATION = 8;
+    private static final PropertyType[] TYPES = PropertyType.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+    private static final byte[] CSV_HEADER_START = ascii("id,");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] NULL = ascii("null");
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    private static final int KEY_ID = 0;
+    private static final int KEY_ADDRESS = 1;
+    private static final int KEY_TYPE = 2;
+    private static final int KEY_PRICE = 3;
+    private static final int KEY_AREA = 4;
+    private static final int KEY_BEDROOMS = 5;
+    private static final int KEY_BATHROOMS = 6;
+    private static final int KEY_AVAILABLE = 7;
+    private static final int KEY_LATITUDE = 8;
+    private static final int KEY_LONGITUDE = 9;
+    private static final byte[][] KEYS = {ascii("id"), ascii("address"), ascii("type"), ascii("price"),
+            ascii("area"), ascii("bedrooms"), ascii("bathrooms"), ascii("available"), ascii("latitude"),
+            ascii("longitude")};
+    private static final int REQUIRED_KEYS = 1 << KEY_ID | 1 << KEY_PRICE | 1 << KEY_AREA | 1 << KEY_BEDROOMS
+            | 1 << KEY_BATHROOMS | 1 << KEY_AVAILABLE;
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_NAMES[i] = ascii(TYPES[i].name());
+        }
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final ListingFormat format;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private ByteBuffer window = ByteBuffer.wrap(buffer);
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private long nextLine = 1;
+    private long line;
+
+    private final int[] fieldStarts = new int[CSV_FIELDS];
+    private final int[] fieldEnds = new int[CSV_FIELDS];
+    private final boolean[] fieldQuoted = new boolean[CSV_FIELDS];
+    private final boolean[] fieldEscaped = new boolean[CSV_FIELDS];
+
+    private int cursor;
+    private int recordEnd;
+    private int tokenStart;
+    private int tokenEnd;
+    private boolean tokenEscaped;
+
+    /**
+     * Creates a reader.
+     *
+     * @param channel the channel to read, closed by {@link #close()}
+     * @param format the format of the content
+     */
+    ListingReader(ReadableByteChannel channel, ListingFormat format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    /**
+     * Parses the next listing.
+     *
+     * @return the property, or null at the end of the input
+     * @throws IOException if the channel cannot be read
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    Property next() throws IOException {
+        while (true) {
+            line = nextLine;
+            int end = findRecordEnd();
+            if (end < 0) {
+                return null;
+            }
+            int from = position;
+            int to = end > from && buffer[end - 1] == '\r' ? end - 1 : end;
+            position = end < limit ? end + 1 : end;
+            if (isBlank(from, to)) {
+                continue;
+            }
+            if (format == ListingFormat.CSV) {
+                if (line == 1 && startsWith(from, to, CSV_HEADER_START)) {
+                    continue;
+                }
+                return parseCsv(from, to);
+            }
+            return parseJson(from, to);
+        }
+    }
+
+    /**
+     * Closes the channel.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Finds the line break ending the record that starts at the current position, reading more input as needed.
+     * Line breaks inside quoted CSV fields belong to the field.
+     *
+     * @return the index of the line break, the end of the input for a last record without one, or -1 if there
+     *         are no more records
+     */
+    private int findRecordEnd() throws IOException {
+        boolean csv = format == ListingFormat.CSV;
+        boolean quoted = false;
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+                if (b == '\n') {
+                    nextLine++;
+                    if (!quoted) {
+                        return scan;
+                    }
+                } else if (b == '"' && csv) {
+                    quoted = !quoted;
+                }
+            }
+            if (endOfInput) {
+                return position < limit ? limit : -1;
+            }
+            scan -= position;
+            compact();
+            fill();
+        }
+    }
+
+    private void compact() {
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        if (limit == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+            window = ByteBuffer.wrap(buffer);
+        }
+    }
+
+    private void fill() throws IOException {
+        window.limit(buffer.length).position(limit);
+        int read = channel.read(window);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private Property parseCsv(int from, int to) {
+        int field = 0;
+        int i = from;
+        while (true) {
+            if (field == CSV_FIELDS) {
+                throw invalid("more than " + CSV_FIELDS + " fields");
+            }
+            boolean escaped = false;
+            if (i < to && buffer[i] == '"') {
+                int start = ++i;
+                while (true) {
+                    if (i >= to) {
+                        throw invalid("unterminated quoted field");
+                    }
+                    if (buffer[i] == '"') {
+                        if (i + 1 < to && buffer[i + 1] == '"') {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fieldStarts[field] = start;
+                fieldEnds[field] = i++;
+                fieldQuoted[field] = true;
+                if (i < to && buffer[i] != ',') {
+                    throw invalid("unexpected character after a quoted field");
+                }
+            } else {
+                fieldStarts[field] = i;
+                while (i < to && buffer[i] != ',') {
+                    i++;
+                }
+                fieldEnds[field] = i;
+                fieldQuoted[field] = false;
+            }
+            fieldEscaped[field] = escaped;
+            field++;
+            if (i >= to) {
+                break;
+            }
+            i++;
+        }
+        if (field != CSV_FIELDS && field != CSV_FIELDS_WITHOUT_LOCATION) {
+            throw invalid("expected " + CSV_FIELDS + " fields but found " + field);
+        }
+        boolean located = field == CSV_FIELDS && fieldStarts[8] < fieldEnds[8];
+        return new Property(csvString(0), csvString(1), csvType(2),
+                parseDecimal(fieldStarts[3], fieldEnds[3], "price"),
+                parseDouble(fieldStarts[4], fieldEnds[4], "area"),
+                parseInt(fieldStarts[5], fieldEnds[5], "bedrooms"),
+                parseInt(fieldStarts[6], fieldEnds[6], "bathrooms"),
+                parseBoolean(fieldStarts[7], fieldEnds[7], "available"),
+                located ? parseDouble(fieldStarts[8], fieldEnds[8], "latitude") : Double.NaN,
+                located ? parseDouble(fieldStarts[9], fieldEnds[9], "longitude") : Double.NaN);
+    }
+
+    private String csvString(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        if (!fieldQuoted[field]) {
+            return start == end ? null : new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        if (!fieldEscaped[field]) {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] unescaped = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            unescaped[length++] = buffer[i];
+            if (buffer[i] == '"') {
+                i++;
+            }
+        }
+        return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private PropertyType csvType(int field) {
+        if (!fieldQuoted[field] && fieldStarts[field] == fieldEnds[field]) {
+            return null;
+        }
+        return parseType(fieldStarts[field], fieldEnds[field]);
+    }
+
+    private Property parseJson(int from, int to) {
+        cursor = from;
+        recordEnd = to;
+        skipWhitespace();
+        expect('{');
+        String id = null;
+        String address = null;
+        PropertyType type = null;
+        BigDecimal price = null;
+        double area = 0;
+        int bedrooms = 0;
+        int bathrooms = 0;
+        boolean available = false;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        int seen = 0;
+        skipWhitespace();
+        if (peek() == '}') {
+            cursor++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                scanString();
+                int key = tokenEscaped ? -1 : matchKey(tokenStart, tokenEnd);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (key >= 0) {
+                    seen |= 1 << key;
+                }
+                switch (key) {
+                    case KEY_ID:
+                        id = stringOrNull();
+                        break;
+                    case KEY_ADDRESS:
+                        address = stringOrNull();
+                        break;
+                    case KEY_TYPE:
+                        type = typeOrNull();
+                        break;
+                    case KEY_PRICE:
+                        scanNumber();
+                        price = parseDecimal(tokenStart, tokenEnd, "price");
+                        break;
+                    case KEY_AREA:
+                        scanNumber();
+                        area = parseDouble(tokenStart, tokenEnd, "area");
+                        break;
+                    case KEY_BEDROOMS:
+                        scanNumber();
+                        bedrooms = parseInt(tokenStart, tokenEnd, "bedrooms");
+                        break;
+                    case KEY_BATHROOMS:
+                        scanNumber();
+                        bathrooms = parseInt(tokenStart, tokenEnd, "bathrooms");
+                        break;
+                    case KEY_AVAILABLE:
+                        scanLiteral();
+                        available = parseBoolean(tokenStart, tokenEnd, "available");
+                        break;
+                    case KEY_LATITUDE:
+                        latitude = coordinateOrNaN("latitude");
+                        break;
+                    case KEY_LONGITUDE:
+                        longitude = coordinateOrNaN("longitude");
+                        break;
+                    default:
+                        skipScalar();
+                        break;
+                }
+                skipWhitespace();
+                byte separator = peek();
+                cursor++;
+                if (separator == '}') {
+                    break;
+                }
+                if (separator != ',') {
+                    throw invalid("expected ',' or '}'");
+                }
+            }
+        }
+        skipWhitespace();
+        if (cursor < recordEnd) {
+            throw invalid("unexpected content after the object");
+        }
+        if ((seen & REQUIRED_KEYS) != REQUIRED_KEYS) {
+            for (int key = 0; key < KEYS.length; key++) {
+                if ((REQUIRED_KEYS & ~seen & 1 << key) != 0) {
+                    throw invalid("missing \"" + new String(KEYS[key], StandardCharsets.US_ASCII) + "\"");
+                }
+            }
+        }
+        return new Property(id, address, type, price, area, bedrooms, bathrooms, available, latitude, longitude);
+    }
+
+    private double coordinateOrNaN(String field) {
+        if (isLiteral(NULL)) {
+            return Double.NaN;
+        }
+        scanNumber();
+        return parseDouble(tokenStart, tokenEnd, field);
+    }
+
+    private String stringOrNull() {
+        if (isLiteral(NULL)) {
+            return null;
+        }
+        scanString();
+        if (!tokenEscaped) {
+            return new String(buffer, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+        }
+        return unescapeJson(tokenStart, tokenEnd);
+    }
+
+    private PropertyType typeOrNull() {
+        if (isLiteral(NULL)) {
+            return null;
+        }
+        scanString();
+        if (!tokenEscaped) {
+            return parseType(tokenStart, tokenEnd);
+        }
+        String name = unescapeJson(tokenStart, tokenEnd);
+        for (PropertyType candidate : TYPES) {
+            if (candidate.name().equals(name)) {
+                return candidate;
+            }
+        }
+        throw invalid("unknown property type");
+    }
+
+    /**
+     * Scans the JSON string starting at the cursor and leaves its content bounds in the token fields.
+     */
+    private void scanString() {
+        expect('"');
+        tokenStart = cursor;
+        tokenEscaped = false;
+        while (true) {
+            if (cursor >= recordEnd) {
+                throw invalid("unterminated string");
+            }
+            byte b = buffer[cursor];
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                tokenEscaped = true;
+                cursor++;
+            }
+            cursor++;
+        }
+        tokenEnd = cursor++;
+    }
+
+    private void scanNumber() {
+        tokenStart = cursor;
+        while (cursor < recordEnd && isNumberByte(buffer[cursor])) {
+            cursor++;
+        }
+        tokenEnd = cursor;
+    }
+
+    private void scanLiteral() {
+        tokenStart = cursor;
+        while (cursor < recordEnd && buffer[cursor] >= 'a' && buffer[cursor] <= 'z') {
+            cursor++;
+        }
+        tokenEnd = cursor;
+    }
+
+    private void skipScalar() {
+        byte b = peek();
+        if (b == '"') {
+            scanString();
+        } else if (b == '{' || b == '[') {
+            throw invalid("nested values are not supported");
+        } else if (b >= 'a' && b <= 'z') {
+            scanLiteral();
+        } else {
+            scanNumber();
+        }
+        if (tokenStart == tokenEnd && b != '"') {
+            throw invalid("expected a value");
+        }
+    }
+
+    private boolean isLiteral(byte[] literal) {
+        if (cursor + literal.length <= recordEnd && startsWith(cursor, recordEnd, literal)
+                && (cursor + literal.length == recordEnd || !isNumberByte(buffer[cursor + literal.length]))) {
+            cursor += literal.length;
+            return true;
+        }
+        return false;
+    }
+
+    private String unescapeJson(int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int run = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != '\\') {
+                continue;
+            }
+            value.append(new String(buffer, run, i - run, StandardCharsets.UTF_8));
+            byte escape = buffer[++i];
+            switch (escape) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw invalid("truncated unicode escape");
+                    }
+                    int code = 0;
+                    for (int digit = 1; digit <= 4; digit++) {
+                        int hex = Character.digit(buffer[i + digit], 16);
+                        if (hex < 0) {
+                            throw invalid("invalid unicode escape");
+                        }
+                        code = code * 16 + hex;
+                    }
+                    value.append((char) code);
+                    i += 4;
+                    break;
+                default:
+                    value.append((char) escape);
+                    break;
+            }
+            run = i + 1;
+        }
+        value.append(new String(buffer, run, end - run, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+
+    private void skipWhitespace() {
+        while (cursor < recordEnd && (buffer[cursor] == ' ' || buffer[cursor] == '\t' || buffer[cursor] == '\r')) {
+            cursor++;
+        }
+    }
+
+    private byte peek() {
+        if (cursor >= recordEnd) {
+            throw invalid("unexpected end of line");
+        }
+        return buffer[cursor];
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw invalid("expected '" + expected + "'");
+        }
+        cursor++;
+    }
+
+    private int matchKey(int start, int end) {
+        for (int key = 0; key < KEYS.length; key++) {
+            if (equalsAscii(start, end, KEYS[key])) {
+                return key;
+            }
+        }
+        return -1;
+    }
+
+    private PropertyType parseType(int start, int end) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (equalsAscii(start, end, TYPE_NAMES[i])) {
+                return TYPES[i];
+            }
+        }
+        throw invalid("unknown property type \"" + new String(buffer, start, end - start, StandardCharsets.UTF_8)
+                + "\"");
+    }
+
+    /**
+     * Parses a plain decimal into a {@link BigDecimal} by accumulating its digits into an unscaled long, falling
+     * back to the {@link BigDecimal} parser for exponents and for more than 18 digits.
+     */
+    private BigDecimal parseDecimal(int start, int end, String field) {
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) {
+            i++;
+        }
+        long unscaled = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    return parseBigDecimal(start, end, field);
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else if (b == 'e' || b == 'E') {
+                return parseBigDecimal(start, end, field);
+            } else {
+                throw invalid("invalid " + field);
+            }
+        }
+        if (digits == 0) {
+            throw invalid("missing " + field);
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private BigDecimal parseBigDecimal(int start, int end, String field) {
+        try {
+            return new BigDecimal(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw invalid("invalid " + field);
+        }
+    }
+
+    /**
+     * Parses a decimal into a double. Decimals with at most 15 significant digits and 22 fraction digits are
+     * converted with a single division of exactly representable values, which is correctly rounded; anything
+     * else goes through {@link Double#parseDouble(String)}, which also accepts {@code NaN}, {@code Infinity} and
+     * exponents too large for a double, so its result is checked to be finite.
+     */
+    private double parseDouble(int start, int end, String field) {
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 15) {
+                    return parseDoubleSlowly(start, end, field);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return parseDoubleSlowly(start, end, field);
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseDoubleSlowly(start, end, field);
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(int start, int end, String field) {
+        double value;
+        try {
+            value = Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw invalid("invalid " + field);
+        }
+        if (!Double.isFinite(value)) {
+            throw invalid("invalid " + field);
+        }
+        return value;
+    }
+
+    private int parseInt(int start, int end, String field) {
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 10) {
+            throw invalid("invalid " + field);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                throw invalid("invalid " + field);
+            }
+            value = value * 10 + (b - '0');
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalid(field + " out of range");
+        }
+        return (int) value;
+    }
+
+    private boolean parseBoolean(int start, int end, String field) {
+        if (equalsAscii(start, end, TRUE)) {
+            return true;
+        }
+        if (equalsAscii(start, end, FALSE)) {
+            return false;
+        }
+        throw invalid("invalid " + field);
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsAscii(int start, int end, byte[] expected) {
+        return end - start == expected.length && startsWith(start, end, expected);
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        String message = "Invalid " + format + " listing at line " + line + ": " + reason;
+        logger.log(Level.SEVERE, message);
+        return new IllegalArgumentException(message);
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
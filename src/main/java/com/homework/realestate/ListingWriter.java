@@ -0,0 +1,294 @@
+package com.homework.realestate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streaming writer of listing files in one of the {@link ListingFormat}s.
+ * Rows are encoded straight from a {@link PropertyView} into a reusable byte buffer that is written to the
+ * channel whenever it fills up. Prices are written from their scaled value and counts digit by digit, so apart
+ * from the id and address strings read from the view, writing a row allocates only for the area and the
+ * coordinates. Properties without a location get empty CSV coordinates and no JSON coordinate keys. Infinite and
+ * NaN areas or coordinates have no JSON number and would not be read back, so they are refused.
+ */
+final class ListingWriter implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ListingWriter.class.getName());
+    private static final int BUFFER_SIZE = 1 << 20;
+    /** Largest number of bytes a single encoded character can take, a JSON {@code \}{@code u0000} escape. */
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String CSV_HEADER =
+            "id,address,type,price,area,bedrooms,bathrooms,available,latitude,longitude\n";
+
+    private final WritableByteChannel channel;
+    private final ListingFormat format;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer window = ByteBuffer.wrap(buffer);
+    private final byte[] digits = new byte[20];
+    private int size;
+
+    /**
+     * Creates a writer. CSV output starts with a header line.
+     *
+     * @param channel the channel to write to, closed by {@link #close()}
+     * @param format the format to write
+     * @throws IOException if the channel cannot be written
+     */
+    ListingWriter(WritableByteChannel channel, ListingFormat format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        if (format == ListingFormat.CSV) {
+            writeAscii(CSV_HEADER);
+        }
+    }
+
+    /**
+     * Writes the property shown by a view as one line.
+     *
+     * @param view the view
+     * @throws IOException if the channel cannot be written
+     * @throws IllegalArgumentException if the area or a coordinate is infinite or NaN; nothing of the property
+     *         is written then
+     */
+    void write(PropertyView view) throws IOException {
+        boolean located = !Double.isNaN(view.getLatitude());
+        checkFinite(view, view.getArea(), "area");
+        if (located) {
+            checkFinite(view, view.getLatitude(), "latitude");
+            checkFinite(view, view.getLongitude(), "longitude");
+        }
+        if (size > buffer.length / 2) {
+            flush();
+        }
+        if (format == ListingFormat.CSV) {
+            writeCsvString(view.getId());
+            writeByte(',');
+            writeCsvString(view.getAddress());
+            writeByte(',');
+            if (view.getType() != null) {
+                writeAscii(view.getType().name());
+            }
+            writeByte(',');
+            writeScaled(view.getPriceInCents());
+            writeByte(',');
+            writeAscii(Double.toString(view.getArea()));
+            writeByte(',');
+            writeLong(view.getBedrooms());
+            writeByte(',');
+            writeLong(view.getBathrooms());
+            writeByte(',');
+            writeAscii(view.isAvailable() ? "true" : "false");
+            writeByte(',');
+            if (located) {
+                writeAscii(Double.toString(view.getLatitude()));
+                writeByte(',');
+                writeAscii(Double.toString(view.getLongitude()));
+            } else {
+                writeByte(',');
+            }
+        } else {
+            writeAscii("{\"id\":");
+            writeJsonString(view.getId());
+            writeAscii(",\"address\":");
+            writeJsonString(view.getAddress());
+            writeAscii(",\"type\":");
+            writeJsonString(view.getType() != null ? view.getType().name() : null);
+            writeAscii(",\"price\":");
+            writeScaled(view.getPriceInCents());
+            writeAscii(",\"area\":");
+            writeAscii(Double.toString(view.getArea()));
+            writeAscii(",\"bedrooms\":");
+            writeLong(view.getBedrooms());
+            writeAscii(",\"bathrooms\":");
+            writeLong(view.getBathrooms());
+            writeAscii(view.isAvailable() ? ",\"available\":true" : ",\"available\":false");
+            if (located) {
+                writeAscii(",\"latitude\":");
+                writeAscii(Double.toString(view.getLatitude()));
+                writeAscii(",\"longitude\":");
+                writeAscii(Double.toString(view.getLongitude()));
+            }
+            writeByte('}');
+        }
+        writeByte('\n');
+    }
+
+    /**
+     * Writes the buffered bytes and closes the channel.
+     *
+     * @throws IOException if the channel cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void checkFinite(PropertyView view, double value, String field) {
+        if (!Double.isFinite(value)) {
+            String message = "Invalid " + format + " listing for property " + view.getId() + ": invalid " + field
+                    + " " + value;
+            logger.log(Level.SEVERE, message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private void flush() throws IOException {
+        window.clear().limit(size);
+        while (window.hasRemaining()) {
+            channel.write(window);
+        }
+        size = 0;
+    }
+
+    private void writeCsvString(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            writeByte('"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                ensure(2);
+                buffer[size++] = '"';
+                buffer[size++] = '"';
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        if (quote) {
+            writeByte('"');
+        }
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(MAX_CHAR_BYTES);
+                buffer[size++] = '\\';
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = (byte) HEX[c >> 4];
+                buffer[size++] = (byte) HEX[c & 0xf];
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * Writes the character at an index in UTF-8, together with the next one if they form a surrogate pair.
+     *
+     * @return the index of the last character written
+     */
+    private int writeChar(String value, int index) throws IOException {
+        ensure(MAX_CHAR_BYTES);
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            buffer[size++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[size++] = (byte) (0xc0 | c >> 6);
+            buffer[size++] = (byte) (0x80 | c & 0x3f);
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer[size++] = (byte) (0xf0 | codePoint >> 18);
+            buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            buffer[size++] = (byte) (0x80 | codePoint & 0x3f);
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            buffer[size++] = '?';
+        } else {
+            buffer[size++] = (byte) (0xe0 | c >> 12);
+            buffer[size++] = (byte) (0x80 | c >> 6 & 0x3f);
+            buffer[size++] = (byte) (0x80 | c & 0x3f);
+        }
+        return index;
+    }
+
+    /**
+     * Writes a price in cents as a plain decimal with two decimal places.
+     */
+    private void writeScaled(long cents) throws IOException {
+        if (cents == Long.MIN_VALUE) {
+            writeAscii(Prices.fromScaled(cents).toPlainString());
+            return;
+        }
+        if (cents < 0) {
+            writeByte('-');
+            cents = -cents;
+        }
+        writeLong(cents / 100);
+        long fraction = cents % 100;
+        ensure(3);
+        buffer[size++] = '.';
+        buffer[size++] = (byte) ('0' + fraction / 10);
+        buffer[size++] = (byte) ('0' + fraction % 10);
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        ensure(count);
+        while (count > 0) {
+            buffer[size++] = digits[--count];
+        }
+    }
+
+    private void writeAscii(String value) throws IOException {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        ensure(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (size + bytes > buffer.length) {
+            flush();
+        }
+    }
+}
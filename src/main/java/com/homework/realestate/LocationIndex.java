@@ -0,0 +1,248 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Spatial index of the rows of a property table that have a location.
+ * Latitude and longitude are each quantized to 31 bits and their bits interleaved into a Z-order (Morton) code,
+ * so that points close to each other mostly get close codes. The codes are kept in a {@link PriceIndex}, whose
+ * sorted runs serve any long key, and a box is looked up as a handful of code ranges: the box is covered by the
+ * smallest grid of aligned Z-order cells that needs at most {@value #MAX_CELLS} of them, and each cell is one
+ * contiguous range of codes. The cells stick out of the box by less than one cell on every side, so the rows
+ * found are candidates that still have to be checked against the exact box or circle.
+ */
+final class LocationIndex {
+
+    /** Largest number of Z-order cells a box lookup is split into. */
+    private static final int MAX_CELLS = 64;
+
+    private static final int BITS = 31;
+    private static final long CELLS_PER_AXIS = 1L << BITS;
+    private static final int[] NO_ROWS = new int[0];
+
+    private PriceIndex codes;
+
+    /**
+     * Creates an empty index.
+     */
+    LocationIndex() {
+        codes = new PriceIndex();
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    LocationIndex(SnapshotInput input) throws IOException {
+        codes = new PriceIndex(input);
+    }
+
+    /**
+     * Computes the Z-order code of a location.
+     *
+     * @param latitude the latitude, between -90 and 90
+     * @param longitude the longitude, between -180 and 180
+     * @return the code, a non-negative number of 62 bits
+     */
+    static long code(double latitude, double longitude) {
+        return interleave(quantize(longitude, 360), quantize(latitude, 180));
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param code the Z-order code of the location stored in the row
+     * @param row the row
+     */
+    void add(long code, int row) {
+        codes.add(code, row);
+    }
+
+    /**
+     * Adds many rows in one sort and merge pass.
+     *
+     * @param entryCodes the Z-order codes
+     * @param entryRows the row of each code
+     * @param count the number of entries to take from the arrays
+     */
+    void addAll(long[] entryCodes, int[] entryRows, int count) {
+        codes.addAll(entryCodes, entryRows, count);
+    }
+
+    /**
+     * Replaces the content of the index with the given rows.
+     *
+     * @param entryCodes the Z-order codes
+     * @param entryRows the row of each code
+     * @param count the number of entries to take from the arrays
+     */
+    void load(long[] entryCodes, int[] entryRows, int count) {
+        codes = new PriceIndex();
+        codes.load(entryCodes, entryRows, count);
+    }
+
+    /**
+     * Removes a row.
+     *
+     * @param code the Z-order code the row was added with
+     * @param row the row
+     */
+    void remove(long code, int row) {
+        codes.remove(code, row);
+    }
+
+    /**
+     * Counts the rows in the cells covering a box, without visiting them.
+     *
+     * @param box the box, see {@link Locations}
+     * @return an upper bound of the number of rows in the box
+     */
+    int estimateInBox(double[] box) {
+        long[] ranges = cover(box);
+        long count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            count += codes.estimateInRange(ranges[i], ranges[i + 1]);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    /**
+     * Finds the rows in the cells covering a box.
+     *
+     * @param box the box, see {@link Locations}
+     * @return the candidate rows in ascending order, a superset of the rows in the box
+     */
+    int[] rowsInBox(double[] box) {
+        long[] ranges = cover(box);
+        int[][] found = new int[ranges.length / 2][];
+        int total = 0;
+        for (int i = 0; i < found.length; i++) {
+            found[i] = codes.rowsInRange(ranges[2 * i], ranges[2 * i + 1]);
+            total += found[i].length;
+        }
+        if (found.length == 1) {
+            return found[0];
+        }
+        int[] rows = total == 0 ? NO_ROWS : new int[total];
+        int count = 0;
+        for (int[] part : found) {
+            System.arraycopy(part, 0, rows, count, part.length);
+            count += part.length;
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Writes the index to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        codes.writeTo(output);
+    }
+
+    /**
+     * Covers a box with Z-order cells and merges cells with overlapping or consecutive codes. A box crossing the
+     * antimeridian is covered as its two halves. The cells of one half never overlap, but a wide box gets coarse
+     * cells for both halves, and a coarse cell at the edge of one half can contain cells of the other, so the two
+     * sorted lists are merged pair by pair and overlapping ranges are joined.
+     *
+     * @return the inclusive code ranges, as pairs of lowest and highest code in ascending order, none overlapping
+     */
+    private static long[] cover(double[] box) {
+        int minY = quantize(box[0], 180);
+        int maxY = quantize(box[2], 180);
+        int minX = quantize(box[1], 360);
+        int maxX = quantize(box[3], 360);
+        long[] ranges;
+        if (minX <= maxX) {
+            ranges = cells(minX, maxX, minY, maxY, MAX_CELLS);
+            Arrays.sort(ranges);
+        } else {
+            long[] east = cells(minX, (int) (CELLS_PER_AXIS - 1), minY, maxY, MAX_CELLS / 2);
+            long[] west = cells(0, maxX, minY, maxY, MAX_CELLS / 2);
+            Arrays.sort(east);
+            Arrays.sort(west);
+            ranges = mergePairs(east, west);
+        }
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (count > 0 && ranges[i] <= ranges[count - 1] + 1) {
+                ranges[count - 1] = Math.max(ranges[count - 1], ranges[i + 1]);
+            } else {
+                ranges[count++] = ranges[i];
+                ranges[count++] = ranges[i + 1];
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Merges two lists of code ranges, each sorted by lowest code, into one list sorted by lowest code, keeping
+     * every pair together.
+     */
+    private static long[] mergePairs(long[] first, long[] second) {
+        long[] merged = new long[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] <= second[j])) {
+                merged[count++] = first[i++];
+                merged[count++] = first[i++];
+            } else {
+                merged[count++] = second[j++];
+                merged[count++] = second[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Lists the code ranges of the aligned cells covering a grid rectangle, using the finest cell size that
+     * needs at most the given number of cells. The ranges of distinct cells do not overlap, so sorting the
+     * flattened pairs keeps every pair together.
+     */
+    private static long[] cells(int minX, int maxX, int minY, int maxY, int maxCells) {
+        int shift = 0;
+        while (((long) (maxX >>> shift) - (minX >>> shift) + 1) * ((long) (maxY >>> shift) - (minY >>> shift) + 1)
+                > maxCells) {
+            shift++;
+        }
+        int columns = (maxX >>> shift) - (minX >>> shift) + 1;
+        int rows = (maxY >>> shift) - (minY >>> shift) + 1;
+        long[] ranges = new long[2 * columns * rows];
+        int count = 0;
+        for (int x = minX >>> shift; x <= maxX >>> shift; x++) {
+            for (int y = minY >>> shift; y <= maxY >>> shift; y++) {
+                long first = interleave(x, y) << (2 * shift);
+                ranges[count++] = first;
+                ranges[count++] = first + (1L << (2 * shift)) - 1;
+            }
+        }
+        return ranges;
+    }
+
+    private static int quantize(double degrees, double span) {
+        long cell = (long) Math.floor((degrees + span / 2) / span * CELLS_PER_AXIS);
+        return (int) Math.max(0, Math.min(CELLS_PER_AXIS - 1, cell));
+    }
+
+    private static long interleave(int x, int y) {
+        return spread(x) | spread(y) << 1;
+    }
+
+    private static long spread(int value) {
+        long bits = value & 0xFFFFFFFFL;
+        bits = (bits | bits << 16) & 0x0000FFFF0000FFFFL;
+        bits = (bits | bits << 8) & 0x00FF00FF00FF00FFL;
+        bits = (bits | bits << 4) & 0x0F0F0F0F0F0F0F0FL;
+        bits = (bits | bits << 2) & 0x3333333333333333L;
+        return (bits | bits << 1) & 0x5555555555555555L;
+    }
+}
@@ -0,0 +1,92 @@
+package com.homework.realestate;
+
+/**
+ * Geometry on WGS 84 latitude and longitude coordinates in degrees, on a spherical earth.
+ * Boxes are given as {@code {minLatitude, minLongitude, maxLatitude, maxLongitude}}; a box whose minimum
+ * longitude is greater than its maximum crosses the antimeridian, the line of longitude 180.
+ */
+final class Locations {
+
+    /** Mean radius of the earth in kilometres. */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Distance between antipodes in kilometres, the largest distance between two points. */
+    static final double MAX_DISTANCE_KM = Math.PI * EARTH_RADIUS_KM;
+
+    private Locations() {
+    }
+
+    /**
+     * Checks a pair of coordinates.
+     *
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @return true if the latitude is within -90 to 90 and the longitude within -180 to 180
+     */
+    static boolean isValid(double latitude, double longitude) {
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    /**
+     * Computes the great-circle distance between two points with the haversine formula.
+     *
+     * @param latitude1 the latitude of the first point
+     * @param longitude1 the longitude of the first point
+     * @param latitude2 the latitude of the second point
+     * @param longitude2 the longitude of the second point
+     * @return the distance in kilometres
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Checks whether a point lies in a box, edges included.
+     *
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param box the box
+     * @return true if the point lies in the box
+     */
+    static boolean inBox(double latitude, double longitude, double[] box) {
+        if (latitude < box[0] || latitude > box[2]) {
+            return false;
+        }
+        return box[1] <= box[3]
+                ? longitude >= box[1] && longitude <= box[3]
+                : longitude >= box[1] || longitude <= box[3];
+    }
+
+    /**
+     * Computes a box that contains every point within a distance of a centre. For circles that reach a pole the
+     * box spans every longitude.
+     *
+     * @param latitude the latitude of the centre
+     * @param longitude the longitude of the centre
+     * @param radiusKm the distance in kilometres
+     * @return the bounding box
+     */
+    static double[] boundingBox(double latitude, double longitude, double radiusKm) {
+        double angle = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double minLatitude = latitude - angle;
+        double maxLatitude = latitude + angle;
+        if (minLatitude <= -90 || maxLatitude >= 90) {
+            return new double[] {Math.max(-90, minLatitude), -180, Math.min(90, maxLatitude), 180};
+        }
+        double longitudeAngle = Math.toDegrees(Math.asin(Math.min(1,
+                Math.sin(radiusKm / EARTH_RADIUS_KM) / Math.cos(Math.toRadians(latitude)))));
+        double minLongitude = longitude - longitudeAngle;
+        double maxLongitude = longitude + longitudeAngle;
+        if (minLongitude < -180) {
+            minLongitude += 360;
+        }
+        if (maxLongitude > 180) {
+            maxLongitude -= 360;
+        }
+        return new double[] {minLatitude, minLongitude, maxLatitude, maxLongitude};
+    }
+}
@@ -0,0 +1,287 @@
+package com.homework.realestate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One change to a catalog as recorded in a {@link WriteAheadLog}.
+ * A record holds the arguments of a successful mutation, so replaying the records in order on the catalog they
+ * started from repeats the same changes. Properties are encoded with their price in cents, strings as their
+ * UTF-8 length followed by their bytes, and types by ordinal.
+ */
+final class LogRecord {
+
+    /**
+     * The mutation a record repeats.
+     */
+    enum Kind {
+        /** {@link PropertyService#addProperty(Property)}. */
+        ADD,
+        /** {@link PropertyService#addAll(Collection)}. */
+        ADD_ALL,
+        /** {@link PropertyService#upsertProperty(Property)}. */
+        UPSERT,
+        /** {@link PropertyService#removeProperty(String)}. */
+        REMOVE,
+        /** {@link PropertyService#setAvailability(String, boolean)}. */
+        AVAILABILITY,
+        /** {@link PropertyService#configureDistributions(double, double, double)}. */
+        CONFIGURE_DISTRIBUTIONS
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final PropertyType[] TYPES = PropertyType.values();
+    private static final int NULL_LENGTH = -1;
+
+    private final Kind kind;
+    private final List<Property> properties;
+    private final String id;
+    private final boolean available;
+    private final double[] settings;
+
+    private LogRecord(Kind kind, List<Property> properties, String id, boolean available, double[] settings) {
+        this.kind = kind;
+        this.properties = properties;
+        this.id = id;
+        this.available = available;
+        this.settings = settings;
+    }
+
+    /**
+     * Creates a record of a successful {@link PropertyService#addProperty(Property)}.
+     *
+     * @param property the property that was added
+     * @return the record
+     */
+    static LogRecord add(Property property) {
+        return new LogRecord(Kind.ADD, Collections.singletonList(property), null, false, null);
+    }
+
+    /**
+     * Creates a record of a successful {@link PropertyService#addAll(Collection)}.
+     *
+     * @param properties the batch that was added
+     * @return the record
+     */
+    static LogRecord addAll(Collection<Property> properties) {
+        return new LogRecord(Kind.ADD_ALL, new ArrayList<>(properties), null, false, null);
+    }
+
+    /**
+     * Creates a record of a successful {@link PropertyService#upsertProperty(Property)}.
+     *
+     * @param property the property that was added or replaced
+     * @return the record
+     */
+    static LogRecord upsert(Property property) {
+        return new LogRecord(Kind.UPSERT, Collections.singletonList(property), null, false, null);
+    }
+
+    /**
+     * Creates a record of a {@link PropertyService#removeProperty(String)} that removed a property.
+     *
+     * @param id the id of the removed property
+     * @return the record
+     */
+    static LogRecord remove(String id) {
+        return new LogRecord(Kind.REMOVE, Collections.emptyList(), id, false, null);
+    }
+
+    /**
+     * Creates a record of a {@link PropertyService#setAvailability(String, boolean)} that found its property.
+     *
+     * @param id the id of the property
+     * @param available the new availability
+     * @return the record
+     */
+    static LogRecord availability(String id, boolean available) {
+        return new LogRecord(Kind.AVAILABILITY, Collections.emptyList(), id, available, null);
+    }
+
+    /**
+     * Creates a record of a successful {@link PropertyService#configureDistributions(double, double, double)}.
+     *
+     * @param relativeAccuracy the relative accuracy of the quantile sketches
+     * @param priceBucketWidth the width of the price histogram buckets
+     * @param areaBucketWidth the width of the area histogram buckets
+     * @return the record
+     */
+    static LogRecord configureDistributions(double relativeAccuracy, double priceBucketWidth,
+                                            double areaBucketWidth) {
+        return new LogRecord(Kind.CONFIGURE_DISTRIBUTIONS, Collections.emptyList(), null, false,
+                new double[] {relativeAccuracy, priceBucketWidth, areaBucketWidth});
+    }
+
+    /**
+     * Gets the mutation the record repeats.
+     *
+     * @return the kind of the record
+     */
+    Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Gets the property of an add or upsert record.
+     *
+     * @return the property
+     */
+    Property property() {
+        return properties.get(0);
+    }
+
+    /**
+     * Gets the properties of an add-all record.
+     *
+     * @return the properties, in batch order
+     */
+    List<Property> properties() {
+        return properties;
+    }
+
+    /**
+     * Gets the property id of a remove or availability record.
+     *
+     * @return the id
+     */
+    String id() {
+        return id;
+    }
+
+    /**
+     * Gets the new availability of an availability record.
+     *
+     * @return the availability
+     */
+    boolean available() {
+        return available;
+    }
+
+    /**
+     * Gets the relative accuracy, price bucket width and area bucket width of a distribution settings record.
+     *
+     * @return the three settings, in that order
+     */
+    double[] settings() {
+        return settings;
+    }
+
+    /**
+     * Encodes the record.
+     *
+     * @param out the output
+     * @throws IOException if the output cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(kind.ordinal());
+        switch (kind) {
+            case ADD:
+            case UPSERT:
+                writeProperty(out, property());
+                break;
+            case ADD_ALL:
+                out.writeInt(properties.size());
+                for (Property property : properties) {
+                    writeProperty(out, property);
+                }
+                break;
+            case REMOVE:
+                writeString(out, id);
+                break;
+            case AVAILABILITY:
+                writeString(out, id);
+                out.writeBoolean(available);
+                break;
+            default:
+                for (double setting : settings) {
+                    out.writeDouble(setting);
+                }
+        }
+    }
+
+    /**
+     * Decodes a record written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input
+     * @return the record
+     * @throws IOException if the input cannot be read or is not a valid record
+     */
+    static LogRecord readFrom(DataInput in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= KINDS.length) {
+            throw new IOException("Unknown log record kind " + ordinal);
+        }
+        switch (KINDS[ordinal]) {
+            case ADD:
+                return add(readProperty(in));
+            case UPSERT:
+                return upsert(readProperty(in));
+            case ADD_ALL:
+                int count = in.readInt();
+                List<Property> properties = new ArrayList<>(Math.min(count, 1 << 16));
+                for (int i = 0; i < count; i++) {
+                    properties.add(readProperty(in));
+                }
+                return new LogRecord(Kind.ADD_ALL, properties, null, false, null);
+            case REMOVE:
+                return remove(readString(in));
+            case AVAILABILITY:
+                return availability(readString(in), in.readBoolean());
+            default:
+                return configureDistributions(in.readDouble(), in.readDouble(), in.readDouble());
+        }
+    }
+
+    private static void writeProperty(DataOutput out, Property property) throws IOException {
+        writeString(out, property.getId());
+        writeString(out, property.getAddress());
+        out.writeByte(property.getType() == null ? -1 : property.getType().ordinal());
+        out.writeLong(Prices.toScaled(property.getPrice()));
+        out.writeDouble(property.getArea());
+        out.writeByte(property.getBedrooms());
+        out.writeByte(property.getBathrooms());
+        out.writeBoolean(property.isAvailable());
+        out.writeDouble(property.getLatitude());
+        out.writeDouble(property.getLongitude());
+    }
+
+    private static Property readProperty(DataInput in) throws IOException {
+        String id = readString(in);
+        String address = readString(in);
+        int type = in.readByte();
+        if (type < -1 || type >= TYPES.length) {
+            throw new IOException("Unknown property type " + type);
+        }
+        return new Property(id, address, type < 0 ? null : TYPES[type], Prices.fromScaled(in.readLong()),
+                in.readDouble(), in.readByte(), in.readByte(), in.readBoolean(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+}
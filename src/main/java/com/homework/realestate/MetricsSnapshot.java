@@ -0,0 +1,106 @@
+package com.homework.realestate;
+
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the metrics of a {@link PropertyService}: per-operation call counts, latency and
+ * result-size statistics, the number of queries driven by each kind of index, and the query cache counters.
+ * Operations appear once they have been called at least once since the metrics were created or reset.
+ */
+public final class MetricsSnapshot {
+
+    private final Map<String, OperationStatistics> operations;
+    private final Map<String, Long> queryPlanCounts;
+    private final QueryCacheStatistics queryCacheStatistics;
+    private final int propertyCount;
+
+    /**
+     * Creates a metrics snapshot.
+     *
+     * @param operations the statistics of each operation, by name
+     * @param queryPlanCounts the number of queries driven by each kind of index, by access name
+     * @param queryCacheStatistics the query cache counters
+     * @param propertyCount the number of properties in the catalog
+     */
+    MetricsSnapshot(Map<String, OperationStatistics> operations, Map<String, Long> queryPlanCounts,
+                    QueryCacheStatistics queryCacheStatistics, int propertyCount) {
+        this.operations = operations;
+        this.queryPlanCounts = queryPlanCounts;
+        this.queryCacheStatistics = queryCacheStatistics;
+        this.propertyCount = propertyCount;
+    }
+
+    /**
+     * Gets the statistics of every operation that was called.
+     *
+     * @return an unmodifiable map from operation name, which is the name of the service method, to statistics
+     */
+    public Map<String, OperationStatistics> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Gets the statistics of one operation.
+     *
+     * @param operation the name of the service method
+     * @return the statistics, or null if the operation has not been called
+     */
+    public OperationStatistics getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Gets the number of multi-criteria queries driven by each kind of index: {@code ALL_ROWS},
+     * {@code TYPE_INDEX}, {@code BEDROOM_INDEX}, {@code AVAILABILITY_INDEX}, {@code PRICE_INDEX},
+     * {@code ADDRESS_INDEX} and {@code LOCATION_INDEX}. Queries answered from the query cache are not counted,
+     * since they are only planned when the cache misses.
+     *
+     * @return an unmodifiable map from access name to query count
+     */
+    public Map<String, Long> getQueryPlanCounts() {
+        return queryPlanCounts;
+    }
+
+    /**
+     * Gets the query cache counters, including its hit rate.
+     *
+     * @return the cache statistics, all zero if the cache is disabled
+     */
+    public QueryCacheStatistics getQueryCacheStatistics() {
+        return queryCacheStatistics;
+    }
+
+    /**
+     * Gets the number of properties in the catalog when the snapshot was taken.
+     *
+     * @return the property count
+     */
+    public int getPropertyCount() {
+        return propertyCount;
+    }
+
+    /**
+     * Replaces the query cache counters, for services that keep more than one cache.
+     *
+     * @param statistics the counters to report
+     * @return a snapshot with the same figures and the given cache counters
+     */
+    MetricsSnapshot withQueryCacheStatistics(QueryCacheStatistics statistics) {
+        return new MetricsSnapshot(operations, queryPlanCounts, statistics, propertyCount);
+    }
+
+    /**
+     * Returns a string representation of the snapshot.
+     *
+     * @return the property count, the operations, the query plan counts and the cache counters
+     */
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "properties=" + propertyCount +
+                ", operations=" + operations.values() +
+                ", queryPlans=" + queryPlanCounts +
+                ", queryCache=" + queryCacheStatistics +
+                '}';
+    }
+}
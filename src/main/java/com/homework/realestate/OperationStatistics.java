@@ -0,0 +1,170 @@
+package com.homework.realestate;
+
+/**
+ * Immutable call count, latency and result-size figures of one {@link PropertyService} operation, part of a
+ * {@link MetricsSnapshot}. Quantiles come from log-linear histograms and are accurate to about 3%; the maxima
+ * are exact. Only calls that completed without an exception are counted.
+ */
+public final class OperationStatistics {
+
+    private final String operation;
+    private final long count;
+    private final double meanLatencyNanos;
+    private final long medianLatencyNanos;
+    private final long p90LatencyNanos;
+    private final long p99LatencyNanos;
+    private final long p999LatencyNanos;
+    private final long maxLatencyNanos;
+    private final long totalResults;
+    private final long medianResultSize;
+    private final long p99ResultSize;
+    private final long maxResultSize;
+
+    /**
+     * Creates operation statistics from snapshots of its histograms.
+     *
+     * @param operation the name of the operation
+     * @param latencies the latencies of the calls in nanoseconds
+     * @param resultSizes the number of properties returned or changed by each call
+     */
+    OperationStatistics(String operation, ConcurrentHistogram.Snapshot latencies,
+                        ConcurrentHistogram.Snapshot resultSizes) {
+        this.operation = operation;
+        this.count = latencies.count();
+        this.meanLatencyNanos = latencies.mean();
+        this.medianLatencyNanos = latencies.valueAt(0.5);
+        this.p90LatencyNanos = latencies.valueAt(0.9);
+        this.p99LatencyNanos = latencies.valueAt(0.99);
+        this.p999LatencyNanos = latencies.valueAt(0.999);
+        this.maxLatencyNanos = latencies.max();
+        this.totalResults = resultSizes.sum();
+        this.medianResultSize = resultSizes.valueAt(0.5);
+        this.p99ResultSize = resultSizes.valueAt(0.99);
+        this.maxResultSize = resultSizes.max();
+    }
+
+    /**
+     * Gets the name of the operation, which is the name of the service method.
+     *
+     * @return the operation
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the number of completed calls.
+     *
+     * @return the call count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return the mean latency in nanoseconds, or 0 if there were no calls
+     */
+    public double getMeanLatencyNanos() {
+        return meanLatencyNanos;
+    }
+
+    /**
+     * Gets the median latency.
+     *
+     * @return the median latency in nanoseconds
+     */
+    public long getMedianLatencyNanos() {
+        return medianLatencyNanos;
+    }
+
+    /**
+     * Gets the 90th percentile of the latency.
+     *
+     * @return the latency in nanoseconds that 90% of the calls did not exceed
+     */
+    public long getP90LatencyNanos() {
+        return p90LatencyNanos;
+    }
+
+    /**
+     * Gets the 99th percentile of the latency.
+     *
+     * @return the latency in nanoseconds that 99% of the calls did not exceed
+     */
+    public long getP99LatencyNanos() {
+        return p99LatencyNanos;
+    }
+
+    /**
+     * Gets the 99.9th percentile of the latency.
+     *
+     * @return the latency in nanoseconds that 99.9% of the calls did not exceed
+     */
+    public long getP999LatencyNanos() {
+        return p999LatencyNanos;
+    }
+
+    /**
+     * Gets the highest latency.
+     *
+     * @return the latency of the slowest call in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Gets the number of properties returned or changed by all calls together.
+     *
+     * @return the total result size
+     */
+    public long getTotalResults() {
+        return totalResults;
+    }
+
+    /**
+     * Gets the median number of properties returned or changed by a call.
+     *
+     * @return the median result size
+     */
+    public long getMedianResultSize() {
+        return medianResultSize;
+    }
+
+    /**
+     * Gets the 99th percentile of the number of properties returned or changed by a call.
+     *
+     * @return the result size that 99% of the calls did not exceed
+     */
+    public long getP99ResultSize() {
+        return p99ResultSize;
+    }
+
+    /**
+     * Gets the largest number of properties returned or changed by a call.
+     *
+     * @return the largest result size
+     */
+    public long getMaxResultSize() {
+        return maxResultSize;
+    }
+
+    /**
+     * Returns a string representation of the statistics.
+     *
+     * @return the count, the latency quantiles in microseconds and the result sizes
+     */
+    @Override
+    public String toString() {
+        return operation + "{count=" + count +
+                ", meanUs=" + Math.round(meanLatencyNanos / 100) / 10.0 +
+                ", p50Us=" + medianLatencyNanos / 1000 +
+                ", p99Us=" + p99LatencyNanos / 1000 +
+                ", maxUs=" + maxLatencyNanos / 1000 +
+                ", results=" + totalResults +
+                ", maxResults=" + maxResultSize +
+                '}';
+    }
+}
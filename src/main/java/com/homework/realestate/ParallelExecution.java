@@ -0,0 +1,153 @@
+package com.homework.realestate;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits the row-level work of a query across the workers of a {@link ForkJoinPool}.
+ * Work is only split when the number of rows involved reaches a threshold; below it the fork and join overhead
+ * outweighs the gain. Every worker writes to its own slice of the result, so results keep the order of the rows
+ * regardless of how the work was scheduled. Ranked queries keep a bounded heap per partition and merge the heaps
+ * pairwise as the tasks join, so memory stays in O(k) per worker.
+ *
+ * <p>The tasks only read the table, so a table must not be modified while a parallel query runs on it.
+ */
+final class ParallelExecution {
+
+    /** Smallest number of rows handled by a single task. */
+    private static final int MIN_CHUNK = 4096;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Creates a parallel execution mode.
+     *
+     * @param pool the pool running the tasks
+     * @param threshold the number of rows from which work is split
+     */
+    ParallelExecution(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Checks if work on the given number of rows should be split.
+     *
+     * @param rowCount the number of rows
+     * @return true if the rows reach the threshold
+     */
+    boolean appliesTo(int rowCount) {
+        return rowCount >= threshold;
+    }
+
+    /**
+     * Builds the properties stored in the given rows.
+     *
+     * @param table the table to read
+     * @param rows the rows to build, in result order
+     * @return the properties, in the order of the rows
+     */
+    Property[] toProperties(PropertyTable table, int[] rows) {
+        Property[] result = new Property[rows.length];
+        pool.invoke(new BuildTask(table, rows, result, 0, rows.length, chunkSize(rows.length)));
+        return result;
+    }
+
+    /**
+     * Keeps the best matches of a plan, scanning partitions of the rows in parallel.
+     *
+     * @param table the table to read
+     * @param plan the plan selecting the matches
+     * @param metric the metric to rank by
+     * @param capacity the number of matches to keep
+     * @param highest true for the highest values, false for the lowest
+     * @return a heap holding the best matches
+     */
+    BoundedHeap rank(PropertyTable table, QueryPlan plan, PropertyMetric metric, int capacity, boolean highest) {
+        int rowCount = table.rowCount();
+        return pool.invoke(new RankTask(plan, metric, capacity, highest, 0, rowCount, chunkSize(rowCount)));
+    }
+
+    private int chunkSize(int rowCount) {
+        return Math.max(MIN_CHUNK, rowCount / (pool.getParallelism() * 4));
+    }
+
+    /**
+     * Fills a slice of the result with the properties of the matching slice of rows.
+     */
+    private static final class BuildTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PropertyTable table;
+        private final int[] rows;
+        private final Property[] result;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        BuildTask(PropertyTable table, int[] rows, Property[] result, int from, int to, int chunk) {
+            this.table = table;
+            this.rows = rows;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                for (int i = from; i < to; i++) {
+                    result[i] = table.toProperty(rows[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BuildTask(table, rows, result, from, middle, chunk),
+                    new BuildTask(table, rows, result, middle, to, chunk));
+        }
+    }
+
+    /**
+     * Ranks the matches of a partition of the rows and merges the heaps of both halves.
+     */
+    private static final class RankTask extends RecursiveTask<BoundedHeap> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QueryPlan plan;
+        private final PropertyMetric metric;
+        private final int capacity;
+        private final boolean highest;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        RankTask(QueryPlan plan, PropertyMetric metric, int capacity, boolean highest, int from, int to, int chunk) {
+            this.plan = plan;
+            this.metric = metric;
+            this.capacity = capacity;
+            this.highest = highest;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected BoundedHeap compute() {
+            if (to - from <= chunk) {
+                return plan.rankRows(from, to, metric, capacity, highest);
+            }
+            int middle = (from + to) >>> 1;
+            RankTask left = new RankTask(plan, metric, capacity, highest, from, middle, chunk);
+            RankTask right = new RankTask(plan, metric, capacity, highest, middle, to, chunk);
+            right.fork();
+            BoundedHeap heap = left.compute();
+            heap.mergeFrom(right.join());
+            return heap;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Running price aggregate over a group of rows: count, exact sum, minimum and maximum of the scaled prices.
+ * The sum is kept as a 128-bit integer in two longs, so it never overflows and never loses precision. Adding a
+ * price updates everything in O(1). Removing a price updates count and sum in O(1); when the removed price was the
+ * minimum or the maximum, the aggregate reports it so the owner can look up the new extreme in the price index.
+ */
+final class PriceAggregate {
+
+    private long count;
+    private long sumLow;
+    private long sumHigh;
+    private long min;
+    private long max;
+
+    /**
+     * Creates an empty aggregate.
+     */
+    PriceAggregate() {
+    }
+
+    /**
+     * Reads an aggregate written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    PriceAggregate(SnapshotInput input) throws IOException {
+        count = input.readLong();
+        sumLow = input.readLong();
+        sumHigh = input.readLong();
+        min = input.readLong();
+        max = input.readLong();
+    }
+
+    /**
+     * Adds a price to the aggregate.
+     *
+     * @param price the scaled price
+     */
+    void add(long price) {
+        long low = sumLow + price;
+        sumHigh += (price >> 63) + (Long.compareUnsigned(low, sumLow) < 0 ? 1 : 0);
+        sumLow = low;
+        if (count == 0 || price < min) {
+            min = price;
+        }
+        if (count == 0 || price > max) {
+            max = price;
+        }
+        count++;
+    }
+
+    /**
+     * Removes a price from the aggregate.
+     *
+     * @param price the scaled price, which must have been added before
+     * @return true if the aggregate is not empty and the price was its minimum or maximum, in which case the
+     *         owner has to call {@link #setExtremes(long, long)} with the new extremes
+     */
+    boolean remove(long price) {
+        sumHigh -= (price >> 63) + (Long.compareUnsigned(sumLow, price) < 0 ? 1 : 0);
+        sumLow -= price;
+        count--;
+        return count > 0 && (price == min || price == max);
+    }
+
+    /**
+     * Replaces the minimum and maximum after an extreme was removed.
+     *
+     * @param min the new minimum scaled price
+     * @param max the new maximum scaled price
+     */
+    void setExtremes(long min, long max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Gets the number of prices in the aggregate.
+     *
+     * @return the count
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Gets the exact sum of the prices.
+     *
+     * @return the sum, with two decimal places
+     */
+    BigDecimal sum() {
+        if (sumHigh == (sumLow >> 63)) {
+            return Prices.fromScaled(sumLow);
+        }
+        BigInteger low = new BigInteger(Long.toUnsignedString(sumLow));
+        return new BigDecimal(BigInteger.valueOf(sumHigh).shiftLeft(64).add(low), Prices.SCALE);
+    }
+
+    /**
+     * Writes the aggregate to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeLong(count);
+        output.writeLong(sumLow);
+        output.writeLong(sumHigh);
+        output.writeLong(min);
+        output.writeLong(max);
+    }
+
+    /**
+     * Builds an immutable snapshot of the aggregate.
+     *
+     * @return the statistics
+     */
+    PriceStatistics toStatistics() {
+        if (count == 0) {
+            return new PriceStatistics(0, BigDecimal.ZERO, null, null);
+        }
+        return new PriceStatistics(count, sum(), Prices.fromScaled(min), Prices.fromScaled(max));
+    }
+}
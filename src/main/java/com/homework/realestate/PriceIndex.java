@@ -0,0 +1,471 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Sorted index of scaled prices to catalog rows.
+ * Entries are kept in two sorted runs of primitive arrays, ordered by price ascending and, for equal prices, by
+ * row descending: a large main run and a small pending run that absorbs inserts and is merged into the main run
+ * once it grows beyond roughly the square root of the main run. Range lookups binary search both runs, so they
+ * cost O(log n) plus the size of the result, and inserts stay cheap even when prices arrive out of order.
+ * Removed entries of the main run are marked in a bitmap and dropped at the next merge. Any long key can take the
+ * place of the price; the {@link LocationIndex} keeps Z-order codes of locations in one.
+ */
+final class PriceIndex {
+
+    private static final int MIN_PENDING_LIMIT = 1024;
+    private static final int[] NO_ROWS = new int[0];
+
+    private long[] prices = new long[16];
+    private int[] rows = new int[16];
+    private int size;
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    private long[] pendingPrices = new long[16];
+    private int[] pendingRows = new int[16];
+    private int pendingSize;
+
+    /**
+     * Creates an empty index.
+     */
+    PriceIndex() {
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(SnapshotOutput)}, runs and removal marks included, so that no
+     * sorting is needed.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    PriceIndex(SnapshotInput input) throws IOException {
+        prices = input.readLongs();
+        size = prices.length;
+        rows = input.readInts(size, "price index");
+        deleted = input.readBitSet();
+        deletedCount = deleted.cardinality();
+        long[] runPrices = input.readLongs();
+        int[] runRows = input.readInts(runPrices.length, "pending price run");
+        pendingSize = runPrices.length;
+        pendingPrices = Arrays.copyOf(runPrices, Math.max(16, pendingSize));
+        pendingRows = Arrays.copyOf(runRows, Math.max(16, pendingSize));
+    }
+
+    /**
+     * Replaces the content of the index with the given entries, sorting them in one pass.
+     *
+     * @param entryPrices the scaled prices
+     * @param entryRows the row of each price
+     * @param count the number of entries to take from the arrays
+     */
+    void load(long[] entryPrices, int[] entryRows, int count) {
+        prices = Arrays.copyOf(entryPrices, Math.max(16, count));
+        rows = Arrays.copyOf(entryRows, Math.max(16, count));
+        size = count;
+        deleted.clear();
+        deletedCount = 0;
+        pendingSize = 0;
+        sort(prices, rows, count);
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param price the scaled price
+     * @param row the row holding a property with that price
+     */
+    void add(long price, int row) {
+        if (pendingSize == pendingPrices.length) {
+            pendingPrices = Arrays.copyOf(pendingPrices, pendingSize * 2);
+            pendingRows = Arrays.copyOf(pendingRows, pendingSize * 2);
+        }
+        int position = insertionPoint(pendingPrices, pendingRows, pendingSize, price, row);
+        System.arraycopy(pendingPrices, position, pendingPrices, position + 1, pendingSize - position);
+        System.arraycopy(pendingRows, position, pendingRows, position + 1, pendingSize - position);
+        pendingPrices[position] = price;
+        pendingRows[position] = row;
+        pendingSize++;
+        if (pendingSize >= Math.max(MIN_PENDING_LIMIT, (int) Math.sqrt(size))) {
+            merge();
+        }
+    }
+
+    /**
+     * Adds many entries at once: the entries are sorted among themselves and merged into the main run in one
+     * linear pass, together with the pending run, instead of being inserted one at a time.
+     *
+     * @param entryPrices the scaled prices
+     * @param entryRows the row of each price
+     * @param count the number of entries to take from the arrays
+     */
+    void addAll(long[] entryPrices, int[] entryRows, int count) {
+        if (size == 0 && pendingSize == 0) {
+            load(entryPrices, entryRows, count);
+            return;
+        }
+        long[] runPrices = Arrays.copyOf(entryPrices, count);
+        int[] runRows = Arrays.copyOf(entryRows, count);
+        sort(runPrices, runRows, count);
+        merge();
+        mergeRun(runPrices, runRows, count);
+    }
+
+    /**
+     * Removes an entry from the index.
+     *
+     * @param price the scaled price the row was indexed with
+     * @param row the row to remove
+     * @return true if the entry was found and removed
+     */
+    boolean remove(long price, int row) {
+        int position = find(pendingPrices, pendingRows, pendingSize, price, row);
+        if (position >= 0) {
+            System.arraycopy(pendingPrices, position + 1, pendingPrices, position, pendingSize - position - 1);
+            System.arraycopy(pendingRows, position + 1, pendingRows, position, pendingSize - position - 1);
+            pendingSize--;
+            return true;
+        }
+        position = find(prices, rows, size, price, row);
+        if (position < 0 || deleted.get(position)) {
+            return false;
+        }
+        deleted.set(position);
+        deletedCount++;
+        if (deletedCount > size / 2) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the rows whose price lies within the given scaled range.
+     *
+     * @param minPrice the minimum scaled price (inclusive)
+     * @param maxPrice the maximum scaled price (inclusive)
+     * @return the matching rows in ascending row order
+     */
+    int[] rowsInRange(long minPrice, long maxPrice) {
+        if (minPrice > maxPrice) {
+            return NO_ROWS;
+        }
+        int mainFrom = lowerBound(prices, size, minPrice);
+        int mainTo = upperBound(prices, size, maxPrice);
+        int pendingFrom = lowerBound(pendingPrices, pendingSize, minPrice);
+        int pendingTo = upperBound(pendingPrices, pendingSize, maxPrice);
+        int[] result = new int[(mainTo - mainFrom) + (pendingTo - pendingFrom)];
+        int count = 0;
+        for (int i = mainFrom; i < mainTo; i++) {
+            if (deletedCount == 0 || !deleted.get(i)) {
+                result[count++] = rows[i];
+            }
+        }
+        for (int i = pendingFrom; i < pendingTo; i++) {
+            result[count++] = pendingRows[i];
+        }
+        if (count < result.length) {
+            result = Arrays.copyOf(result, count);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Estimates the number of rows whose price lies within the given scaled range without visiting them.
+     * Removed entries that have not been compacted away yet are still counted.
+     *
+     * @param minPrice the minimum scaled price (inclusive)
+     * @param maxPrice the maximum scaled price (inclusive)
+     * @return an upper bound of the number of matching rows
+     */
+    int estimateInRange(long minPrice, long maxPrice) {
+        if (minPrice > maxPrice) {
+            return 0;
+        }
+        return (upperBound(prices, size, maxPrice) - lowerBound(prices, size, minPrice))
+                + (upperBound(pendingPrices, pendingSize, maxPrice) - lowerBound(pendingPrices, pendingSize, minPrice));
+    }
+
+    /**
+     * Gets the row with the highest price. For equal prices the lowest row wins.
+     *
+     * @return the row, or -1 if the index is empty
+     */
+    int maxRow() {
+        int mainPosition = size - 1;
+        if (deletedCount > 0 && mainPosition >= 0) {
+            mainPosition = deleted.previousClearBit(mainPosition);
+        }
+        int pendingPosition = pendingSize - 1;
+        if (mainPosition < 0) {
+            return pendingPosition < 0 ? -1 : pendingRows[pendingPosition];
+        }
+        if (pendingPosition < 0
+                || compare(prices[mainPosition], rows[mainPosition],
+                        pendingPrices[pendingPosition], pendingRows[pendingPosition]) > 0) {
+            return rows[mainPosition];
+        }
+        return pendingRows[pendingPosition];
+    }
+
+    /**
+     * Finds the row with the highest price among the rows accepted by a filter, walking down from the top of the
+     * index. For equal prices the lowest row wins.
+     *
+     * @param filter the rows to consider
+     * @return the row, or -1 if no row in the index is accepted
+     */
+    int lastMatching(IntPredicate filter) {
+        return firstAccepted(true, filter);
+    }
+
+    /**
+     * Finds a row with the lowest price among the rows accepted by a filter, walking up from the bottom of the
+     * index.
+     *
+     * @param filter the rows to consider
+     * @return the row, or -1 if no row in the index is accepted
+     */
+    int firstMatching(IntPredicate filter) {
+        return firstAccepted(false, filter);
+    }
+
+    /**
+     * Visits the entries within a scaled price range in price order, merging both runs on the fly, until the
+     * visitor asks to stop. Nothing is copied, so stopping early costs only the entries visited.
+     *
+     * @param minPrice the minimum scaled price (inclusive)
+     * @param maxPrice the maximum scaled price (inclusive)
+     * @param descending true to start from the highest price, in which case equal prices come lowest row first;
+     *        false to start from the lowest price, in which case equal prices come highest row first
+     * @param visitor the callback receiving every entry
+     */
+    void walk(long minPrice, long maxPrice, boolean descending, EntryVisitor visitor) {
+        if (minPrice > maxPrice) {
+            return;
+        }
+        int mainFrom = lowerBound(prices, size, minPrice);
+        int mainTo = upperBound(prices, size, maxPrice);
+        int pendingFrom = lowerBound(pendingPrices, pendingSize, minPrice);
+        int pendingTo = upperBound(pendingPrices, pendingSize, maxPrice);
+        if (descending) {
+            int main = mainTo - 1;
+            int pending = pendingTo - 1;
+            while (main >= mainFrom || pending >= pendingFrom) {
+                if (main >= mainFrom && deletedCount > 0 && deleted.get(main)) {
+                    main--;
+                    continue;
+                }
+                boolean fromMain = pending < pendingFrom || (main >= mainFrom
+                        && compare(prices[main], rows[main], pendingPrices[pending], pendingRows[pending]) > 0);
+                boolean more = fromMain ? visitor.visit(prices[main], rows[main--])
+                        : visitor.visit(pendingPrices[pending], pendingRows[pending--]);
+                if (!more) {
+                    return;
+                }
+            }
+        } else {
+            int main = mainFrom;
+            int pending = pendingFrom;
+            while (main < mainTo || pending < pendingTo) {
+                if (main < mainTo && deletedCount > 0 && deleted.get(main)) {
+                    main++;
+                    continue;
+                }
+                boolean fromMain = pending >= pendingTo || (main < mainTo
+                        && compare(prices[main], rows[main], pendingPrices[pending], pendingRows[pending]) < 0);
+                boolean more = fromMain ? visitor.visit(prices[main], rows[main++])
+                        : visitor.visit(pendingPrices[pending], pendingRows[pending++]);
+                if (!more) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback of {@link #walk(long, long, boolean, EntryVisitor)}.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+
+        /**
+         * Receives one entry of the index.
+         *
+         * @param price the scaled price
+         * @param row the row holding a property with that price
+         * @return true to continue the walk, false to stop it
+         */
+        boolean visit(long price, int row);
+    }
+
+    private int firstAccepted(boolean descending, IntPredicate filter) {
+        int[] found = {-1};
+        walk(Long.MIN_VALUE, Long.MAX_VALUE, descending, (price, row) -> {
+            if (filter.test(row)) {
+                found[0] = row;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Writes both runs and the removal marks of the main run to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeLongs(prices, size);
+        output.writeInts(rows, size);
+        output.writeBitSet(deleted);
+        output.writeLongs(pendingPrices, pendingSize);
+        output.writeInts(pendingRows, pendingSize);
+    }
+
+    private void merge() {
+        compact();
+        mergeRun(pendingPrices, pendingRows, pendingSize);
+        pendingSize = 0;
+    }
+
+    /**
+     * Merges a sorted run into the main run, from the back so that no entry is moved twice.
+     */
+    private void mergeRun(long[] runPrices, int[] runRows, int runSize) {
+        int total = size + runSize;
+        if (prices.length < total) {
+            int capacity = Math.max(total, prices.length + (prices.length >> 1));
+            prices = Arrays.copyOf(prices, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+        }
+        int main = size - 1;
+        int run = runSize - 1;
+        for (int target = total - 1; run >= 0; target--) {
+            if (main >= 0 && compare(prices[main], rows[main], runPrices[run], runRows[run]) > 0) {
+                prices[target] = prices[main];
+                rows[target] = rows[main];
+                main--;
+            } else {
+                prices[target] = runPrices[run];
+                rows[target] = runRows[run];
+                run--;
+            }
+        }
+        size = total;
+    }
+
+    private void compact() {
+        if (deletedCount == 0) {
+            return;
+        }
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            if (!deleted.get(i)) {
+                prices[target] = prices[i];
+                rows[target] = rows[i];
+                target++;
+            }
+        }
+        size = target;
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    private static int compare(long price1, int row1, long price2, int row2) {
+        int byPrice = Long.compare(price1, price2);
+        return byPrice != 0 ? byPrice : Integer.compare(row2, row1);
+    }
+
+    private static int insertionPoint(long[] runPrices, int[] runRows, int runSize, long price, int row) {
+        int low = 0;
+        int high = runSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(runPrices[middle], runRows[middle], price, row) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int find(long[] runPrices, int[] runRows, int runSize, long price, int row) {
+        int position = insertionPoint(runPrices, runRows, runSize, price, row) - 1;
+        return position >= 0 && runPrices[position] == price && runRows[position] == row ? position : -1;
+    }
+
+    private static int lowerBound(long[] runPrices, int runSize, long price) {
+        int low = 0;
+        int high = runSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runPrices[middle] < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(long[] runPrices, int runSize, long price) {
+        int low = 0;
+        int high = runSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runPrices[middle] <= price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts parallel arrays of prices and rows with a bottom-up merge sort.
+     */
+    private static void sort(long[] sortPrices, int[] sortRows, int count) {
+        long[] sourcePrices = sortPrices;
+        int[] sourceRows = sortRows;
+        long[] targetPrices = new long[count];
+        int[] targetRows = new int[count];
+        for (int width = 1; width < count; width <<= 1) {
+            for (int from = 0; from < count; from += width << 1) {
+                int middle = Math.min(from + width, count);
+                int to = Math.min(from + (width << 1), count);
+                int left = from;
+                int right = middle;
+                for (int target = from; target < to; target++) {
+                    if (right >= to || (left < middle && compare(sourcePrices[left], sourceRows[left],
+                            sourcePrices[right], sourceRows[right]) <= 0)) {
+                        targetPrices[target] = sourcePrices[left];
+                        targetRows[target] = sourceRows[left];
+                        left++;
+                    } else {
+                        targetPrices[target] = sourcePrices[right];
+                        targetRows[target] = sourceRows[right];
+                        right++;
+                    }
+                }
+            }
+            long[] swapPrices = sourcePrices;
+            sourcePrices = targetPrices;
+            targetPrices = swapPrices;
+            int[] swapRows = sourceRows;
+            sourceRows = targetRows;
+            targetRows = swapRows;
+        }
+        if (sourcePrices != sortPrices) {
+            System.arraycopy(sourcePrices, 0, sortPrices, 0, count);
+            System.arraycopy(sourceRows, 0, sortRows, 0, count);
+        }
+    }
+}
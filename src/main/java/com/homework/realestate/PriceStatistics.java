@@ -0,0 +1,112 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+/**
+ * Immutable price statistics of a group of properties: count, sum, minimum, maximum and mean.
+ * The sum is exact; the mean is the exact sum divided by the count, rounded to 34 significant digits.
+ */
+public final class PriceStatistics {
+
+    private final long count;
+    private final BigDecimal sum;
+    private final BigDecimal min;
+    private final BigDecimal max;
+
+    /**
+     * Creates price statistics.
+     *
+     * @param count the number of properties
+     * @param sum the sum of their prices
+     * @param min the lowest price, or null if there are no properties
+     * @param max the highest price, or null if there are no properties
+     */
+    PriceStatistics(long count, BigDecimal sum, BigDecimal min, BigDecimal max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Combines the statistics of disjoint groups of properties into the statistics of their union.
+     *
+     * @param parts the statistics to combine
+     * @return the combined statistics
+     */
+    static PriceStatistics combine(List<PriceStatistics> parts) {
+        long count = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        BigDecimal min = null;
+        BigDecimal max = null;
+        for (PriceStatistics part : parts) {
+            count += part.count;
+            sum = sum.add(part.sum);
+            if (part.min != null && (min == null || part.min.compareTo(min) < 0)) {
+                min = part.min;
+            }
+            if (part.max != null && (max == null || part.max.compareTo(max) > 0)) {
+                max = part.max;
+            }
+        }
+        return new PriceStatistics(count, sum, min, max);
+    }
+
+    /**
+     * Gets the number of properties.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the exact sum of the prices.
+     *
+     * @return the sum, or BigDecimal.ZERO if there are no properties
+     */
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the lowest price.
+     *
+     * @return the lowest price, or null if there are no properties
+     */
+    public BigDecimal getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the highest price.
+     *
+     * @return the highest price, or null if there are no properties
+     */
+    public BigDecimal getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean price.
+     *
+     * @return the sum divided by the count, or BigDecimal.ZERO if there are no properties
+     */
+    public BigDecimal getMean() {
+        return count == 0 ? BigDecimal.ZERO : sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128);
+    }
+
+    /**
+     * Returns a string representation of the statistics.
+     *
+     * @return the count, sum, minimum, maximum and mean
+     */
+    @Override
+    public String toString() {
+        return "PriceStatistics{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max
+                + ", mean=" + getMean() + '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between {@link BigDecimal} prices and the scaled {@code long} representation used by the indexes.
+ * A scaled price is the price in cents, so prices can have at most {@link #SCALE} decimal places.
+ */
+final class Prices {
+
+    /** Number of decimal places kept in a scaled price. */
+    static final int SCALE = 2;
+
+    private static final BigInteger MIN_SCALED = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_SCALED = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private Prices() {
+    }
+
+    /**
+     * Converts a price to its scaled representation without any rounding.
+     *
+     * @param price the price to convert
+     * @return the price in cents
+     * @throws ArithmeticException if the price has more than {@link #SCALE} decimal places or does not fit in a long
+     */
+    static long toScaled(BigDecimal price) {
+        return price.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a lower price bound to the smallest scaled price that is not below it.
+     *
+     * @param price the lower bound
+     * @return the scaled lower bound, clamped to the range of a long
+     */
+    static long ceilScaled(BigDecimal price) {
+        return clamp(price.setScale(SCALE, RoundingMode.CEILING).unscaledValue());
+    }
+
+    /**
+     * Converts an upper price bound to the largest scaled price that is not above it.
+     *
+     * @param price the upper bound
+     * @return the scaled upper bound, clamped to the range of a long
+     */
+    static long floorScaled(BigDecimal price) {
+        return clamp(price.setScale(SCALE, RoundingMode.FLOOR).unscaledValue());
+    }
+
+    /**
+     * Converts a scaled price back to a {@link BigDecimal}.
+     *
+     * @param scaledPrice the price in cents
+     * @return the price with {@link #SCALE} decimal places
+     */
+    static BigDecimal fromScaled(long scaledPrice) {
+        return BigDecimal.valueOf(scaledPrice, SCALE);
+    }
+
+    /**
+     * Converts a scaled price to a double, for analytics that do not need exact prices.
+     *
+     * @param scaledPrice the price in cents
+     * @return the price as the closest double
+     */
+    static double toDouble(long scaledPrice) {
+        return scaledPrice / 100.0;
+    }
+
+    private static long clamp(BigInteger value) {
+        if (value.compareTo(MIN_SCALED) < 0) {
+            return Long.MIN_VALUE;
+        }
+        if (value.compareTo(MAX_SCALED) > 0) {
+            return Long.MAX_VALUE;
+        }
+        return value.longValue();
+    }
+}
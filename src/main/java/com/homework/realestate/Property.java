@@ -7,7 +7,11 @@ import java.util.logging.Level;
 
 /**
  * Represents a real estate property with its characteristics.
- * This class models a property with attributes such as address, type, price, area, and room count.
+ * This class models a property with attributes such as address, type, price, area, room count and, optionally,
+ * its location as WGS 84 latitude and longitude in degrees. A property without a location has NaN coordinates.
+ * Getters and setters are traced at FINEST level only when per-field tracing is switched on with
+ * {@code -Dcom.homework.realestate.fieldTracing=true}; otherwise they do not build any log message.
+ * For an immutable copy that can be shared between threads, see {@link #toRecord()}.
  */
 public class Property {
     private static final Logger logger = Logger.getLogger(Property.class.getName());
@@ -20,16 +24,20 @@ public class Property {
     private int bedrooms;
     private int bathrooms;
     private boolean isAvailable;
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
 
     /**
      * Default constructor for Property.
      */
     public Property() {
-        logger.info("Creating new Property instance with default constructor");
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Creating new Property instance with default constructor");
+        }
     }
 
     /**
-     * Constructor for Property with all attributes.
+     * Constructor for Property with all attributes but the location, which is left unknown.
      *
      * @param id the unique identifier for the property
      * @param address the address of the property
@@ -42,7 +50,28 @@ public class Property {
      */
     public Property(String id, String address, PropertyType type, BigDecimal price, 
                    double area, int bedrooms, int bathrooms, boolean isAvailable) {
-        logger.info("Creating new Property instance with id: " + id);
+        this(id, address, type, price, area, bedrooms, bathrooms, isAvailable, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructor for Property with all attributes and a location.
+     *
+     * @param id the unique identifier for the property
+     * @param address the address of the property
+     * @param type the type of the property (HOUSE, APARTMENT, etc.)
+     * @param price the price of the property
+     * @param area the area of the property in square units
+     * @param bedrooms the number of bedrooms in the property
+     * @param bathrooms the number of bathrooms in the property
+     * @param isAvailable the availability status of the property
+     * @param latitude the latitude of the property in degrees, or NaN if the location is unknown
+     * @param longitude the longitude of the property in degrees, or NaN if the location is unknown
+     */
+    public Property(String id, String address, PropertyType type, BigDecimal price, double area, int bedrooms,
+                    int bathrooms, boolean isAvailable, double latitude, double longitude) {
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Creating new Property instance with id: " + id);
+        }
         this.id = id;
         this.address = address;
         this.type = type;
@@ -51,6 +80,8 @@ public class Property {
         this.bedrooms = bedrooms;
         this.bathrooms = bathrooms;
         this.isAvailable = isAvailable;
+        this.latitude = latitude;
+        this.longitude = longitude;
     }
 
     /**
@@ -59,7 +90,9 @@ public class Property {
      * @return the property id
      */
     public String getId() {
-        logger.info("Getting property id: " + id);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property id: " + id);
+        }
         return id;
     }
 
@@ -69,7 +102,9 @@ public class Property {
      * @param id the property id to set
      */
     public void setId(String id) {
-        logger.info("Setting property id to: " + id);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property id to: " + id);
+        }
         this.id = id;
     }
 
@@ -79,7 +114,9 @@ public class Property {
      * @return the property address
      */
     public String getAddress() {
-        logger.info("Getting property address: " + (address != null ? address : "null"));
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property address: " + (address != null ? address : "null"));
+        }
         return address;
     }
 
@@ -89,7 +126,9 @@ public class Property {
      * @param address the property address to set
      */
     public void setAddress(String address) {
-        logger.info("Setting property address to: " + address);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property address to: " + address);
+        }
         this.address = address;
     }
 
@@ -99,7 +138,9 @@ public class Property {
      * @return the property type
      */
     public PropertyType getType() {
-        logger.info("Getting property type: " + (type != null ? type : "null"));
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property type: " + (type != null ? type : "null"));
+        }
         return type;
     }
 
@@ -109,7 +150,9 @@ public class Property {
      * @param type the property type to set
      */
     public void setType(PropertyType type) {
-        logger.info("Setting property type to: " + type);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property type to: " + type);
+        }
         this.type = type;
     }
 
@@ -119,7 +162,9 @@ public class Property {
      * @return the property price
      */
     public BigDecimal getPrice() {
-        logger.info("Getting property price: " + (price != null ? price.toString() : "null"));
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property price: " + (price != null ? price.toString() : "null"));
+        }
         return price;
     }
 
@@ -129,7 +174,9 @@ public class Property {
      * @param price the property price to set
      */
     public void setPrice(BigDecimal price) {
-        logger.info("Setting property price to: " + (price != null ? price.toString() : "null"));
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property price to: " + (price != null ? price.toString() : "null"));
+        }
         this.price = price;
     }
 
@@ -139,7 +186,9 @@ public class Property {
      * @return the property area
      */
     public double getArea() {
-        logger.info("Getting property area: " + area);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property area: " + area);
+        }
         return area;
     }
 
@@ -149,7 +198,9 @@ public class Property {
      * @param area the property area to set
      */
     public void setArea(double area) {
-        logger.info("Setting property area to: " + area);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property area to: " + area);
+        }
         this.area = area;
     }
 
@@ -159,7 +210,9 @@ public class Property {
      * @return the number of bedrooms
      */
     public int getBedrooms() {
-        logger.info("Getting property bedrooms: " + bedrooms);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property bedrooms: " + bedrooms);
+        }
         return bedrooms;
     }
 
@@ -169,7 +222,9 @@ public class Property {
      * @param bedrooms the number of bedrooms to set
      */
     public void setBedrooms(int bedrooms) {
-        logger.info("Setting property bedrooms to: " + bedrooms);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property bedrooms to: " + bedrooms);
+        }
         this.bedrooms = bedrooms;
     }
 
@@ -179,7 +234,9 @@ public class Property {
      * @return the number of bathrooms
      */
     public int getBathrooms() {
-        logger.info("Getting property bathrooms: " + bathrooms);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property bathrooms: " + bathrooms);
+        }
         return bathrooms;
     }
 
@@ -189,7 +246,9 @@ public class Property {
      * @param bathrooms the number of bathrooms to set
      */
     public void setBathrooms(int bathrooms) {
-        logger.info("Setting property bathrooms to: " + bathrooms);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property bathrooms to: " + bathrooms);
+        }
         this.bathrooms = bathrooms;
     }
 
@@ -199,7 +258,9 @@ public class Property {
      * @return true if the property is available, false otherwise
      */
     public boolean isAvailable() {
-        logger.info("Checking property availability: " + isAvailable);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Checking property availability: " + isAvailable);
+        }
         return isAvailable;
     }
 
@@ -209,10 +270,81 @@ public class Property {
      * @param available the availability status to set
      */
     public void setAvailable(boolean available) {
-        logger.info("Setting property availability to: " + available);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property availability to: " + available);
+        }
         isAvailable = available;
     }
 
+    /**
+     * Gets the latitude of the property.
+     *
+     * @return the latitude in degrees, or NaN if the location is unknown
+     */
+    public double getLatitude() {
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property latitude: " + latitude);
+        }
+        return latitude;
+    }
+
+    /**
+     * Sets the latitude of the property.
+     *
+     * @param latitude the latitude in degrees, or NaN if the location is unknown
+     */
+    public void setLatitude(double latitude) {
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property latitude to: " + latitude);
+        }
+        this.latitude = latitude;
+    }
+
+    /**
+     * Gets the longitude of the property.
+     *
+     * @return the longitude in degrees, or NaN if the location is unknown
+     */
+    public double getLongitude() {
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Getting property longitude: " + longitude);
+        }
+        return longitude;
+    }
+
+    /**
+     * Sets the longitude of the property.
+     *
+     * @param longitude the longitude in degrees, or NaN if the location is unknown
+     */
+    public void setLongitude(double longitude) {
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Setting property longitude to: " + longitude);
+        }
+        this.longitude = longitude;
+    }
+
+    /**
+     * Checks if the location of the property is known.
+     *
+     * @return true if both coordinates are set
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Copies the current values of the property into an immutable {@link PropertyRecord}.
+     *
+     * @return a record with the same values
+     * @throws IllegalArgumentException if the price is null or has more than two decimal places, or a room count
+     *         is outside 0 to 127
+     * @see PropertyRecord#of(Property)
+     */
+    public PropertyRecord toRecord() {
+        return PropertyRecord.of(this);
+    }
+
     /**
      * Compares this property to another object for equality.
      * Properties are considered equal if they have the same id.
@@ -222,35 +354,28 @@ public class Property {
      */
     @Override
     public boolean equals(Object o) {
-        try {
-            logger.info("Checking equality with object: " + (o != null ? o.getClass().getName() : "null"));
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Property property = (Property) o;
-            boolean result = Objects.equals(id, property.id);
-            logger.info("Equality check result: " + result);
-            return result;
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error during equality check", e);
-            return false;
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        boolean result = Objects.equals(id, ((Property) o).id);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Equality check with property " + ((Property) o).id + ": " + result);
         }
+        return result;
     }
 
     /**
      * Generates a hash code for this property based on its id.
+     * The hash is that of the id, without the array {@link Objects#hash(Object...)} would allocate on every call.
      *
      * @return the hash code value
      */
     @Override
     public int hashCode() {
-        try {
-            int hash = Objects.hash(id);
-            logger.info("Generated hash code: " + hash);
-            return hash;
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error during hash code generation", e);
-            return 0;
+        int hash = Objects.hashCode(id);
+        if (PropertyLogging.isFieldTracingEnabled(logger)) {
+            logger.finest("Generated hash code: " + hash);
         }
+        return hash;
     }
 
     /**
@@ -270,8 +395,11 @@ public class Property {
                     ", bedrooms=" + bedrooms +
                     ", bathrooms=" + bathrooms +
                     ", isAvailable=" + isAvailable +
+                    (hasLocation() ? ", latitude=" + latitude + ", longitude=" + longitude : "") +
                     '}';
-            logger.info("Generated string representation");
+            if (PropertyLogging.isFieldTracingEnabled(logger)) {
+                logger.finest("Generated string representation");
+            }
             return str;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error during string representation generation", e);
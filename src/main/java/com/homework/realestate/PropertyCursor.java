@@ -0,0 +1,74 @@
+package com.homework.realestate;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Pull-style iteration over the properties matching a query, returned by
+ * {@link PropertyService#openCursor(PropertyQuery)}.
+ * The cursor moves one reusable {@link PropertyView} from match to match, so iterating allocates nothing per
+ * property, and unlike {@link PropertyService#forEachProperty(PropertyQuery, PropertyVisitor)} the caller keeps
+ * control of the loop:
+ *
+ * <pre>{@code
+ * PropertyCursor cursor = service.openCursor(query);
+ * while (cursor.next()) {
+ *     total += cursor.current().getPriceInCents();
+ * }
+ * }</pre>
+ *
+ * The cursor reads the live catalog and fails with a {@link ConcurrentModificationException} if the service is
+ * changed while it is in use.
+ */
+public final class PropertyCursor {
+
+    private final PropertyTable table;
+    private final QueryPlan.RowIterator rows;
+    private final PropertyView view;
+    private final int expectedModCount;
+    private boolean positioned;
+
+    /**
+     * Creates a cursor over the page of matches of a plan, positioned before the first match.
+     *
+     * @param table the table the plan runs on
+     * @param plan the plan
+     */
+    PropertyCursor(PropertyTable table, QueryPlan plan) {
+        this.table = table;
+        this.rows = plan.rows(true);
+        this.view = new PropertyView(table);
+        this.expectedModCount = table.modCount();
+    }
+
+    /**
+     * Moves to the next matching property.
+     *
+     * @return true if the cursor now shows a property, false if there are no more matches
+     * @throws ConcurrentModificationException if the service was changed since the cursor was opened
+     */
+    public boolean next() {
+        if (table.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException("The property catalog was changed during iteration");
+        }
+        int row = rows.next();
+        positioned = row >= 0;
+        if (positioned) {
+            view.moveTo(row);
+        }
+        return positioned;
+    }
+
+    /**
+     * Gets the view of the current property. The same view is returned for every property, so its values change
+     * with each call to {@link #next()}.
+     *
+     * @return the view of the current property
+     * @throws IllegalStateException if {@link #next()} has not been called or returned false
+     */
+    public PropertyView current() {
+        if (!positioned) {
+            throw new IllegalStateException("The cursor is not positioned on a property");
+        }
+        return view;
+    }
+}
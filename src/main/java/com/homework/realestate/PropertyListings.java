@@ -0,0 +1,172 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Imports and exports listing files in the {@link ListingFormat}s.
+ * Files are read and written through {@link FileChannel}s with a fixed-size buffer and parsed or encoded in place,
+ * so memory use does not depend on the size of the file. A whole file can be loaded into a service with
+ * {@link #load(PropertyService, Path, ListingFormat)}:
+ *
+ * <pre>{@code
+ * BulkLoadReport report = PropertyListings.load(propertyService, Paths.get("listings.csv"), ListingFormat.CSV);
+ * }</pre>
+ *
+ * <p>and written back, optionally restricted by a query, with
+ * {@link #export(PropertyService, PropertyQuery, Path, ListingFormat)}.
+ */
+public final class PropertyListings {
+
+    private static final Logger logger = Logger.getLogger(PropertyListings.class.getName());
+
+    private PropertyListings() {
+    }
+
+    /**
+     * Opens a lazy stream over the listings of a file. The file is parsed as the stream is consumed and closed
+     * when the stream is closed, so the stream should be used in a try-with-resources statement. A malformed
+     * listing fails the stream with an {@link IllegalArgumentException} naming its line, and a read error with an
+     * {@link UncheckedIOException}.
+     *
+     * @param file the file to read
+     * @param format the format of the file
+     * @return the listings of the file, in file order
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalArgumentException if the file or the format is null
+     */
+    public static Stream<Property> read(Path file, ListingFormat format) throws IOException {
+        try {
+            checkArguments(file, format);
+            ListingReader reader = new ListingReader(FileChannel.open(file, StandardOpenOption.READ), format);
+            Spliterator<Property> listings = new Spliterators.AbstractSpliterator<Property>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Property> action) {
+                    Property property;
+                    try {
+                        property = reader.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (property == null) {
+                        return false;
+                    }
+                    action.accept(property);
+                    return true;
+                }
+            };
+            return StreamSupport.stream(listings, false).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error opening listings file " + file, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the catalog of a service with the listings of a file, see {@link PropertyService#bulkLoad(Stream)}.
+     * The file is parsed in a single streaming pass straight into the new catalog; if any listing is invalid the
+     * service keeps its current catalog.
+     *
+     * @param service the service to load
+     * @param file the file to read
+     * @param format the format of the file
+     * @return the number of properties loaded and the time it took
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if an argument is null, or if a listing is malformed or invalid
+     */
+    public static BulkLoadReport load(PropertyService service, Path file, ListingFormat format) throws IOException {
+        try {
+            if (service == null) {
+                logger.log(Level.SEVERE, "Attempted to load listings into a null service");
+                throw new IllegalArgumentException("Service cannot be null");
+            }
+            try (Stream<Property> listings = read(file, format)) {
+                BulkLoadReport report = service.bulkLoad(listings);
+                logger.info("Loaded " + file + ": " + report);
+                return report;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error loading listings file " + file, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the properties of a service matching a query to a file, replacing the file if it exists.
+     * Properties are encoded straight from the catalog columns through a {@link PropertyView}, in the order of
+     * {@link PropertyService#forEachProperty(PropertyQuery, PropertyVisitor)}.
+     *
+     * @param service the service to export
+     * @param query the properties to export, for example {@code new PropertyQuery()} for all of them
+     * @param file the file to write
+     * @param format the format to write
+     * @return the number of properties written
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if an argument is null, or if a property has an infinite or NaN area or
+     *         coordinate
+     */
+    public static long export(PropertyService service, PropertyQuery query, Path file, ListingFormat format)
+            throws IOException {
+        try {
+            if (service == null) {
+                logger.log(Level.SEVERE, "Attempted to export listings from a null service");
+                throw new IllegalArgumentException("Service cannot be null");
+            }
+            checkArguments(file, format);
+            long start = System.nanoTime();
+            long written;
+            try (ListingWriter writer = new ListingWriter(FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), format)) {
+                written = service.forEachProperty(query, view -> {
+                    try {
+                        writer.write(view);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info("Exported " + written + " properties to " + file + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+            return written;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error exporting listings to " + file, e);
+            throw e;
+        }
+    }
+
+    private static void checkArguments(Path file, ListingFormat format) {
+        if (file == null) {
+            logger.log(Level.SEVERE, "Attempted to use a null listings file");
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        if (format == null) {
+            logger.log(Level.SEVERE, "Attempted to use a null listing format");
+            throw new IllegalArgumentException("Format cannot be null");
+        }
+    }
+}
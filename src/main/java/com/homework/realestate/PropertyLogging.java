@@ -0,0 +1,63 @@
+package com.homework.realestate;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging helpers shared by the model and service classes.
+ * All helpers are meant to be used behind a level check so that no message is built when the level is disabled.
+ *
+ * <p>Per-field tracing (one line for every getter, setter and constructor call on {@link Property}) is switched
+ * off unless the JVM is started with {@code -Dcom.homework.realestate.fieldTracing=true}. Even when it is switched
+ * on, the messages are logged at {@link Level#FINEST}, so the logger level has to be lowered as well.
+ */
+final class PropertyLogging {
+
+    /** Name of the system property that enables per-field tracing. */
+    static final String FIELD_TRACING_PROPERTY = "com.homework.realestate.fieldTracing";
+
+    /** Whether per-field tracing is compiled in. Read once, so the JIT can remove disabled tracing entirely. */
+    static final boolean FIELD_TRACING = Boolean.getBoolean(FIELD_TRACING_PROPERTY);
+
+    private PropertyLogging() {
+    }
+
+    /**
+     * Checks if per-field trace messages should be logged.
+     *
+     * @param logger the logger the message would be written to
+     * @return true if field tracing is switched on and the logger accepts {@link Level#FINEST} messages
+     */
+    static boolean isFieldTracingEnabled(Logger logger) {
+        return FIELD_TRACING && logger.isLoggable(Level.FINEST);
+    }
+
+    /**
+     * Builds the summary line logged once per query.
+     *
+     * @param operation the name of the operation
+     * @param criteria the query criteria, or an empty string
+     * @param resultSize the number of results returned
+     * @param catalogSize the number of properties in the catalog
+     * @param startNanos the {@link System#nanoTime()} at which the query started
+     * @return the summary line
+     */
+    static String querySummary(String operation, String criteria, long resultSize, int catalogSize, long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        return operation + "(" + criteria + ") returned " + resultSize + " of " + catalogSize
+                + " properties in " + micros + " us";
+    }
+
+    /**
+     * Picks the level a failed query is logged at. A query stopped by {@link QueryCancellation} was cancelled or
+     * timed out on purpose, so it is logged at {@link Level#FINE} instead of as an error with a stack trace.
+     *
+     * @param failure the exception the query failed with
+     * @return {@link Level#FINE} for a cancelled query, {@link Level#SEVERE} otherwise
+     */
+    static Level failureLevel(Exception failure) {
+        return failure instanceof CancellationException ? Level.FINE : Level.SEVERE;
+    }
+}
@@ -0,0 +1,13 @@
+package com.homework.realestate;
+
+/**
+ * Numeric attributes of a property that analytics can be computed over.
+ */
+public enum PropertyMetric {
+    /** The price of the property. */
+    PRICE,
+    /** The area of the property. */
+    AREA,
+    /** The price of the property divided by its area, only defined for properties with a positive area. */
+    PRICE_PER_AREA
+}
@@ -0,0 +1,398 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Multi-criteria property query for {@link PropertyService#findProperties(PropertyQuery)}.
+ * Criteria are combined with AND; a query without criteria matches every property. The methods return the query
+ * itself so that criteria can be chained:
+ *
+ * <pre>{@code
+ * PropertyQuery query = new PropertyQuery()
+ *         .address("oak av")
+ *         .type(PropertyType.HOUSE)
+ *         .price(new BigDecimal("200000"), new BigDecimal("400000"))
+ *         .bedrooms(3)
+ *         .availableOnly()
+ *         .offset(40)
+ *         .limit(20);
+ * }</pre>
+ *
+ * <p>Results are returned in the order in which the properties were added, so {@link #offset(int)} and
+ * {@link #limit(int)} page through the matches in a stable order as long as the catalog does not change.
+ */
+public class PropertyQuery {
+
+    private static final Logger logger = Logger.getLogger(PropertyQuery.class.getName());
+
+    private String address;
+    private String[] addressTokens;
+    private PropertyType type;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private int bedrooms = -1;
+    private boolean availableOnly;
+    private double[] box;
+    private double centerLatitude = Double.NaN;
+    private double centerLongitude = Double.NaN;
+    private double radiusKm = Double.NaN;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Only match properties whose address contains every word of the given text, where the last letters of a
+     * word may be left out: {@code "oak av"} matches {@code "456 Oak Ave"}. Words are runs of letters and digits
+     * compared without regard to case; other characters only separate them.
+     *
+     * @param text the search text
+     * @return this query
+     * @throws IllegalArgumentException if the text is null or holds no letter or digit
+     */
+    public PropertyQuery address(String text) {
+        if (text == null) {
+            logger.log(Level.SEVERE, "Attempted to query by null address");
+            throw new IllegalArgumentException("Address search text cannot be null");
+        }
+        String[] tokens = AddressIndex.tokenize(text);
+        if (tokens.length == 0) {
+            logger.log(Level.SEVERE, "Attempted to query by address without words: " + text);
+            throw new IllegalArgumentException("Address search text must contain a letter or digit");
+        }
+        this.address = text;
+        this.addressTokens = tokens;
+        return this;
+    }
+
+    /**
+     * Only match properties of the given type.
+     *
+     * @param type the property type
+     * @return this query
+     * @throws IllegalArgumentException if the type is null
+     */
+    public PropertyQuery type(PropertyType type) {
+        if (type == null) {
+            logger.log(Level.SEVERE, "Attempted to query by null property type");
+            throw new IllegalArgumentException("Property type cannot be null");
+        }
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Only match properties with a price in the given range.
+     *
+     * @param minPrice the minimum price (inclusive)
+     * @param maxPrice the maximum price (inclusive)
+     * @return this query
+     * @throws IllegalArgumentException if minPrice or maxPrice is null, or if minPrice > maxPrice
+     */
+    public PropertyQuery price(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice == null || maxPrice == null) {
+            logger.log(Level.SEVERE, "Attempted to query by null price range");
+            throw new IllegalArgumentException("Price range values cannot be null");
+        }
+        if (minPrice.compareTo(maxPrice) > 0) {
+            logger.log(Level.SEVERE, "Invalid price range: minPrice > maxPrice");
+            throw new IllegalArgumentException("Minimum price cannot be greater than maximum price");
+        }
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        return this;
+    }
+
+    /**
+     * Only match properties with the given number of bedrooms.
+     *
+     * @param bedrooms the number of bedrooms
+     * @return this query
+     * @throws IllegalArgumentException if the number of bedrooms is negative
+     */
+    public PropertyQuery bedrooms(int bedrooms) {
+        if (bedrooms < 0) {
+            logger.log(Level.SEVERE, "Attempted to query by negative bedroom count: " + bedrooms);
+            throw new IllegalArgumentException("Number of bedrooms cannot be negative");
+        }
+        this.bedrooms = bedrooms;
+        return this;
+    }
+
+    /**
+     * Only match available properties.
+     *
+     * @return this query
+     */
+    public PropertyQuery availableOnly() {
+        this.availableOnly = true;
+        return this;
+    }
+
+    /**
+     * Only match properties whose location is within a great-circle distance of a point.
+     *
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     * @param radiusKm the largest distance in kilometres (inclusive)
+     * @return this query
+     * @throws IllegalArgumentException if a coordinate is out of range or the radius is negative or not finite
+     */
+    public PropertyQuery within(double latitude, double longitude, double radiusKm) {
+        if (!Locations.isValid(latitude, longitude)) {
+            logger.log(Level.SEVERE, "Attempted to query around an invalid location: " + latitude + ", "
+                    + longitude);
+            throw new IllegalArgumentException(
+                    "Latitude must be between -90 and 90 and longitude between -180 and 180");
+        }
+        if (!(radiusKm >= 0) || Double.isInfinite(radiusKm)) {
+            logger.log(Level.SEVERE, "Attempted to query with an invalid radius: " + radiusKm);
+            throw new IllegalArgumentException("Radius must be a finite, non-negative number of kilometres");
+        }
+        this.centerLatitude = latitude;
+        this.centerLongitude = longitude;
+        this.radiusKm = radiusKm;
+        return this;
+    }
+
+    /**
+     * Only match properties whose location lies in a latitude and longitude box, edges included. A box whose
+     * minimum longitude is greater than its maximum longitude crosses the antimeridian.
+     *
+     * @param minLatitude the southern edge in degrees
+     * @param minLongitude the western edge in degrees
+     * @param maxLatitude the northern edge in degrees
+     * @param maxLongitude the eastern edge in degrees
+     * @return this query
+     * @throws IllegalArgumentException if a coordinate is out of range, or if minLatitude > maxLatitude
+     */
+    public PropertyQuery inBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        if (!Locations.isValid(minLatitude, minLongitude) || !Locations.isValid(maxLatitude, maxLongitude)) {
+            logger.log(Level.SEVERE, "Attempted to query by a box with invalid coordinates");
+            throw new IllegalArgumentException(
+                    "Latitude must be between -90 and 90 and longitude between -180 and 180");
+        }
+        if (minLatitude > maxLatitude) {
+            logger.log(Level.SEVERE, "Invalid box: minLatitude > maxLatitude");
+            throw new IllegalArgumentException("Minimum latitude cannot be greater than maximum latitude");
+        }
+        this.box = new double[] {minLatitude, minLongitude, maxLatitude, maxLongitude};
+        return this;
+    }
+
+    /**
+     * Skips the given number of matches.
+     *
+     * @param offset the number of matches to skip
+     * @return this query
+     * @throws IllegalArgumentException if the offset is negative
+     */
+    public PropertyQuery offset(int offset) {
+        if (offset < 0) {
+            logger.log(Level.SEVERE, "Attempted to query with negative offset: " + offset);
+            throw new IllegalArgumentException("Offset cannot be negative");
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Returns at most the given number of matches.
+     *
+     * @param limit the maximum number of matches to return
+     * @return this query
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public PropertyQuery limit(int limit) {
+        if (limit < 0) {
+            logger.log(Level.SEVERE, "Attempted to query with negative limit: " + limit);
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Copies the criteria of the query with another page.
+     *
+     * @param offset the number of matches to skip
+     * @param limit the maximum number of matches to return
+     * @return a new query
+     */
+    PropertyQuery withPage(int offset, int limit) {
+        PropertyQuery copy = new PropertyQuery();
+        copy.address = address;
+        copy.addressTokens = addressTokens;
+        copy.type = type;
+        copy.minPrice = minPrice;
+        copy.maxPrice = maxPrice;
+        copy.bedrooms = bedrooms;
+        copy.availableOnly = availableOnly;
+        copy.box = box;
+        copy.centerLatitude = centerLatitude;
+        copy.centerLongitude = centerLongitude;
+        copy.radiusKm = radiusKm;
+        copy.offset = offset;
+        copy.limit = limit;
+        return copy;
+    }
+
+    /**
+     * Gets the address words to match, or null if the query has no address criterion.
+     */
+    String[] getAddressTokens() {
+        return addressTokens;
+    }
+
+    /**
+     * Tells whether the query has an address criterion.
+     */
+    boolean hasAddress() {
+        return addressTokens != null;
+    }
+
+    /**
+     * Gets the requested property type, or null to match every type.
+     */
+    PropertyType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the minimum price (inclusive), or null if the query has no price range.
+     */
+    BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * Gets the maximum price (inclusive), or null if the query has no price range.
+     */
+    BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * Tells whether the query has a price range.
+     */
+    boolean hasPriceRange() {
+        return minPrice != null;
+    }
+
+    /**
+     * Gets the requested number of bedrooms, or -1 to match any number.
+     */
+    int getBedrooms() {
+        return bedrooms;
+    }
+
+    /**
+     * Tells whether the query has a bedroom count criterion.
+     */
+    boolean hasBedrooms() {
+        return bedrooms >= 0;
+    }
+
+    /**
+     * Tells whether only available properties match.
+     */
+    boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    /**
+     * Gets the box as minimum latitude, minimum longitude, maximum latitude and maximum longitude, or null.
+     */
+    double[] getBox() {
+        return box;
+    }
+
+    /**
+     * Tells whether the query has a distance criterion around a point.
+     */
+    boolean hasCircle() {
+        return !Double.isNaN(radiusKm);
+    }
+
+    /**
+     * Gets the latitude of the centre of the distance criterion, or NaN if there is none.
+     */
+    double getCenterLatitude() {
+        return centerLatitude;
+    }
+
+    /**
+     * Gets the longitude of the centre of the distance criterion, or NaN if there is none.
+     */
+    double getCenterLongitude() {
+        return centerLongitude;
+    }
+
+    /**
+     * Gets the radius of the distance criterion in kilometres, or NaN if there is none.
+     */
+    double getRadiusKm() {
+        return radiusKm;
+    }
+
+    /**
+     * Tells whether the query has a box or a distance criterion.
+     */
+    boolean hasLocation() {
+        return box != null || hasCircle();
+    }
+
+    /**
+     * Gets the number of matches to skip.
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the maximum number of matches to return.
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns a string representation of the query criteria.
+     *
+     * @return the criteria, for example {@code type=HOUSE, bedrooms=3, limit=20}
+     */
+    @Override
+    public String toString() {
+        StringBuilder criteria = new StringBuilder();
+        if (address != null) {
+            criteria.append("address=\"").append(address).append("\", ");
+        }
+        if (type != null) {
+            criteria.append("type=").append(type).append(", ");
+        }
+        if (minPrice != null) {
+            criteria.append("min=").append(minPrice).append(", max=").append(maxPrice).append(", ");
+        }
+        if (bedrooms >= 0) {
+            criteria.append("bedrooms=").append(bedrooms).append(", ");
+        }
+        if (availableOnly) {
+            criteria.append("availableOnly, ");
+        }
+        if (hasCircle()) {
+            criteria.append("within=").append(radiusKm).append("km of ").append(centerLatitude).append(',')
+                    .append(centerLongitude).append(", ");
+        }
+        if (box != null) {
+            criteria.append("box=").append(box[0]).append(',').append(box[1]).append(" to ").append(box[2])
+                    .append(',').append(box[3]).append(", ");
+        }
+        if (offset > 0) {
+            criteria.append("offset=").append(offset).append(", ");
+        }
+        if (limit != Integer.MAX_VALUE) {
+            criteria.append("limit=").append(limit).append(", ");
+        }
+        return criteria.length() == 0 ? "" : criteria.substring(0, criteria.length() - 2);
+    }
+}
@@ -0,0 +1,302 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable snapshot of a real estate property.
+ * Unlike {@link Property}, a record cannot change after it is built, so it can be shared between threads and
+ * kept as a map key without copying. It stores the price in cents and the room counts in bytes, the way the
+ * catalog stores them, so building one from a stored row allocates no {@link BigDecimal}; {@link #getPrice()}
+ * builds one on demand. The hash code is computed once when the record is built, and nothing is logged.
+ *
+ * <p>Records compare by value: two records are equal when all their fields are equal. {@link Property} compares
+ * by id only. Use {@link #of(Property)} and {@link #toProperty()} to convert between the two.
+ */
+public final class PropertyRecord {
+
+    private static final Logger logger = Logger.getLogger(PropertyRecord.class.getName());
+
+    private final String id;
+    private final String address;
+    private final PropertyType type;
+    private final long priceInCents;
+    private final double area;
+    private final byte bedrooms;
+    private final byte bathrooms;
+    private final boolean available;
+    private final double latitude;
+    private final double longitude;
+    private final int hash;
+
+    /**
+     * Constructor for PropertyRecord with all attributes but the location, which is left unknown.
+     *
+     * @param id the unique identifier for the property
+     * @param address the address of the property
+     * @param type the type of the property (HOUSE, APARTMENT, etc.)
+     * @param priceInCents the price of the property multiplied by 100
+     * @param area the area of the property in square units
+     * @param bedrooms the number of bedrooms in the property, between 0 and 127
+     * @param bathrooms the number of bathrooms in the property, between 0 and 127
+     * @param available the availability status of the property
+     * @throws IllegalArgumentException if a room count is outside 0 to 127
+     */
+    public PropertyRecord(String id, String address, PropertyType type, long priceInCents, double area,
+                          int bedrooms, int bathrooms, boolean available) {
+        this(id, address, type, priceInCents, area, bedrooms, bathrooms, available, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructor for PropertyRecord with all attributes and a location.
+     *
+     * @param id the unique identifier for the property
+     * @param address the address of the property
+     * @param type the type of the property (HOUSE, APARTMENT, etc.)
+     * @param priceInCents the price of the property multiplied by 100
+     * @param area the area of the property in square units
+     * @param bedrooms the number of bedrooms in the property, between 0 and 127
+     * @param bathrooms the number of bathrooms in the property, between 0 and 127
+     * @param available the availability status of the property
+     * @param latitude the latitude of the property in degrees, or NaN if the location is unknown
+     * @param longitude the longitude of the property in degrees, or NaN if the location is unknown
+     * @throws IllegalArgumentException if a room count is outside 0 to 127
+     */
+    public PropertyRecord(String id, String address, PropertyType type, long priceInCents, double area,
+                          int bedrooms, int bathrooms, boolean available, double latitude, double longitude) {
+        if (bedrooms < 0 || bedrooms > Byte.MAX_VALUE || bathrooms < 0 || bathrooms > Byte.MAX_VALUE) {
+            logger.log(Level.SEVERE, "Attempted to create a property record with room counts out of range: "
+                    + bedrooms + " bedrooms, " + bathrooms + " bathrooms");
+            throw new IllegalArgumentException("Bedroom and bathroom counts must be between 0 and 127");
+        }
+        this.id = id;
+        this.address = address;
+        this.type = type;
+        this.priceInCents = priceInCents;
+        this.area = area;
+        this.bedrooms = (byte) bedrooms;
+        this.bathrooms = (byte) bathrooms;
+        this.available = available;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        int h = Objects.hashCode(id);
+        h = 31 * h + Objects.hashCode(address);
+        h = 31 * h + Objects.hashCode(type);
+        h = 31 * h + Long.hashCode(priceInCents);
+        h = 31 * h + Double.hashCode(area);
+        h = 31 * h + bedrooms;
+        h = 31 * h + bathrooms;
+        h = 31 * h + Boolean.hashCode(available);
+        h = 31 * h + Double.hashCode(latitude);
+        this.hash = 31 * h + Double.hashCode(longitude);
+    }
+
+    /**
+     * Builds a record holding the current values of a property.
+     *
+     * @param property the property to copy
+     * @return a record with the same values
+     * @throws IllegalArgumentException if the property is null, its price is null or has more than two decimal
+     *         places, or a room count is outside 0 to 127
+     */
+    public static PropertyRecord of(Property property) {
+        if (property == null) {
+            logger.log(Level.SEVERE, "Attempted to create a property record from a null property");
+            throw new IllegalArgumentException("Property cannot be null");
+        }
+        BigDecimal price = property.getPrice();
+        if (price == null) {
+            logger.log(Level.SEVERE, "Attempted to create a property record with a null price");
+            throw new IllegalArgumentException("Property price cannot be null");
+        }
+        long priceInCents;
+        try {
+            priceInCents = Prices.toScaled(price);
+        } catch (ArithmeticException e) {
+            logger.log(Level.SEVERE, "Attempted to create a property record with an unsupported price: " + price, e);
+            throw new IllegalArgumentException("Property price must have at most 2 decimal places", e);
+        }
+        return new PropertyRecord(property.getId(), property.getAddress(), property.getType(), priceInCents,
+                property.getArea(), property.getBedrooms(), property.getBathrooms(), property.isAvailable(),
+                property.getLatitude(), property.getLongitude());
+    }
+
+    /**
+     * Gets the unique identifier of the property.
+     *
+     * @return the property id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the address of the property.
+     *
+     * @return the property address
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the type of the property.
+     *
+     * @return the property type
+     */
+    public PropertyType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the price of the property. A new {@link BigDecimal} is built on each call.
+     *
+     * @return the property price with two decimal places
+     */
+    public BigDecimal getPrice() {
+        return Prices.fromScaled(priceInCents);
+    }
+
+    /**
+     * Gets the price of the property in cents, without allocating a {@link BigDecimal}.
+     *
+     * @return the property price multiplied by 100
+     */
+    public long getPriceInCents() {
+        return priceInCents;
+    }
+
+    /**
+     * Gets the area of the property.
+     *
+     * @return the property area
+     */
+    public double getArea() {
+        return area;
+    }
+
+    /**
+     * Gets the number of bedrooms in the property.
+     *
+     * @return the number of bedrooms
+     */
+    public int getBedrooms() {
+        return bedrooms;
+    }
+
+    /**
+     * Gets the number of bathrooms in the property.
+     *
+     * @return the number of bathrooms
+     */
+    public int getBathrooms() {
+        return bathrooms;
+    }
+
+    /**
+     * Checks if the property is available.
+     *
+     * @return true if the property is available, false otherwise
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Gets the latitude of the property.
+     *
+     * @return the latitude in degrees, or NaN if the location is unknown
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Gets the longitude of the property.
+     *
+     * @return the longitude in degrees, or NaN if the location is unknown
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Checks if the location of the property is known.
+     *
+     * @return true if both coordinates are set
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Copies the record into a new mutable {@link Property}.
+     *
+     * @return a property holding the values of the record
+     */
+    public Property toProperty() {
+        return new Property(id, address, type, Prices.fromScaled(priceInCents), area, bedrooms, bathrooms,
+                available, latitude, longitude);
+    }
+
+    /**
+     * Compares this record to another object for equality.
+     * Records are equal if all their fields are equal.
+     *
+     * @param o the object to compare with
+     * @return true if the objects are equal, false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PropertyRecord)) {
+            return false;
+        }
+        PropertyRecord other = (PropertyRecord) o;
+        return hash == other.hash
+                && priceInCents == other.priceInCents
+                && Double.compare(area, other.area) == 0
+                && bedrooms == other.bedrooms
+                && bathrooms == other.bathrooms
+                && available == other.available
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && type == other.type
+                && Objects.equals(id, other.id)
+                && Objects.equals(address, other.address);
+    }
+
+    /**
+     * Returns the hash code computed from all fields when the record was built.
+     *
+     * @return the hash code value
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns a string representation of the record.
+     *
+     * @return a string representation of the record
+     */
+    @Override
+    public String toString() {
+        return "PropertyRecord{" +
+                "id='" + id + '\'' +
+                ", address='" + address + '\'' +
+                ", type=" + type +
+                ", price=" + getPrice() +
+                ", area=" + area +
+                ", bedrooms=" + bedrooms +
+                ", bathrooms=" + bathrooms +
+                ", isAvailable=" + available +
+                (hasLocation() ? ", latitude=" + latitude + ", longitude=" + longitude : "") +
+                '}';
+    }
+}
@@ -1,61 +1,634 @@
 package com.homework.realestate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.logging.Logger;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
+import javax.management.ObjectName;
 
 /**
  * Service class for managing and analyzing real estate properties.
- * This class provides methods to add, filter, and analyze properties using Java 8 Streams.
+ * This class provides methods to add, filter, and analyze properties.
+ * Every query logs a single INFO summary line; the line is only built when INFO is enabled for this logger.
+ *
+ * <p>Properties are stored in a columnar {@link PropertyTable}: prices, areas, room counts and types live in
+ * primitive arrays, ids and addresses are dictionary encoded, and no {@link Property} objects are retained.
+ * Queries run over the columns and indexes and only build {@link Property} objects for the rows they return, so
+ * the returned properties are copies: changing them does not change the catalog, use
+ * {@link #upsertProperty(Property)} for that.
+ *
+ * <p>Lookups by type, bedroom count and availability are answered from secondary indexes that are kept up to
+ * date as properties are added, so they only visit matching properties and counts need no scan at all.
+ * Price-range lookups and the most expensive property are answered from a sorted price index, and point
+ * lookups, updates and removals by id from a dictionary index on the property id. Criteria can be combined
+ * with a {@link PropertyQuery}, which is answered in a single pass driven by the most selective index. The
+ * matches of a query can also be ranked by price, area or price per area with
+ * {@link #findTopProperties(PropertyQuery, PropertyMetric, int)}, which keeps only the best k in a bounded heap.
+ *
+ * <p>Besides the methods returning lists, {@link #streamProperties(PropertyQuery)} returns a lazy stream and
+ * {@link #forEachProperty(PropertyQuery, PropertyVisitor)} calls back with a reusable view and
+ * {@link #openCursor(PropertyQuery)} moves one along the matches, so large results can be consumed, or abandoned
+ * early, without materializing them. {@link #findRecords(PropertyQuery)} returns immutable {@link PropertyRecord}
+ * copies, which are cheaper to build than {@link Property} objects.
+ *
+ * <p>Large feeds are loaded with {@link #addAll(Collection)}, which validates a batch before storing any of it, or
+ * with {@link #bulkLoad(Stream)}, which builds a new catalog aside and swaps it in once complete. Both index the
+ * loaded prices in one pass and log one line per load.
+ * For warm restarts, {@link #saveSnapshot(Path)} writes the catalog together with its indexes to a binary file
+ * and {@link #loadSnapshot(Path)} maps it back in without rebuilding anything.
+ *
+ * <p>Prices are stored in cents, so a property price must be set and have at most two decimal places, and it is
+ * returned with exactly two decimal places. Property ids must be set and unique. Bedroom and bathroom counts
+ * must be between 0 and 127.
+ *
+ * <p>The count, exact sum, minimum and maximum of the prices are maintained as properties are added, replaced and
+ * removed, both overall and per property type, so {@link #getAveragePrice()} and
+ * {@link #getPriceStatistics(PropertyType)} answer in constant time. Quantile sketches and fixed-width histograms of
+ * prices and areas are maintained the same way, overall, per type and per bedroom count, see
+ * {@link #getDistribution(PropertyMetric, PropertyType)}.
+ *
+ * <p>Queries run on the calling thread by default. With {@link #enableParallelExecution(ForkJoinPool, int)} the
+ * type, bedroom, availability, price-range and multi-criteria lookups build their results on a fork/join pool
+ * once the number of rows involved reaches a threshold, and ranked queries scan partitions of the rows in
+ * parallel. Results are the same in both modes, including their
+ * order.
+ *
+ * <p>Every query and change records its latency and result size in lock-free histograms, read with
+ * {@link #getMetrics()} or over JMX after {@link #registerMBean(String)}. Aggregates such as statistics and
+ * distributions count as one result. Streams and cursors are recorded when they are opened, with no results,
+ * since their matches are only found as they are consumed.
+ *
+ * <p>For repetitive search traffic, {@link #enableQueryCache(long)} keeps the results of recent lookups in a
+ * bounded cache that is checked against change counters on every hit, so a cached result is never stale.
+ *
+ * <p>A query whose thread is interrupted stops its pass over the rows within a few thousand rows and throws a
+ * {@link java.util.concurrent.CancellationException}, so cancelling a query run on an executor, for example
+ * through {@link AsyncPropertyService}, frees its thread. Work split across the parallel pool is not interrupted.
+ *
+ * <p>Systems that follow the catalog, such as search caches, can subscribe to its changes instead of comparing
+ * copies of it: {@link #enableChangeFeed(int)} publishes every add, update, availability change and removal to a
+ * {@link ChangeFeed} with increasing sequence numbers.
  */
 public class PropertyService {
     
     private static final Logger logger = Logger.getLogger(PropertyService.class.getName());
     
-    private List<Property> properties;
+    /** Number of rows from which {@link #enableParallelExecution()} splits work across the pool. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+    
+    private PropertyTable table;
+    private ParallelExecution parallelExecution;
+    private QueryCache queryCache;
+    private ChangeFeed changeFeed;
+    private ServiceMetrics metrics = new ServiceMetrics();
+    private boolean recordsWrites = true;
+    private ObjectName mbeanName;
     
     /**
      * Default constructor that initializes an empty property list.
      */
     public PropertyService() {
         logger.info("Creating new PropertyService instance with default constructor");
-        this.properties = new ArrayList<>();
+        this.table = new PropertyTable(16);
     }
     
     /**
      * Constructor that initializes the service with a list of properties.
      *
      * @param properties the initial list of properties
+     * @throws IllegalArgumentException if a property is null, has no id, has a duplicate id or has invalid values
      */
     public PropertyService(List<Property> properties) {
         logger.info("Creating new PropertyService instance with " + (properties != null ? properties.size() : 0) + " properties");
-        this.properties = new ArrayList<>(properties);
+        long[] scaledPrices = new long[properties.size()];
+        Set<String> ids = new HashSet<>(Math.max(16, (int) (properties.size() / 0.75f) + 1));
+        for (int i = 0; i < properties.size(); i++) {
+            scaledPrices[i] = validate(properties.get(i));
+            if (!ids.add(properties.get(i).getId())) {
+                logger.log(Level.SEVERE, "Attempted to create service with duplicate property id: "
+                        + properties.get(i).getId());
+                throw new IllegalArgumentException("Property ids must be unique");
+            }
+        }
+        this.table = new PropertyTable(properties.size());
+        table.appendAll(properties, scaledPrices);
+    }
+    
+    /**
+     * Runs large queries on the common fork/join pool, splitting work once {@link #DEFAULT_PARALLEL_THRESHOLD}
+     * rows are involved.
+     */
+    public void enableParallelExecution() {
+        enableParallelExecution(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+    
+    /**
+     * Runs large queries on the given fork/join pool.
+     * The service must not be modified while a query runs, the same as in sequential mode.
+     *
+     * @param pool the pool running the query tasks
+     * @param threshold the number of rows a query has to involve before its work is split
+     * @throws IllegalArgumentException if the pool is null or the threshold is negative
+     */
+    public void enableParallelExecution(ForkJoinPool pool, int threshold) {
+        if (pool == null) {
+            logger.log(Level.SEVERE, "Attempted to enable parallel execution without a pool");
+            throw new IllegalArgumentException("Pool cannot be null");
+        }
+        if (threshold < 0) {
+            logger.log(Level.SEVERE, "Attempted to enable parallel execution with a negative threshold: " + threshold);
+            throw new IllegalArgumentException("Parallel threshold cannot be negative");
+        }
+        this.parallelExecution = new ParallelExecution(pool, threshold);
+        logger.info("Parallel execution enabled with parallelism " + pool.getParallelism() + " and threshold "
+                + threshold);
+    }
+    
+    /**
+     * Runs all queries on the calling thread again.
+     */
+    public void disableParallelExecution() {
+        this.parallelExecution = null;
+        logger.info("Parallel execution disabled");
+    }
+    
+    /**
+     * Caches the results of the type, price-range, bedroom, availability and multi-criteria lookups, keeping the
+     * most recently used results within a size limit. Repeated lookups with the same criteria are answered from
+     * the cache, as new {@link Property} copies, until a change to the catalog could affect their result: results
+     * restricted to one property type stay cached while other types change, every other result is recomputed
+     * after any change. Enabling the cache again replaces it with an empty one.
+     *
+     * @param maxBytes the limit of the estimated heap size of the cached results
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void enableQueryCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            logger.log(Level.SEVERE, "Attempted to enable the query cache with a size limit of " + maxBytes);
+            throw new IllegalArgumentException("Query cache size limit must be positive");
+        }
+        this.queryCache = new QueryCache(maxBytes);
+        logger.info("Query cache enabled with a limit of " + maxBytes + " bytes");
+    }
+    
+    /**
+     * Stops caching query results and drops the cached ones.
+     */
+    public void disableQueryCache() {
+        this.queryCache = null;
+        logger.info("Query cache disabled");
+    }
+    
+    /**
+     * Publishes every change to the catalog from now on to a new {@link ChangeFeed} keeping the given number of
+     * events. Publishing stores the event in the feed's ring buffer and never waits for its consumers. Enabling
+     * the feed again closes the current feed and starts a new one, with sequence numbers starting again at 1.
+     *
+     * @param capacity the number of events the feed keeps, rounded up to a power of two
+     * @return the new feed
+     * @throws IllegalArgumentException if the capacity is not positive or above {@link ChangeFeed#MAX_CAPACITY}
+     */
+    public ChangeFeed enableChangeFeed(int capacity) {
+        ChangeFeed feed = new ChangeFeed(capacity);
+        disableChangeFeed();
+        this.changeFeed = feed;
+        logger.info("Change feed enabled with a capacity of " + feed.getCapacity() + " events");
+        return feed;
+    }
+    
+    /**
+     * Stops publishing changes. The current feed is closed, so its subscribers complete once they have received
+     * its last event.
+     */
+    public void disableChangeFeed() {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            this.changeFeed = null;
+            feed.close();
+            logger.info("Change feed disabled after " + feed.getLastSequence() + " events");
+        }
+    }
+    
+    /**
+     * Gets the feed that changes are published to.
+     *
+     * @return the feed, or null if the change feed is disabled
+     * @see #enableChangeFeed(int)
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+    
+    /**
+     * Makes this service publish its changes to a feed owned by another service, for services that keep several
+     * copies of the same catalog and publish each change once.
+     *
+     * @param feed the feed to publish to, or null to publish nothing
+     */
+    void publishChangesTo(ChangeFeed feed) {
+        this.changeFeed = feed;
+    }
+    
+    /**
+     * Gets the hit, miss, eviction and invalidation counts and the size of the query cache.
+     *
+     * @return the statistics of the cache, all zero if the cache is disabled
+     * @see #enableQueryCache(long)
+     */
+    public QueryCacheStatistics getQueryCacheStatistics() {
+        QueryCache cache = queryCache;
+        return cache == null ? new QueryCacheStatistics(0, 0, 0, 0, 0, 0, 0) : cache.statistics();
+    }
+    
+    /**
+     * Takes a snapshot of the metrics recorded since the service was created or its metrics were reset: per
+     * operation, the number of completed calls, latency quantiles and result-size quantiles; the number of
+     * queries driven by each kind of index; and the query cache counters. Metrics are always recorded and cost a
+     * few tens of nanoseconds per call, independent of the logging level.
+     *
+     * @return the metrics
+     */
+    public MetricsSnapshot getMetrics() {
+        return new MetricsSnapshot(metrics.operations(), metrics.planCounts(), getQueryCacheStatistics(),
+                table.size());
+    }
+    
+    /**
+     * Starts counting calls, latencies and query plans again from zero. The query cache keeps its own counters.
+     */
+    public void resetMetrics() {
+        metrics.reset();
+        logger.info("Metrics reset");
+    }
+    
+    /**
+     * Exposes the metrics of this service over JMX as a {@link PropertyServiceMetricsMXBean} registered with the
+     * platform MBean server, under {@code com.homework.realestate:type=PropertyService,name="<name>"}. A service
+     * registers at most one bean; registering again replaces the previous one.
+     *
+     * @param name the name identifying this service among others in the same JVM
+     * @return the object name the bean was registered under
+     * @throws IllegalArgumentException if the name is null or already in use
+     */
+    public ObjectName registerMBean(String name) {
+        unregisterMBean();
+        mbeanName = ServiceMetricsBean.register(name, new ServiceMetricsBean(this::getMetrics, this::resetMetrics));
+        return mbeanName;
+    }
+    
+    /**
+     * Removes the bean registered with {@link #registerMBean(String)}, if any.
+     */
+    public void unregisterMBean() {
+        if (mbeanName != null) {
+            ServiceMetricsBean.unregister(mbeanName);
+            mbeanName = null;
+        }
     }
     
     /**
-     * Adds a property to the collection.
+     * Makes this service record into the metrics of another one, for services that keep several copies of the
+     * same catalog. Reads are recorded by every copy; writes, which are applied to every copy, are only recorded
+     * by the copy that keeps its own metrics.
+     *
+     * @param owner the service whose metrics this service records into
+     */
+    void shareMetrics(PropertyService owner) {
+        metrics = owner.metrics;
+        recordsWrites = false;
+    }
+    
+    /**
+     * Adds a property to the collection and updates the indexes.
      *
      * @param property the property to add
-     * @throws IllegalArgumentException if the property is null
+     * @throws IllegalArgumentException if the property is null, has no id, has an id that is already in use,
+     *         has a price that is null or has more than two decimal places, or has room counts out of range
      */
     public void addProperty(Property property) {
         try {
-            logger.info("Adding property with id: " + (property != null ? property.getId() : "null"));
-            if (property == null) {
-                logger.log(Level.SEVERE, "Attempted to add null property");
-                throw new IllegalArgumentException("Property cannot be null");
+            long start = System.nanoTime();
+            long scaledPrice = validate(property);
+            if (table.rowOf(property.getId()) >= 0) {
+                logger.log(Level.SEVERE, "Attempted to add property with duplicate id: " + property.getId());
+                throw new IllegalArgumentException("Property with id " + property.getId() + " already exists");
+            }
+            int row = table.append(property, scaledPrice);
+            publishChange(ChangeType.ADDED, row);
+            recordWrite("addProperty", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Added property with id: " + property.getId());
             }
-            properties.add(property);
-            logger.info("Property added successfully");
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error adding property", e);
             throw e;
         }
     }
     
+    /**
+     * Adds a batch of properties in one operation.
+     * The whole batch is validated before anything is stored, so an invalid property or a duplicate id leaves
+     * the catalog unchanged. Storage is sized for the batch up front and the price index takes the batch in a
+     * single sort and merge pass instead of one insert per property. One INFO line is logged for the batch
+     * instead of one FINE line per property.
+     *
+     * @param properties the properties to add, in the order they should be stored
+     * @return the number of properties added and the time it took
+     * @throws IllegalArgumentException if the batch is null, or if a property is invalid, as for
+     *         {@link #addProperty(Property)}, or has an id that is in use or repeated within the batch
+     */
+    public BulkLoadReport addAll(Collection<Property> properties) {
+        try {
+            long start = System.nanoTime();
+            if (properties == null) {
+                logger.log(Level.SEVERE, "Attempted to add a null batch of properties");
+                throw new IllegalArgumentException("Properties cannot be null");
+            }
+            long[] scaledPrices = new long[properties.size()];
+            Set<String> batchIds = new HashSet<>(Math.max(16, (int) (properties.size() / 0.75f) + 1));
+            int i = 0;
+            for (Property property : properties) {
+                scaledPrices[i++] = validate(property);
+                if (table.rowOf(property.getId()) >= 0 || !batchIds.add(property.getId())) {
+                    logger.log(Level.SEVERE, "Attempted to add property with duplicate id: " + property.getId());
+                    throw new IllegalArgumentException("Property with id " + property.getId() + " already exists");
+                }
+            }
+            int firstRow = table.rowCount();
+            table.appendAll(properties, scaledPrices);
+            publishAdded(firstRow, table.rowCount());
+            BulkLoadReport report = new BulkLoadReport(properties.size(), System.nanoTime() - start);
+            recordWrite("addAll", start, report.getRowCount());
+            logger.info("Added " + report.getRowCount() + " properties in one batch: " + report);
+            return report;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error adding properties", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Replaces the whole catalog with the properties of a stream, for example a nightly feed.
+     * The new catalog is built aside while the current one keeps answering queries: properties are validated
+     * once as they are read, storage is sized from the stream when its size is known, and the price index is
+     * built in one sort pass at the end. Only once the new catalog is complete does it replace the current one, in
+     * a single reference swap, so a failed load leaves the current catalog untouched. Parallel execution and
+     * distribution settings carry over to the new catalog.
+     *
+     * @param properties the properties of the new catalog, in the order they should be stored
+     * @return the number of properties loaded and the time it took
+     * @throws IllegalArgumentException if the stream is null, or if a property is invalid, as for
+     *         {@link #addProperty(Property)}, or has an id repeated within the stream
+     */
+    public BulkLoadReport bulkLoad(Stream<Property> properties) {
+        try {
+            long start = System.nanoTime();
+            if (properties == null) {
+                logger.log(Level.SEVERE, "Attempted to bulk load a null stream of properties");
+                throw new IllegalArgumentException("Properties cannot be null");
+            }
+            Spliterator<Property> source = properties.spliterator();
+            PropertyTable loaded = table.emptyCopy((int) Math.min(Integer.MAX_VALUE, Math.max(0,
+                    source.getExactSizeIfKnown())));
+            source.forEachRemaining(property -> {
+                long scaledPrice = validate(property);
+                if (loaded.rowOf(property.getId()) >= 0) {
+                    logger.log(Level.SEVERE, "Attempted to bulk load duplicate property id: " + property.getId());
+                    throw new IllegalArgumentException("Property ids must be unique");
+                }
+                loaded.appendDeferred(property, scaledPrice);
+            });
+            loaded.finishAppending();
+            replaceTable(loaded);
+            BulkLoadReport report = new BulkLoadReport(loaded.size(), System.nanoTime() - start);
+            recordWrite("bulkLoad", start, report.getRowCount());
+            logger.info("Replaced the catalog by bulk load: " + report);
+            return report;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error bulk loading properties", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Saves the catalog, with all its indexes, aggregates and distributions, to a binary snapshot file that
+     * {@link #loadSnapshot(Path)} restores without rebuilding anything. The snapshot is written to a temporary
+     * file next to the target, forced to disk and then moved over the target, so an existing snapshot is only
+     * replaced by a complete one.
+     *
+     * @param file the snapshot file to write
+     * @return the size of the snapshot in bytes
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalArgumentException if the file is null
+     */
+    public long saveSnapshot(Path file) throws IOException {
+        try {
+            long start = System.nanoTime();
+            if (file == null) {
+                logger.log(Level.SEVERE, "Attempted to save a snapshot to a null file");
+                throw new IllegalArgumentException("File cannot be null");
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            long size;
+            try (SnapshotOutput output = new SnapshotOutput(temporary)) {
+                table.writeTo(output);
+                size = output.size();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            metrics.record("saveSnapshot", start, table.size());
+            logger.info("Saved a snapshot of " + table.size() + " properties to " + file + ": " + size + " bytes in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return size;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error saving snapshot to " + file, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Replaces the whole catalog with one saved by {@link #saveSnapshot(Path)}.
+     * The snapshot is memory mapped and its columns and indexes are copied out in bulk, so loading is bound by
+     * the speed of reading the file rather than by the number of properties: no property is parsed, validated or
+     * indexed again. As with {@link #bulkLoad(Stream)} the new catalog replaces the current one in a single
+     * reference swap once it is complete, and parallel execution carries over; distribution settings are those
+     * saved in the snapshot.
+     *
+     * @param file the snapshot file to read
+     * @return the number of properties loaded and the time it took
+     * @throws IOException if the snapshot cannot be read
+     * @throws IllegalArgumentException if the file is null, is not a snapshot, was written by an incompatible
+     *         version or is truncated
+     */
+    public BulkLoadReport loadSnapshot(Path file) throws IOException {
+        try {
+            long start = System.nanoTime();
+            if (file == null) {
+                logger.log(Level.SEVERE, "Attempted to load a snapshot from a null file");
+                throw new IllegalArgumentException("File cannot be null");
+            }
+            PropertyTable loaded;
+            try (SnapshotInput input = new SnapshotInput(file)) {
+                loaded = new PropertyTable(input);
+                input.finish();
+            }
+            replaceTable(loaded);
+            BulkLoadReport report = new BulkLoadReport(loaded.size(), System.nanoTime() - start);
+            recordWrite("loadSnapshot", start, report.getRowCount());
+            logger.info("Replaced the catalog from snapshot " + file + ": " + report);
+            return report;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error loading snapshot from " + file, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Takes over the catalog of another service, which must not be used afterwards. Used to swap in a catalog
+     * that was loaded aside.
+     *
+     * @param other the service holding the new catalog
+     */
+    void replaceCatalog(PropertyService other) {
+        replaceTable(other.table);
+    }
+    
+    /**
+     * Adds a property, or replaces the property with the same id.
+     * A replaced property keeps its position in the collection.
+     *
+     * @param property the property to add or replace
+     * @return the property that was replaced, or null if the property was added
+     * @throws IllegalArgumentException if the property is null, has no id, has a price that is null or has more
+     *         than two decimal places, or has room counts out of range
+     */
+    public Property upsertProperty(Property property) {
+        try {
+            long start = System.nanoTime();
+            long scaledPrice = validate(property);
+            int row = table.rowOf(property.getId());
+            if (row < 0) {
+                publishChange(ChangeType.ADDED, table.append(property, scaledPrice));
+                recordWrite("upsertProperty", start, 1);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Added property with id: " + property.getId());
+                }
+                return null;
+            }
+            Property previous = table.toProperty(row);
+            table.replace(row, property, scaledPrice);
+            publishChange(ChangeType.UPDATED, row);
+            recordWrite("upsertProperty", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Replaced property with id: " + property.getId());
+            }
+            return previous;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error upserting property", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Marks the property with the given id as available or unavailable, leaving its other values as they are.
+     * Unlike {@link #upsertProperty(Property)} this only updates the availability index.
+     *
+     * @param id the id of the property
+     * @param available the new availability
+     * @return true if the property exists, false if there is no property with that id
+     */
+    public boolean setAvailability(String id, boolean available) {
+        try {
+            long start = System.nanoTime();
+            int row = id != null ? table.rowOf(id) : -1;
+            if (row < 0) {
+                recordWrite("setAvailability", start, 0);
+                return false;
+            }
+            boolean changed = table.available(row) != available;
+            table.setAvailable(row, available);
+            if (changed) {
+                publishChange(ChangeType.AVAILABILITY_CHANGED, row);
+            }
+            recordWrite("setAvailability", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Set availability of property with id " + id + " to " + available);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error setting property availability", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Removes the property with the given id.
+     *
+     * @param id the id of the property to remove
+     * @return the removed property, or null if there is no property with that id
+     */
+    public Property removeProperty(String id) {
+        try {
+            long start = System.nanoTime();
+            int row = id != null ? table.rowOf(id) : -1;
+            if (row < 0) {
+                recordWrite("removeProperty", start, 0);
+                return null;
+            }
+            Property removed = table.toProperty(row);
+            ChangeFeed feed = changeFeed;
+            PropertyRecord removedRecord = feed != null ? table.toRecord(row) : null;
+            table.remove(row);
+            if (feed != null) {
+                feed.append(ChangeType.REMOVED, removedRecord);
+                feed.signal();
+            }
+            recordWrite("removeProperty", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Removed property with id: " + id);
+            }
+            return removed;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error removing property", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Finds the property with the given id.
+     *
+     * @param id the id of the property
+     * @return the property, or null if there is no property with that id
+     */
+    public Property findById(String id) {
+        long start = System.nanoTime();
+        int row = id != null ? table.rowOf(id) : -1;
+        Property property = row >= 0 ? table.toProperty(row) : null;
+        metrics.record("findById", start, property != null ? 1 : 0);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Property with id " + id + (property != null ? " found" : " not found"));
+        }
+        return property;
+    }
+    
     /**
      * Gets a copy of all properties in the collection.
      *
@@ -63,12 +636,15 @@ public class PropertyService {
      */
     public List<Property> getProperties() {
         try {
-            logger.info("Getting all properties, count: " + properties.size());
-            List<Property> copy = new ArrayList<>(properties);
-            logger.info("Properties retrieved successfully");
+            long start = System.nanoTime();
+            List<Property> copy = collectRows(table.liveRows(), table.size());
+            metrics.record("getProperties", start, copy.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getProperties", "", copy.size(), table.size(), start));
+            }
             return copy;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error getting properties", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error getting properties", e);
             throw e;
         }
     }
@@ -80,14 +656,18 @@ public class PropertyService {
      */
     public List<Property> getAvailableProperties() {
         try {
-            logger.info("Filtering available properties");
-            List<Property> available = properties.stream()
-                    .filter(Property::isAvailable)
-                    .collect(Collectors.toList());
-            logger.info("Found " + available.size() + " available properties");
+            long start = System.nanoTime();
+            SecondaryIndexes indexes = table.indexes();
+            List<Property> available = cached(QueryCache.Key.available(),
+                    () -> collectRows(indexes.availableRows(), indexes.availableCount()));
+            metrics.record("getAvailableProperties", start, available.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getAvailableProperties", "", available.size(),
+                        table.size(), start));
+            }
             return available;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error filtering available properties", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error filtering available properties", e);
             throw e;
         }
     }
@@ -101,18 +681,22 @@ public class PropertyService {
      */
     public List<Property> getPropertiesByType(PropertyType type) {
         try {
-            logger.info("Filtering properties by type: " + type);
+            long start = System.nanoTime();
             if (type == null) {
                 logger.log(Level.SEVERE, "Attempted to filter by null property type");
                 throw new IllegalArgumentException("Property type cannot be null");
             }
-            List<Property> filtered = properties.stream()
-                    .filter(property -> property.getType() == type)
-                    .collect(Collectors.toList());
-            logger.info("Found " + filtered.size() + " properties of type " + type);
+            SecondaryIndexes indexes = table.indexes();
+            List<Property> filtered = cached(QueryCache.Key.type(type),
+                    () -> collectRows(indexes.rowsOfType(type), indexes.countOfType(type)));
+            metrics.record("getPropertiesByType", start, filtered.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getPropertiesByType", "type=" + type, filtered.size(),
+                        table.size(), start));
+            }
             return filtered;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error filtering properties by type", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error filtering properties by type", e);
             throw e;
         }
     }
@@ -127,7 +711,7 @@ public class PropertyService {
      */
     public List<Property> getPropertiesByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
         try {
-            logger.info("Filtering properties by price range: " + minPrice + " - " + maxPrice);
+            long start = System.nanoTime();
             if (minPrice == null || maxPrice == null) {
                 logger.log(Level.SEVERE, "Attempted to filter by null price range");
                 throw new IllegalArgumentException("Price range values cannot be null");
@@ -136,14 +720,17 @@ public class PropertyService {
                 logger.log(Level.SEVERE, "Invalid price range: minPrice > maxPrice");
                 throw new IllegalArgumentException("Minimum price cannot be greater than maximum price");
             }
-            List<Property> filtered = properties.stream()
-                    .filter(property -> property.getPrice().compareTo(minPrice) >= 0 && 
-                            property.getPrice().compareTo(maxPrice) <= 0)
-                    .collect(Collectors.toList());
-            logger.info("Found " + filtered.size() + " properties in price range");
+            List<Property> filtered = cached(QueryCache.Key.priceRange(minPrice, maxPrice),
+                    () -> collectRows(table.priceIndex().rowsInRange(Prices.ceilScaled(minPrice),
+                            Prices.floorScaled(maxPrice))));
+            metrics.record("getPropertiesByPriceRange", start, filtered.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getPropertiesByPriceRange",
+                        "min=" + minPrice + ", max=" + maxPrice, filtered.size(), table.size(), start));
+            }
             return filtered;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error filtering properties by price range", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error filtering properties by price range", e);
             throw e;
         }
     }
@@ -156,60 +743,519 @@ public class PropertyService {
      */
     public List<Property> getPropertiesByBedrooms(int bedrooms) {
         try {
-            logger.info("Filtering properties by bedrooms: " + bedrooms);
-            List<Property> filtered = properties.stream()
-                    .filter(property -> property.getBedrooms() == bedrooms)
-                    .collect(Collectors.toList());
-            logger.info("Found " + filtered.size() + " properties with " + bedrooms + " bedrooms");
+            long start = System.nanoTime();
+            SecondaryIndexes indexes = table.indexes();
+            List<Property> filtered = cached(QueryCache.Key.bedrooms(bedrooms),
+                    () -> collectRows(indexes.rowsWithBedrooms(bedrooms), indexes.countWithBedrooms(bedrooms)));
+            metrics.record("getPropertiesByBedrooms", start, filtered.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getPropertiesByBedrooms", "bedrooms=" + bedrooms,
+                        filtered.size(), table.size(), start));
+            }
             return filtered;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error filtering properties by bedrooms", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error filtering properties by bedrooms", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets all properties whose address contains every word of a search text, where the last letters of a word
+     * may be left out, so that the text typed so far can be completed: {@code "oak av"} finds "456 Oak Ave".
+     * The words are looked up in the inverted address index, so no address is scanned. To combine the search
+     * with other criteria, use {@link PropertyQuery#address(String)}.
+     *
+     * @param text the search text
+     * @return the matching properties, in the order in which they were added
+     * @throws IllegalArgumentException if the text is null or holds no letter or digit
+     */
+    public List<Property> getPropertiesByAddress(String text) {
+        try {
+            long start = System.nanoTime();
+            PropertyQuery query = new PropertyQuery().address(text);
+            List<Property> found = cached(QueryCache.Key.query(query), () -> collectRows(planQuery(query).execute()));
+            metrics.record("getPropertiesByAddress", start, found.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getPropertiesByAddress", query.toString(),
+                        found.size(), table.size(), start));
+            }
+            return found;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error searching properties by address", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Finds the properties matching all criteria of a query, in the order in which they were added.
+     * The query is driven by the index that yields the fewest candidates; the other criteria are checked on the
+     * candidates directly, and the scan stops once the page defined by the offset and limit of the query is full.
+     *
+     * @param query the query
+     * @return the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     */
+    public List<Property> findProperties(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            requireQuery(query);
+            QueryPlan[] plan = new QueryPlan[1];
+            List<Property> found = cached(QueryCache.Key.query(query), () -> {
+                plan[0] = planQuery(query);
+                return collectRows(plan[0].execute());
+            });
+            metrics.record("findProperties", start, found.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("findProperties",
+                        query + ", plan=" + (plan[0] != null ? plan[0] : "cached"), found.size(), table.size(),
+                        start));
+            }
+            return found;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error finding properties by query", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Counts the properties matching all criteria of a query. The offset and limit of the query are ignored.
+     *
+     * @param query the query
+     * @return the number of matching properties
+     * @throws IllegalArgumentException if the query is null
+     */
+    public long countProperties(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            QueryPlan plan = planQuery(query);
+            long count = plan.count();
+            metrics.record("countProperties", start, count);
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("countProperties", query + ", plan=" + plan, count,
+                        table.size(), start));
+            }
+            return count;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error counting properties by query", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Describes how a query would be executed, without executing it.
+     *
+     * @param query the query
+     * @return the index that would drive the query and the estimated number of candidates, noting when the price
+     *         or location index has to collect and sort the rows of its range before the first match
+     * @throws IllegalArgumentException if the query is null
+     */
+    public String explainQuery(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            String explanation = planQuery(query).toString();
+            metrics.record("explainQuery", start, 0);
+            return explanation;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error explaining query", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Streams all properties lazily, in the order in which they were added.
+     *
+     * @return a stream of copies of the properties
+     * @see #streamProperties(PropertyQuery)
+     */
+    public Stream<Property> streamProperties() {
+        return streamProperties(new PropertyQuery());
+    }
+    
+    /**
+     * Streams the properties matching a query lazily, in the order in which they were added.
+     * Properties are found and copied one at a time as the stream is consumed, so stopping early, for example with
+     * {@link Stream#findFirst()} or {@link Stream#limit(long)}, skips the remaining work. The stream reads the live
+     * catalog: it fails with a {@link ConcurrentModificationException} if the service is changed before the stream
+     * is fully consumed, and the query must not be changed while the stream is in use.
+     *
+     * @param query the query
+     * @return a sequential stream of copies of the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     */
+    public Stream<Property> streamProperties(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            QueryPlan plan = planQuery(query);
+            Stream<Property> stream = StreamSupport.stream(new QuerySpliterator(table, plan), false);
+            metrics.record("streamProperties", start, 0);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Streaming properties (" + query + ", plan=" + plan + ")");
+            }
+            return stream;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error streaming properties", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Calls a visitor for each property matching a query, in the order in which they were added.
+     * The visitor gets a reusable {@link PropertyView} instead of a new {@link Property} per match, so visiting
+     * allocates nothing per property. The visit stops early when the visitor returns false. The visitor must not
+     * change the service.
+     *
+     * @param query the query
+     * @param visitor the visitor
+     * @return the number of properties visited
+     * @throws IllegalArgumentException if the query or the visitor is null
+     */
+    public long forEachProperty(PropertyQuery query, PropertyVisitor visitor) {
+        try {
+            long start = System.nanoTime();
+            if (visitor == null) {
+                logger.log(Level.SEVERE, "Attempted to visit properties with a null visitor");
+                throw new IllegalArgumentException("Visitor cannot be null");
+            }
+            QueryPlan plan = planQuery(query);
+            QueryPlan.RowIterator rows = plan.rows(true);
+            PropertyView view = new PropertyView(table);
+            long visited = 0;
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                view.moveTo(row);
+                visited++;
+                if (!visitor.visit(view)) {
+                    break;
+                }
+            }
+            metrics.record("forEachProperty", start, visited);
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("forEachProperty", query + ", plan=" + plan, visited,
+                        table.size(), start));
+            }
+            return visited;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error visiting properties", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Opens a cursor over the properties matching a query, in the order in which they were added.
+     * The cursor shows each match through the same reusable {@link PropertyView}, so iterating allocates nothing
+     * per property, and the caller can stop at any point. The cursor reads the live catalog: it fails with a
+     * {@link ConcurrentModificationException} if the service is changed before it is exhausted, and the query
+     * must not be changed while the cursor is in use.
+     *
+     * @param query the query
+     * @return a cursor positioned before the first match after the offset, covering at most limit matches
+     * @throws IllegalArgumentException if the query is null
+     */
+    public PropertyCursor openCursor(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            QueryPlan plan = planQuery(query);
+            PropertyCursor cursor = new PropertyCursor(table, plan);
+            metrics.record("openCursor", start, 0);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Opening property cursor (" + query + ", plan=" + plan + ")");
+            }
+            return cursor;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error opening property cursor", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Finds the properties matching all criteria of a query as immutable records, in the order in which they were
+     * added. The records are built straight from the stored columns, without the {@link BigDecimal} price a
+     * {@link Property} needs, and can be kept and shared between threads.
+     *
+     * @param query the query
+     * @return records of the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     * @see #findProperties(PropertyQuery)
+     */
+    public List<PropertyRecord> findRecords(PropertyQuery query) {
+        try {
+            long start = System.nanoTime();
+            QueryPlan plan = planQuery(query);
+            int[] rows = plan.execute();
+            List<PropertyRecord> found = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                found.add(table.toRecord(row));
+            }
+            metrics.record("findRecords", start, found.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("findRecords", query + ", plan=" + plan, found.size(),
+                        table.size(), start));
+            }
+            return found;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error finding property records by query", e);
             throw e;
         }
     }
     
     /**
      * Calculates the average price of all properties.
+     * The average is the exact sum of all prices divided by their number, rounded to 34 significant digits. Both
+     * are maintained as the catalog changes, so no properties are visited.
      *
      * @return the average price of all properties, or BigDecimal.ZERO if there are no properties
      */
     public BigDecimal getAveragePrice() {
         try {
-            logger.info("Calculating average price of " + properties.size() + " properties");
-            if (properties.isEmpty()) {
-                logger.info("No properties found, returning zero");
-                return BigDecimal.ZERO;
+            long start = System.nanoTime();
+            BigDecimal result = table.priceStatistics(null).getMean();
+            metrics.record("getAveragePrice", start, 1);
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("getAveragePrice", "average=" + result, 1,
+                        table.size(), start));
             }
-            double average = properties.stream()
-                    .collect(Collectors.averagingDouble(p -> p.getPrice().doubleValue()));
-            BigDecimal result = BigDecimal.valueOf(average);
-            logger.info("Average price calculated: " + result);
             return result;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error calculating average price", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error calculating average price", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the price statistics of all properties.
+     *
+     * @return the count, exact sum, minimum, maximum and mean of all prices
+     */
+    public PriceStatistics getPriceStatistics() {
+        try {
+            long start = System.nanoTime();
+            PriceStatistics statistics = table.priceStatistics(null);
+            metrics.record("getPriceStatistics", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Price statistics: " + statistics);
+            }
+            return statistics;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error getting price statistics", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the price statistics of the properties of one type, without a scan.
+     *
+     * @param type the property type
+     * @return the count, exact sum, minimum, maximum and mean of the prices of that type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public PriceStatistics getPriceStatistics(PropertyType type) {
+        try {
+            long start = System.nanoTime();
+            if (type == null) {
+                logger.log(Level.SEVERE, "Attempted to get price statistics of null property type");
+                throw new IllegalArgumentException("Property type cannot be null");
+            }
+            PriceStatistics statistics = table.priceStatistics(type);
+            metrics.record("getPriceStatistics", start, 1);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Price statistics for " + type + ": " + statistics);
+            }
+            return statistics;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error getting price statistics by type", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Sets the accuracy of the quantile estimates and the bucket widths of the histograms returned by the
+     * distribution methods. The sketches and histograms are rebuilt from the catalog in one pass.
+     * By default quantiles are accurate to 1%, price buckets are 50,000 wide and area buckets 250. Histograms have
+     * 1000 buckets starting at 0, plus one for values below and one for values beyond them.
+     *
+     * @param relativeAccuracy the maximum relative error of quantile estimates, for example 0.01 for 1%
+     * @param priceBucketWidth the width of the price histogram buckets
+     * @param areaBucketWidth the width of the area histogram buckets
+     * @throws IllegalArgumentException if the accuracy is not between 0 and 1 exclusive, or a width is not positive
+     */
+    public void configureDistributions(double relativeAccuracy, double priceBucketWidth, double areaBucketWidth) {
+        try {
+            long start = System.nanoTime();
+            if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+                logger.log(Level.SEVERE, "Attempted to configure an invalid relative accuracy: " + relativeAccuracy);
+                throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+            }
+            if (!(priceBucketWidth > 0) || !(areaBucketWidth > 0)) {
+                logger.log(Level.SEVERE, "Attempted to configure invalid bucket widths: " + priceBucketWidth + ", "
+                        + areaBucketWidth);
+                throw new IllegalArgumentException("Bucket widths must be positive");
+            }
+            table.configureDistributions(relativeAccuracy, priceBucketWidth, areaBucketWidth);
+            recordWrite("configureDistributions", start, 0);
+            logger.info("Distributions configured with relative accuracy " + relativeAccuracy
+                    + ", price buckets of " + priceBucketWidth + " and area buckets of " + areaBucketWidth);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error configuring distributions", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the distribution of a metric over all properties.
+     *
+     * @param metric the metric
+     * @return a snapshot of the quantile sketch and histogram of the metric
+     * @throws IllegalArgumentException if the metric is null or {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric) {
+        try {
+            long start = System.nanoTime();
+            ValueDistribution distribution = distributionsOf(metric).all();
+            metrics.record("getDistribution", start, 1);
+            return distribution;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error getting distribution", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the distribution of a metric over the properties of one type, for example the median price of houses.
+     * The snapshot is copied from a sketch that is maintained as properties change, so no properties are visited.
+     *
+     * @param metric the metric
+     * @param type the property type
+     * @return a snapshot of the quantile sketch and histogram of the metric for that type
+     * @throws IllegalArgumentException if the metric or the type is null, or if the metric is
+     *         {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric, PropertyType type) {
+        try {
+            long start = System.nanoTime();
+            if (type == null) {
+                logger.log(Level.SEVERE, "Attempted to get the distribution of null property type");
+                throw new IllegalArgumentException("Property type cannot be null");
+            }
+            ValueDistribution distribution = distributionsOf(metric).ofType(type);
+            metrics.record("getDistribution", start, 1);
+            return distribution;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error getting distribution by type", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the distribution of a metric over the properties with a number of bedrooms.
+     *
+     * @param metric the metric
+     * @param bedrooms the number of bedrooms
+     * @return a snapshot of the quantile sketch and histogram of the metric for that bedroom count
+     * @throws IllegalArgumentException if the metric is null or {@link PropertyMetric#PRICE_PER_AREA}
+     */
+    public ValueDistribution getDistributionByBedrooms(PropertyMetric metric, int bedrooms) {
+        try {
+            long start = System.nanoTime();
+            ValueDistribution distribution = distributionsOf(metric).withBedrooms(bedrooms);
+            metrics.record("getDistributionByBedrooms", start, 1);
+            return distribution;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error getting distribution by bedrooms", e);
             throw e;
         }
     }
     
     /**
      * Finds the most expensive property in the collection.
+     * If several properties share the highest price, the one added first is returned.
      *
      * @return the most expensive property, or null if there are no properties
      */
     public Property findMostExpensiveProperty() {
         try {
-            logger.info("Finding most expensive property among " + properties.size() + " properties");
-            if (properties.isEmpty()) {
-                logger.info("No properties found, returning null");
-                return null;
+            long start = System.nanoTime();
+            int row = table.priceIndex().maxRow();
+            Property mostExpensive = row >= 0 ? table.toProperty(row) : null;
+            metrics.record("findMostExpensiveProperty", start, mostExpensive != null ? 1 : 0);
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("findMostExpensiveProperty",
+                        "id=" + (mostExpensive != null ? mostExpensive.getId() : "null"), mostExpensive != null ? 1 : 0,
+                        table.size(), start));
             }
-            Property mostExpensive = properties.stream()
-                    .max((p1, p2) -> p1.getPrice().compareTo(p2.getPrice()))
-                    .orElse(null);
-            logger.info("Most expensive property found with id: " + (mostExpensive != null ? mostExpensive.getId() : "null"));
             return mostExpensive;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error finding most expensive property", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error finding most expensive property", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Finds the properties matching a query with the highest values of a metric, for example the ten most
+     * expensive available houses. The offset and limit of the query are ignored.
+     * Only the k best matches are kept while the matches are scanned, so memory stays in O(k); ranking by price
+     * walks the sorted price index down from the top when that visits fewer rows. Properties without a positive
+     * area have no price per area and are left out when ranking by {@link PropertyMetric#PRICE_PER_AREA}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, highest value first; for equal values the property added first comes first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findTopProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        return findRanked("findTopProperties", query, metric, k, true);
+    }
+    
+    /**
+     * Finds the properties matching a query with the lowest values of a metric, for example the twenty cheapest
+     * properties per unit of area. The offset and limit of the query are ignored, see
+     * {@link #findTopProperties(PropertyQuery, PropertyMetric, int)}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, lowest value first; for equal values the property added first comes first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findBottomProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        return findRanked("findBottomProperties", query, metric, k, false);
+    }
+    
+    /**
+     * Finds the properties matching a query that lie closest to a point, for example the five nearest available
+     * apartments. The offset and limit of the query are ignored, and properties without a location are left out.
+     * The spatial index is searched in growing boxes around the point, so only the properties near it are read
+     * when the query is not more selective than the neighbourhood.
+     *
+     * @param query the query selecting the properties to rank
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     * @param k the maximum number of properties to return
+     * @return at most k properties, closest first; for equal distances the property added first comes first
+     * @throws IllegalArgumentException if the query is null, if a coordinate is out of range, or if k is negative
+     */
+    public List<Property> findNearest(PropertyQuery query, double latitude, double longitude, int k) {
+        try {
+            long start = System.nanoTime();
+            if (!Locations.isValid(latitude, longitude)) {
+                logger.log(Level.SEVERE, "Attempted to find properties nearest to an invalid location: " + latitude
+                        + ", " + longitude);
+                throw new IllegalArgumentException("Latitude must be between -90 and 90 and longitude between -180 and "
+                        + "180");
+            }
+            if (k < 0) {
+                logger.log(Level.SEVERE, "Attempted to find nearest properties with negative k: " + k);
+                throw new IllegalArgumentException("Number of properties to return cannot be negative");
+            }
+            QueryPlan plan = planQuery(query);
+            List<Property> found = collectRows(plan.nearest(latitude, longitude, k));
+            metrics.record("findNearest", start, found.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("findNearest", query + ", point=" + latitude + ","
+                        + longitude + ", k=" + k + ", plan=" + plan, found.size(), table.size(), start));
+            }
+            return found;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error finding nearest properties", e);
             throw e;
         }
     }
@@ -223,19 +1269,314 @@ public class PropertyService {
      */
     public long countPropertiesByType(PropertyType type) {
         try {
-            logger.info("Counting properties of type: " + type);
+            long start = System.nanoTime();
             if (type == null) {
                 logger.log(Level.SEVERE, "Attempted to count properties of null type");
                 throw new IllegalArgumentException("Property type cannot be null");
             }
-            long count = properties.stream()
-                    .filter(property -> property.getType() == type)
-                    .count();
-            logger.info("Found " + count + " properties of type " + type);
+            long count = table.indexes().countOfType(type);
+            metrics.record("countPropertiesByType", start, count);
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary("countPropertiesByType", "type=" + type, count,
+                        table.size(), start));
+            }
             return count;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error counting properties by type", e);
+            logger.log(PropertyLogging.failureLevel(e), "Error counting properties by type", e);
             throw e;
         }
     }
+    
+    /**
+     * Runs a ranked query and logs its summary.
+     *
+     * @param operation the name of the public method, for logging
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @param highest true for the highest values, false for the lowest
+     * @return the best matches, best first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    private List<Property> findRanked(String operation, PropertyQuery query, PropertyMetric metric, int k,
+            boolean highest) {
+        try {
+            long start = System.nanoTime();
+            if (metric == null) {
+                logger.log(Level.SEVERE, "Attempted to rank properties by a null metric");
+                throw new IllegalArgumentException("Metric cannot be null");
+            }
+            if (k < 0) {
+                logger.log(Level.SEVERE, "Attempted to rank properties with negative k: " + k);
+                throw new IllegalArgumentException("Number of properties to return cannot be negative");
+            }
+            QueryPlan plan = planQuery(query);
+            List<Property> found = collectRows(plan.rank(metric, k, highest, parallelExecution));
+            metrics.record(operation, start, found.size());
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info(PropertyLogging.querySummary(operation,
+                        query + ", metric=" + metric + ", k=" + k + ", plan=" + plan, found.size(), table.size(),
+                        start));
+            }
+            return found;
+        } catch (Exception e) {
+            logger.log(PropertyLogging.failureLevel(e), "Error finding ranked properties", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the sketches and histograms of a metric.
+     *
+     * @param metric the metric
+     * @return the distributions of the metric
+     * @throws IllegalArgumentException if the metric is null or has no distributions
+     */
+    private DistributionIndex distributionsOf(PropertyMetric metric) {
+        if (metric == null) {
+            logger.log(Level.SEVERE, "Attempted to get the distribution of a null metric");
+            throw new IllegalArgumentException("Metric cannot be null");
+        }
+        if (metric == PropertyMetric.PRICE_PER_AREA) {
+            logger.log(Level.SEVERE, "Attempted to get the distribution of " + metric);
+            throw new IllegalArgumentException("Distributions are only kept for PRICE and AREA");
+        }
+        return table.distributions(metric);
+    }
+    
+    /**
+     * Chooses the execution plan for a query.
+     *
+     * @param query the query
+     * @return the plan
+     * @throws IllegalArgumentException if the query is null
+     */
+    private QueryPlan planQuery(PropertyQuery query) {
+        requireQuery(query);
+        QueryPlan plan = QueryPlan.choose(table, query);
+        metrics.recordPlan(plan.getAccess());
+        return plan;
+    }
+    
+    /**
+     * Rejects a null query.
+     *
+     * @param query the query
+     * @throws IllegalArgumentException if the query is null
+     */
+    private static void requireQuery(PropertyQuery query) {
+        if (query == null) {
+            logger.log(Level.SEVERE, "Attempted to run a null query");
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+    }
+    
+    /**
+     * Validates a property before it is stored.
+     *
+     * @param property the property to validate
+     * @return the price of the property in cents
+     * @throws IllegalArgumentException if the property is null, has no id, has an invalid price, has an area that
+     *         is negative, infinite or NaN, has room counts out of range or has only one coordinate or coordinates
+     *         out of range
+     */
+    static long validate(Property property) {
+        if (property == null) {
+            logger.log(Level.SEVERE, "Attempted to add null property");
+            throw new IllegalArgumentException("Property cannot be null");
+        }
+        if (property.getId() == null) {
+            logger.log(Level.SEVERE, "Attempted to add property without an id");
+            throw new IllegalArgumentException("Property id cannot be null");
+        }
+        if (!Double.isFinite(property.getArea()) || property.getArea() < 0) {
+            logger.log(Level.SEVERE, "Attempted to add property with an invalid area: " + property.getArea());
+            throw new IllegalArgumentException("Property area must be a finite number of at least 0");
+        }
+        if (property.getBedrooms() < 0 || property.getBedrooms() > PropertyTable.MAX_ROOMS
+                || property.getBathrooms() < 0 || property.getBathrooms() > PropertyTable.MAX_ROOMS) {
+            logger.log(Level.SEVERE, "Attempted to add property with room counts out of range");
+            throw new IllegalArgumentException("Bedroom and bathroom counts must be between 0 and "
+                    + PropertyTable.MAX_ROOMS);
+        }
+        double latitude = property.getLatitude();
+        double longitude = property.getLongitude();
+        if ((Double.isNaN(latitude) != Double.isNaN(longitude))
+                || (property.hasLocation() && !Locations.isValid(latitude, longitude))) {
+            logger.log(Level.SEVERE, "Attempted to add property with an invalid location: " + latitude + ", "
+                    + longitude);
+            throw new IllegalArgumentException("Latitude must be between -90 and 90 and longitude between -180 and "
+                    + "180, or both must be NaN");
+        }
+        return scaledPriceOf(property);
+    }
+    
+    /**
+     * Converts the price of a property to cents.
+     *
+     * @param property the property
+     * @return the price in cents
+     * @throws IllegalArgumentException if the price is null or has more than two decimal places
+     */
+    private static long scaledPriceOf(Property property) {
+        BigDecimal price = property.getPrice();
+        if (price == null) {
+            logger.log(Level.SEVERE, "Attempted to add property without a price");
+            throw new IllegalArgumentException("Property price cannot be null");
+        }
+        try {
+            return Prices.toScaled(price);
+        } catch (ArithmeticException e) {
+            logger.log(Level.SEVERE, "Attempted to add property with an unsupported price: " + price);
+            throw new IllegalArgumentException("Property price must have at most " + Prices.SCALE
+                    + " decimal places", e);
+        }
+    }
+    
+    /**
+     * Builds properties for the given rows, in insertion order.
+     *
+     * @param rows the rows to collect
+     * @param count the number of rows, used to size the result
+     * @return the properties stored in the rows
+     */
+    private List<Property> collectRows(BitSet rows, int count) {
+        if (isParallel(count)) {
+            int[] rowArray = new int[count];
+            int i = 0;
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                rowArray[i++] = row;
+            }
+            return new ArrayList<>(Arrays.asList(parallelExecution.toProperties(table, rowArray)));
+        }
+        List<Property> result = new ArrayList<>(count);
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            QueryCancellation.checkInterrupted(result.size());
+            result.add(table.toProperty(row));
+        }
+        return result;
+    }
+    
+    /**
+     * Builds properties for the given rows, in the order of the array.
+     *
+     * @param rows the rows to collect
+     * @return the properties stored in the rows
+     */
+    private List<Property> collectRows(int[] rows) {
+        if (isParallel(rows.length)) {
+            return new ArrayList<>(Arrays.asList(parallelExecution.toProperties(table, rows)));
+        }
+        List<Property> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            QueryCancellation.checkInterrupted(result.size());
+            result.add(table.toProperty(row));
+        }
+        return result;
+    }
+    
+    /**
+     * Answers a lookup from the query cache if it holds a current result, otherwise runs it and caches the result.
+     * Results restricted to one type are stamped with the change counter of that type, others with the change
+     * counter of the whole table.
+     *
+     * @param key the normalized criteria of the lookup
+     * @param query runs the lookup
+     * @return the result of the lookup
+     */
+    private List<Property> cached(QueryCache.Key key, Supplier<List<Property>> query) {
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return query.get();
+        }
+        long stamp = key.type() == null ? table.modCount() : table.typeModCount(key.type());
+        List<PropertyRecord> records = cache.get(key, stamp);
+        if (records != null) {
+            List<Property> result = new ArrayList<>(records.size());
+            for (PropertyRecord record : records) {
+                result.add(record.toProperty());
+            }
+            return result;
+        }
+        List<Property> result = query.get();
+        List<PropertyRecord> computed = new ArrayList<>(result.size());
+        for (Property property : result) {
+            computed.add(PropertyRecord.of(property));
+        }
+        cache.put(key, stamp, computed);
+        return result;
+    }
+    
+    /**
+     * Records a completed change, unless this service only records reads, see
+     * {@link #shareMetrics(PropertyService)}.
+     *
+     * @param operation the name of the operation
+     * @param startNanos the {@link System#nanoTime()} at which the change started
+     * @param changed the number of properties changed
+     */
+    private void recordWrite(String operation, long startNanos, long changed) {
+        if (recordsWrites) {
+            metrics.record(operation, startNanos, changed);
+        }
+    }
+    
+    /**
+     * Replaces the table, dropping cached results, since change counters start again on the new table, and
+     * telling change feed consumers to read the catalog again.
+     *
+     * @param loaded the new table
+     */
+    private void replaceTable(PropertyTable loaded) {
+        table = loaded;
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.append(ChangeType.CATALOG_REPLACED, null);
+            feed.signal();
+        }
+    }
+    
+    /**
+     * Publishes a change of one row to the change feed, if enabled.
+     *
+     * @param type the kind of change
+     * @param row the changed row, holding the values after the change
+     */
+    private void publishChange(ChangeType type, int row) {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.append(type, table.toRecord(row));
+            feed.signal();
+        }
+    }
+    
+    /**
+     * Publishes the rows added by a batch to the change feed, if enabled, waking its subscribers once.
+     *
+     * @param firstRow the first added row
+     * @param endRow the row after the last added row
+     */
+    private void publishAdded(int firstRow, int endRow) {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            for (int row = firstRow; row < endRow; row++) {
+                feed.append(ChangeType.ADDED, table.toRecord(row));
+            }
+            feed.signal();
+        }
+    }
+    
+    /**
+     * Checks if work on the given number of rows should be split across the parallel pool.
+     *
+     * @param rowCount the number of rows involved
+     * @return true if parallel execution is enabled and the rows reach its threshold
+     */
+    private boolean isParallel(int rowCount) {
+        return parallelExecution != null && parallelExecution.appliesTo(rowCount);
+    }
 }
\ No newline at end of file
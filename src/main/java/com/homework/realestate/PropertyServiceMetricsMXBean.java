@@ -0,0 +1,44 @@
+package com.homework.realestate;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the metrics of a {@link PropertyService} or {@link ConcurrentPropertyService}
+ * over JMX, registered with {@link PropertyService#registerMBean(String)}. Every attribute is read from a fresh
+ * {@link MetricsSnapshot}, so JConsole, VisualVM or any JMX client sees the figures as they are when it asks.
+ */
+public interface PropertyServiceMetricsMXBean {
+
+    /**
+     * Gets the statistics of every operation that was called.
+     *
+     * @return the statistics by operation name
+     */
+    Map<String, OperationStatistics> getOperations();
+
+    /**
+     * Gets the number of multi-criteria queries driven by each kind of index.
+     *
+     * @return the counts by access name
+     */
+    Map<String, Long> getQueryPlanCounts();
+
+    /**
+     * Gets the query cache counters.
+     *
+     * @return the cache statistics
+     */
+    QueryCacheStatistics getQueryCache();
+
+    /**
+     * Gets the number of properties in the catalog.
+     *
+     * @return the property count
+     */
+    int getPropertyCount();
+
+    /**
+     * Starts counting calls, latencies and query plans again from zero.
+     */
+    void resetMetrics();
+}
@@ -0,0 +1,797 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Columnar storage for a property catalog together with its indexes.
+ * Each property is stored as a row across primitive columns: scaled prices, areas, bedroom and bathroom counts,
+ * type ordinals, dictionary codes for ids and addresses, and latitudes and longitudes, NaN for properties without
+ * a location. Availability is a bitmap. No {@link Property}
+ * objects are kept; {@link #toProperty(int)} builds one for a row when a query returns it. Addresses are also
+ * split into tokens for the {@link AddressIndex}.
+ *
+ * <p>Running price aggregates (count, exact sum, minimum and maximum) are kept for the whole table and for each
+ * property type, so price statistics need no scan. Quantile sketches and histograms of prices and areas are kept
+ * overall, per type and per bedroom count in the same way.
+ *
+ * <p>Removed rows are marked as such and physically dropped by a compaction once they outnumber the live rows,
+ * which renumbers the remaining rows. Row numbers are therefore only valid until the next mutation. The id and
+ * address dictionaries never drop a string by themselves, so the compaction also rebuilds them from the live rows,
+ * as does a replacement once the addresses no longer in use outnumber the live rows.
+ * The table does not validate its input; {@link PropertyService} does that before calling it.
+ */
+final class PropertyTable {
+
+    /** Largest bedroom or bathroom count that can be stored. */
+    static final int MAX_ROOMS = Byte.MAX_VALUE;
+
+    /** Relative accuracy of the quantile sketches unless configured otherwise. */
+    static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** Width of the price histogram buckets unless configured otherwise. */
+    static final double DEFAULT_PRICE_BUCKET_WIDTH = 50_000;
+
+    /** Width of the area histogram buckets unless configured otherwise. */
+    static final double DEFAULT_AREA_BUCKET_WIDTH = 250;
+
+    private static final int NO_TYPE = -1;
+    private static final int NO_ADDRESS = -1;
+    private static final int NO_ROW = -1;
+    private static final int MIN_ROWS_TO_COMPACT = 1024;
+    private static final PropertyType[] TYPES = PropertyType.values();
+
+    private StringDictionary idDictionary;
+    private StringDictionary addressDictionary;
+    private int[] rowsByIdCode;
+
+    private int[] idCodes;
+    private int[] addressCodes;
+    private byte[] types;
+    private long[] prices;
+    private double[] areas;
+    private byte[] bedrooms;
+    private byte[] bathrooms;
+    private double[] latitudes;
+    private double[] longitudes;
+    private final BitSet liveRows;
+    private int rowCount;
+    private int liveCount;
+    private int modCount;
+    private final int[] typeModCounts = new int[TYPES.length + 1];
+    private int firstDeferredRow = NO_ROW;
+
+    private SecondaryIndexes indexes = new SecondaryIndexes();
+    private PriceIndex priceIndex = new PriceIndex();
+    private LocationIndex locationIndex = new LocationIndex();
+    private final AddressIndex addressIndex;
+    private final PriceAggregate allPrices;
+    private final PriceAggregate[] pricesByType = new PriceAggregate[TYPES.length];
+    private DistributionIndex priceDistributions = new DistributionIndex(DEFAULT_RELATIVE_ACCURACY,
+            DEFAULT_PRICE_BUCKET_WIDTH);
+    private DistributionIndex areaDistributions = new DistributionIndex(DEFAULT_RELATIVE_ACCURACY,
+            DEFAULT_AREA_BUCKET_WIDTH);
+
+    /**
+     * Creates an empty table.
+     *
+     * @param initialCapacity the number of rows to allocate up front
+     */
+    PropertyTable(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        idDictionary = new StringDictionary(capacity);
+        addressDictionary = new StringDictionary(capacity);
+        rowsByIdCode = new int[capacity];
+        idCodes = new int[capacity];
+        addressCodes = new int[capacity];
+        types = new byte[capacity];
+        prices = new long[capacity];
+        areas = new double[capacity];
+        bedrooms = new byte[capacity];
+        bathrooms = new byte[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        liveRows = new BitSet();
+        addressIndex = new AddressIndex(capacity / 4);
+        allPrices = new PriceAggregate();
+        for (int i = 0; i < pricesByType.length; i++) {
+            pricesByType[i] = new PriceAggregate();
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #writeTo(SnapshotOutput)}. Columns, dictionaries and indexes are copied
+     * out of the snapshot as they were written, so nothing is parsed, hashed, sorted or aggregated again and the
+     * cost is that of copying the arrays.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     * @throws IllegalArgumentException if the snapshot is inconsistent
+     */
+    PropertyTable(SnapshotInput input) throws IOException {
+        rowCount = input.readInt();
+        liveCount = input.readInt();
+        idDictionary = new StringDictionary(input);
+        addressDictionary = new StringDictionary(input);
+        rowsByIdCode = input.readInts(idDictionary.size(), "id index");
+        idCodes = input.readInts(rowCount, "id column");
+        addressCodes = input.readInts(rowCount, "address column");
+        types = input.readBytes();
+        prices = input.readLongs();
+        areas = input.readDoubles();
+        bedrooms = input.readBytes();
+        bathrooms = input.readBytes();
+        latitudes = input.readDoubles();
+        longitudes = input.readDoubles();
+        input.expect(types.length == rowCount && prices.length == rowCount && areas.length == rowCount
+                && bedrooms.length == rowCount && bathrooms.length == rowCount && latitudes.length == rowCount
+                && longitudes.length == rowCount, "columns differ in length");
+        liveRows = input.readBitSet();
+        input.expect(liveRows.cardinality() == liveCount && liveRows.length() <= rowCount,
+                "live rows do not match the row counts");
+        indexes = new SecondaryIndexes(input);
+        priceIndex = new PriceIndex(input);
+        locationIndex = new LocationIndex(input);
+        addressIndex = new AddressIndex(input);
+        allPrices = new PriceAggregate(input);
+        int typeCount = input.readInt();
+        input.expect(typeCount == TYPES.length, typeCount + " price aggregates instead of " + TYPES.length);
+        for (int i = 0; i < pricesByType.length; i++) {
+            pricesByType[i] = new PriceAggregate(input);
+        }
+        priceDistributions = new DistributionIndex(input);
+        areaDistributions = new DistributionIndex(input);
+    }
+
+    /**
+     * Gets the number of live properties.
+     *
+     * @return the number of properties in the table
+     */
+    int size() {
+        return liveCount;
+    }
+
+    /**
+     * Gets the number of rows, including removed rows that have not been compacted away yet.
+     *
+     * @return the upper bound of the row numbers in use
+     */
+    int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the number of changes made to the table, so that lazy readers can detect a concurrent change.
+     *
+     * @return a counter that changes on every append, replace and remove
+     */
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Gets the number of changes made to the properties of one type, so that results restricted to that type
+     * can tell whether they are still current. Changing the type of a property counts for both types.
+     *
+     * @param type the property type, or null for properties without a type
+     * @return a counter that changes on every append, replace, availability change and remove of a property of
+     *         the type
+     */
+    int typeModCount(PropertyType type) {
+        return typeModCounts[type == null ? TYPES.length : type.ordinal()];
+    }
+
+    /**
+     * Gets the live rows. The returned bitmap must not be modified.
+     *
+     * @return the rows holding a property
+     */
+    BitSet liveRows() {
+        return liveRows;
+    }
+
+    /**
+     * Finds the row of the property with the given id.
+     *
+     * @param id the property id
+     * @return the row, or -1 if there is no such property
+     */
+    int rowOf(String id) {
+        int code = idDictionary.find(id);
+        return code < 0 ? NO_ROW : rowsByIdCode[code];
+    }
+
+    /**
+     * Appends a property as a new row and adds it to all indexes.
+     * The id of the property must not be in use.
+     *
+     * @param property the validated property
+     * @param scaledPrice the price of the property in cents
+     * @return the new row
+     */
+    int append(Property property, long scaledPrice) {
+        int row = appendColumns(property, scaledPrice);
+        priceIndex.add(scaledPrice, row);
+        if (hasLocation(row)) {
+            locationIndex.add(locationCode(row), row);
+        }
+        return row;
+    }
+
+    /**
+     * Appends many properties and adds them to the price and location indexes in one sort and merge pass each.
+     * The ids of the properties must be unique and not be in use.
+     *
+     * @param properties the validated properties
+     * @param scaledPrices the price of each property in cents, in iteration order
+     */
+    void appendAll(Collection<Property> properties, long[] scaledPrices) {
+        ensureCapacity(rowCount + properties.size());
+        int i = 0;
+        for (Property property : properties) {
+            appendDeferred(property, scaledPrices[i++]);
+        }
+        finishAppending();
+    }
+
+    /**
+     * Appends a property as a new row and adds it to every index but the price and location indexes, which take
+     * the deferred rows in one pass at {@link #finishAppending()}. Price-range, location and ranked queries must
+     * not run on the table until then. The id of the property must not be in use.
+     *
+     * @param property the validated property
+     * @param scaledPrice the price of the property in cents
+     * @return the new row
+     */
+    int appendDeferred(Property property, long scaledPrice) {
+        int row = appendColumns(property, scaledPrice);
+        if (firstDeferredRow == NO_ROW) {
+            firstDeferredRow = row;
+        }
+        return row;
+    }
+
+    /**
+     * Adds the rows appended by {@link #appendDeferred(Property, long)} to the price and location indexes.
+     */
+    void finishAppending() {
+        if (firstDeferredRow == NO_ROW) {
+            return;
+        }
+        int count = rowCount - firstDeferredRow;
+        long[] deferredPrices = Arrays.copyOfRange(prices, firstDeferredRow, rowCount);
+        int[] deferredRows = new int[count];
+        for (int i = 0; i < count; i++) {
+            deferredRows[i] = firstDeferredRow + i;
+        }
+        priceIndex.addAll(deferredPrices, deferredRows, count);
+        long[] codes = new long[count];
+        int located = 0;
+        for (int row = firstDeferredRow; row < rowCount; row++) {
+            if (hasLocation(row)) {
+                codes[located] = locationCode(row);
+                deferredRows[located++] = row;
+            }
+        }
+        locationIndex.addAll(codes, deferredRows, located);
+        firstDeferredRow = NO_ROW;
+    }
+
+    /**
+     * Creates an empty table with the same distribution settings as this one.
+     *
+     * @param initialCapacity the number of rows to allocate up front
+     * @return the new table
+     */
+    PropertyTable emptyCopy(int initialCapacity) {
+        PropertyTable copy = new PropertyTable(initialCapacity);
+        copy.configureDistributions(priceDistributions.relativeAccuracy(), priceDistributions.bucketWidth(),
+                areaDistributions.bucketWidth());
+        return copy;
+    }
+
+    /**
+     * Replaces the property stored in a row, keeping the row number.
+     *
+     * @param row the live row to replace
+     * @param property the validated property, with the same id as the one stored in the row
+     * @param scaledPrice the price of the property in cents
+     */
+    void replace(int row, Property property, long scaledPrice) {
+        modCount++;
+        touchType(row);
+        String oldAddress = address(row);
+        unindex(row);
+        storeColumns(row, property, scaledPrice);
+        touchType(row);
+        priceIndex.add(scaledPrice, row);
+        if (hasLocation(row)) {
+            locationIndex.add(locationCode(row), row);
+        }
+        if (!Objects.equals(oldAddress, property.getAddress())) {
+            addressIndex.remove(row, oldAddress);
+            addressIndex.add(row, property.getAddress());
+            if (addressDictionary.size() - liveCount > Math.max(liveCount, MIN_ROWS_TO_COMPACT)) {
+                compactDictionaries();
+                addressIndex.dropEmptyTokens();
+            }
+        }
+    }
+
+    /**
+     * Changes the availability stored in a row. Availability is only indexed by its bitmap, so nothing else is
+     * updated.
+     *
+     * @param row the live row
+     * @param available the new availability
+     */
+    void setAvailable(int row, boolean available) {
+        modCount++;
+        touchType(row);
+        indexes.setAvailable(row, available);
+    }
+
+    /**
+     * Removes the property stored in a row. The row stays in the address index, which skips removed rows, until
+     * the next compaction.
+     *
+     * @param row the live row to remove
+     */
+    void remove(int row) {
+        modCount++;
+        touchType(row);
+        unindex(row);
+        rowsByIdCode[idCodes[row]] = NO_ROW;
+        liveRows.clear(row);
+        liveCount--;
+        int removedRows = rowCount - liveCount;
+        if (removedRows > liveCount && removedRows > MIN_ROWS_TO_COMPACT) {
+            compact();
+        }
+    }
+
+    /**
+     * Builds a new {@link Property} from the columns of a row.
+     *
+     * @param row the live row
+     * @return a property holding the values stored in the row
+     */
+    Property toProperty(int row) {
+        return new Property(id(row), address(row), type(row), Prices.fromScaled(prices[row]), areas[row],
+                bedrooms[row], bathrooms[row], available(row), latitudes[row], longitudes[row]);
+    }
+
+    /**
+     * Builds a new {@link PropertyRecord} from the columns of a row, without converting the price.
+     *
+     * @param row the live row
+     * @return a record holding the values stored in the row
+     */
+    PropertyRecord toRecord(int row) {
+        return new PropertyRecord(id(row), address(row), type(row), prices[row], areas[row], bedrooms[row],
+                bathrooms[row], available(row), latitudes[row], longitudes[row]);
+    }
+
+    /**
+     * Gets the id stored in a row.
+     *
+     * @param row the row
+     * @return the property id
+     */
+    String id(int row) {
+        return idDictionary.get(idCodes[row]);
+    }
+
+    /**
+     * Gets the address stored in a row.
+     *
+     * @param row the row
+     * @return the address, or null
+     */
+    String address(int row) {
+        int code = addressCodes[row];
+        return code == NO_ADDRESS ? null : addressDictionary.get(code);
+    }
+
+    /**
+     * Gets the type stored in a row.
+     *
+     * @param row the row
+     * @return the property type, or null
+     */
+    PropertyType type(int row) {
+        int ordinal = types[row];
+        return ordinal == NO_TYPE ? null : TYPES[ordinal];
+    }
+
+    /**
+     * Gets the scaled price stored in a row.
+     *
+     * @param row the row
+     * @return the price in cents
+     */
+    long price(int row) {
+        return prices[row];
+    }
+
+    /**
+     * Gets the area stored in a row.
+     *
+     * @param row the row
+     * @return the area
+     */
+    double area(int row) {
+        return areas[row];
+    }
+
+    /**
+     * Gets the value of a metric for a row, in currency units for prices.
+     *
+     * @param row the row
+     * @param metric the metric
+     * @return the value, or NaN for the price per area of a row without a positive area
+     */
+    double metric(int row, PropertyMetric metric) {
+        switch (metric) {
+            case PRICE:
+                return Prices.toDouble(prices[row]);
+            case AREA:
+                return areas[row];
+            default:
+                return areas[row] > 0 ? Prices.toDouble(prices[row]) / areas[row] : Double.NaN;
+        }
+    }
+
+    /**
+     * Gets the number of bedrooms stored in a row.
+     *
+     * @param row the row
+     * @return the number of bedrooms
+     */
+    int bedrooms(int row) {
+        return bedrooms[row];
+    }
+
+    /**
+     * Gets the number of bathrooms stored in a row.
+     *
+     * @param row the row
+     * @return the number of bathrooms
+     */
+    int bathrooms(int row) {
+        return bathrooms[row];
+    }
+
+    /**
+     * Gets the latitude stored in a row.
+     *
+     * @param row the row
+     * @return the latitude in degrees, or NaN if the property has no location
+     */
+    double latitude(int row) {
+        return latitudes[row];
+    }
+
+    /**
+     * Gets the longitude stored in a row.
+     *
+     * @param row the row
+     * @return the longitude in degrees, or NaN if the property has no location
+     */
+    double longitude(int row) {
+        return longitudes[row];
+    }
+
+    /**
+     * Checks whether a row has a location.
+     *
+     * @param row the row
+     * @return true if the property stored in the row has a location
+     */
+    boolean hasLocation(int row) {
+        return !Double.isNaN(latitudes[row]);
+    }
+
+    /**
+     * Gets the availability stored in a row.
+     *
+     * @param row the row
+     * @return true if the property is available
+     */
+    boolean available(int row) {
+        return indexes.availableRows().get(row);
+    }
+
+    /**
+     * Gets the secondary indexes on type, bedrooms and availability.
+     *
+     * @return the secondary indexes
+     */
+    SecondaryIndexes indexes() {
+        return indexes;
+    }
+
+    /**
+     * Gets the sorted price index.
+     *
+     * @return the price index
+     */
+    PriceIndex priceIndex() {
+        return priceIndex;
+    }
+
+    /**
+     * Gets the spatial index of the rows with a location.
+     *
+     * @return the location index
+     */
+    LocationIndex locationIndex() {
+        return locationIndex;
+    }
+
+    /**
+     * Gets the inverted index of address tokens.
+     *
+     * @return the address index
+     */
+    AddressIndex addressIndex() {
+        return addressIndex;
+    }
+
+    /**
+     * Gets the running price statistics of all rows or of the rows of one type.
+     *
+     * @param type the property type, or null for all rows
+     * @return the statistics
+     */
+    PriceStatistics priceStatistics(PropertyType type) {
+        return (type == null ? allPrices : pricesByType[type.ordinal()]).toStatistics();
+    }
+
+    /**
+     * Gets the distributions of a metric. Distributions are kept for {@link PropertyMetric#PRICE} and
+     * {@link PropertyMetric#AREA} only.
+     *
+     * @param metric the metric
+     * @return the sketches and histograms of that metric
+     */
+    DistributionIndex distributions(PropertyMetric metric) {
+        return metric == PropertyMetric.PRICE ? priceDistributions : areaDistributions;
+    }
+
+    /**
+     * Replaces the distributions with new ones of the given accuracy and bucket widths, built from the live rows.
+     *
+     * @param relativeAccuracy the relative accuracy of the quantile sketches
+     * @param priceBucketWidth the width of the price histogram buckets
+     * @param areaBucketWidth the width of the area histogram buckets
+     */
+    void configureDistributions(double relativeAccuracy, double priceBucketWidth, double areaBucketWidth) {
+        DistributionIndex newPrices = new DistributionIndex(relativeAccuracy, priceBucketWidth);
+        DistributionIndex newAreas = new DistributionIndex(relativeAccuracy, areaBucketWidth);
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            newPrices.add(type(row), bedrooms[row], Prices.toDouble(prices[row]));
+            newAreas.add(type(row), bedrooms[row], areas[row]);
+        }
+        priceDistributions = newPrices;
+        areaDistributions = newAreas;
+    }
+
+    /**
+     * Writes the table to a snapshot: the row counts, the id and address dictionaries with the id index, every
+     * column up to the row count, the live rows, the secondary, price, location and address indexes, the price
+     * aggregates and the distributions. Removed rows that have not been compacted away are written as they are.
+     * Property types are stored by ordinal, so reordering {@link PropertyType} requires a new snapshot version.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeInt(rowCount);
+        output.writeInt(liveCount);
+        idDictionary.writeTo(output);
+        addressDictionary.writeTo(output);
+        output.writeInts(rowsByIdCode, idDictionary.size());
+        output.writeInts(idCodes, rowCount);
+        output.writeInts(addressCodes, rowCount);
+        output.writeBytes(types, rowCount);
+        output.writeLongs(prices, rowCount);
+        output.writeDoubles(areas, rowCount);
+        output.writeBytes(bedrooms, rowCount);
+        output.writeBytes(bathrooms, rowCount);
+        output.writeDoubles(latitudes, rowCount);
+        output.writeDoubles(longitudes, rowCount);
+        output.writeBitSet(liveRows);
+        indexes.writeTo(output);
+        priceIndex.writeTo(output);
+        locationIndex.writeTo(output);
+        addressIndex.writeTo(output);
+        allPrices.writeTo(output);
+        output.writeInt(pricesByType.length);
+        for (PriceAggregate aggregate : pricesByType) {
+            aggregate.writeTo(output);
+        }
+        priceDistributions.writeTo(output);
+        areaDistributions.writeTo(output);
+    }
+
+    private int appendColumns(Property property, long scaledPrice) {
+        ensureCapacity(rowCount + 1);
+        modCount++;
+        int row = rowCount++;
+        int idCode = idDictionary.intern(property.getId());
+        if (idCode >= rowsByIdCode.length) {
+            int newLength = Math.max(idCode + 1, rowsByIdCode.length + (rowsByIdCode.length >> 1));
+            rowsByIdCode = Arrays.copyOf(rowsByIdCode, newLength);
+        }
+        rowsByIdCode[idCode] = row;
+        idCodes[row] = idCode;
+        liveRows.set(row);
+        liveCount++;
+        storeColumns(row, property, scaledPrice);
+        touchType(row);
+        addressIndex.add(row, property.getAddress());
+        return row;
+    }
+
+    private void touchType(int row) {
+        int ordinal = types[row];
+        typeModCounts[ordinal == NO_TYPE ? TYPES.length : ordinal]++;
+    }
+
+    private void storeColumns(int row, Property property, long scaledPrice) {
+        String address = property.getAddress();
+        PropertyType type = property.getType();
+        addressCodes[row] = address == null ? NO_ADDRESS : addressDictionary.intern(address);
+        types[row] = (byte) (type == null ? NO_TYPE : type.ordinal());
+        prices[row] = scaledPrice;
+        areas[row] = property.getArea();
+        bedrooms[row] = (byte) property.getBedrooms();
+        bathrooms[row] = (byte) property.getBathrooms();
+        boolean located = property.hasLocation();
+        latitudes[row] = located ? property.getLatitude() : Double.NaN;
+        longitudes[row] = located ? property.getLongitude() : Double.NaN;
+        indexes.add(row, type, bedrooms[row], property.isAvailable());
+        allPrices.add(scaledPrice);
+        if (type != null) {
+            pricesByType[type.ordinal()].add(scaledPrice);
+        }
+        priceDistributions.add(type, bedrooms[row], Prices.toDouble(scaledPrice));
+        areaDistributions.add(type, bedrooms[row], areas[row]);
+    }
+
+    private void unindex(int row) {
+        PropertyType type = type(row);
+        long price = prices[row];
+        indexes.remove(row, type, bedrooms[row]);
+        priceIndex.remove(price, row);
+        if (hasLocation(row)) {
+            locationIndex.remove(locationCode(row), row);
+        }
+        priceDistributions.remove(type, bedrooms[row], Prices.toDouble(price));
+        areaDistributions.remove(type, bedrooms[row], areas[row]);
+        if (allPrices.remove(price)) {
+            updateExtremes(allPrices, null);
+        }
+        if (type != null && pricesByType[type.ordinal()].remove(price)) {
+            updateExtremes(pricesByType[type.ordinal()], type);
+        }
+    }
+
+    /**
+     * Looks up the lowest and highest price of a group in the price index after one of its extremes was removed.
+     * The index is walked from each end until a row of the group is found, which for any type that is not rare
+     * takes a handful of steps.
+     */
+    private void updateExtremes(PriceAggregate aggregate, PropertyType type) {
+        IntPredicate inGroup = type == null ? row -> true : row -> types[row] == type.ordinal();
+        aggregate.setExtremes(prices[priceIndex.firstMatching(inGroup)], prices[priceIndex.lastMatching(inGroup)]);
+    }
+
+    private long locationCode(int row) {
+        return LocationIndex.code(latitudes[row], longitudes[row]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= prices.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, prices.length + (prices.length >> 1));
+        idCodes = Arrays.copyOf(idCodes, newCapacity);
+        addressCodes = Arrays.copyOf(addressCodes, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        prices = Arrays.copyOf(prices, newCapacity);
+        areas = Arrays.copyOf(areas, newCapacity);
+        bedrooms = Arrays.copyOf(bedrooms, newCapacity);
+        bathrooms = Arrays.copyOf(bathrooms, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+    }
+
+    /**
+     * Moves the live rows to the front of every column and rebuilds the indexes.
+     */
+    private void compact() {
+        BitSet available = indexes.availableRows();
+        SecondaryIndexes compacted = new SecondaryIndexes();
+        int[] newRows = new int[rowCount];
+        Arrays.fill(newRows, NO_ROW);
+        int target = 0;
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            boolean isAvailable = available.get(row);
+            newRows[row] = target;
+            idCodes[target] = idCodes[row];
+            addressCodes[target] = addressCodes[row];
+            types[target] = types[row];
+            prices[target] = prices[row];
+            areas[target] = areas[row];
+            bedrooms[target] = bedrooms[row];
+            bathrooms[target] = bathrooms[row];
+            latitudes[target] = latitudes[row];
+            longitudes[target] = longitudes[row];
+            rowsByIdCode[idCodes[target]] = target;
+            compacted.add(target, type(target), bedrooms[target], isAvailable);
+            target++;
+        }
+        indexes = compacted;
+        addressIndex.renumber(newRows);
+        rowCount = target;
+        liveRows.clear();
+        liveRows.set(0, rowCount);
+        compactDictionaries();
+        rebuildSortedIndexes();
+    }
+
+    /**
+     * Rebuilds the id and address dictionaries and the id index from the strings of the live rows, dropping the
+     * strings of removed and replaced properties. Row numbers do not change. Removed rows that have not been
+     * compacted away yet lose their codes, since nothing reads them any more.
+     */
+    private void compactDictionaries() {
+        StringDictionary ids = new StringDictionary(liveCount);
+        StringDictionary addresses = new StringDictionary(liveCount);
+        int[] rowsById = new int[Math.max(16, liveCount)];
+        for (int row = 0; row < rowCount; row++) {
+            if (!liveRows.get(row)) {
+                idCodes[row] = NO_ROW;
+                addressCodes[row] = NO_ADDRESS;
+                continue;
+            }
+            int idCode = ids.intern(idDictionary, idCodes[row]);
+            rowsById[idCode] = row;
+            idCodes[row] = idCode;
+            if (addressCodes[row] != NO_ADDRESS) {
+                addressCodes[row] = addresses.intern(addressDictionary, addressCodes[row]);
+            }
+        }
+        idDictionary = ids;
+        addressDictionary = addresses;
+        rowsByIdCode = rowsById;
+    }
+
+    private void rebuildSortedIndexes() {
+        int[] rows = new int[liveCount];
+        long[] rowPrices = new long[liveCount];
+        int count = 0;
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            rows[count] = row;
+            rowPrices[count] = prices[row];
+            count++;
+        }
+        priceIndex = new PriceIndex();
+        priceIndex.load(rowPrices, rows, count);
+        int located = 0;
+        for (int i = 0; i < count; i++) {
+            if (hasLocation(rows[i])) {
+                rowPrices[located] = locationCode(rows[i]);
+                rows[located++] = rows[i];
+            }
+        }
+        locationIndex.load(rowPrices, rows, located);
+    }
+}
@@ -0,0 +1,149 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+
+/**
+ * Reusable, read-only view of one stored property, passed to a {@link PropertyVisitor} or shown by a
+ * {@link PropertyCursor}. The same view object is moved from row to row, so it is only valid inside the
+ * {@link PropertyVisitor#visit(PropertyView)} call it was passed to, or until the cursor moves, and must not be
+ * kept. Numeric getters read the
+ * columns directly and allocate nothing; {@link #getId()}, {@link #getAddress()} and {@link #getPrice()} build a
+ * new object on each call, and {@link #toRecord()} and {@link #toProperty()} copy the whole property for callers
+ * that need to keep it.
+ */
+public final class PropertyView {
+
+    private final PropertyTable table;
+    private int row;
+
+    PropertyView(PropertyTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Moves the view to another row.
+     *
+     * @param row the live row to show
+     */
+    void moveTo(int row) {
+        this.row = row;
+    }
+
+    /**
+     * Gets the unique identifier of the property.
+     *
+     * @return the property id
+     */
+    public String getId() {
+        return table.id(row);
+    }
+
+    /**
+     * Gets the property address.
+     *
+     * @return the property address
+     */
+    public String getAddress() {
+        return table.address(row);
+    }
+
+    /**
+     * Gets the property type.
+     *
+     * @return the property type
+     */
+    public PropertyType getType() {
+        return table.type(row);
+    }
+
+    /**
+     * Gets the property price.
+     *
+     * @return the property price with two decimal places
+     */
+    public BigDecimal getPrice() {
+        return Prices.fromScaled(table.price(row));
+    }
+
+    /**
+     * Gets the property price in cents, without allocating a {@link BigDecimal}.
+     *
+     * @return the property price multiplied by 100
+     */
+    public long getPriceInCents() {
+        return table.price(row);
+    }
+
+    /**
+     * Gets the property area.
+     *
+     * @return the property area
+     */
+    public double getArea() {
+        return table.area(row);
+    }
+
+    /**
+     * Gets the number of bedrooms.
+     *
+     * @return the number of bedrooms
+     */
+    public int getBedrooms() {
+        return table.bedrooms(row);
+    }
+
+    /**
+     * Gets the number of bathrooms.
+     *
+     * @return the number of bathrooms
+     */
+    public int getBathrooms() {
+        return table.bathrooms(row);
+    }
+
+    /**
+     * Checks if the property is available.
+     *
+     * @return true if the property is available, false otherwise
+     */
+    public boolean isAvailable() {
+        return table.available(row);
+    }
+
+    /**
+     * Gets the latitude of the property.
+     *
+     * @return the latitude in degrees, or NaN if the location is unknown
+     */
+    public double getLatitude() {
+        return table.latitude(row);
+    }
+
+    /**
+     * Gets the longitude of the property.
+     *
+     * @return the longitude in degrees, or NaN if the location is unknown
+     */
+    public double getLongitude() {
+        return table.longitude(row);
+    }
+
+    /**
+     * Copies the viewed property into a new immutable {@link PropertyRecord}. Cheaper than {@link #toProperty()},
+     * since the price stays in cents.
+     *
+     * @return a record holding the values of the current row
+     */
+    public PropertyRecord toRecord() {
+        return table.toRecord(row);
+    }
+
+    /**
+     * Copies the viewed property into a new {@link Property}.
+     *
+     * @return a property holding the values of the current row
+     */
+    public Property toProperty() {
+        return table.toProperty(row);
+    }
+}
@@ -0,0 +1,18 @@
+package com.homework.realestate;
+
+/**
+ * Callback for {@link PropertyService#forEachProperty(PropertyQuery, PropertyVisitor)}.
+ * The visitor is called once per matching property with a reusable {@link PropertyView}, so visiting allocates
+ * nothing unless the visitor asks for objects itself.
+ */
+@FunctionalInterface
+public interface PropertyVisitor {
+
+    /**
+     * Visits one property.
+     *
+     * @param property a view of the property, valid only during this call
+     * @return true to continue with the next property, false to stop
+     */
+    boolean visit(PropertyView property);
+}
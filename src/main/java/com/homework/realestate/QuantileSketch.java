@@ -0,0 +1,180 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+
+/**
+ * Quantile sketch with a relative accuracy guarantee that supports removals (DDSketch).
+ * Positive values are counted in logarithmic buckets {@code (gamma^(i-1), gamma^i]} with
+ * {@code gamma = (1 + alpha) / (1 - alpha)}; negative values are counted the same way by magnitude, and zero on
+ * its own. Every value in a bucket lies within a relative distance of {@code alpha} from the bucket's
+ * representative value, so any quantile is estimated within {@code alpha} of the true value at that rank. Since
+ * the buckets are plain counters, removing a value is the exact inverse of adding it, and the sketch needs one
+ * counter per bucket spanned: about 700 for prices between 1 and 10^9 at 1% accuracy. Infinite and NaN values
+ * have no bucket and are rejected.
+ */
+final class QuantileSketch {
+
+    /** Magnitudes below this are counted as zero, which keeps the bucket range bounded. */
+    private static final double MIN_MAGNITUDE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private BucketCounts positive = new BucketCounts();
+    private BucketCounts negative = new BucketCounts();
+    private long zeroCount;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param relativeAccuracy the relative accuracy alpha, between 0 and 1 exclusive
+     */
+    QuantileSketch(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Reads a sketch written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param relativeAccuracy the relative accuracy the sketch was created with
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    QuantileSketch(double relativeAccuracy, SnapshotInput input) throws IOException {
+        this(relativeAccuracy);
+        positive = new BucketCounts(input);
+        negative = new BucketCounts(input);
+        zeroCount = input.readLong();
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     * @throws IllegalArgumentException if the value is infinite or NaN
+     */
+    void add(double value) {
+        update(value, 1);
+    }
+
+    /**
+     * Removes a value that was added before.
+     *
+     * @param value the value
+     * @throws IllegalArgumentException if the value is infinite or NaN
+     */
+    void remove(double value) {
+        update(value, -1);
+    }
+
+    /**
+     * Gets the number of values in the sketch.
+     *
+     * @return the count
+     */
+    long count() {
+        return positive.total() + negative.total() + zeroCount;
+    }
+
+    /**
+     * Gets the relative accuracy of the sketch.
+     *
+     * @return alpha
+     */
+    double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Estimates the value at a quantile. The value at quantile q is the value at position
+     * {@code floor(q * (count - 1))} of the sorted values.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimate, or NaN if the sketch is empty
+     */
+    double quantile(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        long seen = 0;
+        for (int index = negative.lastIndex(); index >= negative.firstIndex(); index--) {
+            seen += negative.get(index);
+            if (seen > rank) {
+                return -valueOf(index);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int index = positive.firstIndex(); index <= positive.lastIndex(); index++) {
+            seen += positive.get(index);
+            if (seen > rank) {
+                return valueOf(index);
+            }
+        }
+        return valueOf(positive.lastIndex());
+    }
+
+    /**
+     * Adds every value of another sketch with the same relative accuracy to this one. Since buckets are plain
+     * counters, the merged sketch is the one that would have been built from both sets of values.
+     *
+     * @param other the sketch to merge
+     */
+    void mergeFrom(QuantileSketch other) {
+        positive.addAll(other.positive);
+        negative.addAll(other.negative);
+        zeroCount += other.zeroCount;
+    }
+
+    /**
+     * Copies the sketch.
+     *
+     * @return an independent copy
+     */
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy);
+        copy.positive = positive.copy();
+        copy.negative = negative.copy();
+        copy.zeroCount = zeroCount;
+        return copy;
+    }
+
+    /**
+     * Writes the counters of the sketch to a snapshot. The relative accuracy is left to the owner.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        positive.writeTo(output);
+        negative.writeTo(output);
+        output.writeLong(zeroCount);
+    }
+
+    private void update(double value, int delta) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Sketch values must be finite: " + value);
+        }
+        if (value >= MIN_MAGNITUDE) {
+            positive.add(indexOf(value), delta);
+        } else if (value <= -MIN_MAGNITUDE) {
+            negative.add(indexOf(-value), delta);
+        } else {
+            zeroCount += delta;
+        }
+    }
+
+    private int indexOf(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+}
@@ -0,0 +1,354 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of query results for {@link PropertyService}, with approximate least recently used eviction.
+ * Results are kept as immutable {@link PropertyRecord} lists under a {@link Key} built from the normalized query
+ * parameters, and each is stamped with the change counter it was computed at: the counter of its property type
+ * for queries restricted to one type, otherwise the counter of the whole table. A lookup whose stamp no longer
+ * matches drops the entry, so a result is never served after a change that could affect it, and changes to
+ * other types leave type-restricted results in place.
+ *
+ * <p>The size limit applies to an estimate of the heap taken by the cached records and their strings. The
+ * readers of a {@link ConcurrentPropertyService} share the cache of the copy they read, so lookups take no lock:
+ * entries live in a {@link ConcurrentHashMap}, a hit stamps its entry with the next tick of an access clock, and
+ * the counters are {@link LongAdder}s. Only eviction is serialized, between the threads adding results: once
+ * the limit is exceeded, one of them sorts the entries by their last access tick and drops the oldest until the
+ * cache is back under {@link #EVICTION_TARGET} of its limit, which spreads the cost of the sort over many
+ * insertions. The order is approximate, since hits that race with an eviction may not be seen by it.
+ */
+final class QueryCache {
+
+    /** Estimated heap size of a cache entry, its key, its map node and its list, without the records. */
+    private static final long ENTRY_BYTES = 160;
+    /** Estimated heap size of a {@link PropertyRecord} and its slot in the result list, without its strings. */
+    private static final long RECORD_BYTES = 56;
+    /** Estimated heap size of a {@link String} and its byte array header, without the characters. */
+    private static final long STRING_BYTES = 40;
+    /** Fraction of the size limit an eviction shrinks the cache to. */
+    private static final double EVICTION_TARGET = 0.875;
+
+    /**
+     * The query method a key stands for. Methods that answer the same criteria in different orders need
+     * different keys.
+     */
+    enum Operation {
+        AVAILABLE, TYPE, PRICE_RANGE, BEDROOMS, QUERY
+    }
+
+    /**
+     * Normalized parameters of a cached query. Prices are compared in cents after rounding the bounds inward,
+     * and address search texts by their tokens, so criteria that select the same properties share one entry.
+     * Location criteria are compared by their box and circle coordinates.
+     */
+    static final class Key {
+
+        private final Operation operation;
+        private final String address;
+        private final double[] location;
+        private final PropertyType type;
+        private final long minPrice;
+        private final long maxPrice;
+        private final int bedrooms;
+        private final boolean availableOnly;
+        private final int offset;
+        private final int limit;
+        private final int hash;
+
+        private Key(Operation operation, String address, double[] location, PropertyType type, long minPrice,
+                    long maxPrice, int bedrooms, boolean availableOnly, int offset, int limit) {
+            this.operation = operation;
+            this.address = address;
+            this.location = location;
+            this.type = type;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.bedrooms = bedrooms;
+            this.availableOnly = availableOnly;
+            this.offset = offset;
+            this.limit = limit;
+            int h = operation.ordinal();
+            h = 31 * h + (address == null ? 0 : address.hashCode());
+            h = 31 * h + Arrays.hashCode(location);
+            h = 31 * h + (type == null ? -1 : type.ordinal());
+            h = 31 * h + Long.hashCode(minPrice);
+            h = 31 * h + Long.hashCode(maxPrice);
+            h = 31 * h + bedrooms;
+            h = 31 * h + Boolean.hashCode(availableOnly);
+            h = 31 * h + offset;
+            this.hash = 31 * h + limit;
+        }
+
+        /**
+         * Creates the key of {@link PropertyService#getAvailableProperties()}.
+         *
+         * @return the key
+         */
+        static Key available() {
+            return new Key(Operation.AVAILABLE, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, -1, true, 0,
+                    Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates the key of {@link PropertyService#getPropertiesByType(PropertyType)}.
+         *
+         * @param type the property type
+         * @return the key
+         */
+        static Key type(PropertyType type) {
+            return new Key(Operation.TYPE, null, null, type, Long.MIN_VALUE, Long.MAX_VALUE, -1, false, 0,
+                    Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates the key of {@link PropertyService#getPropertiesByPriceRange(BigDecimal, BigDecimal)}.
+         *
+         * @param minPrice the minimum price (inclusive)
+         * @param maxPrice the maximum price (inclusive)
+         * @return the key
+         */
+        static Key priceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+            return new Key(Operation.PRICE_RANGE, null, null, null, Prices.ceilScaled(minPrice),
+                    Prices.floorScaled(maxPrice), -1, false, 0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates the key of {@link PropertyService#getPropertiesByBedrooms(int)}.
+         *
+         * @param bedrooms the number of bedrooms
+         * @return the key
+         */
+        static Key bedrooms(int bedrooms) {
+            return new Key(Operation.BEDROOMS, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, bedrooms, false, 0,
+                    Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates the key of {@link PropertyService#findProperties(PropertyQuery)}.
+         *
+         * @param query the query
+         * @return the key
+         */
+        static Key query(PropertyQuery query) {
+            boolean priced = query.hasPriceRange();
+            String address = query.hasAddress() ? String.join(" ", query.getAddressTokens()) : null;
+            return new Key(Operation.QUERY, address, location(query), query.getType(),
+                    priced ? Prices.ceilScaled(query.getMinPrice()) : Long.MIN_VALUE,
+                    priced ? Prices.floorScaled(query.getMaxPrice()) : Long.MAX_VALUE,
+                    query.getBedrooms(), query.isAvailableOnly(), query.getOffset(), query.getLimit());
+        }
+
+        private static double[] location(PropertyQuery query) {
+            if (!query.hasLocation()) {
+                return null;
+            }
+            double[] box = query.getBox();
+            if (box == null) {
+                box = new double[] {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+            }
+            return new double[] {box[0], box[1], box[2], box[3], query.getCenterLatitude(),
+                query.getCenterLongitude(), query.getRadiusKm()};
+        }
+
+        /**
+         * Gets the property type the query is restricted to.
+         *
+         * @return the type, or null if the query matches every type
+         */
+        PropertyType type() {
+            return type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && operation == other.operation && Objects.equals(address, other.address)
+                    && Arrays.equals(location, other.location) && type == other.type
+                    && minPrice == other.minPrice && maxPrice == other.maxPrice && bedrooms == other.bedrooms
+                    && availableOnly == other.availableOnly && offset == other.offset && limit == other.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final long stamp;
+        private final List<PropertyRecord> records;
+        private final long bytes;
+        private volatile long lastUsed;
+
+        private Entry(long stamp, List<PropertyRecord> records, long bytes, long lastUsed) {
+            this.stamp = stamp;
+            this.records = records;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * An entry seen by an eviction, with its last access tick read once so the sort order cannot change.
+     */
+    private static final class Candidate {
+
+        private final Key key;
+        private final Entry entry;
+        private final long lastUsed;
+
+        private Candidate(Key key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+            this.lastUsed = entry.lastUsed;
+        }
+    }
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxBytes the limit of the estimated size of the cached results
+     */
+    QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up a current result and marks it as the most recently used. Never blocks.
+     *
+     * @param key the query key
+     * @param stamp the change counter the result must have been computed at
+     * @return the cached records, or null on a miss
+     */
+    List<PropertyRecord> get(Key key, long stamp) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.stamp != stamp) {
+            if (entries.remove(key, entry)) {
+                bytes.addAndGet(-entry.bytes);
+                invalidations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        hits.increment();
+        return entry.records;
+    }
+
+    /**
+     * Caches a result, evicting the least recently used results if the cache no longer fits its size limit.
+     * A result larger than the whole limit is not cached.
+     *
+     * @param key the query key
+     * @param stamp the change counter the result was computed at
+     * @param records the result, which must not be changed afterwards
+     */
+    void put(Key key, long stamp, List<PropertyRecord> records) {
+        long size = estimateSize(records);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(stamp, records, size, clock.incrementAndGet()));
+        long total = bytes.addAndGet(previous != null ? size - previous.bytes : size);
+        if (total > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Drops every result, for when the whole catalog is replaced.
+     */
+    void clear() {
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                bytes.addAndGet(-entry.getValue().bytes);
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the counters. The counters are read one after the other, so a snapshot taken while
+     * other threads use the cache may not add up exactly.
+     *
+     * @return the statistics
+     */
+    QueryCacheStatistics statistics() {
+        return new QueryCacheStatistics(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                entries.size(), bytes.get(), maxBytes);
+    }
+
+    /**
+     * Drops the results used longest ago until the cache is back under {@link #EVICTION_TARGET} of its limit.
+     * Threads that find another one evicting wait for it and then find the cache small enough.
+     */
+    private void evict() {
+        evictionLock.lock();
+        try {
+            if (bytes.get() <= maxBytes) {
+                return;
+            }
+            List<Candidate> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastUsed));
+            long target = (long) (maxBytes * EVICTION_TARGET);
+            for (Candidate candidate : candidates) {
+                if (bytes.get() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.key, candidate.entry)) {
+                    bytes.addAndGet(-candidate.entry.bytes);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static long estimateSize(List<PropertyRecord> records) {
+        long size = ENTRY_BYTES;
+        for (PropertyRecord record : records) {
+            size += RECORD_BYTES + stringSize(record.getId()) + stringSize(record.getAddress());
+        }
+        return size;
+    }
+
+    private static long stringSize(String value) {
+        return value == null ? 0 : STRING_BYTES + ((value.length() + 7) & ~7);
+    }
+}
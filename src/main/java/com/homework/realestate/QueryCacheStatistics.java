@@ -0,0 +1,143 @@
+package com.homework.realestate;
+
+/**
+ * Immutable counters of a query result cache, see {@link PropertyService#enableQueryCache(long)}.
+ * Hits, misses, evictions and invalidations are counted from the moment the cache was enabled; the entry count
+ * and sizes describe the cache when the statistics were taken.
+ */
+public final class QueryCacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long invalidationCount;
+    private final long entryCount;
+    private final long sizeInBytes;
+    private final long maxSizeInBytes;
+
+    /**
+     * Creates cache statistics.
+     *
+     * @param hitCount the number of lookups answered from the cache
+     * @param missCount the number of lookups that had to run the query
+     * @param evictionCount the number of entries dropped to stay within the size limit
+     * @param invalidationCount the number of entries dropped because the catalog changed
+     * @param entryCount the number of cached results
+     * @param sizeInBytes the estimated size of the cached results
+     * @param maxSizeInBytes the size limit of the cache
+     */
+    QueryCacheStatistics(long hitCount, long missCount, long evictionCount, long invalidationCount,
+                         long entryCount, long sizeInBytes, long maxSizeInBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+        this.entryCount = entryCount;
+        this.sizeInBytes = sizeInBytes;
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups that found no current result and ran the query.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     *
+     * @return hits divided by lookups, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Gets the number of least recently used results dropped to stay within the size limit.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the number of results dropped because the properties they were computed from changed.
+     *
+     * @return the invalidation count
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Gets the number of cached results.
+     *
+     * @return the entry count
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the estimated heap size of the cached results.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Gets the size limit of the cache.
+     *
+     * @return the limit in bytes, or 0 if the cache is disabled
+     */
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    /**
+     * Adds the counters of another cache to these, for services that keep more than one cache.
+     *
+     * @param other the statistics to add
+     * @return the combined statistics
+     */
+    QueryCacheStatistics plus(QueryCacheStatistics other) {
+        return new QueryCacheStatistics(hitCount + other.hitCount, missCount + other.missCount,
+                evictionCount + other.evictionCount, invalidationCount + other.invalidationCount,
+                entryCount + other.entryCount, sizeInBytes + other.sizeInBytes,
+                maxSizeInBytes + other.maxSizeInBytes);
+    }
+
+    /**
+     * Returns a string representation of the statistics.
+     *
+     * @return the counters and sizes
+     */
+    @Override
+    public String toString() {
+        return "QueryCacheStatistics{" +
+                "hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                ", invalidations=" + invalidationCount +
+                ", entries=" + entryCount +
+                ", bytes=" + sizeInBytes +
+                ", maxBytes=" + maxSizeInBytes +
+                '}';
+    }
+}
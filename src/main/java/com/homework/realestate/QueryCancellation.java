@@ -0,0 +1,42 @@
+package com.homework.realestate;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets long scans stop when the thread running them is interrupted, which is how a cancelled or timed out
+ * {@link java.util.concurrent.Future} tells its task to stop, see {@link AsyncPropertyService}. Scans check the
+ * interrupt status of their thread every {@value #CHECK_INTERVAL} rows, so a check costs nothing measurable and a
+ * cancelled scan stops within microseconds instead of finishing a result nobody waits for. The interrupt status
+ * is left set, so the caller still sees it.
+ */
+final class QueryCancellation {
+
+    /** Number of rows a scan visits between two checks; a power of two. */
+    static final int CHECK_INTERVAL = 1024;
+
+    private QueryCancellation() {
+    }
+
+    /**
+     * Stops the scan if its thread was interrupted.
+     *
+     * @throws CancellationException if the current thread is interrupted
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Query interrupted");
+        }
+    }
+
+    /**
+     * Stops the scan if its thread was interrupted, checking only once every {@value #CHECK_INTERVAL} rows.
+     *
+     * @param visited the number of rows visited so far
+     * @throws CancellationException if a check is due and the current thread is interrupted
+     */
+    static void checkInterrupted(int visited) {
+        if ((visited & (CHECK_INTERVAL - 1)) == 0) {
+            checkInterrupted();
+        }
+    }
+}
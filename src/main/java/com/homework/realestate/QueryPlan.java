@@ -0,0 +1,496 @@
+package com.homework.realestate;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Execution plan for a {@link PropertyQuery}.
+ * The planner estimates how many rows each usable index would produce for the query, from the counts kept by the
+ * secondary indexes and a binary search of the price index, and drives the query from the index with the fewest
+ * rows. Every candidate row is then checked against the remaining criteria by reading the primitive columns
+ * directly, in a single pass that stops as soon as the requested page is full. An address criterion is checked
+ * by tokenizing the address of the row, unless the {@link AddressIndex} drives the query and has matched it
+ * already. A location criterion is estimated and driven by the {@link LocationIndex} through the box around it,
+ * and checked exactly on the coordinate columns. Candidates are visited in row
+ * order, so matches come out in insertion order whichever index drives the query. The pass is lazy, see
+ * {@link #rows(boolean)}, so streams and visitors over a plan only touch the rows they consume.
+ *
+ * <p>Ranked queries, see {@link #rank(PropertyMetric, int, boolean, ParallelExecution)}, keep the best matches in
+ * a {@link BoundedHeap}. Ranking by price can instead walk the price index from the top or the bottom and stop
+ * at the first price that can no longer enter the result, which the planner prefers when the matches are dense
+ * enough for the walk to visit fewer rows than the candidate pass. Nearest-neighbour queries, see
+ * {@link #nearest(double, double, int)}, search growing boxes around the point in the location index.
+ *
+ * <p>Passes over the rows and walks of the price index stop with a
+ * {@link java.util.concurrent.CancellationException} once the thread running them is interrupted, see
+ * {@link QueryCancellation}.
+ */
+final class QueryPlan {
+
+    /**
+     * The ways a plan can produce its candidate rows.
+     */
+    enum Access {
+        /** Every live row. */
+        ALL_ROWS,
+        /** The bitmap of the requested property type. */
+        TYPE_INDEX,
+        /** The bitmap of the requested bedroom count. */
+        BEDROOM_INDEX,
+        /** The bitmap of available rows. */
+        AVAILABILITY_INDEX,
+        /** The sorted price index. */
+        PRICE_INDEX,
+        /** The posting lists of the address tokens. */
+        ADDRESS_INDEX,
+        /** The Z-order cells of the location index. */
+        LOCATION_INDEX
+    }
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /** Radius of the first box searched for nearest neighbours, in kilometres. */
+    private static final double FIRST_NEAREST_RADIUS_KM = 0.05;
+
+    /** Factor the radius of the nearest neighbour search grows by when a box holds too few matches. */
+    private static final double NEAREST_RADIUS_GROWTH = 4;
+
+    private final PropertyTable table;
+    private final PropertyQuery query;
+    private final Access access;
+    private final int estimatedRows;
+    private final long minPrice;
+    private final long maxPrice;
+    private final double[] searchBox;
+
+    private QueryPlan(PropertyTable table, PropertyQuery query, Access access, int estimatedRows,
+            long minPrice, long maxPrice, double[] searchBox) {
+        this.table = table;
+        this.query = query;
+        this.access = access;
+        this.estimatedRows = estimatedRows;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.searchBox = searchBox;
+    }
+
+    /**
+     * Chooses the cheapest plan for a query.
+     *
+     * @param table the table to query
+     * @param query the query
+     * @return the plan
+     */
+    static QueryPlan choose(PropertyTable table, PropertyQuery query) {
+        SecondaryIndexes indexes = table.indexes();
+        long minPrice = Long.MIN_VALUE;
+        long maxPrice = Long.MAX_VALUE;
+        Access access = Access.ALL_ROWS;
+        int estimatedRows = table.size();
+        if (query.getType() != null && indexes.countOfType(query.getType()) < estimatedRows) {
+            access = Access.TYPE_INDEX;
+            estimatedRows = indexes.countOfType(query.getType());
+        }
+        if (query.hasBedrooms() && indexes.countWithBedrooms(query.getBedrooms()) < estimatedRows) {
+            access = Access.BEDROOM_INDEX;
+            estimatedRows = indexes.countWithBedrooms(query.getBedrooms());
+        }
+        if (query.isAvailableOnly() && indexes.availableCount() < estimatedRows) {
+            access = Access.AVAILABILITY_INDEX;
+            estimatedRows = indexes.availableCount();
+        }
+        if (query.hasPriceRange()) {
+            minPrice = Prices.ceilScaled(query.getMinPrice());
+            maxPrice = Prices.floorScaled(query.getMaxPrice());
+            int inRange = table.priceIndex().estimateInRange(minPrice, maxPrice);
+            if (inRange < estimatedRows) {
+                access = Access.PRICE_INDEX;
+                estimatedRows = inRange;
+            }
+        }
+        if (query.hasAddress()) {
+            int withAddress = table.addressIndex().estimate(query.getAddressTokens());
+            if (withAddress < estimatedRows) {
+                access = Access.ADDRESS_INDEX;
+                estimatedRows = withAddress;
+            }
+        }
+        double[] searchBox = null;
+        if (query.hasLocation()) {
+            searchBox = query.hasCircle()
+                    ? Locations.boundingBox(query.getCenterLatitude(), query.getCenterLongitude(), query.getRadiusKm())
+                    : query.getBox();
+            int inBox = table.locationIndex().estimateInBox(searchBox);
+            if (inBox < estimatedRows) {
+                access = Access.LOCATION_INDEX;
+                estimatedRows = inBox;
+            }
+        }
+        return new QueryPlan(table, query, access, estimatedRows, minPrice, maxPrice, searchBox);
+    }
+
+    /**
+     * Gets the index driving the plan.
+     *
+     * @return the access path
+     */
+    Access getAccess() {
+        return access;
+    }
+
+    /**
+     * Finds the rows of the requested page of matches.
+     *
+     * @return the matching rows after the offset, at most limit of them, in ascending row order
+     */
+    int[] execute() {
+        int limit = query.getLimit();
+        if (limit == 0 || estimatedRows == 0) {
+            return NO_ROWS;
+        }
+        int[] result = new int[Math.min(limit, Math.min(estimatedRows, 1024))];
+        int count = 0;
+        RowIterator rows = rows(true);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, grow(result.length, limit));
+            }
+            result[count++] = row;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Counts all matches, ignoring the offset and limit of the query.
+     *
+     * @return the number of matching rows
+     */
+    int count() {
+        int count = 0;
+        RowIterator rows = rows(false);
+        while (rows.next() >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets an upper bound of the number of rows the plan returns, considering the limit of the query.
+     *
+     * @return the estimated number of rows
+     */
+    int estimatedResultSize() {
+        return Math.min(estimatedRows, query.getLimit());
+    }
+
+    /**
+     * Starts a lazy pass over the matching rows. A pass driven by the price or the location index is lazy only
+     * after its first row: the index keeps its entries in price or Z-order, so the rows of the whole price range
+     * or box are collected and sorted into row order before the first match, at O(r log r) for r rows in the
+     * range, even when the page is small. {@link #toString()} points this out.
+     *
+     * @param paged true to apply the offset and limit of the query, false to visit every match
+     * @return an iterator over the matching rows, in ascending row order
+     */
+    RowIterator rows(boolean paged) {
+        return new RowIterator(paged);
+    }
+
+    /**
+     * Finds the matches with the highest or lowest values of a metric, ignoring the offset and limit of the
+     * query. Memory stays in O(k) whatever the number of matches. Matches without a value for the metric, that is
+     * without a positive area for {@link PropertyMetric#PRICE_PER_AREA}, are left out. For equal values the
+     * property added first ranks first.
+     *
+     * @param metric the metric to rank by
+     * @param k the maximum number of matches to return
+     * @param highest true for the highest values, false for the lowest
+     * @param parallel the parallel execution mode to scan partitions with, or null to scan on the calling thread
+     * @return the rows of the best matches, best first
+     */
+    int[] rank(PropertyMetric metric, int k, boolean highest, ParallelExecution parallel) {
+        if (k == 0 || estimatedRows == 0) {
+            return NO_ROWS;
+        }
+        int capacity = Math.min(k, estimatedRows);
+        if (metric == PropertyMetric.PRICE && walksPriceIndex(capacity)) {
+            BoundedHeap heap = new BoundedHeap(capacity, highest);
+            int[] visited = new int[1];
+            table.priceIndex().walk(minPrice, maxPrice, highest, (price, row) -> {
+                QueryCancellation.checkInterrupted(++visited[0]);
+                double value = Prices.toDouble(price);
+                if (heap.excludes(value)) {
+                    return false;
+                }
+                if (matches(row)) {
+                    heap.offer(value, row);
+                }
+                return true;
+            });
+            return heap.drainRanked();
+        }
+        if (parallel != null && parallel.appliesTo(estimatedRows)) {
+            return parallel.rank(table, this, metric, capacity, highest).drainRanked();
+        }
+        return rankRows(0, table.rowCount(), metric, capacity, highest).drainRanked();
+    }
+
+    /**
+     * Finds the matches closest to a point, ignoring the offset and limit of the query. Matches without a
+     * location are left out. The location index is searched in boxes around the point whose radius starts at
+     * {@value #FIRST_NEAREST_RADIUS_KM} km and grows {@value #NEAREST_RADIUS_GROWTH} times until a box holds k
+     * matches within its radius, since no row outside the box can be closer than those. When a box would hold
+     * more rows than the plan produces, the candidate pass of the plan is ranked instead. For equal distances the
+     * property added first ranks first.
+     *
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param k the maximum number of matches to return
+     * @return the rows of the closest matches, closest first
+     */
+    int[] nearest(double latitude, double longitude, int k) {
+        if (k == 0 || estimatedRows == 0) {
+            return NO_ROWS;
+        }
+        int capacity = Math.min(k, estimatedRows);
+        LocationIndex locations = table.locationIndex();
+        for (double radius = FIRST_NEAREST_RADIUS_KM; radius < Locations.MAX_DISTANCE_KM;
+                radius *= NEAREST_RADIUS_GROWTH) {
+            double[] box = Locations.boundingBox(latitude, longitude, radius);
+            if (locations.estimateInBox(box) >= estimatedRows) {
+                break;
+            }
+            BoundedHeap heap = new BoundedHeap(capacity, false);
+            for (int row : locations.rowsInBox(box)) {
+                double distance = distanceKm(row, latitude, longitude);
+                if (distance <= radius && matches(row)) {
+                    heap.offer(distance, row);
+                }
+            }
+            int[] ranked = heap.drainRanked();
+            if (ranked.length == capacity) {
+                return ranked;
+            }
+        }
+        BoundedHeap heap = new BoundedHeap(capacity, false);
+        RowIterator rows = rows(false);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            if (table.hasLocation(row)) {
+                heap.offer(distanceKm(row, latitude, longitude), row);
+            }
+        }
+        return heap.drainRanked();
+    }
+
+    /**
+     * Keeps the best matches among a range of rows.
+     *
+     * @param fromRow the first row of the range (inclusive)
+     * @param toRow the last row of the range (exclusive)
+     * @param metric the metric to rank by
+     * @param capacity the number of matches to keep
+     * @param highest true for the highest values, false for the lowest
+     * @return a heap holding the best matches of the range
+     */
+    BoundedHeap rankRows(int fromRow, int toRow, PropertyMetric metric, int capacity, boolean highest) {
+        BoundedHeap heap = new BoundedHeap(capacity, highest);
+        RowIterator rows = new RowIterator(false, fromRow, toRow);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            double value = table.metric(row, metric);
+            if (!Double.isNaN(value)) {
+                heap.offer(value, row);
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Describes the plan, for logging.
+     *
+     * @return the access path and the estimated number of candidate rows, noting when the rows of the index are
+     *         collected and sorted before the first match
+     */
+    @Override
+    public String toString() {
+        boolean sortsRows = estimatedRows > 0 && (access == Access.PRICE_INDEX || access == Access.LOCATION_INDEX);
+        return access + " (" + estimatedRows + " candidate rows"
+                + (sortsRows ? ", collected and sorted into row order before the first match" : "") + ")";
+    }
+
+    /**
+     * Compares the expected cost of ranking by walking the price index with the cost of the candidate pass.
+     * Assuming the matches are spread evenly over the prices, the walk visits about k * rangeRows / estimatedRows
+     * entries of the price range before it has found k matches, while the pass visits every candidate.
+     */
+    private boolean walksPriceIndex(int capacity) {
+        long rangeRows = query.hasPriceRange() ? table.priceIndex().estimateInRange(minPrice, maxPrice) : table.size();
+        return (long) capacity * rangeRows / estimatedRows <= estimatedRows;
+    }
+
+    private BitSet candidateRows() {
+        SecondaryIndexes indexes = table.indexes();
+        switch (access) {
+            case TYPE_INDEX:
+                return indexes.rowsOfType(query.getType());
+            case BEDROOM_INDEX:
+                return indexes.rowsWithBedrooms(query.getBedrooms());
+            case AVAILABILITY_INDEX:
+                return indexes.availableRows();
+            default:
+                return table.liveRows();
+        }
+    }
+
+    /**
+     * Checks a live row against every criterion of the query, reading the columns directly.
+     *
+     * @param row the row
+     * @return true if the row matches
+     */
+    boolean matches(int row) {
+        return matchesColumns(row)
+                && (!query.hasAddress() || AddressIndex.matches(table.address(row), query.getAddressTokens()));
+    }
+
+    /**
+     * Checks a live row against every criterion of the query but the address.
+     *
+     * @param row the row
+     * @return true if the row matches
+     */
+    private boolean matchesColumns(int row) {
+        if (query.getType() != null && table.type(row) != query.getType()) {
+            return false;
+        }
+        if (query.hasBedrooms() && table.bedrooms(row) != query.getBedrooms()) {
+            return false;
+        }
+        if (query.isAvailableOnly() && !table.available(row)) {
+            return false;
+        }
+        if (query.hasLocation() && !matchesLocation(row)) {
+            return false;
+        }
+        if (query.hasPriceRange()) {
+            long price = table.price(row);
+            return price >= minPrice && price <= maxPrice;
+        }
+        return true;
+    }
+
+    private boolean matchesLocation(int row) {
+        if (!table.hasLocation(row)) {
+            return false;
+        }
+        if (query.getBox() != null && !Locations.inBox(table.latitude(row), table.longitude(row), query.getBox())) {
+            return false;
+        }
+        return !query.hasCircle()
+                || distanceKm(row, query.getCenterLatitude(), query.getCenterLongitude()) <= query.getRadiusKm();
+    }
+
+    private double distanceKm(int row, double latitude, double longitude) {
+        return Locations.distanceKm(latitude, longitude, table.latitude(row), table.longitude(row));
+    }
+
+    /**
+     * Pulls the matching rows one at a time from the driving index, so a pass can stop at any point.
+     * A pass over part of the rows, as run by the partitions of a parallel scan, reads the live rows instead of
+     * the price, address or location index, whose rows would have to be fetched in full for every partition.
+     * A full pass driven by the price or location index fetches and sorts the rows of the range up front, since
+     * the index does not hold them in row order; the pulls after that cost O(1) each.
+     */
+    final class RowIterator {
+
+        private final int[] sortedRows;
+        private final AddressIndex.Matches addressRows;
+        private final BitSet candidates;
+        private final int toRow;
+        private int position;
+        private int skip;
+        private int remaining;
+        private int visited;
+
+        private RowIterator(boolean paged) {
+            this(paged, 0, Integer.MAX_VALUE);
+        }
+
+        private RowIterator(boolean paged, int fromRow, int toRow) {
+            boolean empty = estimatedRows == 0;
+            boolean allRows = fromRow == 0 && toRow >= table.rowCount();
+            boolean walkPrices = access == Access.PRICE_INDEX && allRows;
+            boolean searchLocations = access == Access.LOCATION_INDEX && allRows;
+            boolean searchAddresses = access == Access.ADDRESS_INDEX && allRows && !empty;
+            if (empty) {
+                this.sortedRows = NO_ROWS;
+            } else if (walkPrices) {
+                this.sortedRows = table.priceIndex().rowsInRange(minPrice, maxPrice);
+            } else if (searchLocations) {
+                this.sortedRows = table.locationIndex().rowsInBox(searchBox);
+            } else {
+                this.sortedRows = NO_ROWS;
+            }
+            this.addressRows = searchAddresses
+                    ? table.addressIndex().search(query.getAddressTokens(), table.liveRows())
+                    : null;
+            if (walkPrices || searchLocations || searchAddresses || empty) {
+                this.candidates = null;
+            } else if (access == Access.PRICE_INDEX || access == Access.LOCATION_INDEX) {
+                this.candidates = table.liveRows();
+            } else {
+                this.candidates = candidateRows();
+            }
+            this.toRow = toRow;
+            this.position = walkPrices || searchLocations ? 0 : fromRow;
+            this.skip = paged ? query.getOffset() : 0;
+            this.remaining = paged ? query.getLimit() : Integer.MAX_VALUE;
+            if (empty) {
+                this.remaining = 0;
+            }
+        }
+
+        /**
+         * Gets the next matching row.
+         *
+         * @return the row, or -1 if there are no more matches
+         */
+        int next() {
+            while (remaining > 0) {
+                QueryCancellation.checkInterrupted(++visited);
+                int row = nextCandidate();
+                if (row < 0) {
+                    remaining = 0;
+                    return -1;
+                }
+                if (addressRows != null ? matchesColumns(row) : matches(row)) {
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        remaining--;
+                        return row;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private int nextCandidate() {
+            if (addressRows != null) {
+                return addressRows.next();
+            }
+            if (candidates == null) {
+                return position < sortedRows.length ? sortedRows[position++] : -1;
+            }
+            int row = candidates.nextSetBit(position);
+            if (row >= toRow) {
+                return -1;
+            }
+            position = row + 1;
+            return row;
+        }
+    }
+
+    private static int grow(int length, int limit) {
+        return (int) Math.min(limit, Math.max(16L, length + (long) (length >> 1) + 1));
+    }
+}
@@ -0,0 +1,46 @@
+package com.homework.realestate;
+
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Lazy spliterator over the results of a {@link QueryPlan}.
+ * Each call to {@link #tryAdvance(Consumer)} pulls the next matching row from the plan and builds a
+ * {@link Property} for it, so a stream over a query only does work for the elements it consumes.
+ * The spliterator reads the live table and fails with a {@link ConcurrentModificationException} if the table is
+ * changed while it is in use.
+ */
+final class QuerySpliterator extends Spliterators.AbstractSpliterator<Property> {
+
+    private final PropertyTable table;
+    private final QueryPlan.RowIterator rows;
+    private final int expectedModCount;
+
+    /**
+     * Creates a spliterator over the page of matches of a plan.
+     *
+     * @param table the table the plan runs on
+     * @param plan the plan
+     */
+    QuerySpliterator(PropertyTable table, QueryPlan plan) {
+        super(plan.estimatedResultSize(), Spliterator.ORDERED | Spliterator.NONNULL);
+        this.table = table;
+        this.rows = plan.rows(true);
+        this.expectedModCount = table.modCount();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Property> action) {
+        if (table.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException("The property catalog was changed during iteration");
+        }
+        int row = rows.next();
+        if (row < 0) {
+            return false;
+        }
+        action.accept(table.toProperty(row));
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.EnumMap;
+
+/**
+ * Secondary indexes over the rows of a property table.
+ * The indexes keep one bitmap of rows per property type, one bitmap per bedroom count and one bitmap of
+ * available rows, together with the number of rows in each of them, so that equality lookups only visit
+ * matching rows and counts are answered without a scan. The availability bitmap doubles as the availability
+ * column of the table.
+ */
+final class SecondaryIndexes {
+
+    private static final BitSet EMPTY = new BitSet();
+
+    private final EnumMap<PropertyType, BitSet> rowsByType = new EnumMap<>(PropertyType.class);
+    private final int[] typeCounts;
+    private final BitSet[] rowsByBedrooms = new BitSet[PropertyTable.MAX_ROOMS + 1];
+    private final int[] bedroomCounts;
+    private final BitSet availableRows;
+    private int availableCount;
+
+    /**
+     * Creates empty indexes.
+     */
+    SecondaryIndexes() {
+        typeCounts = new int[PropertyType.values().length];
+        bedroomCounts = new int[PropertyTable.MAX_ROOMS + 1];
+        availableRows = new BitSet();
+    }
+
+    /**
+     * Reads indexes written by {@link #writeTo(SnapshotOutput)}.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    SecondaryIndexes(SnapshotInput input) throws IOException {
+        for (PropertyType type : PropertyType.values()) {
+            BitSet rows = input.readBitSet();
+            if (!rows.isEmpty()) {
+                rowsByType.put(type, rows);
+            }
+        }
+        typeCounts = input.readInts(PropertyType.values().length, "type counts");
+        for (int bedrooms = 0; bedrooms < rowsByBedrooms.length; bedrooms++) {
+            BitSet rows = input.readBitSet();
+            rowsByBedrooms[bedrooms] = rows.isEmpty() ? null : rows;
+        }
+        bedroomCounts = input.readInts(rowsByBedrooms.length, "bedroom counts");
+        availableRows = input.readBitSet();
+        availableCount = input.readInt();
+    }
+
+    /**
+     * Adds a row to all indexes.
+     *
+     * @param row the row
+     * @param type the property type stored in that row, or null
+     * @param bedrooms the number of bedrooms stored in that row
+     * @param available the availability stored in that row
+     */
+    void add(int row, PropertyType type, int bedrooms, boolean available) {
+        if (type != null) {
+            rowsByType.computeIfAbsent(type, t -> new BitSet()).set(row);
+            typeCounts[type.ordinal()]++;
+        }
+        if (rowsByBedrooms[bedrooms] == null) {
+            rowsByBedrooms[bedrooms] = new BitSet();
+        }
+        rowsByBedrooms[bedrooms].set(row);
+        bedroomCounts[bedrooms]++;
+        if (available) {
+            availableRows.set(row);
+            availableCount++;
+        }
+    }
+
+    /**
+     * Removes a row from all indexes.
+     *
+     * @param row the row
+     * @param type the property type the row was added with, or null
+     * @param bedrooms the number of bedrooms the row was added with
+     */
+    void remove(int row, PropertyType type, int bedrooms) {
+        if (type != null) {
+            rowsByType.get(type).clear(row);
+            typeCounts[type.ordinal()]--;
+        }
+        rowsByBedrooms[bedrooms].clear(row);
+        bedroomCounts[bedrooms]--;
+        if (availableRows.get(row)) {
+            availableRows.clear(row);
+            availableCount--;
+        }
+    }
+
+    /**
+     * Changes the availability of a row without touching the other indexes.
+     *
+     * @param row the row
+     * @param available the new availability
+     */
+    void setAvailable(int row, boolean available) {
+        if (availableRows.get(row) != available) {
+            availableRows.set(row, available);
+            availableCount += available ? 1 : -1;
+        }
+    }
+
+    /**
+     * Gets the rows holding properties of the given type. The returned bitmap must not be modified.
+     *
+     * @param type the property type
+     * @return the matching rows
+     */
+    BitSet rowsOfType(PropertyType type) {
+        return rowsByType.getOrDefault(type, EMPTY);
+    }
+
+    /**
+     * Counts the rows holding properties of the given type.
+     *
+     * @param type the property type
+     * @return the number of matching rows
+     */
+    int countOfType(PropertyType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    /**
+     * Gets the rows holding properties with the given number of bedrooms. The returned bitmap must not be modified.
+     *
+     * @param bedrooms the number of bedrooms
+     * @return the matching rows
+     */
+    BitSet rowsWithBedrooms(int bedrooms) {
+        if (bedrooms < 0 || bedrooms > PropertyTable.MAX_ROOMS || rowsByBedrooms[bedrooms] == null) {
+            return EMPTY;
+        }
+        return rowsByBedrooms[bedrooms];
+    }
+
+    /**
+     * Counts the rows holding properties with the given number of bedrooms.
+     *
+     * @param bedrooms the number of bedrooms
+     * @return the number of matching rows
+     */
+    int countWithBedrooms(int bedrooms) {
+        return bedrooms < 0 || bedrooms > PropertyTable.MAX_ROOMS ? 0 : bedroomCounts[bedrooms];
+    }
+
+    /**
+     * Gets the rows holding available properties. The returned bitmap must not be modified.
+     *
+     * @return the available rows
+     */
+    BitSet availableRows() {
+        return availableRows;
+    }
+
+    /**
+     * Counts the rows holding available properties.
+     *
+     * @return the number of available rows
+     */
+    int availableCount() {
+        return availableCount;
+    }
+
+    /**
+     * Writes every bitmap and count to a snapshot, in type ordinal and bedroom count order.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        for (PropertyType type : PropertyType.values()) {
+            output.writeBitSet(rowsOfType(type));
+        }
+        output.writeInts(typeCounts, typeCounts.length);
+        for (int bedrooms = 0; bedrooms < rowsByBedrooms.length; bedrooms++) {
+            output.writeBitSet(rowsWithBedrooms(bedrooms));
+        }
+        output.writeInts(bedroomCounts, bedroomCounts.length);
+        output.writeBitSet(availableRows);
+        output.writeInt(availableCount);
+    }
+}
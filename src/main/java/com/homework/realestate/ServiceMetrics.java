@@ -0,0 +1,92 @@
+package com.homework.realestate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live metrics of a {@link PropertyService}: a latency histogram and a result-size histogram per operation, and
+ * the number of queries driven by each kind of index. Recording takes no lock: the histograms of an operation are
+ * found in a {@link ConcurrentHashMap} and updated with atomic increments, so a call costs a few tens of
+ * nanoseconds on top of its own work and metrics can stay on in production.
+ */
+final class ServiceMetrics {
+
+    private static final QueryPlan.Access[] ACCESSES = QueryPlan.Access.values();
+
+    /**
+     * Histograms of one operation.
+     */
+    private static final class OperationMetrics {
+
+        private final ConcurrentHistogram latencies = new ConcurrentHistogram();
+        private final ConcurrentHistogram resultSizes = new ConcurrentHistogram();
+    }
+
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final AtomicLongArray planCounts = new AtomicLongArray(ACCESSES.length);
+
+    /**
+     * Records a completed call.
+     *
+     * @param operation the name of the operation
+     * @param startNanos the {@link System#nanoTime()} at which the call started
+     * @param resultSize the number of properties returned or changed by the call
+     */
+    void record(String operation, long startNanos, long resultSize) {
+        long elapsed = System.nanoTime() - startNanos;
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, name -> new OperationMetrics());
+        }
+        metrics.latencies.record(elapsed);
+        metrics.resultSizes.record(resultSize);
+    }
+
+    /**
+     * Records the index that drove a query.
+     *
+     * @param access the way the query plan produced its candidates
+     */
+    void recordPlan(QueryPlan.Access access) {
+        planCounts.incrementAndGet(access.ordinal());
+    }
+
+    /**
+     * Builds the statistics of every operation called since the metrics were created or reset.
+     *
+     * @return the statistics, by operation name in alphabetical order
+     */
+    Map<String, OperationStatistics> operations() {
+        Map<String, OperationStatistics> statistics = new TreeMap<>();
+        operations.forEach((name, metrics) -> statistics.put(name,
+                new OperationStatistics(name, metrics.latencies.snapshot(), metrics.resultSizes.snapshot())));
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Gets the number of queries driven by each kind of index.
+     *
+     * @return the counts, by access name in declaration order
+     */
+    Map<String, Long> planCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (QueryPlan.Access access : ACCESSES) {
+            counts.put(access.name(), planCounts.get(access.ordinal()));
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Starts counting again from zero. Calls recorded while the metrics are reset may be lost.
+     */
+    void reset() {
+        operations.clear();
+        for (int i = 0; i < ACCESSES.length; i++) {
+            planCounts.set(i, 0);
+        }
+    }
+}
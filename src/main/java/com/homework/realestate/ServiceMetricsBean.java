@@ -0,0 +1,99 @@
+package com.homework.realestate;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Implementation of {@link PropertyServiceMetricsMXBean} over a metrics snapshot supplier, with the registration
+ * helpers shared by the services.
+ */
+final class ServiceMetricsBean implements PropertyServiceMetricsMXBean {
+
+    private static final Logger logger = Logger.getLogger(ServiceMetricsBean.class.getName());
+
+    /** Domain and type of the object names the services register under. */
+    static final String NAME_PREFIX = "com.homework.realestate:type=PropertyService,name=";
+
+    private final Supplier<MetricsSnapshot> snapshots;
+    private final Runnable reset;
+
+    /**
+     * Creates a bean.
+     *
+     * @param snapshots takes a snapshot of the service's metrics
+     * @param reset resets the service's metrics
+     */
+    ServiceMetricsBean(Supplier<MetricsSnapshot> snapshots, Runnable reset) {
+        this.snapshots = snapshots;
+        this.reset = reset;
+    }
+
+    @Override
+    public Map<String, OperationStatistics> getOperations() {
+        return snapshots.get().getOperations();
+    }
+
+    @Override
+    public Map<String, Long> getQueryPlanCounts() {
+        return snapshots.get().getQueryPlanCounts();
+    }
+
+    @Override
+    public QueryCacheStatistics getQueryCache() {
+        return snapshots.get().getQueryCacheStatistics();
+    }
+
+    @Override
+    public int getPropertyCount() {
+        return snapshots.get().getPropertyCount();
+    }
+
+    @Override
+    public void resetMetrics() {
+        reset.run();
+    }
+
+    /**
+     * Registers a bean with the platform MBean server.
+     *
+     * @param name the value of the {@code name} key of the object name
+     * @param bean the bean
+     * @return the object name the bean was registered under
+     * @throws IllegalArgumentException if the name is null, makes an invalid object name or is already in use
+     */
+    static ObjectName register(String name, ServiceMetricsBean bean) {
+        if (name == null) {
+            logger.log(Level.SEVERE, "Attempted to register metrics without a name");
+            throw new IllegalArgumentException("MBean name cannot be null");
+        }
+        try {
+            ObjectName objectName = new ObjectName(NAME_PREFIX + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+            logger.info("Registered metrics MBean " + objectName);
+            return objectName;
+        } catch (JMException e) {
+            logger.log(Level.SEVERE, "Error registering metrics MBean " + name, e);
+            throw new IllegalArgumentException("Cannot register metrics MBean " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters a bean from the platform MBean server, if it is still registered.
+     *
+     * @param objectName the object name returned by {@link #register(String, ServiceMetricsBean)}
+     */
+    static void unregister(ObjectName objectName) {
+        try {
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Error unregistering metrics MBean " + objectName, e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rule that assigns each property of a {@link ShardedPropertyService} to one of its shards.
+ * Properties can be partitioned by type, by price band or by a hash of their id. Partitioning by type or price
+ * lets queries on that attribute skip the shards that cannot hold a match, while partitioning by id spreads the
+ * catalog evenly and routes lookups by id without a directory.
+ */
+public final class ShardPartitioning {
+
+    private static final Logger logger = Logger.getLogger(ShardPartitioning.class.getName());
+    private static final PropertyType[] TYPES = PropertyType.values();
+
+    private enum Kind {
+        TYPE, PRICE_BAND, ID_HASH
+    }
+
+    private final Kind kind;
+    private final int shardCount;
+    private final long[] upperBounds;
+
+    private ShardPartitioning(Kind kind, int shardCount, long[] upperBounds) {
+        this.kind = kind;
+        this.shardCount = shardCount;
+        this.upperBounds = upperBounds;
+    }
+
+    /**
+     * Partitions properties by type: one shard per {@link PropertyType} and a last one for properties without a
+     * type.
+     *
+     * @return the partitioning
+     */
+    public static ShardPartitioning byType() {
+        return new ShardPartitioning(Kind.TYPE, TYPES.length + 1, null);
+    }
+
+    /**
+     * Partitions properties by price. Shard i holds the prices below the bound i and at or above the bound i - 1,
+     * and the last shard the prices at or above the highest bound, so n bounds make n + 1 shards.
+     *
+     * @param upperBounds the upper bounds of the bands below the highest one, in ascending order
+     * @return the partitioning
+     * @throws IllegalArgumentException if no bound is given, or if a bound is null or not greater than the one before
+     */
+    public static ShardPartitioning byPriceBands(BigDecimal... upperBounds) {
+        if (upperBounds == null || upperBounds.length == 0) {
+            logger.log(Level.SEVERE, "Attempted to partition by price without bounds");
+            throw new IllegalArgumentException("At least one price bound is required");
+        }
+        long[] scaled = new long[upperBounds.length];
+        for (int i = 0; i < upperBounds.length; i++) {
+            if (upperBounds[i] == null) {
+                logger.log(Level.SEVERE, "Attempted to partition by price with a null bound");
+                throw new IllegalArgumentException("Price bounds cannot be null");
+            }
+            scaled[i] = Prices.ceilScaled(upperBounds[i]);
+            if (i > 0 && scaled[i] <= scaled[i - 1]) {
+                logger.log(Level.SEVERE, "Attempted to partition by price with unordered bounds: "
+                        + Arrays.toString(upperBounds));
+                throw new IllegalArgumentException("Price bounds must be in ascending order and at least a cent apart");
+            }
+        }
+        return new ShardPartitioning(Kind.PRICE_BAND, scaled.length + 1, scaled);
+    }
+
+    /**
+     * Partitions properties by a hash of their id into a given number of shards.
+     *
+     * @param shardCount the number of shards
+     * @return the partitioning
+     * @throws IllegalArgumentException if the shard count is not positive
+     */
+    public static ShardPartitioning byIdHash(int shardCount) {
+        if (shardCount <= 0) {
+            logger.log(Level.SEVERE, "Attempted to partition into " + shardCount + " shards");
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        return new ShardPartitioning(Kind.ID_HASH, shardCount, null);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Checks whether the shard of a property follows from its id alone, so that lookups by id need no directory.
+     *
+     * @return true for partitioning by id hash
+     */
+    boolean routesById() {
+        return kind == Kind.ID_HASH;
+    }
+
+    /**
+     * Finds the shard of a property.
+     *
+     * @param property a valid property
+     * @return the shard index
+     */
+    int shardOf(Property property) {
+        switch (kind) {
+            case TYPE:
+                return shardOfType(property.getType());
+            case PRICE_BAND:
+                return shardOfPrice(Prices.toScaled(property.getPrice()));
+            default:
+                return shardOfId(property.getId());
+        }
+    }
+
+    /**
+     * Finds the shard of an id when partitioning by id hash.
+     *
+     * @param id the id
+     * @return the shard index
+     */
+    int shardOfId(String id) {
+        int hash = id.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    /**
+     * Lists the shards that can hold matches of a query.
+     *
+     * @param query the query
+     * @return the shard indexes in ascending order
+     */
+    int[] shardsFor(PropertyQuery query) {
+        if (kind == Kind.TYPE && query.getType() != null) {
+            return new int[] {shardOfType(query.getType())};
+        }
+        if (kind == Kind.PRICE_BAND && query.hasPriceRange()) {
+            return shardsForPriceRange(query.getMinPrice(), query.getMaxPrice());
+        }
+        return allShards();
+    }
+
+    /**
+     * Lists the shards that can hold properties of a type.
+     *
+     * @param type the property type
+     * @return the shard indexes in ascending order
+     */
+    int[] shardsForType(PropertyType type) {
+        return kind == Kind.TYPE ? new int[] {shardOfType(type)} : allShards();
+    }
+
+    /**
+     * Lists the shards that can hold prices in a range.
+     *
+     * @param minPrice the minimum price (inclusive)
+     * @param maxPrice the maximum price (inclusive)
+     * @return the shard indexes in ascending order
+     */
+    int[] shardsForPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (kind != Kind.PRICE_BAND) {
+            return allShards();
+        }
+        long min = Prices.ceilScaled(minPrice);
+        long max = Prices.floorScaled(maxPrice);
+        if (min > max) {
+            return new int[0];
+        }
+        int first = shardOfPrice(min);
+        int last = shardOfPrice(max);
+        int[] shards = new int[last - first + 1];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = first + i;
+        }
+        return shards;
+    }
+
+    /**
+     * Checks whether the shards are ordered by price, every price of a shard being lower than the prices of the
+     * shards after it.
+     *
+     * @return true for partitioning by price band
+     */
+    boolean ordersByPrice() {
+        return kind == Kind.PRICE_BAND;
+    }
+
+    /**
+     * Lists every shard.
+     *
+     * @return the shard indexes in ascending order
+     */
+    int[] allShards() {
+        int[] shards = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = i;
+        }
+        return shards;
+    }
+
+    /**
+     * Describes the partitioning, for logging.
+     *
+     * @return the kind of partitioning and the shard count
+     */
+    @Override
+    public String toString() {
+        String bounds = upperBounds == null ? "" : ", upperBoundsInCents=" + Arrays.toString(upperBounds);
+        return "ShardPartitioning{" + kind + ", shards=" + shardCount + bounds + '}';
+    }
+
+    private int shardOfType(PropertyType type) {
+        return type == null ? TYPES.length : type.ordinal();
+    }
+
+    private int shardOfPrice(long price) {
+        int position = Arrays.binarySearch(upperBounds, price);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+}
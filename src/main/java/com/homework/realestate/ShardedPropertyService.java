@@ -0,0 +1,747 @@
+package com.homework.realestate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread-safe property catalog split into independent shards, each a {@link ConcurrentPropertyService} with its
+ * own storage and indexes. A {@link ShardPartitioning} assigns every property to a shard by type, price band or
+ * id hash, and the shard count is set by the partitioning.
+ *
+ * <p>Queries are scattered to the shards that can hold a match, so a query restricted to a type or price range
+ * skips the other shards when the catalog is partitioned on that attribute, and run on a fork/join pool, one
+ * task per shard. The partial results are then gathered: lists are concatenated in shard order, top-K and
+ * nearest-neighbour results are merged from the sorted results of each shard, and counts, price statistics and
+ * distributions are combined. Within a shard, matches keep their insertion order; for equal ranking values the
+ * match of the lower shard comes first.
+ *
+ * <p>There is no global lock. Reads never block, as in every shard, and writes only lock the shard they change
+ * and one of a fixed set of lock stripes chosen by the id, which serializes changes to the same id so that ids
+ * stay unique across shards. When the shard of a property does not follow from its id, a directory maps ids to
+ * shards. An upsert that moves a property to another shard adds it to the new shard before removing it from the
+ * old one, so a query running at the same time may see the property in both. Each shard is consistent on its
+ * own, but a query over several shards is not one atomic snapshot of the catalog.
+ */
+public class ShardedPropertyService {
+
+    private static final Logger logger = Logger.getLogger(ShardedPropertyService.class.getName());
+
+    /** Number of lock stripes serializing changes to the same id. */
+    private static final int LOCK_STRIPES = 64;
+
+    private final ShardPartitioning partitioning;
+    private final ConcurrentPropertyService[] shards;
+    private final ForkJoinPool pool;
+    private final ConcurrentHashMap<String, Integer> directory;
+    private final ReentrantLock[] idLocks;
+
+    /**
+     * Creates an empty service that runs scattered queries on the common fork/join pool.
+     *
+     * @param partitioning the rule assigning properties to shards
+     * @throws IllegalArgumentException if the partitioning is null
+     */
+    public ShardedPropertyService(ShardPartitioning partitioning) {
+        this(partitioning, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an empty service.
+     *
+     * @param partitioning the rule assigning properties to shards
+     * @param pool the pool running the per-shard tasks of scattered queries
+     * @throws IllegalArgumentException if the partitioning or the pool is null
+     */
+    public ShardedPropertyService(ShardPartitioning partitioning, ForkJoinPool pool) {
+        if (partitioning == null || pool == null) {
+            logger.log(Level.SEVERE, "Attempted to create a sharded service with a null partitioning or pool");
+            throw new IllegalArgumentException("Partitioning and pool cannot be null");
+        }
+        logger.info("Creating new ShardedPropertyService instance with " + partitioning);
+        this.partitioning = partitioning;
+        this.pool = pool;
+        this.shards = new ConcurrentPropertyService[partitioning.getShardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ConcurrentPropertyService();
+        }
+        this.directory = partitioning.routesById() ? null : new ConcurrentHashMap<>();
+        this.idLocks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            idLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the rule assigning properties to shards.
+     *
+     * @return the partitioning
+     */
+    public ShardPartitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Counts the properties of each shard, for example to check how evenly a partitioning spreads the catalog.
+     *
+     * @return the number of properties in each shard, by shard index
+     */
+    public List<Long> getShardSizes() {
+        List<Long> sizes = new ArrayList<>(shards.length);
+        for (ConcurrentPropertyService shard : shards) {
+            sizes.add(shard.countProperties(new PropertyQuery()));
+        }
+        return sizes;
+    }
+
+    /**
+     * Adds a property to its shard, see {@link PropertyService#addProperty(Property)}.
+     *
+     * @param property the property to add
+     * @throws IllegalArgumentException if the property is invalid or its id is already in use
+     */
+    public void addProperty(Property property) {
+        PropertyService.validate(property);
+        int shard = partitioning.shardOf(property);
+        ReentrantLock lock = lockOf(property.getId());
+        lock.lock();
+        try {
+            if (directory != null && directory.containsKey(property.getId())) {
+                logger.log(Level.SEVERE, "Attempted to add property with duplicate id: " + property.getId());
+                throw new IllegalArgumentException("Property with id " + property.getId() + " already exists");
+            }
+            shards[shard].addProperty(property);
+            if (directory != null) {
+                directory.put(property.getId(), shard);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a batch of properties, see {@link PropertyService#addAll(Collection)}. The whole batch is validated
+     * before any shard changes, then each shard adds its part in one write, so readers of a shard see either
+     * none or all of the part of the batch in that shard.
+     *
+     * @param properties the properties to add
+     * @return the number of properties added and the time it took
+     * @throws IllegalArgumentException if the batch is null, or if a property is invalid or has an id that is in
+     *         use or repeated within the batch
+     */
+    public BulkLoadReport addAll(Collection<Property> properties) {
+        long start = System.nanoTime();
+        if (properties == null) {
+            logger.log(Level.SEVERE, "Attempted to add a null batch of properties");
+            throw new IllegalArgumentException("Properties cannot be null");
+        }
+        List<List<Property>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        Set<String> ids = new HashSet<>();
+        for (Property property : properties) {
+            PropertyService.validate(property);
+            if (!ids.add(property.getId())) {
+                logger.log(Level.SEVERE, "Attempted to add a batch with duplicate id: " + property.getId());
+                throw new IllegalArgumentException("Property with id " + property.getId() + " already exists");
+            }
+            parts.get(partitioning.shardOf(property)).add(property);
+        }
+        ReentrantLock[] locks = locksOf(ids);
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            for (String id : ids) {
+                if (locate(id) >= 0) {
+                    logger.log(Level.SEVERE, "Attempted to add property with duplicate id: " + id);
+                    throw new IllegalArgumentException("Property with id " + id + " already exists");
+                }
+            }
+            for (int shard = 0; shard < shards.length; shard++) {
+                if (!parts.get(shard).isEmpty()) {
+                    shards[shard].addAll(parts.get(shard));
+                    if (directory != null) {
+                        for (Property property : parts.get(shard)) {
+                            directory.put(property.getId(), shard);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+        BulkLoadReport report = new BulkLoadReport(ids.size(), System.nanoTime() - start);
+        logger.info("Added " + ids.size() + " properties to " + shards.length + " shards in "
+                + TimeUnit.NANOSECONDS.toMillis(report.getElapsedNanos()) + " ms");
+        return report;
+    }
+
+    /**
+     * Adds a property, or replaces the property with the same id, see
+     * {@link PropertyService#upsertProperty(Property)}. A replacement that changes the shard of the property
+     * adds it to its new shard before removing the old version from the old shard.
+     *
+     * @param property the property to add or replace
+     * @return the property that was replaced, or null if the property was added
+     * @throws IllegalArgumentException if the property is invalid
+     */
+    public Property upsertProperty(Property property) {
+        PropertyService.validate(property);
+        int shard = partitioning.shardOf(property);
+        ReentrantLock lock = lockOf(property.getId());
+        lock.lock();
+        try {
+            if (directory == null) {
+                return shards[shard].upsertProperty(property);
+            }
+            int previousShard = locate(property.getId());
+            Property replaced = shards[shard].upsertProperty(property);
+            directory.put(property.getId(), shard);
+            if (previousShard >= 0 && previousShard != shard) {
+                replaced = shards[previousShard].removeProperty(property.getId());
+            }
+            return replaced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the property with the given id as available or unavailable, see
+     * {@link PropertyService#setAvailability(String, boolean)}.
+     *
+     * @param id the id of the property
+     * @param available the new availability
+     * @return true if the property exists, false if there is no property with that id
+     */
+    public boolean setAvailability(String id, boolean available) {
+        if (id == null) {
+            return false;
+        }
+        ReentrantLock lock = lockOf(id);
+        lock.lock();
+        try {
+            int shard = directory == null ? partitioning.shardOfId(id) : locate(id);
+            return shard >= 0 && shards[shard].setAvailability(id, available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the property with the given id, see {@link PropertyService#removeProperty(String)}.
+     *
+     * @param id the id of the property to remove
+     * @return the removed property, or null if there is no property with that id
+     */
+    public Property removeProperty(String id) {
+        if (id == null) {
+            return null;
+        }
+        if (directory == null) {
+            return shards[partitioning.shardOfId(id)].removeProperty(id);
+        }
+        ReentrantLock lock = lockOf(id);
+        lock.lock();
+        try {
+            Integer shard = directory.remove(id);
+            return shard == null ? null : shards[shard].removeProperty(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the property with the given id in its shard, see {@link PropertyService#findById(String)}.
+     *
+     * @param id the id of the property
+     * @return the property, or null if there is no property with that id
+     */
+    public Property findById(String id) {
+        if (id == null) {
+            return null;
+        }
+        int shard = locate(id);
+        return shard < 0 ? null : shards[shard].findById(id);
+    }
+
+    /**
+     * Gets a copy of all properties, in shard order.
+     *
+     * @return a new list containing all properties
+     */
+    public List<Property> getProperties() {
+        return concatenate(scatter(partitioning.allShards(), ConcurrentPropertyService::getProperties));
+    }
+
+    /**
+     * Gets the available properties, in shard order.
+     *
+     * @return a new list containing the available properties
+     */
+    public List<Property> getAvailableProperties() {
+        return concatenate(scatter(partitioning.allShards(), ConcurrentPropertyService::getAvailableProperties));
+    }
+
+    /**
+     * Gets the properties of a type, from the shard of that type only when partitioning by type.
+     *
+     * @param type the property type
+     * @return a new list containing the properties of the type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public List<Property> getPropertiesByType(PropertyType type) {
+        if (type == null) {
+            logger.log(Level.SEVERE, "Attempted to filter properties by null type");
+            throw new IllegalArgumentException("Property type cannot be null");
+        }
+        return concatenate(scatter(partitioning.shardsForType(type), shard -> shard.getPropertiesByType(type)));
+    }
+
+    /**
+     * Gets the properties in a price range, from the shards of the overlapping bands only when partitioning by
+     * price band.
+     *
+     * @param minPrice the minimum price (inclusive)
+     * @param maxPrice the maximum price (inclusive)
+     * @return a new list containing the properties in the range, in shard order
+     * @throws IllegalArgumentException if a bound is null or minPrice is greater than maxPrice
+     */
+    public List<Property> getPropertiesByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice == null || maxPrice == null) {
+            logger.log(Level.SEVERE, "Attempted to filter properties by null price range");
+            throw new IllegalArgumentException("Price range values cannot be null");
+        }
+        if (minPrice.compareTo(maxPrice) > 0) {
+            logger.log(Level.SEVERE, "Invalid price range: minPrice > maxPrice");
+            throw new IllegalArgumentException("Minimum price cannot be greater than maximum price");
+        }
+        return concatenate(scatter(partitioning.shardsForPriceRange(minPrice, maxPrice),
+                shard -> shard.getPropertiesByPriceRange(minPrice, maxPrice)));
+    }
+
+    /**
+     * Gets the properties with a number of bedrooms, in shard order.
+     *
+     * @param bedrooms the number of bedrooms
+     * @return a new list containing the properties with that number of bedrooms
+     */
+    public List<Property> getPropertiesByBedrooms(int bedrooms) {
+        return concatenate(scatter(partitioning.allShards(), shard -> shard.getPropertiesByBedrooms(bedrooms)));
+    }
+
+    /**
+     * Finds the properties whose address contains every word of a text, see
+     * {@link PropertyService#getPropertiesByAddress(String)}.
+     *
+     * @param text the words to search for
+     * @return a new list containing the matching properties, in shard order
+     * @throws IllegalArgumentException if the text is null or has no words
+     */
+    public List<Property> getPropertiesByAddress(String text) {
+        PropertyQuery query = new PropertyQuery().address(text);
+        return concatenate(scatter(partitioning.allShards(), shard -> shard.findProperties(query)));
+    }
+
+    /**
+     * Finds the properties matching a query, see {@link PropertyService#findProperties(PropertyQuery)}. Matches
+     * are in shard order, and the offset and limit apply to that order: every shard returns its first
+     * offset + limit matches and the page is cut from their concatenation.
+     *
+     * @param query the query, which must not be changed while it runs
+     * @return the matching properties after the offset, at most limit of them
+     * @throws IllegalArgumentException if the query is null
+     */
+    public List<Property> findProperties(PropertyQuery query) {
+        requireQuery(query);
+        int offset = query.getOffset();
+        int limit = query.getLimit();
+        if (offset == 0 && limit == Integer.MAX_VALUE) {
+            return concatenate(scatter(partitioning.shardsFor(query), shard -> shard.findProperties(query)));
+        }
+        PropertyQuery firstPage = query.withPage(0, (int) Math.min(Integer.MAX_VALUE, (long) offset + limit));
+        List<Property> matches = concatenate(scatter(partitioning.shardsFor(query),
+                shard -> shard.findProperties(firstPage)));
+        int from = Math.min(offset, matches.size());
+        int to = (int) Math.min(matches.size(), (long) from + limit);
+        return new ArrayList<>(matches.subList(from, to));
+    }
+
+    /**
+     * Counts the properties matching a query, ignoring its offset and limit, see
+     * {@link PropertyService#countProperties(PropertyQuery)}.
+     *
+     * @param query the query
+     * @return the number of matches
+     * @throws IllegalArgumentException if the query is null
+     */
+    public long countProperties(PropertyQuery query) {
+        requireQuery(query);
+        long count = 0;
+        for (long shardCount : scatter(partitioning.shardsFor(query), shard -> shard.countProperties(query))) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the properties matching a query with the highest values of a metric, see
+     * {@link PropertyService#findTopProperties(PropertyQuery, PropertyMetric, int)}. Every shard ranks its own k
+     * best matches and the lists are merged.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, highest value first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findTopProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        requireQuery(query);
+        requireRanking(metric, k);
+        List<List<Property>> ranked = scatter(partitioning.shardsFor(query),
+                shard -> shard.findTopProperties(query, metric, k));
+        return mergeRanked(ranked, property -> -metricOf(property, metric), k);
+    }
+
+    /**
+     * Finds the properties matching a query with the lowest values of a metric, see
+     * {@link PropertyService#findBottomProperties(PropertyQuery, PropertyMetric, int)}.
+     *
+     * @param query the query selecting the properties to rank
+     * @param metric the metric to rank by
+     * @param k the maximum number of properties to return
+     * @return at most k properties, lowest value first
+     * @throws IllegalArgumentException if the query or the metric is null, or if k is negative
+     */
+    public List<Property> findBottomProperties(PropertyQuery query, PropertyMetric metric, int k) {
+        requireQuery(query);
+        requireRanking(metric, k);
+        List<List<Property>> ranked = scatter(partitioning.shardsFor(query),
+                shard -> shard.findBottomProperties(query, metric, k));
+        return mergeRanked(ranked, property -> metricOf(property, metric), k);
+    }
+
+    /**
+     * Finds the properties matching a query that lie closest to a point, see
+     * {@link PropertyService#findNearest(PropertyQuery, double, double, int)}. Every shard finds its own k
+     * nearest matches and the lists are merged.
+     *
+     * @param query the query selecting the properties to rank
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     * @param k the maximum number of properties to return
+     * @return at most k properties, closest first
+     * @throws IllegalArgumentException if the query is null, if a coordinate is out of range, or if k is negative
+     */
+    public List<Property> findNearest(PropertyQuery query, double latitude, double longitude, int k) {
+        requireQuery(query);
+        if (!Locations.isValid(latitude, longitude)) {
+            logger.log(Level.SEVERE, "Attempted to find properties nearest to an invalid location: " + latitude
+                    + ", " + longitude);
+            throw new IllegalArgumentException("Latitude must be between -90 and 90 and longitude between -180 and "
+                    + "180");
+        }
+        if (k < 0) {
+            logger.log(Level.SEVERE, "Attempted to find nearest properties with negative k: " + k);
+            throw new IllegalArgumentException("Number of properties to return cannot be negative");
+        }
+        List<List<Property>> ranked = scatter(partitioning.shardsFor(query),
+                shard -> shard.findNearest(query, latitude, longitude, k));
+        return mergeRanked(ranked, property -> Locations.distanceKm(latitude, longitude, property.getLatitude(),
+                property.getLongitude()), k);
+    }
+
+    /**
+     * Calculates the average price of all properties from the combined price statistics of the shards.
+     *
+     * @return the average price, or BigDecimal.ZERO if there are no properties
+     */
+    public BigDecimal getAveragePrice() {
+        return getPriceStatistics().getMean();
+    }
+
+    /**
+     * Gets the price statistics of all properties, combined from the statistics of every shard.
+     *
+     * @return the count, sum, minimum, maximum and mean price
+     */
+    public PriceStatistics getPriceStatistics() {
+        return PriceStatistics.combine(scatter(partitioning.allShards(),
+                ConcurrentPropertyService::getPriceStatistics));
+    }
+
+    /**
+     * Gets the price statistics of the properties of a type, see
+     * {@link PropertyService#getPriceStatistics(PropertyType)}.
+     *
+     * @param type the property type
+     * @return the count, sum, minimum, maximum and mean price of the properties of the type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public PriceStatistics getPriceStatistics(PropertyType type) {
+        if (type == null) {
+            logger.log(Level.SEVERE, "Attempted to get price statistics of null type");
+            throw new IllegalArgumentException("Property type cannot be null");
+        }
+        return PriceStatistics.combine(scatter(partitioning.shardsForType(type),
+                shard -> shard.getPriceStatistics(type)));
+    }
+
+    /**
+     * Counts the number of properties of a type, see {@link PropertyService#countPropertiesByType(PropertyType)}.
+     *
+     * @param type the property type to count
+     * @return the count of properties of the type
+     * @throws IllegalArgumentException if the type is null
+     */
+    public long countPropertiesByType(PropertyType type) {
+        return getPriceStatistics(type).getCount();
+    }
+
+    /**
+     * Finds the most expensive property. When partitioning by price band, the shards are searched from the
+     * highest band down and the search stops at the first shard that is not empty.
+     *
+     * @return the most expensive property, or null if there are no properties; for equal prices the property of
+     *         the lowest shard
+     */
+    public Property findMostExpensiveProperty() {
+        if (partitioning.ordersByPrice()) {
+            for (int shard = shards.length - 1; shard >= 0; shard--) {
+                Property mostExpensive = shards[shard].findMostExpensiveProperty();
+                if (mostExpensive != null) {
+                    return mostExpensive;
+                }
+            }
+            return null;
+        }
+        Property mostExpensive = null;
+        for (Property candidate : scatter(partitioning.allShards(),
+                ConcurrentPropertyService::findMostExpensiveProperty)) {
+            if (candidate != null
+                    && (mostExpensive == null || candidate.getPrice().compareTo(mostExpensive.getPrice()) > 0)) {
+                mostExpensive = candidate;
+            }
+        }
+        return mostExpensive;
+    }
+
+    /**
+     * Changes the accuracy of the quantile sketches and the bucket widths of the histograms of every shard, see
+     * {@link PropertyService#configureDistributions(double, double, double)}.
+     *
+     * @param relativeAccuracy the relative accuracy of the quantile estimates, between 0 and 1 exclusive
+     * @param priceBucketWidth the width of the price histogram buckets, greater than 0
+     * @param areaBucketWidth the width of the area histogram buckets, greater than 0
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public void configureDistributions(double relativeAccuracy, double priceBucketWidth, double areaBucketWidth) {
+        for (ConcurrentPropertyService shard : shards) {
+            shard.configureDistributions(relativeAccuracy, priceBucketWidth, areaBucketWidth);
+        }
+    }
+
+    /**
+     * Gets the distribution of a metric over all properties, merged from the sketches and histograms of every
+     * shard.
+     *
+     * @param metric the metric, {@link PropertyMetric#PRICE} or {@link PropertyMetric#AREA}
+     * @return the distribution
+     * @throws IllegalArgumentException if the metric is null or has no distributions
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric) {
+        return ValueDistribution.merge(scatter(partitioning.allShards(), shard -> shard.getDistribution(metric)));
+    }
+
+    /**
+     * Gets the distribution of a metric over the properties of a type, see
+     * {@link PropertyService#getDistribution(PropertyMetric, PropertyType)}.
+     *
+     * @param metric the metric, {@link PropertyMetric#PRICE} or {@link PropertyMetric#AREA}
+     * @param type the property type
+     * @return the distribution
+     * @throws IllegalArgumentException if the metric or the type is null, or if the metric has no distributions
+     */
+    public ValueDistribution getDistribution(PropertyMetric metric, PropertyType type) {
+        if (type == null) {
+            logger.log(Level.SEVERE, "Attempted to get the distribution of null type");
+            throw new IllegalArgumentException("Property type cannot be null");
+        }
+        return ValueDistribution.merge(scatter(partitioning.shardsForType(type),
+                shard -> shard.getDistribution(metric, type)));
+    }
+
+    /**
+     * Runs a call on each of the given shards, one task per shard on the pool except the first, which runs on the
+     * calling thread.
+     *
+     * @param targets the shard indexes
+     * @param call the call to run on each shard
+     * @return the results, in the order of the targets
+     */
+    private <T> List<T> scatter(int[] targets, Function<ConcurrentPropertyService, T> call) {
+        if (targets.length == 0) {
+            return Collections.emptyList();
+        }
+        if (targets.length == 1) {
+            return Collections.singletonList(call.apply(shards[targets[0]]));
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(targets.length - 1);
+        for (int i = 1; i < targets.length; i++) {
+            ConcurrentPropertyService shard = shards[targets[i]];
+            tasks.add(pool.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(targets.length);
+        try {
+            results.add(call.apply(shards[targets[0]]));
+        } catch (RuntimeException e) {
+            for (ForkJoinTask<T> task : tasks) {
+                task.cancel(false);
+            }
+            throw e;
+        }
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Merges lists that are each sorted by a ranking value, lowest first, keeping the first k entries. For equal
+     * values the entry of the earlier list comes first.
+     */
+    private static List<Property> mergeRanked(List<List<Property>> ranked, ToDoubleFunction<Property> value,
+                                              int k) {
+        if (ranked.size() == 1) {
+            return ranked.get(0);
+        }
+        int[] positions = new int[ranked.size()];
+        double[] heads = new double[ranked.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = ranked.get(i).isEmpty() ? Double.NaN : value.applyAsDouble(ranked.get(i).get(0));
+        }
+        List<Property> merged = new ArrayList<>();
+        while (merged.size() < k) {
+            int best = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (!Double.isNaN(heads[i]) && (best < 0 || heads[i] < heads[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            List<Property> list = ranked.get(best);
+            merged.add(list.get(positions[best]++));
+            heads[best] = positions[best] < list.size() ? value.applyAsDouble(list.get(positions[best])) : Double.NaN;
+        }
+        return merged;
+    }
+
+    /**
+     * Computes a metric the way the property table does, so that values compare exactly with the ranking of
+     * each shard.
+     */
+    private static double metricOf(Property property, PropertyMetric metric) {
+        double price = Prices.toDouble(Prices.toScaled(property.getPrice()));
+        switch (metric) {
+            case PRICE:
+                return price;
+            case AREA:
+                return property.getArea();
+            default:
+                return price / property.getArea();
+        }
+    }
+
+    private static List<Property> concatenate(List<List<Property>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int size = 0;
+        for (List<Property> part : parts) {
+            size += part.size();
+        }
+        List<Property> all = new ArrayList<>(size);
+        for (List<Property> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    private static void requireQuery(PropertyQuery query) {
+        if (query == null) {
+            logger.log(Level.SEVERE, "Attempted to run a null query");
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+    }
+
+    /**
+     * Finds the shard holding an id.
+     *
+     * @return the shard index, or -1 if no shard holds the id
+     */
+    private int locate(String id) {
+        if (directory == null) {
+            int shard = partitioning.shardOfId(id);
+            return shards[shard].findById(id) != null ? shard : -1;
+        }
+        Integer shard = directory.get(id);
+        return shard == null ? -1 : shard;
+    }
+
+    private static void requireRanking(PropertyMetric metric, int k) {
+        if (metric == null) {
+            logger.log(Level.SEVERE, "Attempted to rank properties by a null metric");
+            throw new IllegalArgumentException("Metric cannot be null");
+        }
+        if (k < 0) {
+            logger.log(Level.SEVERE, "Attempted to rank properties with negative k: " + k);
+            throw new IllegalArgumentException("Number of properties to return cannot be negative");
+        }
+    }
+
+    private ReentrantLock lockOf(String id) {
+        return idLocks[Math.floorMod(id.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Gets the lock stripes of a set of ids, in stripe order so that concurrent batches cannot deadlock.
+     */
+    private ReentrantLock[] locksOf(Set<String> ids) {
+        boolean[] used = new boolean[LOCK_STRIPES];
+        int count = 0;
+        for (String id : ids) {
+            int stripe = Math.floorMod(id.hashCode(), LOCK_STRIPES);
+            if (!used[stripe]) {
+                used[stripe] = true;
+                count++;
+            }
+        }
+        ReentrantLock[] locks = new ReentrantLock[count];
+        int next = 0;
+        for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+            if (used[stripe]) {
+                locks[next++] = idLocks[stripe];
+            }
+        }
+        return locks;
+    }
+}
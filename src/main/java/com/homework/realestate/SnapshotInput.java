@@ -0,0 +1,227 @@
+package com.homework.realestate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reader of binary catalog snapshots written by {@link SnapshotOutput}.
+ * The file is memory mapped in windows of up to 1 GB and arrays are copied out of the mapping in bulk, so reading
+ * a snapshot costs one page fault per page and one memory copy per array, with no per-row parsing. Every array
+ * length is checked against the bytes left in the file before the array is allocated, so a truncated or corrupt
+ * file fails with an {@link IllegalArgumentException} instead of an out-of-memory error.
+ */
+final class SnapshotInput implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SnapshotInput.class.getName());
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    /**
+     * Opens a snapshot file and checks its header.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a snapshot or has an unsupported version
+     */
+    SnapshotInput(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        try {
+            if (fileSize < Long.BYTES + Integer.BYTES || readLong() != SnapshotOutput.MAGIC) {
+                throw invalid("not a property snapshot");
+            }
+            int version = readInt();
+            if (version != SnapshotOutput.VERSION) {
+                throw invalid("unsupported version " + version + ", expected " + SnapshotOutput.VERSION);
+            }
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @return the value
+     * @throws IOException if the file cannot be read
+     */
+    int readInt() throws IOException {
+        return take(Integer.BYTES).getInt();
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @return the value
+     * @throws IOException if the file cannot be read
+     */
+    long readLong() throws IOException {
+        return take(Long.BYTES).getLong();
+    }
+
+    /**
+     * Reads a double.
+     *
+     * @return the value
+     * @throws IOException if the file cannot be read
+     */
+    double readDouble() throws IOException {
+        return take(Double.BYTES).getDouble();
+    }
+
+    /**
+     * Reads a byte array written by {@link SnapshotOutput#writeBytes(byte[], int)}.
+     *
+     * @return a new array holding exactly the written elements
+     * @throws IOException if the file cannot be read
+     */
+    byte[] readBytes() throws IOException {
+        byte[] values = new byte[readLength(Byte.BYTES)];
+        take(values.length).get(values);
+        return values;
+    }
+
+    /**
+     * Reads an int array written by {@link SnapshotOutput#writeInts(int[], int)}.
+     *
+     * @return a new array holding exactly the written elements
+     * @throws IOException if the file cannot be read
+     */
+    int[] readInts() throws IOException {
+        int[] values = new int[readLength(Integer.BYTES)];
+        take((long) values.length * Integer.BYTES).asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Reads a long array written by {@link SnapshotOutput#writeLongs(long[], int)}.
+     *
+     * @return a new array holding exactly the written elements
+     * @throws IOException if the file cannot be read
+     */
+    long[] readLongs() throws IOException {
+        long[] values = new long[readLength(Long.BYTES)];
+        take((long) values.length * Long.BYTES).asLongBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Reads a double array written by {@link SnapshotOutput#writeDoubles(double[], int)}.
+     *
+     * @return a new array holding exactly the written elements
+     * @throws IOException if the file cannot be read
+     */
+    double[] readDoubles() throws IOException {
+        double[] values = new double[readLength(Double.BYTES)];
+        take((long) values.length * Double.BYTES).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Reads a bitmap written by {@link SnapshotOutput#writeBitSet(BitSet)}.
+     *
+     * @return the bitmap
+     * @throws IOException if the file cannot be read
+     */
+    BitSet readBitSet() throws IOException {
+        int words = readLength(Long.BYTES);
+        return BitSet.valueOf(take((long) words * Long.BYTES).asLongBuffer());
+    }
+
+    /**
+     * Reads an array of the expected length.
+     *
+     * @param length the expected length
+     * @param what the name of the array, for the error message
+     * @return the array
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the array has another length
+     */
+    int[] readInts(int length, String what) throws IOException {
+        int[] values = readInts();
+        expect(values.length == length, what + " has " + values.length + " entries instead of " + length);
+        return values;
+    }
+
+    /**
+     * Fails the read with an {@link IllegalArgumentException} unless a consistency condition holds.
+     *
+     * @param condition the condition
+     * @param reason what is wrong if the condition does not hold
+     * @throws IllegalArgumentException if the condition does not hold
+     */
+    void expect(boolean condition, String reason) {
+        if (!condition) {
+            throw invalid(reason);
+        }
+    }
+
+    /**
+     * Checks that the whole file has been read.
+     *
+     * @throws IllegalArgumentException if bytes are left over
+     */
+    void finish() {
+        expect(position == fileSize, (fileSize - position) + " unexpected bytes at the end");
+    }
+
+    /**
+     * Closes the file. The mapping is released once it is no longer referenced.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private int readLength(int elementBytes) throws IOException {
+        int length = readInt();
+        expect(length >= 0 && (long) length * elementBytes <= fileSize - position,
+                "array length " + length + " at offset " + (position - Integer.BYTES) + " exceeds the file");
+        return length;
+    }
+
+    /**
+     * Maps the next bytes of the file, if the current window does not cover them, and returns the window
+     * positioned on them and limited to them.
+     */
+    private ByteBuffer take(long bytes) throws IOException {
+        expect(bytes <= fileSize - position, "file is truncated at offset " + position);
+        if (window == null || position + bytes > windowStart + window.capacity()) {
+            long size = Math.min(fileSize - position, Math.max(WINDOW_SIZE, bytes));
+            expect(size <= Integer.MAX_VALUE, "section at offset " + position + " is too large");
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowStart = position;
+        }
+        int offset = (int) (position - windowStart);
+        window.limit(offset + (int) bytes).position(offset);
+        position += bytes;
+        return window;
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        String message = "Invalid snapshot " + file + ": " + reason;
+        logger.log(Level.SEVERE, message);
+        return new IllegalArgumentException(message);
+    }
+}
@@ -0,0 +1,202 @@
+package com.homework.realestate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Writer of binary catalog snapshots, read back by {@link SnapshotInput}.
+ * A snapshot starts with the {@link #MAGIC} number and the {@link #VERSION} of the format, followed by the state
+ * of a {@link PropertyTable} as written by {@link PropertyTable#writeTo(SnapshotOutput)}. Values are little
+ * endian; arrays are written as their length followed by their elements, so that they can be copied back in bulk.
+ * Data is staged in a direct buffer and written to the file channel whenever the buffer fills up.
+ */
+final class SnapshotOutput implements Closeable {
+
+    /** First eight bytes of every snapshot, {@code PROPSNAP} in ASCII. */
+    static final long MAGIC = 0x50414e53504f5250L;
+
+    /** Version of the snapshot layout, to be increased whenever the layout of any component changes. */
+    static final int VERSION = 3;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long written;
+
+    /**
+     * Creates or truncates a snapshot file and writes the header.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    SnapshotOutput(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeLong(MAGIC);
+        writeInt(VERSION);
+    }
+
+    /**
+     * Gets the number of bytes written so far, including buffered ones.
+     *
+     * @return the size of the snapshot
+     */
+    long size() {
+        return written + buffer.position();
+    }
+
+    /**
+     * Writes an int.
+     *
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    void writeInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes a long.
+     *
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    void writeLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes a double.
+     *
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    void writeDouble(double value) throws IOException {
+        ensure(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes the length and the first elements of a byte array.
+     *
+     * @param values the array
+     * @param count the number of elements to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeBytes(byte[] values, int count) throws IOException {
+        writeInt(count);
+        for (int offset = 0; offset < count; ) {
+            int chunk = Math.min(count - offset, room(Byte.BYTES));
+            buffer.put(values, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Writes the length and the first elements of an int array.
+     *
+     * @param values the array
+     * @param count the number of elements to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeInts(int[] values, int count) throws IOException {
+        writeInt(count);
+        for (int offset = 0; offset < count; ) {
+            int chunk = Math.min(count - offset, room(Integer.BYTES));
+            buffer.asIntBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Writes the length and the first elements of a long array.
+     *
+     * @param values the array
+     * @param count the number of elements to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeLongs(long[] values, int count) throws IOException {
+        writeInt(count);
+        for (int offset = 0; offset < count; ) {
+            int chunk = Math.min(count - offset, room(Long.BYTES));
+            buffer.asLongBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Long.BYTES);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Writes the length and the first elements of a double array.
+     *
+     * @param values the array
+     * @param count the number of elements to write
+     * @throws IOException if the file cannot be written
+     */
+    void writeDoubles(double[] values, int count) throws IOException {
+        writeInt(count);
+        for (int offset = 0; offset < count; ) {
+            int chunk = Math.min(count - offset, room(Double.BYTES));
+            buffer.asDoubleBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Double.BYTES);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Writes a bitmap as its array of words.
+     *
+     * @param bits the bitmap
+     * @throws IOException if the file cannot be written
+     */
+    void writeBitSet(BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        writeLongs(words, words.length);
+    }
+
+    /**
+     * Writes the buffered bytes, forces them to the storage device and closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes room for at least one element and returns how many elements of the given size fit in the buffer.
+     */
+    private int room(int elementBytes) throws IOException {
+        ensure(elementBytes);
+        return buffer.remaining() / elementBytes;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,218 @@
+package com.homework.realestate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only dictionary that maps strings to dense integer codes.
+ * The strings are stored UTF-8 encoded, back to back in a single byte array, and looked up through an
+ * open-addressing hash table of codes, so a dictionary entry costs about 12 bytes more than its encoded length
+ * instead of a {@link String} object and a hash map entry. Codes are assigned in insertion order starting at 0
+ * and stay valid for the lifetime of the dictionary. Strings are never removed; an owner whose strings go out of
+ * use rebuilds a new dictionary from the strings it still needs, see {@link #intern(StringDictionary, int)}.
+ */
+final class StringDictionary {
+
+    private byte[] bytes = new byte[256];
+    private int byteCount;
+    private int[] offsets;
+    private int size;
+    private int[] slots;
+
+    /**
+     * Creates an empty dictionary sized for the given number of strings, so that filling it up to that size
+     * needs no rehash.
+     *
+     * @param expectedSize the number of strings expected
+     */
+    StringDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        offsets = new int[capacity + 1];
+        slots = new int[Integer.highestOneBit((int) Math.min(1 << 30, capacity * 4L / 3 + 1) - 1) << 1];
+    }
+
+    /**
+     * Reads a dictionary written by {@link #writeTo(SnapshotOutput)}. The hash table is read as written, so no
+     * string is hashed again.
+     *
+     * @param input the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    StringDictionary(SnapshotInput input) throws IOException {
+        bytes = input.readBytes();
+        byteCount = bytes.length;
+        offsets = input.readInts();
+        size = offsets.length - 1;
+        slots = input.readInts();
+        input.expect(size >= 0 && offsets[size] == byteCount, "dictionary offsets do not match its strings");
+        input.expect(Integer.bitCount(slots.length) == 1 && size * 4L <= slots.length * 3L,
+                "dictionary hash table has " + slots.length + " slots for " + size + " strings");
+        if (offsets.length < 16) {
+            offsets = Arrays.copyOf(offsets, 16);
+        }
+    }
+
+    /**
+     * Gets the code of a string, adding the string to the dictionary if it is not present yet.
+     *
+     * @param value the string
+     * @return the code of the string
+     */
+    int intern(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        return intern(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Gets the code of a string stored in another dictionary, adding the string if it is not present yet. The
+     * encoded string is copied as it is, so nothing is decoded or encoded again; used to rebuild a dictionary
+     * holding only the strings still in use.
+     *
+     * @param source the dictionary holding the string
+     * @param sourceCode the code of the string in that dictionary
+     * @return the code of the string in this dictionary
+     */
+    int intern(StringDictionary source, int sourceCode) {
+        return intern(source.bytes, source.offsets[sourceCode], source.offsets[sourceCode + 1]);
+    }
+
+    /**
+     * Gets the code of a string without adding it.
+     *
+     * @param value the string
+     * @return the code of the string, or -1 if the string is not in the dictionary
+     */
+    int find(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int slot = hash(encoded, 0, encoded.length) & mask; ; slot = (slot + 1) & mask) {
+            int code = slots[slot] - 1;
+            if (code < 0) {
+                return -1;
+            }
+            if (matches(code, encoded, 0, encoded.length)) {
+                return code;
+            }
+        }
+    }
+
+    /**
+     * Decodes the string with the given code.
+     *
+     * @param code the code
+     * @return a new string equal to the one that was interned
+     */
+    String get(int code) {
+        return new String(bytes, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares the UTF-8 bytes of the string with the given code to those of another string, which for strings
+     * without surrogate pairs is the order of {@link String#compareTo(String)}.
+     *
+     * @param code the code
+     * @param encoded the other string, UTF-8 encoded
+     * @return a negative number, zero or a positive number if the string with the code sorts before, equal to
+     *         or after the other string
+     */
+    int compare(int code, byte[] encoded) {
+        return Arrays.compareUnsigned(bytes, offsets[code], offsets[code + 1], encoded, 0, encoded.length);
+    }
+
+    /**
+     * Compares the string with the given code to a prefix, treating every string that starts with the prefix as
+     * equal to it, so that the strings with the prefix form one range of a sorted order.
+     *
+     * @param code the code
+     * @param prefix the prefix, UTF-8 encoded
+     * @return a negative number if the string sorts before every string with the prefix, zero if it starts with
+     *         the prefix, a positive number if it sorts after them
+     */
+    int comparePrefix(int code, byte[] prefix) {
+        int length = offsets[code + 1] - offsets[code];
+        return Arrays.compareUnsigned(bytes, offsets[code], offsets[code] + Math.min(length, prefix.length),
+                prefix, 0, Math.min(length, prefix.length)) != 0
+                ? compare(code, prefix)
+                : length < prefix.length ? -1 : 0;
+    }
+
+    /**
+     * Gets the number of strings in the dictionary.
+     *
+     * @return the number of distinct strings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes the strings, their offsets and the hash table to a snapshot.
+     *
+     * @param output the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(SnapshotOutput output) throws IOException {
+        output.writeBytes(bytes, byteCount);
+        output.writeInts(offsets, size + 1);
+        output.writeInts(slots, slots.length);
+    }
+
+    private int intern(byte[] encoded, int from, int to) {
+        int mask = slots.length - 1;
+        for (int slot = hash(encoded, from, to) & mask; ; slot = (slot + 1) & mask) {
+            int code = slots[slot] - 1;
+            if (code < 0) {
+                code = append(encoded, from, to);
+                slots[slot] = code + 1;
+                if (size * 4 > slots.length * 3) {
+                    rehash();
+                }
+                return code;
+            }
+            if (matches(code, encoded, from, to)) {
+                return code;
+            }
+        }
+    }
+
+    private int append(byte[] encoded, int from, int to) {
+        int length = to - from;
+        if (byteCount + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(byteCount + length, bytes.length + (bytes.length >> 1)));
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1));
+        }
+        System.arraycopy(encoded, from, bytes, byteCount, length);
+        int code = size++;
+        offsets[code] = byteCount;
+        byteCount += length;
+        offsets[code + 1] = byteCount;
+        return code;
+    }
+
+    private boolean matches(int code, byte[] encoded, int from, int to) {
+        return Arrays.equals(bytes, offsets[code], offsets[code + 1], encoded, from, to);
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = hash(bytes, offsets[code], offsets[code + 1]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+    }
+
+    private static int hash(byte[] encoded, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + encoded[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,111 @@
+package com.homework.realestate;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable snapshot of the distribution of a property metric over a group of properties.
+ * Quantiles are estimated from a quantile sketch: every estimate lies within {@link #getRelativeAccuracy()} of the
+ * true value at that rank, relative to that value. The histogram counts are exact.
+ */
+public final class ValueDistribution {
+
+    private static final Logger logger = Logger.getLogger(ValueDistribution.class.getName());
+
+    private final QuantileSketch sketch;
+    private final LinearHistogram histogram;
+
+    /**
+     * Creates a snapshot. The sketch and histogram must not be changed afterwards.
+     *
+     * @param sketch the quantile sketch
+     * @param histogram the fixed-width histogram
+     */
+    ValueDistribution(QuantileSketch sketch, LinearHistogram histogram) {
+        this.sketch = sketch;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Combines the distributions of disjoint groups of properties into the distribution of their union. The
+     * distributions must have been built with the same relative accuracy and bucket width.
+     *
+     * @param parts the distributions to combine, at least one
+     * @return the combined distribution
+     */
+    static ValueDistribution merge(List<ValueDistribution> parts) {
+        QuantileSketch sketch = parts.get(0).sketch.copy();
+        LinearHistogram histogram = parts.get(0).histogram.copy();
+        for (int i = 1; i < parts.size(); i++) {
+            sketch.mergeFrom(parts.get(i).sketch);
+            histogram.mergeFrom(parts.get(i).histogram);
+        }
+        return new ValueDistribution(sketch, histogram);
+    }
+
+    /**
+     * Gets the number of values in the distribution.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return sketch.count();
+    }
+
+    /**
+     * Gets the relative accuracy of the quantile estimates.
+     *
+     * @return the maximum relative error, for example 0.01 for 1%
+     */
+    public double getRelativeAccuracy() {
+        return sketch.relativeAccuracy();
+    }
+
+    /**
+     * Estimates the value at a quantile, for example 0.9 for the 90th percentile.
+     * The value at quantile q is the value at position {@code floor(q * (count - 1))} of the sorted values.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimated value, or NaN if the distribution is empty
+     * @throws IllegalArgumentException if the quantile is not between 0 and 1
+     */
+    public double getQuantile(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            logger.log(Level.SEVERE, "Attempted to estimate an invalid quantile: " + quantile);
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        return sketch.quantile(quantile);
+    }
+
+    /**
+     * Estimates the median.
+     *
+     * @return the estimated median, or NaN if the distribution is empty
+     */
+    public double getMedian() {
+        return sketch.quantile(0.5);
+    }
+
+    /**
+     * Gets the fixed-width histogram of the values.
+     * There are 1000 buckets starting at 0; values below 0 are counted in a first bucket starting at negative
+     * infinity and values beyond the last bucket in a final bucket ending at positive infinity.
+     *
+     * @return the buckets from the lowest to the highest non-empty one, including empty buckets in between
+     */
+    public List<HistogramBucket> getHistogram() {
+        return histogram.buckets();
+    }
+
+    /**
+     * Returns a string representation of the distribution.
+     *
+     * @return the count, median and 90th percentile
+     */
+    @Override
+    public String toString() {
+        return "ValueDistribution{count=" + getCount() + ", median=" + getMedian() + ", p90="
+                + sketch.quantile(0.9) + '}';
+    }
+}
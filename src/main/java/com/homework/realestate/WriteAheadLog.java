@@ -0,0 +1,432 @@
+package com.homework.realestate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of catalog changes, for {@link DurablePropertyService}.
+ * The file starts with a magic number and a format version, followed by one frame per {@link LogRecord}: the
+ * length of the frame body, a CRC-32 of the body, and the body itself, made of the sequence number of the record
+ * and the encoded record. Sequence numbers increase by one from record to record and continue across
+ * checkpoints, so a checkpoint can name the last record it contains.
+ *
+ * <p>Records are written to the file by {@link #append(LogRecord)}, which callers serialize. When they are forced
+ * to the storage device depends on the {@link Durability}: {@link #awaitDurable(long)} forces the log for
+ * {@link Durability#SYNC} with group commit, where the first waiting thread forces the file on behalf of every
+ * record written so far and the threads arriving meanwhile wait for the next force, and a background thread
+ * forces it periodically for {@link Durability#BATCH}.
+ *
+ * <p>A crash can leave a partly written frame at the end of the file. {@link #replay(Path, long, Consumer)} stops at
+ * the first frame that is incomplete or fails its checksum and cuts the file there, so recovery never applies a
+ * torn record and later appends start on a frame boundary.
+ */
+final class WriteAheadLog implements Closeable {
+
+    /** First eight bytes of every log, {@code PROPWAL1} in ASCII. */
+    static final long MAGIC = 0x50524f5057414c31L;
+
+    /** Version of the log format. */
+    static final int VERSION = 2;
+
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int FRAME_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private final Path file;
+    private final Durability durability;
+    private final ByteArrayOutputStream staging = new ByteArrayOutputStream(256);
+    private final DataOutputStream stagingOutput = new DataOutputStream(staging);
+    private final CRC32 checksum = new CRC32();
+    private final ScheduledExecutorService flusher;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+
+    private volatile FileChannel channel;
+    private long size;
+    private long nextSequence;
+    private long writtenSequence;
+    private long durableSequence;
+    private boolean syncing;
+    private long syncCount;
+    private IOException failure;
+
+    /**
+     * Opens a log for appending, creating it if it does not exist. An existing log must have been replayed first,
+     * so that it ends on a frame boundary.
+     *
+     * @param file the log file
+     * @param durability when appended records are forced to the storage device
+     * @param syncIntervalMillis the interval between two forces for {@link Durability#BATCH}
+     * @param lastSequence the sequence number of the last record in the log or in the checkpoint it continues
+     * @throws IOException if the log cannot be opened
+     */
+    WriteAheadLog(Path file, Durability durability, long syncIntervalMillis, long lastSequence) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        if (!Files.exists(file)) {
+            createEmpty(file);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        this.size = channel.size();
+        channel.position(size);
+        this.nextSequence = lastSequence + 1;
+        this.writtenSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        if (durability == Durability.BATCH) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "write-ahead-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Writes a record to the log file. Callers must not append concurrently. Once an append has failed the log
+     * rejects every further append, since the catalog and the log may no longer agree.
+     *
+     * @param record the record
+     * @return the sequence number of the record
+     * @throws IOException if the record cannot be written, or if an earlier write or force failed
+     */
+    long append(LogRecord record) throws IOException {
+        checkHealthy();
+        long sequence = nextSequence;
+        staging.reset();
+        stagingOutput.writeLong(0);
+        stagingOutput.writeLong(sequence);
+        record.writeTo(stagingOutput);
+        ByteBuffer frame = ByteBuffer.wrap(staging.toByteArray());
+        int bodyLength = frame.capacity() - FRAME_HEADER_SIZE;
+        checksum.reset();
+        checksum.update(frame.array(), FRAME_HEADER_SIZE, bodyLength);
+        frame.putInt(0, bodyLength).putInt(Integer.BYTES, (int) checksum.getValue());
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+        size += frame.capacity();
+        nextSequence++;
+        syncLock.lock();
+        try {
+            writtenSequence = sequence;
+        } finally {
+            syncLock.unlock();
+        }
+        return sequence;
+    }
+
+    /**
+     * Waits until a record is as durable as the {@link Durability} of the log promises: for
+     * {@link Durability#SYNC} until it has been forced to the storage device, otherwise not at all.
+     *
+     * @param sequence the sequence number returned by {@link #append(LogRecord)}
+     * @throws IOException if forcing the log failed
+     */
+    void awaitDurable(long sequence) throws IOException {
+        if (durability == Durability.SYNC) {
+            syncTo(sequence);
+        }
+    }
+
+    /**
+     * Forces every record written so far to the storage device.
+     *
+     * @throws IOException if forcing the log failed
+     */
+    void sync() throws IOException {
+        long target;
+        syncLock.lock();
+        try {
+            target = writtenSequence;
+        } finally {
+            syncLock.unlock();
+        }
+        syncTo(target);
+    }
+
+    /**
+     * Replaces the log with an empty one after a checkpoint has saved every record. The new log is written aside
+     * and moved over the old one, so a crash leaves either the old log or the new one. Sequence numbers continue
+     * where they were.
+     *
+     * @throws IOException if the new log cannot be created
+     */
+    void reset() throws IOException {
+        checkHealthy();
+        syncLock.lock();
+        try {
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            createEmpty(file);
+            FileChannel previous = channel;
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.position(HEADER_SIZE);
+            previous.close();
+            size = HEADER_SIZE;
+            durableSequence = writtenSequence;
+            synced.signalAll();
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the size of the log file.
+     *
+     * @return the number of bytes written, header included
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets the sequence number of the last record appended.
+     *
+     * @return the sequence number, or the one the log was opened with if nothing was appended since
+     */
+    long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Gets the number of times the log was forced to the storage device, to observe group commit.
+     *
+     * @return the number of forces since the log was opened
+     */
+    long syncCount() {
+        syncLock.lock();
+        try {
+            return syncCount;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Checks that the log still accepts records.
+     *
+     * @throws IOException if the log is closed, or if an earlier write or force failed
+     */
+    void checkHealthy() throws IOException {
+        syncLock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background flusher, forces the log to the storage device and closes it.
+     *
+     * @throws IOException if the log cannot be forced or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            if (failure == null) {
+                sync();
+            }
+        } finally {
+            channel.close();
+            syncLock.lock();
+            try {
+                if (failure == null) {
+                    failure = new IOException("Write-ahead log " + file + " is closed");
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a log in order and hands those with a sequence number above a given one to a consumer.
+     * Reading stops at the end of the file or at the first frame that is incomplete or fails its checksum, which a
+     * crash in the middle of an append leaves behind; the file is then cut at the end of the last valid frame. A
+     * missing file is treated as an empty log.
+     *
+     * @param file the log file
+     * @param afterSequence the sequence number of the last record already applied, from a checkpoint
+     * @param consumer the consumer of the records to apply
+     * @return the sequence number of the last record in the log, or {@code afterSequence} if it is higher
+     * @throws IOException if the file cannot be read or cut
+     * @throws IllegalArgumentException if the file is not a write-ahead log
+     */
+    static long replay(Path file, long afterSequence, Consumer<LogRecord> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return afterSequence;
+        }
+        long fileSize = Files.size(file);
+        long validSize = HEADER_SIZE;
+        long lastSequence = afterSequence;
+        int applied = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            if (fileSize < HEADER_SIZE || in.readLong() != MAGIC || in.readInt() != VERSION) {
+                String message = "Invalid write-ahead log " + file + ": not a log of version " + VERSION;
+                logger.log(Level.SEVERE, message);
+                throw new IllegalArgumentException(message);
+            }
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    int expectedChecksum = in.readInt();
+                    if (length < Long.BYTES || length > fileSize - validSize - FRAME_HEADER_SIZE) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if ((int) crc.getValue() != expectedChecksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                long sequence = record.readLong();
+                if (sequence > lastSequence) {
+                    consumer.accept(LogRecord.readFrom(record));
+                    lastSequence = sequence;
+                    applied++;
+                }
+                validSize += FRAME_HEADER_SIZE + body.length;
+            }
+        }
+        if (validSize < fileSize) {
+            logger.warning("Cutting " + (fileSize - validSize) + " bytes of an incomplete record from the end of "
+                    + file);
+            try (FileChannel truncated = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncated.truncate(validSize);
+                truncated.force(true);
+            }
+        }
+        logger.info("Replayed " + applied + " records from " + file + " up to sequence number " + lastSequence);
+        return lastSequence;
+    }
+
+    /**
+     * Forces the log until the record with the given sequence number is durable. Only one thread forces the file
+     * at a time; the others wait, and if the force they waited for did not cover their record, one of them starts
+     * the next one.
+     */
+    private void syncTo(long sequence) throws IOException {
+        syncLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = writtenSequence;
+                FileChannel forced = channel;
+                syncLock.unlock();
+                IOException error = null;
+                try {
+                    forced.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                if (error != null) {
+                    fail(error);
+                    throw error;
+                }
+                syncCount++;
+                durableSequence = Math.max(durableSequence, target);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error forcing write-ahead log " + file, e);
+        }
+    }
+
+    private void fail(IOException error) {
+        logger.log(Level.SEVERE, "Write-ahead log " + file + " failed, rejecting further changes", error);
+        syncLock.lock();
+        try {
+            if (failure == null) {
+                failure = error;
+            }
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a log holding only the header aside and moves it over the file, so that a log file always has a
+     * complete header.
+     */
+    private static void createEmpty(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel created = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                created.write(header);
+            }
+            created.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
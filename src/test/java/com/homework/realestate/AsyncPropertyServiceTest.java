@@ -0,0 +1,264 @@
+package com.homework.realestate;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test class for the AsyncPropertyService class.
+ * Queries run on a single-thread executor, so the tests can tell whether a cancelled query released its thread.
+ */
+public class AsyncPropertyServiceTest {
+
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("com.homework");
+    private static final int CATALOG_SIZE = 20_000;
+
+    private ConcurrentPropertyService propertyService;
+    private ExecutorService executor;
+    private AsyncPropertyService asyncService;
+    private Level previousLevel;
+
+    /**
+     * Sets up the test environment before each test method.
+     * Creates a service holding a generated catalog, a facade running its queries on one thread, and limits
+     * logging to errors, since timeouts are logged as warnings.
+     */
+    @Before
+    public void setUp() {
+        previousLevel = APPLICATION_LOGGER.getLevel();
+        APPLICATION_LOGGER.setLevel(Level.SEVERE);
+        List<Property> catalog = new ArrayList<>();
+        PropertyType[] types = PropertyType.values();
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            catalog.add(new Property("p" + i, i + " Main St", types[i % types.length],
+                    BigDecimal.valueOf(100_000 + (i * 7919L) % 900_000), 500 + i % 2000, i % 6, 1 + i % 3,
+                    i % 4 != 0, 40 + (i % 100) * 0.001, -74 + (i / 100) * 0.001));
+        }
+        propertyService = new ConcurrentPropertyService(catalog);
+        executor = Executors.newSingleThreadExecutor();
+        asyncService = new AsyncPropertyService(propertyService, executor, 10_000);
+    }
+
+    /**
+     * Restores the logging level and shuts the executor down after each test method.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        APPLICATION_LOGGER.setLevel(previousLevel);
+    }
+
+    /**
+     * Tests the query methods of the AsyncPropertyService class.
+     * Verifies that every future completes with the result of the same query on the service, and that an invalid
+     * query fails its future instead of throwing.
+     *
+     * @throws Exception if a future fails unexpectedly
+     */
+    @Test
+    public void testQueriesMatchService() throws Exception {
+        PropertyQuery query = new PropertyQuery().type(PropertyType.HOUSE).availableOnly().limit(50);
+
+        assertThat(asyncService.findById("p42").get(), equalTo(propertyService.findById("p42")));
+        assertThat(asyncService.findProperties(query).get(), equalTo(propertyService.findProperties(query)));
+        assertThat(asyncService.countProperties(query).get(), is(propertyService.countProperties(query)));
+        assertThat(asyncService.findTopProperties(query, PropertyMetric.AREA, 5).get(),
+                equalTo(propertyService.findTopProperties(query, PropertyMetric.AREA, 5)));
+        assertThat(asyncService.findNearest(query, 40.05, -73.95, 3).get(),
+                equalTo(propertyService.findNearest(query, 40.05, -73.95, 3)));
+        assertThat(asyncService.submit(ConcurrentPropertyService::getAveragePrice).get(),
+                equalTo(propertyService.getAveragePrice()));
+        try {
+            asyncService.countProperties(null).get();
+            fail("Expected the future to fail for a null query");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalArgumentException.class)));
+        }
+    }
+
+    /**
+     * Tests the timeout of a long scan.
+     * Verifies that the future fails with a TimeoutException, that the scan stops midway instead of visiting the
+     * whole catalog, and that the thread it ran on is free for the next query.
+     *
+     * @throws Exception if a future fails unexpectedly
+     */
+    @Test
+    public void testTimeoutStopsScan() throws Exception {
+        AtomicInteger visited = new AtomicInteger();
+        CompletableFuture<Long> scan = asyncService.submit(service -> service.forEachProperty(new PropertyQuery(),
+                property -> {
+                    visited.incrementAndGet();
+                    long until = System.nanoTime() + 50_000;
+                    while (System.nanoTime() < until) {
+                        Thread.onSpinWait();
+                    }
+                    return true;
+                }), 100);
+
+        try {
+            scan.get();
+            fail("Expected the scan to time out");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+        }
+        assertThat(asyncService.findById("p1").get(5, TimeUnit.SECONDS).getId(), is("p1"));
+        int visitedWhenStopped = visited.get();
+        assertThat(visitedWhenStopped, is(lessThan(CATALOG_SIZE)));
+        assertThat(visited.get(), is(visitedWhenStopped));
+    }
+
+    /**
+     * Tests cancelling queries.
+     * Verifies that a query cancelled while it waits for the executor is never run, and that cancelling a
+     * running query interrupts it.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    @Test
+    public void testCancelStopsQueries() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger visited = new AtomicInteger();
+        CompletableFuture<Long> running = asyncService.submit(service -> service.forEachProperty(new PropertyQuery(),
+                property -> {
+                    started.countDown();
+                    visited.incrementAndGet();
+                    long until = System.nanoTime() + 50_000;
+                    while (System.nanoTime() < until) {
+                        Thread.onSpinWait();
+                    }
+                    return true;
+                }));
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        CompletableFuture<Property> queued = asyncService.submit(service -> {
+            queuedRan.set(true);
+            return service.findById("p1");
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(queued.cancel(true), is(true));
+        assertThat(running.cancel(true), is(true));
+        CompletableFuture<Property> next = asyncService.findById("p2");
+
+        assertThat(next.get(5, TimeUnit.SECONDS).getId(), is("p2"));
+        assertThat(queuedRan.get(), is(false));
+        assertThat(visited.get(), is(lessThan(CATALOG_SIZE)));
+        try {
+            running.join();
+            fail("Expected the running query to be cancelled");
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests the publish method.
+     * Verifies that the query only runs once a page is requested, that pages are delivered as far as they were
+     * requested and hold the matches in order, and that the subscription completes after the last page.
+     *
+     * @throws Exception if the test is interrupted
+     */
+    @Test
+    public void testPublishDeliversRequestedPages() throws Exception {
+        PropertyQuery query = new PropertyQuery().type(PropertyType.CONDO).bedrooms(2).limit(25);
+        AsyncPropertyService direct = new AsyncPropertyService(propertyService, Runnable::run, 10_000);
+        List<List<Property>> pages = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        direct.publish(query, 10).subscribe(new Flow.Subscriber<List<Property>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(List<Property> page) {
+                pages.add(page);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail("Unexpected error: " + throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+
+        assertThat(pages, is(empty()));
+        subscription[0].request(1);
+        assertThat(pages, hasSize(1));
+        assertThat(completed.get(), is(false));
+        subscription[0].request(Long.MAX_VALUE);
+
+        assertThat(pages.stream().map(List::size).collect(Collectors.toList()), contains(10, 10, 5));
+        assertThat(pages.stream().flatMap(List::stream).collect(Collectors.toList()),
+                equalTo(propertyService.findProperties(query)));
+        assertThat(completed.get(), is(true));
+    }
+
+    /**
+     * Tests the withVirtualThreads method on a runtime with virtual threads.
+     * Verifies that many concurrent queries complete, each on a virtual thread. Skipped before Java 21.
+     *
+     * @throws Exception if a future fails unexpectedly
+     */
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(AsyncPropertyService.isVirtualThreadSupported());
+        try (AsyncPropertyService virtual = AsyncPropertyService.withVirtualThreads(propertyService, 10_000)) {
+            List<CompletableFuture<Property>> lookups = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                lookups.add(virtual.findById("p" + i));
+            }
+            for (int i = 0; i < lookups.size(); i++) {
+                assertThat(lookups.get(i).get(10, TimeUnit.SECONDS).getId(), is("p" + i));
+            }
+            assertThat(virtual.submit(service -> Thread.currentThread().toString()).get(),
+                    containsString("Virtual"));
+        }
+    }
+
+    /**
+     * Tests the withVirtualThreads method on a runtime without virtual threads.
+     * Verifies that an IllegalStateException is thrown. Skipped from Java 21 on.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testVirtualThreadsUnsupported() {
+        Assume.assumeFalse(AsyncPropertyService.isVirtualThreadSupported());
+        AsyncPropertyService.withVirtualThreads(propertyService, 10_000);
+    }
+
+    /**
+     * Tests the submit method with a timeout of zero.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubmitWithInvalidTimeout() {
+        asyncService.submit(ConcurrentPropertyService::getAveragePrice, 0);
+    }
+}
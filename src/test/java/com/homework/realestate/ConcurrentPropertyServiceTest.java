@@ -0,0 +1,496 @@
+package com.homework.realestate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test class for the ConcurrentPropertyService class.
+ * Besides the basic operations, it runs a stress test in which readers check that every snapshot they observe
+ * could have been produced by applying the writers' operations one at a time, in order.
+ */
+public class ConcurrentPropertyServiceTest {
+
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("com.homework");
+    private static final int WRITERS = 3;
+    private static final int READERS = 4;
+    private static final int OPERATIONS_PER_WRITER = 2000;
+    private static final int WINDOW = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConcurrentPropertyService propertyService;
+    private Level previousLevel;
+
+    /**
+     * Sets up the test environment before each test method.
+     * Creates a service with three properties and limits logging to warnings, so the stress test measures the
+     * service rather than the console handler.
+     */
+    @Before
+    public void setUp() {
+        previousLevel = APPLICATION_LOGGER.getLevel();
+        APPLICATION_LOGGER.setLevel(Level.WARNING);
+        propertyService = new ConcurrentPropertyService();
+        propertyService.addProperty(new Property("1", "123 Main St", PropertyType.HOUSE,
+                new BigDecimal("500000"), 2000, 4, 3, true));
+        propertyService.addProperty(new Property("2", "456 Oak Ave", PropertyType.APARTMENT,
+                new BigDecimal("250000"), 1200, 2, 2, true));
+        propertyService.addProperty(new Property("3", "789 Pine Rd", PropertyType.CONDO,
+                new BigDecimal("350000"), 1500, 3, 2, false));
+    }
+
+    /**
+     * Restores the logging level.
+     */
+    @After
+    public void tearDown() {
+        APPLICATION_LOGGER.setLevel(previousLevel);
+    }
+
+    /**
+     * Tests the basic read and write operations.
+     * Verifies that both copies of the catalog see every change, whichever copy a read is served from.
+     */
+    @Test
+    public void testReadsSeeCompletedWrites() {
+        Property updated = new Property("1", "123 Main St", PropertyType.CONDO,
+                new BigDecimal("300000"), 2000, 4, 3, false);
+
+        Property previous = propertyService.upsertProperty(updated);
+        Property removed = propertyService.removeProperty("2");
+
+        assertThat(previous.getType(), is(PropertyType.HOUSE));
+        assertThat(removed.getId(), is("2"));
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.getProperties(), hasSize(2));
+            assertThat(propertyService.findById("1"), equalTo(updated));
+            assertThat(propertyService.countPropertiesByType(PropertyType.CONDO), is(2L));
+            assertThat(propertyService.getAvailableProperties(), is(empty()));
+            assertThat(propertyService.findMostExpensiveProperty().getId(), is("3"));
+            assertThat(propertyService.getAveragePrice(), comparesEqualTo(new BigDecimal("325000")));
+        }
+    }
+
+    /**
+     * Tests reads with the query cache enabled.
+     * Verifies that both copies of the catalog cache their results and that a completed write is seen by every
+     * later read.
+     */
+    @Test
+    public void testQueryCacheSeesCompletedWrites() {
+        propertyService.enableQueryCache(1 << 20);
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), hasSize(1));
+        }
+
+        propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true));
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), hasSize(2));
+        }
+        QueryCacheStatistics statistics = propertyService.getQueryCacheStatistics();
+        assertThat(statistics.getHitCount() + statistics.getMissCount(), is(8L));
+        assertThat(statistics.getHitCount(), is(greaterThan(0L)));
+        assertThat(statistics.getMaxSizeInBytes(), is(2L << 20));
+    }
+
+    /**
+     * Tests the query cache while many readers share it and its size limit forces evictions.
+     * Verifies that every read returns the right result, that each lookup is counted once as a hit or a miss and
+     * that evictions keep the cache within its size limit.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting for the readers
+     */
+    @Test
+    public void testQueryCacheSharedByReaders() throws InterruptedException {
+        int lookups = 2000;
+        propertyService.enableQueryCache(1000);
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < lookups; i++) {
+                        int bedrooms = (i * 7 + reader) % 12;
+                        int found = propertyService.getPropertiesByBedrooms(bedrooms).size();
+                        int expected = bedrooms >= 2 && bedrooms <= 4 ? 1 : 0;
+                        if (found != expected) {
+                            violations.add(bedrooms + " bedrooms returned " + found + " properties");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(violations, is(empty()));
+        QueryCacheStatistics statistics = propertyService.getQueryCacheStatistics();
+        assertThat(statistics.getHitCount() + statistics.getMissCount(), is((long) READERS * lookups));
+        assertThat(statistics.getEvictionCount(), is(greaterThan(0L)));
+        assertThat(statistics.getSizeInBytes(), is(lessThanOrEqualTo(2000L)));
+    }
+
+    /**
+     * Tests the metrics shared by both copies of the catalog.
+     * Verifies that every read is counted once, whichever copy it ran on, and that writes applied to both copies
+     * are counted once.
+     */
+    @Test
+    public void testMetricsCountEachCallOnce() {
+        propertyService.resetMetrics();
+        for (int i = 0; i < 6; i++) {
+            propertyService.getPropertiesByType(PropertyType.HOUSE);
+            propertyService.upsertProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                    BigDecimal.valueOf(400000 + i), 1800, 3, 2, true));
+        }
+
+        MetricsSnapshot metrics = propertyService.getMetrics();
+        assertThat(metrics.getOperation("getPropertiesByType").getCount(), is(6L));
+        assertThat(metrics.getOperation("upsertProperty").getCount(), is(6L));
+        assertThat(metrics.getPropertyCount(), is(4));
+    }
+
+    /**
+     * Tests a rejected write.
+     * Verifies that a write failing validation leaves both copies of the catalog unchanged.
+     */
+    @Test
+    public void testRejectedWriteLeavesCatalogUnchanged() {
+        try {
+            propertyService.addProperty(new Property("1", "Elsewhere", PropertyType.HOUSE,
+                    new BigDecimal("1"), 10, 1, 1, true));
+            fail("Expected an IllegalArgumentException for a duplicate id");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+
+        propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true));
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.getProperties(), hasSize(4));
+            assertThat(propertyService.findById("1").getAddress(), is("123 Main St"));
+        }
+    }
+
+    /**
+     * Tests the bulkLoad method while readers are querying.
+     * Verifies that readers always see one complete catalog, either the one before or the one after a load, and
+     * never a partly loaded one.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void testBulkLoadSwapsCatalogAtomically() throws InterruptedException {
+        List<Property> houses = new ArrayList<>();
+        List<Property> condos = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            houses.add(new Property("h" + i, "Street " + i, PropertyType.HOUSE, BigDecimal.valueOf(i), 1000, 2, 1,
+                    true));
+            condos.add(new Property("c" + i, "Street " + i, PropertyType.CONDO, BigDecimal.valueOf(i), 900, 1, 1,
+                    true));
+        }
+        List<Property> smallCondos = condos.subList(0, 2000);
+        propertyService.bulkLoad(houses.stream());
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        AtomicBoolean loading = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            readers.add(new Thread(() -> {
+                while (loading.get()) {
+                    List<Property> snapshot = propertyService.findProperties(new PropertyQuery());
+                    PropertyType type = snapshot.get(0).getType();
+                    long ofType = snapshot.stream().filter(property -> property.getType() == type).count();
+                    int expected = type == PropertyType.HOUSE ? houses.size() : smallCondos.size();
+                    if (snapshot.size() != expected || ofType != expected) {
+                        violations.add("Saw " + snapshot.size() + " properties, " + ofType + " of type " + type);
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        for (int i = 0; i < 20; i++) {
+            propertyService.bulkLoad((i % 2 == 0 ? smallCondos : houses).stream());
+        }
+        loading.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(violations, is(empty()));
+        assertThat(propertyService.getProperties(), equalTo(houses));
+    }
+
+    /**
+     * Tests the change feed with concurrent writers.
+     * Verifies that every change is published exactly once, with consecutive sequence numbers, and only after
+     * readers can see it, so a consumer looking a property up when its event arrives finds it.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void testChangeFeedEventsFollowVisibleChanges() throws InterruptedException {
+        ChangeFeed feed = propertyService.enableChangeFeed(ChangeFeed.DEFAULT_CAPACITY);
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        List<Long> sequences = new ArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        feed.publisher(0, 64, executor).subscribe(new Flow.Subscriber<List<ChangeEvent>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<ChangeEvent> batch) {
+                for (ChangeEvent event : batch) {
+                    sequences.add(event.getSequence());
+                    if (propertyService.findById(event.getId()) == null) {
+                        violations.add("Property " + event.getId() + " not found at sequence " + event.getSequence());
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                violations.add("Subscription failed: " + throwable);
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < OPERATIONS_PER_WRITER; i++) {
+                    propertyService.addProperty(new Property(writer + "-" + i, "Street " + i, PropertyType.HOUSE,
+                            BigDecimal.valueOf(i), 1000, 2, 1, true));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        propertyService.disableChangeFeed();
+        boolean done = completed.await(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(done, is(true));
+        assertThat(violations, is(empty()));
+        assertThat(sequences, hasSize(WRITERS * OPERATIONS_PER_WRITER));
+        for (int i = 0; i < sequences.size(); i++) {
+            assertThat(sequences.get(i), is(i + 1L));
+        }
+    }
+
+    /**
+     * Tests the saveSnapshot and loadSnapshot methods.
+     * Verifies that loading a snapshot restores both copies of the catalog, so the restored catalog is still seen
+     * after later writes have switched the published copy.
+     *
+     * @throws IOException if the snapshot cannot be written or read
+     */
+    @Test
+    public void testLoadSnapshotRestoresBothCopies() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+        List<Property> saved = propertyService.getProperties();
+        propertyService.saveSnapshot(file);
+        propertyService.removeProperty("1");
+        propertyService.removeProperty("2");
+
+        propertyService.loadSnapshot(file);
+        List<Property> afterLoad = propertyService.getProperties();
+        propertyService.removeProperty("3");
+        propertyService.removeProperty("4");
+
+        assertThat(afterLoad, equalTo(saved));
+        assertThat(propertyService.getProperties(), equalTo(saved.subList(0, 2)));
+    }
+
+    /**
+     * Stress test with concurrent writers and readers.
+     * Every writer adds its own properties in order, removes them again in the same order once it is more than
+     * {@link #WINDOW} ahead, and after every add records its progress in a counter property. Readers check that
+     * every snapshot holds a contiguous run of each writer's properties whose last entry matches the counter, and
+     * that what they observe never goes back in time.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void testConcurrentReadersObserveLinearizableSnapshots() throws InterruptedException {
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < OPERATIONS_PER_WRITER; i++) {
+                    propertyService.addProperty(new Property(writer + "-" + i, "Street " + i, PropertyType.HOUSE,
+                            BigDecimal.valueOf(i), 1000, 2, 1, true));
+                    propertyService.upsertProperty(new Property("counter-" + writer, null, PropertyType.CONDO,
+                            BigDecimal.valueOf(i), 0, 0, 0, false));
+                    if (i >= WINDOW) {
+                        propertyService.removeProperty(writer + "-" + (i - WINDOW));
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            readers.add(new Thread(() -> {
+                await(start);
+                int[] lastSeen = new int[WRITERS];
+                Arrays.fill(lastSeen, -1);
+                while (writing.get()) {
+                    checkSnapshot(propertyService.getProperties(), lastSeen, violations);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertThat(violations, is(empty()));
+        assertThat(propertyService.getProperties(), hasSize(3 + WRITERS * (WINDOW + 1)));
+        for (int w = 0; w < WRITERS; w++) {
+            assertThat(propertyService.findById(w + "-" + (OPERATIONS_PER_WRITER - WINDOW - 1)), is(nullValue()));
+            assertThat(propertyService.findById(w + "-" + (OPERATIONS_PER_WRITER - WINDOW)), is(notNullValue()));
+            assertThat(propertyService.findById("counter-" + w).getPrice(),
+                    comparesEqualTo(BigDecimal.valueOf(OPERATIONS_PER_WRITER - 1)));
+        }
+    }
+
+    /**
+     * Tests properties with a location written through the concurrent service.
+     * Verifies that added and replaced properties keep their coordinates, so a box query on either copy of the
+     * catalog finds them.
+     */
+    @Test
+    public void testWritesKeepLocations() {
+        PropertyQuery box = new PropertyQuery().inBox(40.6, -74.1, 40.8, -73.9);
+        propertyService.addProperty(new Property("4", "1 Harbor Rd", PropertyType.CONDO, new BigDecimal("400000"),
+                900, 2, 1, true, 40.7, -74.0));
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.findProperties(box), contains(propertyService.findById("4")));
+            assertThat(propertyService.findById("4").getLatitude(), is(40.7));
+            assertThat(propertyService.findById("4").getLongitude(), is(-74.0));
+        }
+
+        propertyService.upsertProperty(new Property("4", "1 Harbor Rd", PropertyType.CONDO,
+                new BigDecimal("400000"), 900, 2, 1, true, 41.5, -74.0));
+        for (int i = 0; i < 4; i++) {
+            assertThat(propertyService.findProperties(box), is(empty()));
+            assertThat(propertyService.findById("4").getLatitude(), is(41.5));
+        }
+    }
+
+    /**
+     * Tests the constructor with a list that repeats an id.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithDuplicateId() {
+        Property property = new Property("1", "123 Main St", PropertyType.HOUSE, new BigDecimal("350000"), 2000,
+                3, 2, true);
+        new ConcurrentPropertyService(Arrays.asList(property, property));
+    }
+
+    /**
+     * Checks one snapshot of the catalog against the writers' program order.
+     *
+     * @param snapshot all properties observed by a single read
+     * @param lastSeen the newest property of each writer seen by this reader so far, updated in place
+     * @param violations collects a description of every inconsistency found
+     */
+    private static void checkSnapshot(List<Property> snapshot, int[] lastSeen, Queue<String> violations) {
+        int[] lowest = new int[WRITERS];
+        int[] highest = new int[WRITERS];
+        int[] count = new int[WRITERS];
+        int[] counter = new int[WRITERS];
+        Arrays.fill(lowest, Integer.MAX_VALUE);
+        Arrays.fill(highest, -1);
+        Arrays.fill(counter, -1);
+        for (Property property : snapshot) {
+            String id = property.getId();
+            if (id.startsWith("counter-")) {
+                counter[Integer.parseInt(id.substring(8))] = property.getPrice().intValue();
+            } else if (id.indexOf('-') > 0) {
+                int writer = Integer.parseInt(id.substring(0, id.indexOf('-')));
+                int sequence = Integer.parseInt(id.substring(id.indexOf('-') + 1));
+                lowest[writer] = Math.min(lowest[writer], sequence);
+                highest[writer] = Math.max(highest[writer], sequence);
+                count[writer]++;
+            }
+        }
+        for (int w = 0; w < WRITERS; w++) {
+            if (count[w] > 0 && highest[w] - lowest[w] + 1 != count[w]) {
+                violations.add("Writer " + w + " has a gap between " + lowest[w] + " and " + highest[w]);
+            }
+            if (count[w] > WINDOW + 1) {
+                violations.add("Writer " + w + " has " + count[w] + " live properties");
+            }
+            if (counter[w] != highest[w] && counter[w] != highest[w] - 1) {
+                violations.add("Writer " + w + " counter " + counter[w] + " does not match newest " + highest[w]);
+            }
+            if (highest[w] < lastSeen[w]) {
+                violations.add("Writer " + w + " went back from " + lastSeen[w] + " to " + highest[w]);
+            }
+            lastSeen[w] = highest[w];
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.homework.realestate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test class for the DurablePropertyService class.
+ * Covers recovery after an orderly close, after a crash that cuts the log at any byte, and after a crash in the
+ * middle of a checkpoint, as well as concurrent changes with group commit.
+ */
+public class DurablePropertyServiceTest {
+
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("com.homework");
+    private static final String LOG_FILE = "changes.wal";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Level previousLevel;
+
+    /**
+     * Limits logging to warnings, since every recovery below logs its progress.
+     */
+    @Before
+    public void setUp() {
+        previousLevel = APPLICATION_LOGGER.getLevel();
+        APPLICATION_LOGGER.setLevel(Level.WARNING);
+    }
+
+    /**
+     * Restores the logging level.
+     */
+    @After
+    public void tearDown() {
+        APPLICATION_LOGGER.setLevel(previousLevel);
+    }
+
+    /**
+     * Tests reopening a closed service with each durability level.
+     * Verifies that every kind of change is recovered and that rejected changes are not.
+     *
+     * @throws IOException if the catalog cannot be written or read
+     */
+    @Test
+    public void testReopenRecoversEveryKindOfChange() throws IOException {
+        for (Durability durability : Durability.values()) {
+            Path directory = folder.newFolder(durability.name()).toPath();
+            List<Property> expected;
+            try (DurablePropertyService service = new DurablePropertyService(directory, durability)) {
+                applyChanges(service, () -> { });
+                try {
+                    service.addProperty(property("2", "999"));
+                    fail("Expected an IllegalArgumentException for a duplicate id");
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+                expected = service.getProperties();
+            }
+
+            try (DurablePropertyService reopened = new DurablePropertyService(directory, durability)) {
+                assertThat(durability.name(), reopened.getProperties(), equalTo(expected));
+                assertThat(reopened.getDistribution(PropertyMetric.PRICE).getRelativeAccuracy(), is(0.05));
+                assertThat(reopened.getAvailableProperties().stream().map(Property::getId)
+                        .collect(Collectors.toList()), contains("3", "5"));
+            }
+        }
+    }
+
+    /**
+     * Tests recovery after a crash that leaves the log cut at any byte.
+     * Verifies that the catalog is recovered as it was after the last change whose record is complete, and that the
+     * recovered service accepts further changes.
+     *
+     * @throws IOException if the catalog cannot be written or read
+     */
+    @Test
+    public void testRecoversFromCrashAtEveryLogOffset() throws IOException {
+        Path directory = folder.newFolder("crashed").toPath();
+        List<Long> recordEnds = new ArrayList<>();
+        List<List<Property>> states = new ArrayList<>();
+        byte[] log;
+        try (DurablePropertyService service = new DurablePropertyService(directory, Durability.WRITE)) {
+            recordEnds.add(Files.size(directory.resolve(LOG_FILE)));
+            states.add(service.getProperties());
+            applyChanges(service, () -> {
+                recordEnds.add(Files.size(directory.resolve(LOG_FILE)));
+                states.add(service.getProperties());
+            });
+            log = Files.readAllBytes(directory.resolve(LOG_FILE));
+        }
+
+        for (int length = recordEnds.get(0).intValue(); length <= log.length; length++) {
+            Path copy = folder.newFolder("crash-" + length).toPath();
+            Files.write(copy.resolve(LOG_FILE), Arrays.copyOf(log, length));
+            int complete = 0;
+            while (complete + 1 < recordEnds.size() && recordEnds.get(complete + 1) <= length) {
+                complete++;
+            }
+
+            try (DurablePropertyService recovered = new DurablePropertyService(copy, Durability.WRITE)) {
+                assertThat("cut at " + length, recovered.getProperties(), equalTo(states.get(complete)));
+                assertThat(Files.size(copy.resolve(LOG_FILE)), is(recordEnds.get(complete)));
+                recovered.upsertProperty(property("9", "1.00"));
+            }
+        }
+
+        byte[] corrupted = log.clone();
+        corrupted[(int) (recordEnds.get(3) + recordEnds.get(4)) / 2] ^= 0x40;
+        Path copy = folder.newFolder("corrupted").toPath();
+        Files.write(copy.resolve(LOG_FILE), corrupted);
+        try (DurablePropertyService recovered = new DurablePropertyService(copy, Durability.WRITE)) {
+            assertThat(recovered.getProperties(), equalTo(states.get(3)));
+        }
+    }
+
+    /**
+     * Tests checkpoints, including a crash after the checkpoint was saved and before the log was emptied.
+     * Verifies that the log is compacted into a single checkpoint and that recovery applies every change exactly
+     * once.
+     *
+     * @throws IOException if the catalog cannot be written or read
+     */
+    @Test
+    public void testCheckpointCompactsLog() throws IOException {
+        Path directory = folder.newFolder("checkpointed").toPath();
+        List<Property> expected;
+        byte[] logBeforeCheckpoint;
+        try (DurablePropertyService service = new DurablePropertyService(directory, Durability.BATCH, 1, 2048)) {
+            for (int i = 0; i < 200; i++) {
+                service.upsertProperty(property(String.valueOf(i % 70), i + ".50"));
+            }
+            assertThat(Files.size(directory.resolve(LOG_FILE)), is(lessThan(2048L + 200)));
+            service.bulkLoad(service.getProperties().stream().filter(property -> property.getPrice()
+                    .compareTo(new BigDecimal("150")) > 0));
+            service.removeProperty("20");
+            service.addProperty(property("100", "1.00"));
+            logBeforeCheckpoint = Files.readAllBytes(directory.resolve(LOG_FILE));
+            service.checkpoint();
+            expected = service.getProperties();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.toString().endsWith(".snapshot")).count(), is(1L));
+        }
+        Files.write(directory.resolve(LOG_FILE), logBeforeCheckpoint);
+
+        try (DurablePropertyService recovered = new DurablePropertyService(directory, Durability.BATCH)) {
+            assertThat(recovered.getProperties(), equalTo(expected));
+            assertThat(recovered.getProperties(), hasSize(50));
+            assertThat(recovered.findById("20"), is(nullValue()));
+        }
+    }
+
+    /**
+     * Tests changes from several threads with synchronous durability.
+     * Verifies that every change is recovered and that no change needed more than one force of the log.
+     *
+     * @throws Exception if a writer fails or the test is interrupted
+     */
+    @Test
+    public void testConcurrentSyncChangesAreRecovered() throws Exception {
+        Path directory = folder.newFolder("sync").toPath();
+        int writers = 4;
+        int changesPerWriter = 100;
+        try (DurablePropertyService service = new DurablePropertyService(directory, Durability.SYNC)) {
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < changesPerWriter; i++) {
+                            service.addProperty(property(writer + "-" + i, "1000.00"));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertThat(errors, is(empty()));
+            assertThat(service.syncCount(), is(lessThanOrEqualTo((long) writers * changesPerWriter)));
+        }
+
+        try (DurablePropertyService recovered = new DurablePropertyService(directory, Durability.SYNC)) {
+            assertThat(recovered.getProperties(), hasSize(writers * changesPerWriter));
+        }
+    }
+
+    /**
+     * Tests changes after the service was closed.
+     * Verifies that every kind of change throws an UncheckedIOException and leaves the catalog unchanged, both for
+     * readers of the closed service and after reopening the directory.
+     *
+     * @throws IOException if the catalog cannot be written or read
+     */
+    @Test
+    public void testChangesAfterCloseAreRejected() throws IOException {
+        Path directory = folder.newFolder("closed").toPath();
+        DurablePropertyService service = new DurablePropertyService(directory, Durability.WRITE);
+        service.addProperty(property("1", "500000.00"));
+        List<Property> expected = service.getProperties();
+        service.close();
+        List<Runnable> changes = Arrays.asList(
+                () -> service.addProperty(property("2", "250000.00")),
+                () -> service.addAll(Arrays.asList(property("3", "350000.50"), property("4", "450000.00"))),
+                () -> service.upsertProperty(property("1", "525000.00")),
+                () -> service.setAvailability("1", false),
+                () -> service.removeProperty("1"),
+                () -> service.configureDistributions(0.05, 100_000, 500),
+                () -> service.bulkLoad(Stream.of(property("6", "100000.00"))));
+
+        for (Runnable change : changes) {
+            try {
+                change.run();
+                fail("Expected an UncheckedIOException for a change after close");
+            } catch (UncheckedIOException e) {
+                // Expected
+            }
+            assertThat(service.getProperties(), equalTo(expected));
+            assertThat(service.findById("2"), is(nullValue()));
+            assertThat(service.getDistribution(PropertyMetric.PRICE).getRelativeAccuracy(),
+                    is(not(0.05)));
+        }
+
+        try (DurablePropertyService reopened = new DurablePropertyService(directory, Durability.WRITE)) {
+            assertThat(reopened.getProperties(), equalTo(expected));
+        }
+    }
+
+    /**
+     * Applies one change of every kind, running a callback after each of them.
+     */
+    private static void applyChanges(DurablePropertyService service, IoRunnable afterEach) {
+        try {
+            service.addProperty(property("1", "500000.00"));
+            afterEach.run();
+            service.addAll(Arrays.asList(property("2", "250000.00"), property("3", "350000.50")));
+            afterEach.run();
+            service.upsertProperty(property("1", "525000.00"));
+            afterEach.run();
+            service.setAvailability("2", true);
+            afterEach.run();
+            service.removeProperty("1");
+            afterEach.run();
+            service.configureDistributions(0.05, 100_000, 500);
+            afterEach.run();
+            service.addProperty(new Property("5", "Rue de l'Église", null, new BigDecimal("99.99"), 40, 0, 1,
+                    true));
+            afterEach.run();
+            service.setAvailability("2", false);
+            afterEach.run();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Property property(String id, String price) {
+        return new Property(id, id + " Main St", PropertyType.HOUSE, new BigDecimal(price), 1500, 3, 2,
+                !id.equals("2"));
+    }
+
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,211 @@
+package com.homework.realestate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test class for the PropertyListings class.
+ * Covers round trips through both listing formats, hand-written files using the optional parts of each format,
+ * and the handling of malformed listings.
+ */
+public class PropertyListingsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests the export and load methods in both formats.
+     * Verifies that a catalog spanning several read buffers, with addresses that need quoting or escaping, missing
+     * addresses, types and locations, and non-ASCII text, is loaded back exactly as it was exported.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testExportAndLoadRoundTrip() throws IOException {
+        String[] addresses = {"12 Main St", "Flat 3, 4 \"The Mews\"", "Line 1\nLine 2", "Straße 5 \u2014 \uD83C\uDFE0",
+                "", null, "Back\\slash\ttab"};
+        Random random = new Random(19);
+        List<Property> properties = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            PropertyType type = i % 11 == 0 ? null : PropertyType.values()[random.nextInt(PropertyType.values().length)];
+            properties.add(new Property("id-" + i, addresses[i % addresses.length], type,
+                    BigDecimal.valueOf(random.nextInt(Integer.MAX_VALUE) - 1_000L, 2), random.nextInt(5000) / 4.0,
+                    random.nextInt(8), random.nextInt(4), random.nextBoolean(),
+                    i % 3 == 0 ? Double.NaN : random.nextDouble() * 180 - 90,
+                    i % 3 == 0 ? Double.NaN : random.nextDouble() * 360 - 180));
+        }
+        PropertyService original = new PropertyService(properties);
+
+        for (ListingFormat format : ListingFormat.values()) {
+            Path file = folder.newFile("listings-" + format).toPath();
+            PropertyService loaded = new PropertyService();
+
+            long written = PropertyListings.export(original, new PropertyQuery(), file, format);
+            BulkLoadReport report = PropertyListings.load(loaded, file, format);
+
+            assertThat(written, is((long) properties.size()));
+            assertThat(report.getRowCount(), is(properties.size()));
+            assertThat(format.toString(), loaded.getProperties(), equalTo(original.getProperties()));
+            for (Property property : loaded.getProperties()) {
+                Property exported = original.findById(property.getId());
+                assertThat(property.getLatitude(), is(exported.getLatitude()));
+                assertThat(property.getLongitude(), is(exported.getLongitude()));
+            }
+        }
+    }
+
+    /**
+     * Tests the read method on hand-written files.
+     * Verifies that headers, CRLF line ends, blank lines, quoted fields, reordered JSON keys, escapes, unknown keys
+     * and exponents are all understood.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testReadHandWrittenFiles() throws IOException {
+        Path csv = write("listings.csv", "id,address,type,price,area,bedrooms,bathrooms,available\r\n"
+                + "1,123 Main St,HOUSE,500000,2000,4,3,true\r\n"
+                + "\r\n"
+                + "\"2\",\"456 \"\"Oak\"\" Ave, Unit 1\",APARTMENT,250000.5,1.2E3,2,2,false\r\n"
+                + "3,,,0.99,0,0,0,true");
+        Path jsonl = write("listings.jsonl", "{\"id\":\"1\",\"address\":\"123 Main St\",\"type\":\"HOUSE\","
+                + "\"price\":500000,\"area\":2000,\"bedrooms\":4,\"bathrooms\":3,\"available\":true}\n"
+                + "  \n"
+                + "{ \"available\" : false, \"bathrooms\":2, \"bedrooms\":2, \"area\":1.2e3, \"price\":250000.50,"
+                + " \"agent\":\"x\", \"type\":\"APARTMENT\", \"address\":\"456 \\\"Oak\\\" Ave, Unit 1\", \"id\":\"2\" }\n"
+                + "{\"id\":\"\\u0033\",\"address\":null,\"type\":null,\"price\":0.99,\"area\":0,\"bedrooms\":0,"
+                + "\"bathrooms\":0,\"available\":true}\n");
+        List<Property> expected = List.of(
+                new Property("1", "123 Main St", PropertyType.HOUSE, new BigDecimal("500000"), 2000, 4, 3, true),
+                new Property("2", "456 \"Oak\" Ave, Unit 1", PropertyType.APARTMENT, new BigDecimal("250000.5"),
+                        1200, 2, 2, false),
+                new Property("3", null, null, new BigDecimal("0.99"), 0, 0, 0, true));
+
+        for (Path file : List.of(csv, jsonl)) {
+            ListingFormat format = file == csv ? ListingFormat.CSV : ListingFormat.JSON_LINES;
+            try (Stream<Property> listings = PropertyListings.read(file, format)) {
+                List<Property> read = listings.collect(Collectors.toList());
+                assertThat(format.toString(), read, hasSize(3));
+                for (int i = 0; i < read.size(); i++) {
+                    assertThat(read.get(i).getId(), is(expected.get(i).getId()));
+                    assertThat(read.get(i).getAddress(), is(expected.get(i).getAddress()));
+                    assertThat(read.get(i).getType(), is(expected.get(i).getType()));
+                    assertThat(read.get(i).getPrice(), comparesEqualTo(expected.get(i).getPrice()));
+                    assertThat(read.get(i).getArea(), is(expected.get(i).getArea()));
+                    assertThat(read.get(i).isAvailable(), is(expected.get(i).isAvailable()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the load method with a malformed listing.
+     * Verifies that an IllegalArgumentException naming the line is thrown and that the service keeps its catalog.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testLoadMalformedListingKeepsCatalog() throws IOException {
+        PropertyService propertyService = new PropertyService();
+        propertyService.addProperty(new Property("1", "123 Main St", PropertyType.HOUSE,
+                new BigDecimal("500000"), 2000, 4, 3, true));
+        Path file = write("broken.csv", "2,456 Oak Ave,APARTMENT,250000,1200,2,2,true\n"
+                + "3,789 Pine Rd,CONDO,35O000,1500,3,2,false\n");
+
+        try {
+            PropertyListings.load(propertyService, file, ListingFormat.CSV);
+            fail("Expected an IllegalArgumentException for a malformed price");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), containsString("line 2"));
+        }
+        assertThat(propertyService.getProperties(), hasSize(1));
+        assertThat(propertyService.findById("1"), is(notNullValue()));
+    }
+
+    /**
+     * Tests the export and load methods with areas and coordinates that Java writes in scientific notation or at
+     * the limits of a double.
+     * Verifies that every value is written as a number both formats accept and is loaded back exactly.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testExtremeNumbersRoundTrip() throws IOException {
+        double[] areas = {Double.MAX_VALUE, Double.MIN_VALUE, 1e-7, 1e21, 0.1 + 0.2, 0};
+        List<Property> properties = new ArrayList<>();
+        for (int i = 0; i < areas.length; i++) {
+            properties.add(new Property("id-" + i, "Lot " + i, PropertyType.HOUSE, new BigDecimal("100000"),
+                    areas[i], 1, 1, true, i % 2 == 0 ? 1e-7 : -89.99999999999999, i % 2 == 0 ? -1e-300 : 180));
+        }
+        PropertyService original = new PropertyService(properties);
+
+        for (ListingFormat format : ListingFormat.values()) {
+            Path file = folder.newFile("extreme-" + format).toPath();
+            PropertyListings.export(original, new PropertyQuery(), file, format);
+            PropertyService loaded = new PropertyService();
+            PropertyListings.load(loaded, file, format);
+
+            for (Property property : original.getProperties()) {
+                Property read = loaded.findById(property.getId());
+                assertThat(format.toString(), read.getArea(), is(property.getArea()));
+                assertThat(format.toString(), read.getLatitude(), is(property.getLatitude()));
+                assertThat(format.toString(), read.getLongitude(), is(property.getLongitude()));
+            }
+        }
+    }
+
+    /**
+     * Tests the read method with areas and coordinates that are not finite numbers.
+     * Verifies that NaN, Infinity and exponents beyond the range of a double are rejected as malformed numbers
+     * naming the line, in both formats.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testReadNonFiniteNumbers() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String area : List.of("NaN", "Infinity", "-Infinity", "1e400")) {
+            files.add(write("area-" + area + ".csv", "1,123 Main St,HOUSE,500000,2000,4,3,true\n"
+                    + "2,456 Oak Ave,APARTMENT,250000," + area + ",2,2,true\n"));
+        }
+        files.add(write("latitude.csv", "1,123 Main St,HOUSE,500000,2000,4,3,true,40.7,-74\n"
+                + "2,456 Oak Ave,APARTMENT,250000,1200,2,2,true,Infinity,-74\n"));
+        files.add(write("area.jsonl", "{\"id\":\"1\",\"price\":1,\"area\":1,\"bedrooms\":1,\"bathrooms\":1,"
+                + "\"available\":true}\n{\"id\":\"2\",\"price\":1,\"area\":1e400,\"bedrooms\":1,\"bathrooms\":1,"
+                + "\"available\":true}\n"));
+        files.add(write("longitude.jsonl", "{\"id\":\"1\",\"price\":1,\"area\":1,\"bedrooms\":1,\"bathrooms\":1,"
+                + "\"available\":true}\n{\"id\":\"2\",\"price\":1,\"area\":1,\"bedrooms\":1,\"bathrooms\":1,"
+                + "\"available\":true,\"latitude\":1,\"longitude\":-1E999}\n"));
+
+        for (Path file : files) {
+            ListingFormat format = file.toString().endsWith(".csv") ? ListingFormat.CSV : ListingFormat.JSON_LINES;
+            try (Stream<Property> listings = PropertyListings.read(file, format)) {
+                listings.count();
+                fail("Expected an IllegalArgumentException for " + file.getFileName());
+            } catch (IllegalArgumentException expected) {
+                assertThat(file.getFileName().toString(), expected.getMessage(), containsString("line 2: invalid"));
+            }
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.newFile(name).toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
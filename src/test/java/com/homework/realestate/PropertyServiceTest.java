@@ -1,10 +1,30 @@
 package com.homework.realestate;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -15,6 +35,9 @@ import static org.junit.Assert.*;
  */
 public class PropertyServiceTest {
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     private PropertyService propertyService;
     private Property property1;
     private Property property2;
@@ -129,6 +152,1567 @@ public class PropertyServiceTest {
         assertThat(condoCount, is(1L));
     }
     
+    /**
+     * Tests that the type, bedroom and availability lookups see properties added after construction.
+     * Verifies that the secondary indexes are updated incrementally and results keep insertion order.
+     */
+    @Test
+    public void testIndexedLookupsAfterAddProperty() {
+        Property property4 = new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true);
+        propertyService.addProperty(property4);
+        
+        assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), contains(property1, property4));
+        assertThat(propertyService.countPropertiesByType(PropertyType.HOUSE), is(2L));
+        assertThat(propertyService.getPropertiesByBedrooms(3), contains(property3, property4));
+        assertThat(propertyService.getAvailableProperties(), contains(property1, property2, property4));
+    }
+    
+    /**
+     * Tests the indexed lookups for values that no property has.
+     * Verifies that empty results and zero counts are returned.
+     */
+    @Test
+    public void testIndexedLookupsWithoutMatches() {
+        assertThat(propertyService.getPropertiesByType(PropertyType.TOWNHOUSE), is(empty()));
+        assertThat(propertyService.countPropertiesByType(PropertyType.TOWNHOUSE), is(0L));
+        assertThat(propertyService.getPropertiesByBedrooms(7), is(empty()));
+    }
+    
+    /**
+     * Tests the getPropertiesByPriceRange method with inclusive bounds that have decimal places.
+     * Verifies that bounds are compared exactly and results keep insertion order.
+     */
+    @Test
+    public void testGetPropertiesByPriceRangeBoundaries() {
+        Property property4 = new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("250000.01"), 1800, 3, 2, true);
+        propertyService.addProperty(property4);
+        
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("250000"), new BigDecimal("350000")),
+                contains(property2, property3, property4));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("250000.005"), new BigDecimal("350000")),
+                contains(property3, property4));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("250000.011"), new BigDecimal("349999.999")),
+                is(empty()));
+    }
+    
+    /**
+     * Tests the price index against a full scan after many out-of-order additions.
+     * Verifies that range queries and the most expensive property stay correct across index merges,
+     * and that a service created from a list sorts its price index the same way.
+     */
+    @Test
+    public void testPriceIndexMatchesScanAfterOutOfOrderAdds() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(1_000_000), random.nextInt(3));
+            propertyService.addProperty(new Property("r" + i, "Street " + i, PropertyType.APARTMENT,
+                    price, 900, 2, 1, true));
+        }
+        List<Property> all = propertyService.getProperties();
+        PropertyService loadedService = new PropertyService(all);
+        for (int i = 0; i < 20; i++) {
+            BigDecimal min = BigDecimal.valueOf(random.nextInt(600_000), 2);
+            BigDecimal max = min.add(BigDecimal.valueOf(random.nextInt(400_000)));
+            List<Property> expected = all.stream()
+                    .filter(p -> p.getPrice().compareTo(min) >= 0 && p.getPrice().compareTo(max) <= 0)
+                    .collect(Collectors.toList());
+            assertThat(propertyService.getPropertiesByPriceRange(min, max), equalTo(expected));
+            assertThat(loadedService.getPropertiesByPriceRange(min, max), equalTo(expected));
+        }
+        Property expectedMax = all.stream().max((p1, p2) -> p1.getPrice().compareTo(p2.getPrice())).get();
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(expectedMax));
+        assertThat(loadedService.findMostExpensiveProperty(), equalTo(expectedMax));
+    }
+    
+    /**
+     * Tests that a property added out of order becomes the most expensive one.
+     * Verifies that the first property added wins when prices are equal.
+     */
+    @Test
+    public void testFindMostExpensivePropertyAfterAdd() {
+        Property property4 = new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("500000.00"), 1800, 3, 2, true);
+        propertyService.addProperty(property4);
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(property1));
+        
+        Property property5 = new Property("5", "1 Hill Rd", PropertyType.HOUSE,
+                new BigDecimal("900000"), 3000, 5, 4, true);
+        propertyService.addProperty(property5);
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(property5));
+    }
+    
+    /**
+     * Tests the findMostExpensiveProperty method on an empty service.
+     * Verifies that null is returned.
+     */
+    @Test
+    public void testFindMostExpensivePropertyWhenEmpty() {
+        assertThat(new PropertyService().findMostExpensiveProperty(), is(nullValue()));
+    }
+    
+    /**
+     * Tests the addProperty method with a price that has more than two decimal places.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPropertyWithSubCentPrice() {
+        propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("100000.001"), 1800, 3, 2, true));
+    }
+    
+    /**
+     * Tests the addProperty method with a property that has no price.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPropertyWithNullPrice() {
+        propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                null, 1800, 3, 2, true));
+    }
+    
+    /**
+     * Tests the findById method.
+     * Verifies that properties are found by id with all their values and unknown ids return null.
+     */
+    @Test
+    public void testFindById() {
+        Property found = propertyService.findById("2");
+        
+        assertThat(found, equalTo(property2));
+        assertThat(found.getAddress(), is("456 Oak Ave"));
+        assertThat(found.getType(), is(PropertyType.APARTMENT));
+        assertThat(found.getPrice(), comparesEqualTo(new BigDecimal("250000")));
+        assertThat(found.getArea(), is(1200.0));
+        assertThat(found.getBedrooms(), is(2));
+        assertThat(found.getBathrooms(), is(2));
+        assertThat(found.isAvailable(), is(true));
+        assertThat(propertyService.findById("42"), is(nullValue()));
+    }
+    
+    /**
+     * Tests the upsertProperty method replacing an existing property.
+     * Verifies that the replacement keeps its position and that all indexes see the new values.
+     */
+    @Test
+    public void testUpsertPropertyReplacesExisting() {
+        Property updated = new Property("1", "123 Main St", PropertyType.CONDO,
+                new BigDecimal("300000"), 2000, 3, 3, false);
+        
+        Property previous = propertyService.upsertProperty(updated);
+        
+        assertThat(previous, equalTo(property1));
+        assertThat(previous.getType(), is(PropertyType.HOUSE));
+        assertThat(propertyService.findById("1").getType(), is(PropertyType.CONDO));
+        assertThat(propertyService.getProperties(), contains(updated, property2, property3));
+        assertThat(propertyService.countPropertiesByType(PropertyType.HOUSE), is(0L));
+        assertThat(propertyService.getPropertiesByType(PropertyType.CONDO), contains(updated, property3));
+        assertThat(propertyService.getPropertiesByBedrooms(3), contains(updated, property3));
+        assertThat(propertyService.getAvailableProperties(), contains(property2));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("290000"), new BigDecimal("310000")),
+                contains(updated));
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(property3));
+    }
+    
+    /**
+     * Tests the upsertProperty method with a new id.
+     * Verifies that the property is added.
+     */
+    @Test
+    public void testUpsertPropertyAddsNew() {
+        Property property4 = new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true);
+        
+        assertThat(propertyService.upsertProperty(property4), is(nullValue()));
+        assertThat(propertyService.getProperties(), contains(property1, property2, property3, property4));
+    }
+    
+    /**
+     * Tests the removeProperty method.
+     * Verifies that the removed property disappears from every query and unknown ids are ignored.
+     */
+    @Test
+    public void testRemoveProperty() {
+        assertThat(propertyService.removeProperty("1"), equalTo(property1));
+        assertThat(propertyService.removeProperty("1"), is(nullValue()));
+        
+        assertThat(propertyService.findById("1"), is(nullValue()));
+        assertThat(propertyService.getProperties(), contains(property2, property3));
+        assertThat(propertyService.countPropertiesByType(PropertyType.HOUSE), is(0L));
+        assertThat(propertyService.getAvailableProperties(), contains(property2));
+        assertThat(propertyService.getPropertiesByBedrooms(4), is(empty()));
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(property3));
+        assertThat(propertyService.getAveragePrice(), comparesEqualTo(new BigDecimal("300000")));
+    }
+    
+    /**
+     * Tests removing most of a large catalog, which compacts the removed rows away.
+     * Verifies that lookups, updates and removals keep working after compaction.
+     */
+    @Test
+    public void testRemovePropertyCompactsRows() {
+        for (int i = 0; i < 3000; i++) {
+            propertyService.addProperty(new Property("c" + i, "Street " + i, PropertyType.TOWNHOUSE,
+                    BigDecimal.valueOf(100000 + i), 1000, 2, 1, i % 2 == 0));
+        }
+        for (int i = 0; i < 2990; i++) {
+            propertyService.removeProperty("c" + i);
+        }
+        
+        assertThat(propertyService.getProperties(), hasSize(13));
+        assertThat(propertyService.countPropertiesByType(PropertyType.TOWNHOUSE), is(10L));
+        assertThat(propertyService.findById("c2995").getPrice(), comparesEqualTo(new BigDecimal("102995")));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("102990"), new BigDecimal("102994")),
+                hasSize(5));
+        assertThat(propertyService.removeProperty("c2999").getId(), is("c2999"));
+        assertThat(propertyService.getPropertiesByType(PropertyType.TOWNHOUSE), hasSize(9));
+    }
+    
+    /**
+     * Tests a long run of replacements and of removals followed by new properties, each with a new address.
+     * Verifies that the strings of replaced and removed properties are dropped, so the snapshot of the churned
+     * catalog is no larger than twice that of the same catalog loaded fresh, and that lookups still work.
+     *
+     * @throws IOException if a snapshot cannot be written
+     */
+    @Test
+    public void testChurnDoesNotGrowDictionaries() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            propertyService.addProperty(new Property("c" + i, "Street " + i, PropertyType.TOWNHOUSE,
+                    BigDecimal.valueOf(100000 + i), 1000, 2, 1, true));
+        }
+        for (int round = 1; round <= 10; round++) {
+            for (int i = 0; i < 2000; i++) {
+                propertyService.upsertProperty(new Property("c" + i, "Lane " + round + "-" + i,
+                        PropertyType.TOWNHOUSE, BigDecimal.valueOf(100000 + i), 1000, 2, 1, true));
+            }
+            for (int i = 0; i < 2000; i++) {
+                propertyService.removeProperty("r" + (round - 1) + "-" + i);
+                propertyService.addProperty(new Property("r" + round + "-" + i, "Road " + round + "-" + i,
+                        PropertyType.CONDO, BigDecimal.valueOf(200000 + i), 800, 1, 1, true));
+            }
+        }
+        PropertyService fresh = new PropertyService(propertyService.getProperties());
+        
+        long churnedSize = propertyService.saveSnapshot(folder.newFile("churned.snapshot").toPath());
+        long freshSize = fresh.saveSnapshot(folder.newFile("fresh.snapshot").toPath());
+        assertThat(churnedSize, is(lessThan(2 * freshSize)));
+        assertThat(propertyService.findById("c1999").getAddress(), is("Lane 10-1999"));
+        assertThat(propertyService.findById("r10-5").getAddress(), is("Road 10-5"));
+        assertThat(propertyService.findById("r9-5"), is(nullValue()));
+        assertThat(propertyService.getProperties(), hasSize(4003));
+    }
+    
+    /**
+     * Tests that returned properties are copies of the stored values.
+     * Verifies that changing a returned property does not change the catalog.
+     */
+    @Test
+    public void testReturnedPropertiesAreCopies() {
+        Property returned = propertyService.findById("1");
+        returned.setPrice(new BigDecimal("1"));
+        property1.setType(PropertyType.TOWNHOUSE);
+        
+        assertThat(propertyService.findById("1").getPrice(), comparesEqualTo(new BigDecimal("500000")));
+        assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), contains(property1));
+    }
+    
+    /**
+     * Tests the parallel execution mode.
+     * Verifies that parallel queries return the same results, in the same order, as sequential ones.
+     */
+    @Test
+    public void testParallelExecutionMatchesSequential() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(100_000_000), 2);
+            propertyService.addProperty(new Property("p" + i, "Street " + i,
+                    PropertyType.values()[random.nextInt(PropertyType.values().length)], price, 900,
+                    random.nextInt(5), 1, random.nextBoolean()));
+        }
+        for (int i = 0; i < 20_000; i += 3) {
+            propertyService.removeProperty("p" + i);
+        }
+        BigDecimal min = new BigDecimal("100000.00");
+        BigDecimal max = new BigDecimal("700000.00");
+        List<Property> expectedRange = propertyService.getPropertiesByPriceRange(min, max);
+        List<Property> expectedHouses = propertyService.getPropertiesByType(PropertyType.HOUSE);
+        List<Property> expectedBedrooms = propertyService.getPropertiesByBedrooms(2);
+        List<Property> expectedAvailable = propertyService.getAvailableProperties();
+        BigDecimal expectedAverage = propertyService.getAveragePrice();
+    
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            propertyService.enableParallelExecution(pool, 0);
+            assertThat(propertyService.getPropertiesByPriceRange(min, max), equalTo(expectedRange));
+            assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), equalTo(expectedHouses));
+            assertThat(propertyService.getPropertiesByBedrooms(2), equalTo(expectedBedrooms));
+            assertThat(propertyService.getAvailableProperties(), equalTo(expectedAvailable));
+            assertThat(propertyService.getAveragePrice(), equalTo(expectedAverage));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Tests the enableParallelExecution method with a null pool.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableParallelExecutionWithNullPool() {
+        propertyService.enableParallelExecution(null, 0);
+    }
+    
+    /**
+     * Tests the findProperties method with combined criteria.
+     * Verifies that every combination of criteria returns the same properties, in the same order, as filtering
+     * the whole catalog, and that countProperties agrees.
+     */
+    @Test
+    public void testFindPropertiesMatchesFilter() {
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            propertyService.addProperty(new Property("q" + i, "Street " + i,
+                    PropertyType.values()[random.nextInt(PropertyType.values().length)],
+                    BigDecimal.valueOf(random.nextInt(1_000_000)), 900, random.nextInt(5), 1, random.nextBoolean()));
+        }
+        List<Property> all = propertyService.getProperties();
+        for (int i = 0; i < 50; i++) {
+            PropertyQuery query = new PropertyQuery();
+            PropertyType type = random.nextBoolean() ? PropertyType.values()[random.nextInt(4)] : null;
+            int bedrooms = random.nextBoolean() ? random.nextInt(5) : -1;
+            boolean availableOnly = random.nextBoolean();
+            BigDecimal min = BigDecimal.valueOf(random.nextInt(1_000_000));
+            BigDecimal max = random.nextBoolean() ? min.add(BigDecimal.valueOf(random.nextInt(300_000))) : null;
+            if (type != null) {
+                query.type(type);
+            }
+            if (bedrooms >= 0) {
+                query.bedrooms(bedrooms);
+            }
+            if (availableOnly) {
+                query.availableOnly();
+            }
+            if (max != null) {
+                query.price(min, max);
+            }
+            List<Property> expected = all.stream()
+                    .filter(p -> type == null || p.getType() == type)
+                    .filter(p -> bedrooms < 0 || p.getBedrooms() == bedrooms)
+                    .filter(p -> !availableOnly || p.isAvailable())
+                    .filter(p -> max == null || (p.getPrice().compareTo(min) >= 0 && p.getPrice().compareTo(max) <= 0))
+                    .collect(Collectors.toList());
+            
+            assertThat(query.toString(), propertyService.findProperties(query), equalTo(expected));
+            assertThat(query.toString(), propertyService.countProperties(query), is((long) expected.size()));
+        }
+    }
+    
+    /**
+     * Tests the getPropertiesByAddress method.
+     * Verifies that whole and partial words match regardless of case and order, that every word must match, and
+     * that the index follows replaced and removed properties.
+     */
+    @Test
+    public void testGetPropertiesByAddress() {
+        assertThat(propertyService.getPropertiesByAddress("Oak Ave"), contains(property2));
+        assertThat(propertyService.getPropertiesByAddress("oak av"), contains(property2));
+        assertThat(propertyService.getPropertiesByAddress("AVE, 456"), contains(property2));
+        assertThat(propertyService.getPropertiesByAddress("12"), contains(property1));
+        assertThat(propertyService.getPropertiesByAddress("st"), contains(property1));
+        assertThat(propertyService.getPropertiesByAddress("oak main"), is(empty()));
+        assertThat(propertyService.getPropertiesByAddress("ak"), is(empty()));
+        
+        Property moved = new Property("2", "9 Birch Ln", PropertyType.APARTMENT, new BigDecimal("250000"), 1200,
+                2, 2, true);
+        propertyService.upsertProperty(moved);
+        propertyService.removeProperty("1");
+        
+        assertThat(propertyService.getPropertiesByAddress("oak"), is(empty()));
+        assertThat(propertyService.getPropertiesByAddress("birch"), contains(moved));
+        assertThat(propertyService.getPropertiesByAddress("main"), is(empty()));
+        assertThat(propertyService.findProperties(new PropertyQuery().address("pine").availableOnly()), is(empty()));
+    }
+    
+    /**
+     * Tests the getPropertiesByAddress method with a text without words.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPropertiesByAddressWithoutWords() {
+        propertyService.getPropertiesByAddress(" - ");
+    }
+    
+    /**
+     * Tests the findProperties method with an address criterion.
+     * Verifies that address searches combined with other criteria return the same properties as filtering the
+     * whole catalog, whichever index drives them, also after replacements and a compaction renumbered the rows.
+     */
+    @Test
+    public void testFindPropertiesByAddressMatchesFilter() {
+        String[] streets = {"Oak Ave", "Oakley Rd", "Main St", "Mainland Blvd", "Park Ave"};
+        Random random = new Random(21);
+        for (int i = 0; i < 3000; i++) {
+            propertyService.addProperty(new Property("s" + i, (1 + random.nextInt(40)) + " "
+                    + streets[random.nextInt(streets.length)], PropertyType.values()[random.nextInt(4)],
+                    BigDecimal.valueOf(random.nextInt(1_000_000)), 900, random.nextInt(5), 1, random.nextBoolean()));
+        }
+        for (int i = 0; i < 2000; i++) {
+            propertyService.removeProperty("s" + i);
+        }
+        for (int i = 2000; i < 3000; i += 3) {
+            propertyService.upsertProperty(new Property("s" + i, (1 + random.nextInt(40)) + " "
+                    + streets[random.nextInt(streets.length)], PropertyType.HOUSE, new BigDecimal("500000"), 900, 2,
+                    1, true));
+        }
+        List<Property> all = propertyService.getProperties();
+        String[] texts = {"oak", "oak ave", "main", "mainland", "ave 1", "3 park", "rd", "st oak"};
+        for (String text : texts) {
+            for (PropertyType type : Arrays.asList(null, PropertyType.HOUSE)) {
+                PropertyQuery query = new PropertyQuery().address(text);
+                if (type != null) {
+                    query.type(type);
+                }
+                List<String> words = Arrays.asList(text.split(" "));
+                List<Property> expected = all.stream()
+                        .filter(p -> type == null || p.getType() == type)
+                        .filter(p -> words.stream().allMatch(word -> Arrays.stream(p.getAddress().split(" "))
+                                .anyMatch(token -> token.toLowerCase().startsWith(word))))
+                        .collect(Collectors.toList());
+                
+                assertThat(query.toString(), propertyService.findProperties(query), equalTo(expected));
+                assertThat(query.toString(), propertyService.countProperties(query), is((long) expected.size()));
+            }
+        }
+        assertThat(propertyService.explainQuery(new PropertyQuery().address("3 mainland")),
+                startsWith("ADDRESS_INDEX"));
+    }
+    
+    /**
+     * Tests the address index under churn of addresses whose tokens are all distinct.
+     * Verifies that the tokens of removed and replaced addresses are dropped, so the snapshot of the churned
+     * catalog is no larger than twice that of the same catalog loaded fresh, and that searches still find the
+     * current addresses and only those.
+     *
+     * @throws IOException if a snapshot cannot be written
+     */
+    @Test
+    public void testAddressChurnDropsUnusedTokens() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            propertyService.addProperty(new Property("t" + i, "Quay a0x" + i, PropertyType.CONDO,
+                    BigDecimal.valueOf(100000 + i), 800, 1, 1, true));
+        }
+        for (int round = 1; round <= 10; round++) {
+            for (int i = 0; i < 2000; i++) {
+                propertyService.upsertProperty(new Property("t" + i, "Quay a" + round + "x" + i,
+                        PropertyType.CONDO, BigDecimal.valueOf(100000 + i), 800, 1, 1, true));
+            }
+            for (int i = 0; i < 2000; i++) {
+                propertyService.removeProperty("u" + (round - 1) + "-" + i);
+                propertyService.addProperty(new Property("u" + round + "-" + i, "Wharf b" + round + "x" + i,
+                        PropertyType.CONDO, BigDecimal.valueOf(200000 + i), 800, 1, 1, true));
+            }
+        }
+        PropertyService fresh = new PropertyService(propertyService.getProperties());
+        
+        long churnedSize = propertyService.saveSnapshot(folder.newFile("churned.snapshot").toPath());
+        long freshSize = fresh.saveSnapshot(folder.newFile("fresh.snapshot").toPath());
+        assertThat(churnedSize, is(lessThan(2 * freshSize)));
+        assertThat(propertyService.getPropertiesByAddress("a10x1999"), hasSize(1));
+        assertThat(propertyService.getPropertiesByAddress("b10x1999"), hasSize(1));
+        assertThat(propertyService.getPropertiesByAddress("a9x"), is(empty()));
+        assertThat(propertyService.getPropertiesByAddress("b9x"), is(empty()));
+        assertThat(propertyService.getPropertiesByAddress("quay"), hasSize(2000));
+    }
+    
+    /**
+     * Tests the findProperties and findNearest methods with location criteria.
+     * Verifies that radius and box searches, alone and combined with other criteria, return the same properties
+     * as filtering the whole catalog, including searches across the antimeridian, and that the nearest properties
+     * match a full sort by distance, also after replacements moved properties and removals compacted the rows.
+     */
+    @Test
+    public void testFindPropertiesByLocationMatchesFilter() {
+        Random random = new Random(22);
+        for (int i = 0; i < 4000; i++) {
+            double latitude = Double.NaN;
+            double longitude = Double.NaN;
+            if (i % 10 != 0 && i % 2 == 0) {
+                latitude = 40.5 + random.nextDouble() * 0.4;
+                longitude = -74.25 + random.nextDouble() * 0.55;
+            } else if (i % 10 != 0) {
+                latitude = -18 + random.nextDouble() * 2;
+                longitude = 178 + random.nextDouble() * 4;
+                longitude = longitude > 180 ? longitude - 360 : longitude;
+            }
+            propertyService.addProperty(new Property("g" + i, "Street " + i,
+                    PropertyType.values()[random.nextInt(4)], BigDecimal.valueOf(random.nextInt(1_000_000)), 900,
+                    random.nextInt(5), 1, random.nextBoolean(), latitude, longitude));
+        }
+        for (int i = 0; i < 2500; i += 2) {
+            propertyService.removeProperty("g" + i);
+        }
+        for (int i = 1; i < 4000; i += 9) {
+            propertyService.upsertProperty(new Property("g" + i, "Street " + i, PropertyType.HOUSE,
+                    new BigDecimal("500000"), 900, 2, 1, true, 40.7 + random.nextDouble() * 0.01, -74.0));
+        }
+        List<Property> all = propertyService.getProperties();
+        List<PropertyQuery> queries = Arrays.asList(
+                new PropertyQuery().within(40.7, -74.0, 0.5),
+                new PropertyQuery().within(40.7, -74.0, 5),
+                new PropertyQuery().within(40.6, -74.1, 50).type(PropertyType.HOUSE),
+                new PropertyQuery().within(-17, 179.9, 40).availableOnly(),
+                new PropertyQuery().within(40.7, -74.0, 0),
+                new PropertyQuery().inBox(40.6, -74.1, 40.75, -73.9),
+                new PropertyQuery().inBox(40.6, -74.1, 40.75, -73.9).price(new BigDecimal("100000"),
+                        new BigDecimal("400000")),
+                new PropertyQuery().inBox(-17.5, 179.5, -16.5, -179.5).bedrooms(2),
+                new PropertyQuery().inBox(-90, -180, 90, 180).within(-17, -179.9, 100));
+        for (PropertyQuery query : queries) {
+            List<Property> expected = all.stream()
+                    .filter(p -> query.getType() == null || p.getType() == query.getType())
+                    .filter(p -> !query.hasBedrooms() || p.getBedrooms() == query.getBedrooms())
+                    .filter(p -> !query.isAvailableOnly() || p.isAvailable())
+                    .filter(p -> !query.hasPriceRange() || (p.getPrice().compareTo(query.getMinPrice()) >= 0
+                            && p.getPrice().compareTo(query.getMaxPrice()) <= 0))
+                    .filter(Property::hasLocation)
+                    .filter(p -> query.getBox() == null
+                            || Locations.inBox(p.getLatitude(), p.getLongitude(), query.getBox()))
+                    .filter(p -> !query.hasCircle() || Locations.distanceKm(query.getCenterLatitude(),
+                            query.getCenterLongitude(), p.getLatitude(), p.getLongitude()) <= query.getRadiusKm())
+                    .collect(Collectors.toList());
+            
+            assertThat(query.toString(), propertyService.findProperties(query), equalTo(expected));
+            assertThat(query.toString(), propertyService.countProperties(query), is((long) expected.size()));
+        }
+        
+        double[][] points = {{40.7, -74.0}, {40.9, -74.3}, {-17, 180}, {0, 0}};
+        for (double[] point : points) {
+            for (PropertyQuery query : Arrays.asList(new PropertyQuery(),
+                    new PropertyQuery().type(PropertyType.CONDO).availableOnly())) {
+                List<Property> byDistance = propertyService.findProperties(query).stream()
+                        .filter(Property::hasLocation)
+                        .sorted(Comparator.comparingDouble(p -> Locations.distanceKm(point[0], point[1],
+                                p.getLatitude(), p.getLongitude())))
+                        .collect(Collectors.toList());
+                for (int k : new int[] {1, 10, 300}) {
+                    assertThat(query + " k=" + k, propertyService.findNearest(query, point[0], point[1], k),
+                            equalTo(byDistance.subList(0, Math.min(k, byDistance.size()))));
+                }
+            }
+        }
+        assertThat(propertyService.explainQuery(new PropertyQuery().within(40.8, -74.2, 0.5)),
+                startsWith("LOCATION_INDEX"));
+    }
+    
+    /**
+     * Tests box searches that cross the antimeridian and span nearly every longitude.
+     * Verifies that each property in the box is found once, as when filtering the whole catalog, although the two
+     * halves of such a box are covered by coarse cells that overlap.
+     */
+    @Test
+    public void testFindPropertiesInNearlyFullWidthBoxAcrossAntimeridian() {
+        for (int longitude = -180; longitude < 180; longitude++) {
+            for (int latitude = -60; latitude <= 60; latitude += 30) {
+                propertyService.addProperty(new Property("w" + longitude + "/" + latitude, "Street " + longitude,
+                        PropertyType.HOUSE, new BigDecimal("300000"), 900, 2, 1, true, latitude, longitude + 0.5));
+            }
+        }
+        List<Property> all = propertyService.getProperties();
+        
+        for (double[] box : new double[][] {{-70, -170, 70, -175}, {-90, 0.2, 90, 0.1}, {-45, 179.9, 45, 179.8}}) {
+            PropertyQuery query = new PropertyQuery().inBox(box[0], box[1], box[2], box[3]);
+            List<Property> expected = all.stream()
+                    .filter(Property::hasLocation)
+                    .filter(p -> Locations.inBox(p.getLatitude(), p.getLongitude(), query.getBox()))
+                    .collect(Collectors.toList());
+            
+            assertThat(query.toString(), propertyService.findProperties(query), equalTo(expected));
+            assertThat(query.toString(), propertyService.countProperties(query), is((long) expected.size()));
+            assertThat(query.toString(), expected.size(), is(greaterThan(1000)));
+        }
+    }
+    
+    /**
+     * Tests the addProperty method with a property that has a latitude but no longitude.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPropertyWithIncompleteLocation() {
+        propertyService.addProperty(new Property("1", "123 Main St", PropertyType.HOUSE, new BigDecimal("300000"),
+                1500, 3, 2, true, 40.7, Double.NaN));
+    }
+    
+    /**
+     * Tests the within method of PropertyQuery with a latitude outside -90 to 90.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithinInvalidLatitude() {
+        new PropertyQuery().within(91, 0, 10);
+    }
+    
+    /**
+     * Tests the findProperties method with an offset and a limit.
+     * Verifies that consecutive pages cover the matches in order without gaps or overlaps.
+     */
+    @Test
+    public void testFindPropertiesPages() {
+        for (int i = 0; i < 100; i++) {
+            propertyService.addProperty(new Property("h" + i, "Street " + i, PropertyType.HOUSE,
+                    BigDecimal.valueOf(100_000 + i), 1000, 3, 2, i % 2 == 0));
+        }
+        List<Property> expected = propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .bedrooms(3).availableOnly());
+        
+        List<Property> firstPage = propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .bedrooms(3).availableOnly().limit(20));
+        List<Property> thirdPage = propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .bedrooms(3).availableOnly().offset(40).limit(20));
+        List<Property> lastPage = propertyService.findProperties(new PropertyQuery().type(PropertyType.HOUSE)
+                .bedrooms(3).availableOnly().offset(50).limit(20));
+        
+        assertThat(expected, hasSize(50));
+        assertThat(firstPage, equalTo(expected.subList(0, 20)));
+        assertThat(thirdPage, equalTo(expected.subList(40, 50)));
+        assertThat(lastPage, is(empty()));
+        assertThat(propertyService.findProperties(new PropertyQuery().limit(0)), is(empty()));
+    }
+    
+    /**
+     * Tests the query planner.
+     * Verifies that queries are driven by the index with the fewest candidates, and that the description points out
+     * when the price index collects and sorts the rows of its range before the first match.
+     */
+    @Test
+    public void testExplainQueryChoosesMostSelectiveIndex() {
+        for (int i = 0; i < 100; i++) {
+            propertyService.addProperty(new Property("a" + i, "Street " + i, PropertyType.APARTMENT,
+                    BigDecimal.valueOf(100_000 + i * 1000), 800, 2, 1, true));
+        }
+        
+        assertThat(propertyService.explainQuery(new PropertyQuery()), startsWith("ALL_ROWS"));
+        assertThat(propertyService.explainQuery(new PropertyQuery().type(PropertyType.APARTMENT).bedrooms(4)),
+                startsWith("BEDROOM_INDEX"));
+        assertThat(propertyService.explainQuery(new PropertyQuery().type(PropertyType.CONDO).availableOnly()),
+                startsWith("TYPE_INDEX"));
+        assertThat(propertyService.explainQuery(new PropertyQuery().type(PropertyType.APARTMENT)
+                .price(new BigDecimal("100000"), new BigDecimal("105000"))), allOf(startsWith("PRICE_INDEX"),
+                containsString("collected and sorted into row order before the first match")));
+        assertThat(propertyService.explainQuery(new PropertyQuery().type(PropertyType.CONDO)),
+                not(containsString("sorted")));
+    }
+    
+    /**
+     * Tests the findProperties method with a null query.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindPropertiesWithNull() {
+        propertyService.findProperties(null);
+    }
+    
+    /**
+     * Tests the streamProperties methods.
+     * Verifies that streams return the same properties as the list methods and can be stopped early.
+     */
+    @Test
+    public void testStreamProperties() {
+        PropertyQuery available = new PropertyQuery().availableOnly();
+        
+        assertThat(propertyService.streamProperties().collect(Collectors.toList()),
+                equalTo(propertyService.getProperties()));
+        assertThat(propertyService.streamProperties(available).collect(Collectors.toList()),
+                contains(property1, property2));
+        assertThat(propertyService.streamProperties(new PropertyQuery().offset(1).limit(1))
+                .collect(Collectors.toList()), contains(property2));
+        assertThat(propertyService.streamProperties().filter(p -> p.getBedrooms() == 3).findFirst().get(),
+                equalTo(property3));
+    }
+    
+    /**
+     * Tests a stream over a catalog that changes while the stream is consumed.
+     * Verifies that a ConcurrentModificationException is thrown.
+     */
+    @Test(expected = ConcurrentModificationException.class)
+    public void testStreamPropertiesFailsAfterModification() {
+        Iterator<Property> properties = propertyService.streamProperties().iterator();
+        properties.next();
+        
+        propertyService.removeProperty("3");
+        
+        properties.next();
+    }
+    
+    /**
+     * Tests the forEachProperty method.
+     * Verifies that every match is visited with its values and that the visit stops when the visitor returns false.
+     */
+    @Test
+    public void testForEachProperty() {
+        long[] totalCents = new long[1];
+        List<String> ids = new ArrayList<>();
+        
+        long visited = propertyService.forEachProperty(new PropertyQuery(), property -> {
+            totalCents[0] += property.getPriceInCents();
+            ids.add(property.getId());
+            return true;
+        });
+        long stopped = propertyService.forEachProperty(new PropertyQuery(), property -> false);
+        
+        assertThat(visited, is(3L));
+        assertThat(totalCents[0], is(110_000_000L));
+        assertThat(ids, contains("1", "2", "3"));
+        assertThat(stopped, is(1L));
+    }
+    
+    /**
+     * Tests the openCursor method.
+     * Verifies that the cursor shows every match through one reusable view and fails once the catalog changes.
+     */
+    @Test
+    public void testOpenCursor() {
+        PropertyCursor cursor = propertyService.openCursor(new PropertyQuery().availableOnly());
+        List<PropertyRecord> records = new ArrayList<>();
+        PropertyView first = null;
+        while (cursor.next()) {
+            if (first == null) {
+                first = cursor.current();
+            }
+            assertThat(cursor.current(), sameInstance(first));
+            records.add(cursor.current().toRecord());
+        }
+        
+        assertThat(records, contains(property1.toRecord(), property2.toRecord()));
+        PropertyCursor changed = propertyService.openCursor(new PropertyQuery());
+        changed.next();
+        propertyService.setAvailability("1", false);
+        try {
+            changed.next();
+            fail("Expected a ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            // Expected
+        }
+    }
+    
+    /**
+     * Tests the findRecords method and the conversions between Property and PropertyRecord.
+     * Verifies that records hold the stored values, compare by value and convert back to equal properties.
+     */
+    @Test
+    public void testFindRecords() {
+        List<PropertyRecord> records = propertyService.findRecords(new PropertyQuery().type(PropertyType.HOUSE));
+        PropertyRecord record = records.get(0);
+        
+        assertThat(records, hasSize(1));
+        assertThat(record.getPriceInCents(), is(50_000_000L));
+        assertThat(record.getPrice(), equalTo(new BigDecimal("500000.00")));
+        assertThat(record, equalTo(property1.toRecord()));
+        assertThat(record.hashCode(), is(property1.toRecord().hashCode()));
+        assertThat(record.toProperty(), equalTo(property1));
+        assertThat(record.toProperty().getBedrooms(), is(4));
+        property1.setAvailable(false);
+        assertThat(record, not(equalTo(property1.toRecord())));
+    }
+    
+    /**
+     * Tests repeated lookups with the query cache enabled.
+     * Verifies that repeated criteria are answered from the cache as fresh copies, that equivalent price bounds
+     * share an entry, that changes to other types keep type results cached and that any change affecting a result
+     * is seen by the next lookup.
+     */
+    @Test
+    public void testQueryCache() {
+        propertyService.enableQueryCache(1 << 20);
+        List<Property> houses = propertyService.getPropertiesByType(PropertyType.HOUSE);
+        houses.get(0).setPrice(new BigDecimal("1"));
+        List<Property> cachedHouses = propertyService.getPropertiesByType(PropertyType.HOUSE);
+        propertyService.getPropertiesByPriceRange(new BigDecimal("200000"), new BigDecimal("400000"));
+        List<Property> cachedRange = propertyService.getPropertiesByPriceRange(new BigDecimal("200000.00"),
+                new BigDecimal("400000.001"));
+        
+        assertThat(cachedHouses, contains(property1));
+        assertThat(cachedHouses.get(0).getPrice(), equalTo(new BigDecimal("500000.00")));
+        assertThat(cachedHouses.get(0), not(sameInstance(houses.get(0))));
+        assertThat(cachedRange, contains(property2, property3));
+        QueryCacheStatistics statistics = propertyService.getQueryCacheStatistics();
+        assertThat(statistics.getHitCount(), is(2L));
+        assertThat(statistics.getMissCount(), is(2L));
+        assertThat(statistics.getEntryCount(), is(2L));
+        
+        propertyService.addProperty(new Property("4", "1 Elm St", PropertyType.APARTMENT, new BigDecimal("300000"),
+                800, 1, 1, true));
+        assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), contains(property1));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("200000"), new BigDecimal("400000")),
+                hasSize(3));
+        propertyService.upsertProperty(new Property("1", "123 Main St", PropertyType.HOUSE,
+                new BigDecimal("450000"), 2000, 4, 3, true));
+        assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE).get(0).getPrice(),
+                equalTo(new BigDecimal("450000.00")));
+        propertyService.bulkLoad(Stream.of(property2));
+        assertThat(propertyService.getPropertiesByType(PropertyType.HOUSE), is(empty()));
+        
+        statistics = propertyService.getQueryCacheStatistics();
+        assertThat(statistics.getHitCount(), is(3L));
+        assertThat(statistics.getInvalidationCount(), is(4L));
+    }
+    
+    /**
+     * Tests multi-criteria queries with the query cache enabled.
+     * Verifies that a repeated query is answered from the cache without being planned again, and that a query
+     * planned after a change sees the change.
+     */
+    @Test
+    public void testQueryCacheSkipsPlanning() {
+        propertyService.enableQueryCache(1 << 20);
+        PropertyQuery query = new PropertyQuery().address("main").availableOnly();
+        propertyService.resetMetrics();
+        List<Property> first = propertyService.findProperties(query);
+        List<Property> second = propertyService.findProperties(query);
+        List<Property> byAddress = propertyService.getPropertiesByAddress("main");
+        List<Property> byAddressAgain = propertyService.getPropertiesByAddress("main");
+        
+        assertThat(second, equalTo(first));
+        assertThat(byAddressAgain, equalTo(byAddress));
+        assertThat(propertyService.getMetrics().getQueryPlanCounts().values().stream().mapToLong(Long::longValue)
+                .sum(), is(2L));
+        assertThat(propertyService.getQueryCacheStatistics().getHitCount(), is(2L));
+        
+        propertyService.setAvailability("1", false);
+        assertThat(propertyService.findProperties(query), is(empty()));
+        assertThat(propertyService.getMetrics().getQueryPlanCounts().values().stream().mapToLong(Long::longValue)
+                .sum(), is(3L));
+    }
+    
+    /**
+     * Tests the query cache with a size limit that only fits a few results.
+     * Verifies that the least recently used results are evicted and that the estimated size stays within the limit.
+     */
+    @Test
+    public void testQueryCacheEvictsLeastRecentlyUsed() {
+        propertyService.enableQueryCache(2000);
+        for (int bedrooms = 0; bedrooms < 20; bedrooms++) {
+            propertyService.getPropertiesByBedrooms(bedrooms);
+        }
+        propertyService.getPropertiesByBedrooms(19);
+        propertyService.getPropertiesByBedrooms(0);
+        
+        QueryCacheStatistics statistics = propertyService.getQueryCacheStatistics();
+        assertThat(statistics.getEvictionCount(), is(greaterThan(0L)));
+        assertThat(statistics.getSizeInBytes(), is(lessThanOrEqualTo(2000L)));
+        assertThat(statistics.getHitCount(), is(1L));
+        assertThat(statistics.getMissCount(), is(21L));
+        
+        try {
+            propertyService.enableQueryCache(0);
+            fail("Expected an IllegalArgumentException for a size limit of zero");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    /**
+     * Tests the getMetrics method and the metrics MBean.
+     * Verifies that completed calls are counted per operation with their result sizes, that failed calls and
+     * query plans are accounted for, and that the figures can be read and reset over JMX.
+     *
+     * @throws Exception if the MBean cannot be read
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        propertyService.resetMetrics();
+        for (int i = 0; i < 10; i++) {
+            propertyService.getPropertiesByType(PropertyType.HOUSE);
+        }
+        propertyService.findProperties(new PropertyQuery().bedrooms(2));
+        propertyService.upsertProperty(property1);
+        try {
+            propertyService.addProperty(property1);
+            fail("Expected an IllegalArgumentException for a duplicate id");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        
+        MetricsSnapshot metrics = propertyService.getMetrics();
+        OperationStatistics byType = metrics.getOperation("getPropertiesByType");
+        assertThat(byType.getCount(), is(10L));
+        assertThat(byType.getTotalResults(), is(10L));
+        assertThat(byType.getMaxResultSize(), is(1L));
+        assertThat(byType.getMedianLatencyNanos(), is(lessThanOrEqualTo(byType.getP99LatencyNanos())));
+        assertThat(byType.getP99LatencyNanos(), is(lessThanOrEqualTo(byType.getMaxLatencyNanos())));
+        assertThat(metrics.getOperation("findProperties").getMaxResultSize(), is(1L));
+        assertThat(metrics.getOperation("upsertProperty").getCount(), is(1L));
+        assertThat(metrics.getOperation("addProperty"), is(nullValue()));
+        assertThat(metrics.getQueryPlanCounts().get("BEDROOM_INDEX"), is(1L));
+        assertThat(metrics.getPropertyCount(), is(3));
+        
+        ObjectName name = propertyService.registerMBean("testMetrics");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(name, "PropertyCount"), is(3));
+            TabularData operations = (TabularData) server.getAttribute(name, "Operations");
+            CompositeData upsert = (CompositeData) operations.get(new Object[] {"upsertProperty"}).get("value");
+            assertThat(upsert.get("count"), is(1L));
+            server.invoke(name, "resetMetrics", new Object[0], new String[0]);
+            assertThat(propertyService.getMetrics().getOperations().keySet(), is(empty()));
+        } finally {
+            propertyService.unregisterMBean();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+    }
+    
+    /**
+     * Tests the metrics of the aggregate, distribution, lazy and explain operations.
+     * Verifies that each call is counted, with one result per aggregate and none for streams, cursors and
+     * explanations, and that a failed call is not counted.
+     */
+    @Test
+    public void testMetricsCoverAggregatesAndLazyResults() {
+        PropertyQuery query = new PropertyQuery().type(PropertyType.HOUSE);
+        propertyService.resetMetrics();
+        propertyService.getPriceStatistics();
+        propertyService.getPriceStatistics(PropertyType.CONDO);
+        propertyService.configureDistributions(0.05, 100_000, 500);
+        propertyService.getDistribution(PropertyMetric.PRICE);
+        propertyService.getDistribution(PropertyMetric.AREA, PropertyType.HOUSE);
+        propertyService.getDistributionByBedrooms(PropertyMetric.PRICE, 2);
+        assertThat(propertyService.streamProperties().count(), is(3L));
+        assertThat(propertyService.streamProperties(query).count(), is(1L));
+        assertThat(propertyService.openCursor(query).next(), is(true));
+        propertyService.explainQuery(query);
+        try {
+            propertyService.getDistribution(PropertyMetric.PRICE_PER_AREA);
+            fail("Expected an IllegalArgumentException for PRICE_PER_AREA");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        
+        MetricsSnapshot metrics = propertyService.getMetrics();
+        assertThat(metrics.getOperation("getPriceStatistics").getCount(), is(2L));
+        assertThat(metrics.getOperation("getPriceStatistics").getTotalResults(), is(2L));
+        assertThat(metrics.getOperation("configureDistributions").getCount(), is(1L));
+        assertThat(metrics.getOperation("getDistribution").getCount(), is(2L));
+        assertThat(metrics.getOperation("getDistributionByBedrooms").getCount(), is(1L));
+        assertThat(metrics.getOperation("streamProperties").getCount(), is(2L));
+        assertThat(metrics.getOperation("streamProperties").getTotalResults(), is(0L));
+        assertThat(metrics.getOperation("openCursor").getCount(), is(1L));
+        assertThat(metrics.getOperation("explainQuery").getCount(), is(1L));
+    }
+    
+    /**
+     * Tests the change feed.
+     * Verifies that every kind of change is published once with increasing sequence numbers and the state of the
+     * property, that setting an unchanged availability publishes nothing, and that reads resume after a sequence.
+     */
+    @Test
+    public void testChangeFeedPublishesChanges() {
+        ChangeFeed feed = propertyService.enableChangeFeed(16);
+        Property updated = new Property("1", "123 Main St", PropertyType.HOUSE,
+                new BigDecimal("480000"), 2000, 4, 3, true);
+        
+        propertyService.upsertProperty(updated);
+        propertyService.setAvailability("2", true);
+        propertyService.setAvailability("2", false);
+        propertyService.removeProperty("3");
+        propertyService.addAll(Arrays.asList(
+                new Property("4", "12 Elm St", PropertyType.HOUSE, new BigDecimal("420000"), 1800, 3, 2, true),
+                new Property("5", "34 Birch Ln", PropertyType.CONDO, new BigDecimal("310000"), 900, 1, 1, true)));
+        propertyService.bulkLoad(Stream.of(property1));
+        
+        List<ChangeEvent> events = feed.read(0, 100);
+        assertThat(events.stream().map(ChangeEvent::getType).collect(Collectors.toList()), contains(
+                ChangeType.UPDATED, ChangeType.AVAILABILITY_CHANGED, ChangeType.REMOVED, ChangeType.ADDED,
+                ChangeType.ADDED, ChangeType.CATALOG_REPLACED));
+        assertThat(events.stream().map(ChangeEvent::getSequence).collect(Collectors.toList()),
+                contains(1L, 2L, 3L, 4L, 5L, 6L));
+        assertThat(events.get(0).getProperty(), equalTo(PropertyRecord.of(updated)));
+        assertThat(events.get(1).getProperty().isAvailable(), is(false));
+        assertThat(events.get(2).getProperty().getType(), is(PropertyType.CONDO));
+        assertThat(events.get(4).getId(), is("5"));
+        assertThat(events.get(5).getProperty(), is(nullValue()));
+        assertThat(feed.getLastSequence(), is(6L));
+        assertThat(feed.read(3, 2).stream().map(ChangeEvent::getSequence).collect(Collectors.toList()),
+                contains(4L, 5L));
+        assertThat(feed.read(6, 10), is(empty()));
+        
+        propertyService.disableChangeFeed();
+        propertyService.removeProperty("1");
+        assertThat(feed.isClosed(), is(true));
+        assertThat(feed.getLastSequence(), is(6L));
+        assertThat(propertyService.getChangeFeed(), is(nullValue()));
+    }
+    
+    /**
+     * Tests the change feed once its ring buffer has wrapped around.
+     * Verifies that the oldest events are overwritten without holding the writer up, and that readers and
+     * subscribers asking for overwritten events are told so instead of skipping them.
+     */
+    @Test
+    public void testChangeFeedOverwritesOldestEvents() {
+        ChangeFeed feed = propertyService.enableChangeFeed(3);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.publisher(0, 10, Runnable::run).subscribe(subscriber);
+        for (int i = 0; i < 6; i++) {
+            propertyService.setAvailability("1", i % 2 != 0);
+        }
+        
+        assertThat(feed.getCapacity(), is(4));
+        assertThat(feed.getOldestSequence(), is(3L));
+        assertThat(feed.read(2, 10), hasSize(4));
+        try {
+            feed.read(1, 10);
+            fail("Expected an IllegalStateException for overwritten events");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        subscriber.subscription.request(1);
+        assertThat(subscriber.batches, is(empty()));
+        assertThat(subscriber.error, is(instanceOf(IllegalStateException.class)));
+    }
+    
+    /**
+     * Tests a subscription to the change feed.
+     * Verifies that events are delivered in batches only as far as they were requested, that events published
+     * in the meantime wait in the feed, and that the subscription completes once the feed is disabled.
+     */
+    @Test
+    public void testChangeFeedPublisherFollowsDemand() {
+        ChangeFeed feed = propertyService.enableChangeFeed(ChangeFeed.DEFAULT_CAPACITY);
+        propertyService.removeProperty("3");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.publisher(0, 3, Runnable::run).subscribe(subscriber);
+        
+        assertThat(subscriber.batches, is(empty()));
+        subscriber.subscription.request(1);
+        for (int i = 0; i < 4; i++) {
+            propertyService.setAvailability("1", i % 2 != 0);
+        }
+        assertThat(subscriber.batches, hasSize(1));
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(5);
+        propertyService.disableChangeFeed();
+        
+        assertThat(subscriber.batches.stream().map(List::size).collect(Collectors.toList()), contains(1, 3, 1));
+        assertThat(subscriber.batches.get(2).get(0).getSequence(), is(5L));
+        assertThat(subscriber.completed, is(true));
+        assertThat(subscriber.error, is(nullValue()));
+    }
+    
+    /**
+     * Tests the enableChangeFeed method with a capacity of zero.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableChangeFeedWithInvalidCapacity() {
+        propertyService.enableChangeFeed(0);
+    }
+    
+    /**
+     * Tests the getPriceStatistics methods after random adds, replacements and removals.
+     * Verifies that the maintained statistics match statistics computed from the properties themselves.
+     */
+    @Test
+    public void testGetPriceStatisticsMatchesProperties() {
+        Random random = new Random(3);
+        for (int i = 0; i < 4000; i++) {
+            String id = "s" + random.nextInt(1500);
+            int action = random.nextInt(3);
+            if (action == 2) {
+                propertyService.removeProperty(id);
+            } else {
+                propertyService.upsertProperty(new Property(id, "Street " + i,
+                        PropertyType.values()[random.nextInt(PropertyType.values().length)],
+                        BigDecimal.valueOf(random.nextInt(50_000_000), 2), 900, 2, 1, true));
+            }
+        }
+        
+        for (PropertyType type : PropertyType.values()) {
+            assertStatistics(propertyService.getPriceStatistics(type), propertyService.getPropertiesByType(type));
+        }
+        assertStatistics(propertyService.getPriceStatistics(), propertyService.getProperties());
+        assertThat(propertyService.getAveragePrice(), equalTo(propertyService.getPriceStatistics().getMean()));
+    }
+    
+    /**
+     * Tests the getPriceStatistics methods with prices whose sum does not fit in a long.
+     * Verifies that the sum and the mean stay exact, and that an empty type has no minimum or maximum.
+     */
+    @Test
+    public void testGetPriceStatisticsWithLargeSum() {
+        BigDecimal price = new BigDecimal("90000000000000000.00");
+        for (int i = 0; i < 3; i++) {
+            propertyService.addProperty(new Property("big" + i, "Street " + i, PropertyType.TOWNHOUSE,
+                    price, 900, 2, 1, true));
+        }
+        
+        PriceStatistics townhouses = propertyService.getPriceStatistics(PropertyType.TOWNHOUSE);
+        assertThat(townhouses.getCount(), is(3L));
+        assertThat(townhouses.getSum(), comparesEqualTo(new BigDecimal("270000000000000000")));
+        assertThat(townhouses.getMean(), comparesEqualTo(price));
+        assertThat(townhouses.getMin(), comparesEqualTo(price));
+        
+        propertyService.removeProperty("big0");
+        propertyService.removeProperty("big1");
+        propertyService.removeProperty("big2");
+        PriceStatistics empty = propertyService.getPriceStatistics(PropertyType.TOWNHOUSE);
+        assertThat(empty.getCount(), is(0L));
+        assertThat(empty.getSum(), comparesEqualTo(BigDecimal.ZERO));
+        assertThat(empty.getMin(), is(nullValue()));
+        assertThat(empty.getMax(), is(nullValue()));
+        assertThat(propertyService.getPriceStatistics().getSum(), comparesEqualTo(new BigDecimal("1100000")));
+    }
+    
+    /**
+     * Tests the getPriceStatistics method with a null type.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPriceStatisticsWithNull() {
+        propertyService.getPriceStatistics(null);
+    }
+    
+    /**
+     * Checks price statistics against the given properties.
+     *
+     * @param statistics the statistics to check
+     * @param properties the properties they describe
+     */
+    private static void assertStatistics(PriceStatistics statistics, List<Property> properties) {
+        BigDecimal sum = properties.stream().map(Property::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(statistics.getCount(), is((long) properties.size()));
+        assertThat(statistics.getSum(), comparesEqualTo(sum));
+        assertThat(statistics.getMin(), comparesEqualTo(properties.stream().map(Property::getPrice)
+                .min(BigDecimal::compareTo).get()));
+        assertThat(statistics.getMax(), comparesEqualTo(properties.stream().map(Property::getPrice)
+                .max(BigDecimal::compareTo).get()));
+    }
+    
+    /**
+     * Tests the quantile estimates of the distributions for two configured accuracies.
+     * Verifies that price and area quantiles per type and per bedroom count are within the configured relative
+     * error of the exact values, also after properties were replaced and removed.
+     */
+    @Test
+    public void testDistributionQuantilesWithinErrorBound() {
+        Random random = new Random(17);
+        for (int i = 0; i < 6000; i++) {
+            double price = Math.exp(12 + random.nextGaussian() * 0.6);
+            propertyService.upsertProperty(new Property("d" + random.nextInt(4000), "Street " + i,
+                    PropertyType.values()[random.nextInt(PropertyType.values().length)],
+                    BigDecimal.valueOf(Math.round(price * 100), 2), 400 + random.nextInt(3000),
+                    random.nextInt(5), 1, true));
+            if (i % 5 == 0) {
+                propertyService.removeProperty("d" + random.nextInt(4000));
+            }
+        }
+        
+        for (double accuracy : new double[] {0.01, 0.05}) {
+            propertyService.configureDistributions(accuracy, 100_000, 500);
+            for (PropertyType type : PropertyType.values()) {
+                List<Property> ofType = propertyService.getPropertiesByType(type);
+                assertQuantiles(propertyService.getDistribution(PropertyMetric.PRICE, type),
+                        ofType.stream().mapToDouble(p -> p.getPrice().doubleValue()).sorted().toArray(), accuracy);
+                assertQuantiles(propertyService.getDistribution(PropertyMetric.AREA, type),
+                        ofType.stream().mapToDouble(Property::getArea).sorted().toArray(), accuracy);
+            }
+            for (int bedrooms = 0; bedrooms < 5; bedrooms++) {
+                assertQuantiles(propertyService.getDistributionByBedrooms(PropertyMetric.PRICE, bedrooms),
+                        propertyService.getPropertiesByBedrooms(bedrooms).stream()
+                                .mapToDouble(p -> p.getPrice().doubleValue()).sorted().toArray(), accuracy);
+            }
+            assertQuantiles(propertyService.getDistribution(PropertyMetric.PRICE),
+                    propertyService.getProperties().stream().mapToDouble(p -> p.getPrice().doubleValue())
+                            .sorted().toArray(), accuracy);
+        }
+    }
+    
+    /**
+     * Tests the histograms of the distributions.
+     * Verifies that bucket counts are exact and follow the catalog as properties are removed.
+     */
+    @Test
+    public void testDistributionHistogram() {
+        propertyService.configureDistributions(0.01, 100_000, 500);
+        
+        List<HistogramBucket> prices = propertyService.getDistribution(PropertyMetric.PRICE).getHistogram();
+        propertyService.removeProperty("3");
+        List<HistogramBucket> afterRemove = propertyService.getDistribution(PropertyMetric.PRICE).getHistogram();
+        
+        assertThat(prices, hasSize(4));
+        assertThat(prices.get(0).getLowerBound(), is(200_000.0));
+        assertThat(prices.get(0).getCount(), is(1L));
+        assertThat(prices.get(1).getCount(), is(1L));
+        assertThat(prices.get(2).getCount(), is(0L));
+        assertThat(prices.get(3).getUpperBound(), is(600_000.0));
+        assertThat(afterRemove.get(1).getCount(), is(0L));
+        assertThat(propertyService.getDistributionByBedrooms(PropertyMetric.AREA, 4).getHistogram().get(0)
+                .getLowerBound(), is(2000.0));
+        assertThat(propertyService.getDistributionByBedrooms(PropertyMetric.AREA, 7).getCount(), is(0L));
+        assertThat(Double.isNaN(propertyService.getDistribution(PropertyMetric.PRICE, PropertyType.TOWNHOUSE)
+                .getMedian()), is(true));
+    }
+    
+    /**
+     * Tests the configureDistributions method with an accuracy that is out of range.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfigureDistributionsWithInvalidAccuracy() {
+        propertyService.configureDistributions(1.5, 100_000, 500);
+    }
+    
+    /**
+     * Tests adding and replacing properties whose area is infinite, NaN or negative while distributions are kept.
+     * Verifies that each change is rejected with an IllegalArgumentException before the catalog or its
+     * distributions are touched.
+     */
+    @Test
+    public void testNonFiniteAreasAreRejected() {
+        propertyService.configureDistributions(0.01, 100_000, 500);
+        
+        for (double area : new double[] {Double.POSITIVE_INFINITY, Double.NaN, Double.NEGATIVE_INFINITY, -1}) {
+            try {
+                propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                        new BigDecimal("420000"), area, 3, 2, true));
+                fail("Expected an IllegalArgumentException for an area of " + area);
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString("area"));
+            }
+            try {
+                propertyService.upsertProperty(new Property("1", "123 Main St", PropertyType.HOUSE,
+                        new BigDecimal("500000"), area, 4, 3, true));
+                fail("Expected an IllegalArgumentException for an area of " + area);
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString("area"));
+            }
+        }
+        
+        assertThat(propertyService.getProperties(), hasSize(3));
+        assertThat(propertyService.findById("1").getArea(), is(2000.0));
+        assertThat(propertyService.getDistribution(PropertyMetric.AREA).getCount(), is(3L));
+        assertThat(propertyService.getDistribution(PropertyMetric.AREA).getHistogram().get(0).getLowerBound(),
+                is(1000.0));
+    }
+    
+    /**
+     * Checks the quantile estimates of a distribution against the exact quantiles of sorted values.
+     *
+     * @param distribution the distribution to check
+     * @param sorted the exact values, sorted
+     * @param accuracy the relative accuracy the estimates must meet
+     */
+    private static void assertQuantiles(ValueDistribution distribution, double[] sorted, double accuracy) {
+        assertThat(distribution.getCount(), is((long) sorted.length));
+        for (double quantile : new double[] {0, 0.1, 0.5, 0.9, 0.99, 1}) {
+            double exact = sorted[(int) Math.floor(quantile * (sorted.length - 1))];
+            assertThat("q" + quantile, distribution.getQuantile(quantile),
+                    closeTo(exact, exact * accuracy * 1.000001));
+        }
+    }
+    
+    /**
+     * Tests the findTopProperties and findBottomProperties methods.
+     * Verifies that, for every metric, the ranked properties match a full sort of the query results, with ties
+     * kept in insertion order, both sequentially and in parallel execution mode.
+     */
+    @Test
+    public void testRankedPropertiesMatchFullSort() {
+        Random random = new Random(13);
+        for (int i = 0; i < 20_000; i++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(2_000) * 500L);
+            propertyService.addProperty(new Property("p" + i, "Street " + i,
+                    PropertyType.values()[random.nextInt(PropertyType.values().length)], price,
+                    random.nextInt(10) == 0 ? 0 : 400 + random.nextInt(40) * 50, random.nextInt(5), 1,
+                    random.nextBoolean()));
+        }
+        for (int i = 0; i < 20_000; i += 7) {
+            propertyService.removeProperty("p" + i);
+        }
+        List<PropertyQuery> queries = new ArrayList<>();
+        queries.add(new PropertyQuery());
+        queries.add(new PropertyQuery().type(PropertyType.HOUSE).availableOnly());
+        queries.add(new PropertyQuery().price(new BigDecimal("100000"), new BigDecimal("150000")).bedrooms(3));
+    
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int mode = 0; mode < 2; mode++) {
+                if (mode == 1) {
+                    propertyService.enableParallelExecution(pool, 0);
+                }
+                for (PropertyQuery query : queries) {
+                    for (PropertyMetric metric : PropertyMetric.values()) {
+                        List<Property> matches = propertyService.findProperties(query).stream()
+                                .filter(property -> metric != PropertyMetric.PRICE_PER_AREA || property.getArea() > 0)
+                                .collect(Collectors.toList());
+                        List<Property> ascending = new ArrayList<>(matches);
+                        ascending.sort(Comparator.comparingDouble(property -> metricOf(property, metric)));
+                        List<Property> descending = new ArrayList<>(matches);
+                        descending.sort(Comparator.comparingDouble(property -> -metricOf(property, metric)));
+                        for (int k : new int[] {1, 10, 250}) {
+                            String context = query + " " + metric + " k=" + k + " mode=" + mode;
+                            assertThat(context, propertyService.findTopProperties(query, metric, k),
+                                    equalTo(descending.subList(0, Math.min(k, descending.size()))));
+                            assertThat(context, propertyService.findBottomProperties(query, metric, k),
+                                    equalTo(ascending.subList(0, Math.min(k, ascending.size()))));
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Tests the findTopProperties method with a negative number of properties.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindTopPropertiesWithNegativeK() {
+        propertyService.addProperty(property1);
+        propertyService.findTopProperties(new PropertyQuery(), PropertyMetric.PRICE, -1);
+    }
+    
+    /**
+     * Gets the value of a metric for a property.
+     *
+     * @param property the property
+     * @param metric the metric
+     * @return the value of the metric
+     */
+    private static double metricOf(Property property, PropertyMetric metric) {
+        switch (metric) {
+            case PRICE:
+                return property.getPrice().doubleValue();
+            case AREA:
+                return property.getArea();
+            default:
+                return property.getPrice().doubleValue() / property.getArea();
+        }
+    }
+    
+    /**
+     * Tests the addAll method.
+     * Verifies that adding a batch to a non-empty catalog leaves the same catalog, indexes and aggregates as
+     * adding the properties one at a time, and that the report counts the batch.
+     */
+    @Test
+    public void testAddAllMatchesAddProperty() {
+        PropertyService oneByOne = new PropertyService(Arrays.asList(property1, property2, property3));
+        Random random = new Random(17);
+        List<Property> batch = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            Property property = new Property("p" + i, "Street " + i,
+                    PropertyType.values()[random.nextInt(PropertyType.values().length)],
+                    BigDecimal.valueOf(random.nextInt(100_000_000), 2), 500 + random.nextInt(2000),
+                    random.nextInt(5), 1, random.nextBoolean());
+            if (i < 1_000) {
+                propertyService.addProperty(property);
+            } else {
+                batch.add(property);
+            }
+            oneByOne.addProperty(property);
+        }
+    
+        BulkLoadReport report = propertyService.addAll(batch);
+    
+        assertThat(report.getRowCount(), is(4_000));
+        assertThat(report.getRowsPerSecond(), greaterThan(0.0));
+        BigDecimal min = new BigDecimal("200000");
+        BigDecimal max = new BigDecimal("300000");
+        PropertyQuery houses = new PropertyQuery().type(PropertyType.HOUSE);
+        assertThat(propertyService.getProperties(), equalTo(oneByOne.getProperties()));
+        assertThat(propertyService.getPropertiesByPriceRange(min, max),
+                equalTo(oneByOne.getPropertiesByPriceRange(min, max)));
+        assertThat(propertyService.findTopProperties(houses, PropertyMetric.PRICE, 25),
+                equalTo(oneByOne.findTopProperties(houses, PropertyMetric.PRICE, 25)));
+        assertThat(propertyService.getPriceStatistics().toString(),
+                is(oneByOne.getPriceStatistics().toString()));
+        assertThat(propertyService.findById("p4999"), equalTo(oneByOne.findById("p4999")));
+    }
+    
+    /**
+     * Tests the addAll method with a batch repeating an id.
+     * Verifies that an IllegalArgumentException is thrown and that none of the batch is stored.
+     */
+    @Test
+    public void testAddAllWithDuplicateIdLeavesCatalogUnchanged() {
+        Property added = new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true);
+        Property repeated = new Property("5", "34 Elm St", PropertyType.HOUSE,
+                new BigDecimal("430000"), 1900, 3, 2, true);
+        try {
+            propertyService.addAll(Arrays.asList(added, repeated, repeated));
+            fail("Expected an IllegalArgumentException for a repeated id");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    
+        assertThat(propertyService.getProperties(), contains(property1, property2, property3));
+        assertThat(propertyService.getPropertiesByPriceRange(BigDecimal.ZERO, new BigDecimal("1000000")),
+                contains(property1, property2, property3));
+        assertThat(propertyService.findById("4"), is(nullValue()));
+    }
+    
+    /**
+     * Tests the bulkLoad method.
+     * Verifies that the loaded stream replaces the catalog, that the new catalog is fully indexed and keeps the
+     * distribution settings, and that a failed load leaves the current catalog in place.
+     */
+    @Test
+    public void testBulkLoadReplacesCatalog() {
+        propertyService.configureDistributions(0.05, 100_000, 500);
+    
+        BulkLoadReport report = propertyService.bulkLoad(Stream.of(property2, property3));
+    
+        assertThat(report.getRowCount(), is(2));
+        assertThat(propertyService.getProperties(), contains(property2, property3));
+        assertThat(propertyService.findById("1"), is(nullValue()));
+        assertThat(propertyService.findMostExpensiveProperty(), equalTo(property3));
+        assertThat(propertyService.getPropertiesByPriceRange(new BigDecimal("200000"), new BigDecimal("300000")),
+                contains(property2));
+        assertThat(propertyService.getDistribution(PropertyMetric.PRICE).getRelativeAccuracy(), is(0.05));
+        try {
+            propertyService.bulkLoad(Stream.of(property1, property1));
+            fail("Expected an IllegalArgumentException for a repeated id");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        assertThat(propertyService.getProperties(), contains(property2, property3));
+    }
+    
+    /**
+     * Tests the saveSnapshot and loadSnapshot methods.
+     * Verifies that a catalog with removed and replaced properties is restored with the same properties, indexes,
+     * aggregates and distributions, and that the restored catalog keeps working when it is changed afterwards.
+     *
+     * @throws IOException if the snapshot cannot be written or read
+     */
+    @Test
+    public void testSaveAndLoadSnapshot() throws IOException {
+        Random random = new Random(16);
+        for (int i = 4; i < 3000; i++) {
+            propertyService.addProperty(new Property(String.valueOf(i), i % 7 == 0 ? null : "Street " + i % 500,
+                    i % 13 == 0 ? null : PropertyType.values()[random.nextInt(PropertyType.values().length)],
+                    BigDecimal.valueOf(random.nextInt(100_000_000), 2), random.nextInt(4000),
+                    random.nextInt(6), random.nextInt(4), random.nextBoolean()));
+        }
+        for (int i = 5; i < 3000; i += 4) {
+            propertyService.removeProperty(String.valueOf(i));
+        }
+        propertyService.upsertProperty(new Property("2", "456 Oak Ave", PropertyType.APARTMENT,
+                new BigDecimal("2500000"), 1200, 2, 2, false, 48.8566, 2.3522));
+        for (int i = 6; i < 3000; i += 12) {
+            Property property = propertyService.findById(String.valueOf(i));
+            propertyService.upsertProperty(new Property(property.getId(), property.getAddress(),
+                    property.getType(), property.getPrice(), property.getArea(), property.getBedrooms(),
+                    property.getBathrooms(), property.isAvailable(), random.nextDouble() * 10,
+                    random.nextDouble() * 10));
+        }
+        propertyService.configureDistributions(0.05, 100_000, 500);
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+    
+        long size = propertyService.saveSnapshot(file);
+        PropertyService restored = new PropertyService();
+        BulkLoadReport report = restored.loadSnapshot(file);
+    
+        assertThat(size, is(Files.size(file)));
+        assertThat(report.getRowCount(), is(propertyService.getProperties().size()));
+        assertThat(restored.getProperties(), equalTo(propertyService.getProperties()));
+        PropertyQuery query = new PropertyQuery().type(PropertyType.HOUSE)
+                .price(new BigDecimal("100000"), new BigDecimal("600000")).availableOnly();
+        assertThat(restored.findProperties(query), equalTo(propertyService.findProperties(query)));
+        assertThat(restored.findTopProperties(new PropertyQuery(), PropertyMetric.PRICE, 5),
+                equalTo(propertyService.findTopProperties(new PropertyQuery(), PropertyMetric.PRICE, 5)));
+        assertThat(restored.getPropertiesByBedrooms(3), equalTo(propertyService.getPropertiesByBedrooms(3)));
+        assertThat(restored.getPropertiesByAddress("street 4"),
+                equalTo(propertyService.getPropertiesByAddress("street 4")));
+        assertThat(restored.findById("2").getLongitude(), is(2.3522));
+        assertThat(restored.findNearest(new PropertyQuery(), 5, 5, 20),
+                equalTo(propertyService.findNearest(new PropertyQuery(), 5, 5, 20)));
+        assertThat(restored.findProperties(new PropertyQuery().inBox(2, 2, 6, 6)),
+                equalTo(propertyService.findProperties(new PropertyQuery().inBox(2, 2, 6, 6))));
+        for (PropertyType type : PropertyType.values()) {
+            assertThat(restored.getPriceStatistics(type).toString(),
+                    is(propertyService.getPriceStatistics(type).toString()));
+        }
+        assertThat(restored.getDistribution(PropertyMetric.AREA).toString(),
+                is(propertyService.getDistribution(PropertyMetric.AREA).toString()));
+        assertThat(restored.getDistribution(PropertyMetric.PRICE).getHistogram().toString(),
+                is(propertyService.getDistribution(PropertyMetric.PRICE).getHistogram().toString()));
+    
+        for (PropertyService service : Arrays.asList(propertyService, restored)) {
+            service.addProperty(new Property("3000", "Street 1", PropertyType.TOWNHOUSE, new BigDecimal("99.99"),
+                    50, 1, 1, true));
+            service.removeProperty("1");
+            for (int i = 6; i < 2000; i += 4) {
+                service.removeProperty(String.valueOf(i));
+            }
+        }
+        assertThat(restored.getProperties(), equalTo(propertyService.getProperties()));
+        assertThat(restored.getPriceStatistics().toString(), is(propertyService.getPriceStatistics().toString()));
+        assertThat(restored.findById("3000"), equalTo(propertyService.findById("3000")));
+    }
+    
+    /**
+     * Tests the loadSnapshot method with files that are not complete snapshots.
+     * Verifies that an IllegalArgumentException is thrown and that the catalog is left unchanged.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void testLoadInvalidSnapshotKeepsCatalog() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("catalog.snapshot");
+        propertyService.saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Path truncated = Files.write(folder.newFile("truncated.snapshot").toPath(),
+                Arrays.copyOf(bytes, bytes.length - 9));
+        Path listings = Files.write(folder.newFile("listings.csv").toPath(),
+                "1,123 Main St,HOUSE,500000,2000,4,3,true\n".getBytes());
+        propertyService.removeProperty("1");
+    
+        for (Path file : Arrays.asList(truncated, listings)) {
+            try {
+                propertyService.loadSnapshot(file);
+                fail("Expected an IllegalArgumentException for " + file);
+            } catch (IllegalArgumentException expected) {
+                assertThat(expected.getMessage(), containsString(file.toString()));
+            }
+            assertThat(propertyService.getProperties(), contains(property2, property3));
+        }
+    }
+    
+    /**
+     * Tests the addProperty method with a bedroom count that cannot be stored.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPropertyWithTooManyBedrooms() {
+        propertyService.addProperty(new Property("4", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 128, 2, true));
+    }
+    
+    /**
+     * Tests the addProperty method with an id that is already in use.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPropertyWithDuplicateId() {
+        propertyService.addProperty(new Property("1", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true));
+    }
+    
+    /**
+     * Tests the constructor with a list that repeats an id.
+     * Verifies that an IllegalArgumentException is thrown instead of storing a row that the id index cannot reach.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithDuplicateId() {
+        new PropertyService(Arrays.asList(property1, new Property("1", "12 Elm St", PropertyType.HOUSE,
+                new BigDecimal("420000"), 1800, 3, 2, true)));
+    }
+    
     /**
      * Tests the addProperty method with a null property.
      * Verifies that an IllegalArgumentException is thrown.
@@ -173,4 +1757,35 @@ public class PropertyServiceTest {
     public void testCountPropertiesByTypeWithNull() {
         propertyService.countPropertiesByType(null);
     }
+    
+    /**
+     * Subscriber recording the batches of change events it receives, without requesting any on its own.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<List<ChangeEvent>> {
+        
+        private final List<List<ChangeEvent>> batches = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+        
+        @Override
+        public void onNext(List<ChangeEvent> batch) {
+            batches.add(batch);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+        
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
 }
\ No newline at end of file
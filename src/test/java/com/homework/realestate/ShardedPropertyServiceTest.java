@@ -0,0 +1,307 @@
+package com.homework.realestate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test class for the ShardedPropertyService class.
+ * Every partitioning is checked against a single PropertyService holding the same catalog, since sharding must
+ * not change which properties a query finds.
+ */
+public class ShardedPropertyServiceTest {
+
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("com.homework");
+    private static final List<ShardPartitioning> PARTITIONINGS = Arrays.asList(ShardPartitioning.byType(),
+            ShardPartitioning.byPriceBands(new BigDecimal("200000"), new BigDecimal("400000"),
+                    new BigDecimal("700000")),
+            ShardPartitioning.byIdHash(4));
+
+    private ForkJoinPool pool;
+    private Level previousLevel;
+
+    /**
+     * Sets up the test environment before each test method.
+     * Creates the pool running the shard tasks and limits logging to warnings.
+     */
+    @Before
+    public void setUp() {
+        previousLevel = APPLICATION_LOGGER.getLevel();
+        APPLICATION_LOGGER.setLevel(Level.WARNING);
+        pool = new ForkJoinPool(4);
+    }
+
+    /**
+     * Restores the logging level and shuts the pool down after each test method.
+     */
+    @After
+    public void tearDown() {
+        APPLICATION_LOGGER.setLevel(previousLevel);
+        pool.shutdown();
+    }
+
+    /**
+     * Tests the queries of the ShardedPropertyService class.
+     * Verifies that, for every partitioning, lookups, filters, counts, ranked and nearest queries, statistics and
+     * distributions agree with a single service holding the same catalog, also after upserts moved properties
+     * between shards and properties were removed.
+     */
+    @Test
+    public void testQueriesMatchSingleService() {
+        for (ShardPartitioning partitioning : PARTITIONINGS) {
+            ShardedPropertyService sharded = new ShardedPropertyService(partitioning, pool);
+            PropertyService single = new PropertyService();
+            List<Property> catalog = generate(new Random(23), 3000, "p");
+            sharded.addAll(catalog);
+            single.addAll(catalog);
+            Random random = new Random(24);
+            for (int i = 0; i < 3000; i += 5) {
+                Property moved = generate(random, 1, "p" + i).get(0);
+                Property changed = new Property("p" + i, moved.getAddress(), moved.getType(), moved.getPrice(),
+                        moved.getArea(), moved.getBedrooms(), moved.getBathrooms(), moved.isAvailable(),
+                        moved.getLatitude(), moved.getLongitude());
+                assertThat(sharded.upsertProperty(changed), equalTo(single.upsertProperty(changed)));
+            }
+            for (int i = 1; i < 3000; i += 7) {
+                assertThat(sharded.removeProperty("p" + i), equalTo(single.removeProperty("p" + i)));
+            }
+            for (int i = 2; i < 3000; i += 11) {
+                assertThat(sharded.setAvailability("p" + i, false), is(single.setAvailability("p" + i, false)));
+            }
+            String context = partitioning.toString();
+
+            assertThat(context, sharded.getShardSizes().stream().mapToLong(Long::longValue).sum(),
+                    is((long) single.getProperties().size()));
+            assertThat(context, sharded.findById("p10").getPrice(), is(single.findById("p10").getPrice()));
+            assertThat(context, sharded.findById("p1"), is(nullValue()));
+            assertThat(context, sorted(sharded.getProperties()), equalTo(sorted(single.getProperties())));
+            assertThat(context, sorted(sharded.getAvailableProperties()),
+                    equalTo(sorted(single.getAvailableProperties())));
+            assertThat(context, sorted(sharded.getPropertiesByType(PropertyType.CONDO)),
+                    equalTo(sorted(single.getPropertiesByType(PropertyType.CONDO))));
+            assertThat(context, sorted(sharded.getPropertiesByBedrooms(2)),
+                    equalTo(sorted(single.getPropertiesByBedrooms(2))));
+            assertThat(context, sorted(sharded.getPropertiesByAddress("oak")),
+                    equalTo(sorted(single.getPropertiesByAddress("oak"))));
+            for (BigDecimal[] range : new BigDecimal[][] {{new BigDecimal("150000"), new BigDecimal("450000")},
+                    {new BigDecimal("400000"), new BigDecimal("400000")}, {new BigDecimal("0.001"),
+                    new BigDecimal("0.009")}}) {
+                assertThat(context, sorted(sharded.getPropertiesByPriceRange(range[0], range[1])),
+                        equalTo(sorted(single.getPropertiesByPriceRange(range[0], range[1]))));
+            }
+
+            List<PropertyQuery> queries = Arrays.asList(new PropertyQuery(),
+                    new PropertyQuery().type(PropertyType.HOUSE).availableOnly(),
+                    new PropertyQuery().price(new BigDecimal("100000"), new BigDecimal("300000")).bedrooms(3),
+                    new PropertyQuery().within(40.7, -74.0, 10));
+            for (PropertyQuery query : queries) {
+                String queryContext = context + " " + query;
+                assertThat(queryContext, sorted(sharded.findProperties(query)),
+                        equalTo(sorted(single.findProperties(query))));
+                assertThat(queryContext, sharded.countProperties(query), is(single.countProperties(query)));
+                for (PropertyMetric metric : PropertyMetric.values()) {
+                    assertThat(queryContext, values(sharded.findTopProperties(query, metric, 25), metric),
+                            equalTo(values(single.findTopProperties(query, metric, 25), metric)));
+                    assertThat(queryContext, values(sharded.findBottomProperties(query, metric, 25), metric),
+                            equalTo(values(single.findBottomProperties(query, metric, 25), metric)));
+                }
+                assertThat(queryContext, distances(sharded.findNearest(query, 40.8, -73.9, 15)),
+                        equalTo(distances(single.findNearest(query, 40.8, -73.9, 15))));
+            }
+
+            assertThat(context, sharded.getPriceStatistics().getSum(),
+                    comparesEqualTo(single.getPriceStatistics().getSum()));
+            assertThat(context, sharded.getPriceStatistics().getMin(),
+                    comparesEqualTo(single.getPriceStatistics().getMin()));
+            assertThat(context, sharded.getAveragePrice(), comparesEqualTo(single.getAveragePrice()));
+            assertThat(context, sharded.getPriceStatistics(PropertyType.TOWNHOUSE).getMax(),
+                    comparesEqualTo(single.getPriceStatistics(PropertyType.TOWNHOUSE).getMax()));
+            assertThat(context, sharded.countPropertiesByType(PropertyType.APARTMENT),
+                    is(single.countPropertiesByType(PropertyType.APARTMENT)));
+            assertThat(context, sharded.findMostExpensiveProperty().getPrice(),
+                    comparesEqualTo(single.findMostExpensiveProperty().getPrice()));
+            assertThat(context, sharded.getDistribution(PropertyMetric.PRICE).toString(),
+                    is(single.getDistribution(PropertyMetric.PRICE).toString()));
+            assertThat(context, sharded.getDistribution(PropertyMetric.AREA, PropertyType.HOUSE).getHistogram()
+                    .toString(), is(single.getDistribution(PropertyMetric.AREA, PropertyType.HOUSE).getHistogram()
+                    .toString()));
+        }
+    }
+
+    /**
+     * Tests the findProperties method with an offset and a limit.
+     * Verifies that consecutive pages cover the unpaged matches in order without gaps or overlaps.
+     */
+    @Test
+    public void testPagesFollowShardOrder() {
+        ShardedPropertyService sharded = new ShardedPropertyService(ShardPartitioning.byIdHash(3), pool);
+        sharded.addAll(generate(new Random(25), 500, "p"));
+        PropertyQuery query = new PropertyQuery().availableOnly();
+        List<Property> all = sharded.findProperties(query);
+
+        List<Property> paged = new ArrayList<>();
+        for (int offset = 0; offset < all.size() + 40; offset += 40) {
+            paged.addAll(sharded.findProperties(new PropertyQuery().availableOnly().offset(offset).limit(40)));
+        }
+
+        assertThat(paged, equalTo(all));
+    }
+
+    /**
+     * Tests the addProperty and addAll methods with ids that are already in use in another shard.
+     * Verifies that an IllegalArgumentException is thrown and that a rejected batch adds nothing.
+     */
+    @Test
+    public void testDuplicateIdsAreRejectedAcrossShards() {
+        ShardedPropertyService sharded = new ShardedPropertyService(ShardPartitioning.byType(), pool);
+        sharded.addProperty(new Property("1", "123 Main St", PropertyType.HOUSE, new BigDecimal("500000"), 2000,
+                4, 3, true));
+
+        try {
+            sharded.addProperty(new Property("1", "456 Oak Ave", PropertyType.CONDO, new BigDecimal("250000"),
+                    1200, 2, 2, true));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            sharded.addAll(Arrays.asList(new Property("2", "9 Elm St", PropertyType.APARTMENT,
+                    new BigDecimal("100000"), 700, 1, 1, true), new Property("1", "456 Oak Ave", PropertyType.CONDO,
+                    new BigDecimal("250000"), 1200, 2, 2, true)));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        assertThat(sharded.getProperties(), hasSize(1));
+        assertThat(sharded.findById("1").getType(), is(PropertyType.HOUSE));
+        assertThat(sharded.getShardSizes(), contains(0L, 1L, 0L, 0L, 0L));
+    }
+
+    /**
+     * Tests concurrent upserts and removals of the same ids from several threads.
+     * Verifies that every id ends up in exactly one shard and can be found by id.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting for the writers
+     */
+    @Test
+    public void testConcurrentWritersKeepIdsUnique() throws InterruptedException {
+        ShardedPropertyService sharded = new ShardedPropertyService(ShardPartitioning.byType(), pool);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            Random random = new Random(26 + w);
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    Property property = generate(random, 1, "p" + random.nextInt(50)).get(0);
+                    if (i % 10 == 0) {
+                        sharded.removeProperty(property.getId());
+                    } else {
+                        sharded.upsertProperty(property);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        List<Property> all = sharded.getProperties();
+        assertThat(new HashSet<>(all), hasSize(all.size()));
+        for (Property property : all) {
+            assertThat(sharded.findById(property.getId()).getType(), is(property.getType()));
+        }
+        int found = 0;
+        for (int i = 0; i < 50; i++) {
+            found += sharded.findById("p" + i) != null ? 1 : 0;
+        }
+        assertThat(found, is(all.size()));
+    }
+
+    /**
+     * Tests the partition pruning of ShardPartitioning.
+     * Verifies that type and price criteria only select the shards that can hold matches.
+     */
+    @Test
+    public void testPartitioningPrunesShards() {
+        ShardPartitioning byType = ShardPartitioning.byType();
+        ShardPartitioning byPrice = ShardPartitioning.byPriceBands(new BigDecimal("200000"),
+                new BigDecimal("400000"));
+
+        assertThat(byType.getShardCount(), is(PropertyType.values().length + 1));
+        assertThat(byType.shardsFor(new PropertyQuery().type(PropertyType.CONDO)).length, is(1));
+        assertThat(byType.shardsFor(new PropertyQuery().availableOnly()).length, is(byType.getShardCount()));
+        assertThat(byPrice.getShardCount(), is(3));
+        assertThat(Arrays.toString(byPrice.shardsForPriceRange(new BigDecimal("0"), new BigDecimal("199999.99"))),
+                is("[0]"));
+        assertThat(Arrays.toString(byPrice.shardsForPriceRange(new BigDecimal("200000"), new BigDecimal("200000"))),
+                is("[1]"));
+        assertThat(Arrays.toString(byPrice.shardsFor(new PropertyQuery().price(new BigDecimal("150000"),
+                new BigDecimal("500000")))), is("[0, 1, 2]"));
+        assertThat(Arrays.toString(byPrice.shardsForPriceRange(new BigDecimal("0.001"), new BigDecimal("0.009"))),
+                is("[]"));
+    }
+
+    /**
+     * Tests the byPriceBands method with bounds that are not in ascending order.
+     * Verifies that an IllegalArgumentException is thrown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testByPriceBandsWithUnorderedBounds() {
+        ShardPartitioning.byPriceBands(new BigDecimal("400000"), new BigDecimal("200000"));
+    }
+
+    /**
+     * Generates random properties with locations, some of them sharing prices so that rankings have ties.
+     *
+     * @param random the random source
+     * @param count the number of properties
+     * @param idPrefix the prefix of the ids, followed by the index of each property
+     * @return the properties
+     */
+    private static List<Property> generate(Random random, int count, String idPrefix) {
+        String[] streets = {"Oak Ave", "Main St", "Pine Rd", "Elm St"};
+        List<Property> properties = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PropertyType type = random.nextInt(20) == 0 ? null
+                    : PropertyType.values()[random.nextInt(PropertyType.values().length)];
+            properties.add(new Property(count == 1 ? idPrefix : idPrefix + i,
+                    (1 + random.nextInt(200)) + " " + streets[random.nextInt(streets.length)], type,
+                    BigDecimal.valueOf(random.nextInt(2_000) * 500L), random.nextInt(10) == 0 ? 0
+                    : 400 + random.nextInt(40) * 50, random.nextInt(5), 1, random.nextBoolean(),
+                    40.5 + random.nextDouble() * 0.4, -74.25 + random.nextDouble() * 0.55));
+        }
+        return properties;
+    }
+
+    private static List<String> sorted(List<Property> properties) {
+        return properties.stream().map(Property::getId).sorted().collect(Collectors.toList());
+    }
+
+    private static List<Double> values(List<Property> properties, PropertyMetric metric) {
+        return properties.stream()
+                .map(p -> metric == PropertyMetric.PRICE ? p.getPrice().doubleValue()
+                        : metric == PropertyMetric.AREA ? p.getArea() : p.getPrice().doubleValue() / p.getArea())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Double> distances(List<Property> properties) {
+        return properties.stream()
+                .map(p -> Locations.distanceKm(40.8, -73.9, p.getLatitude(), p.getLongitude()))
+                .collect(Collectors.toList());
+    }
+}